@@ -26,6 +26,7 @@ import net.tnemc.bungee.message.backlog.MessageData;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * BungeeCore
@@ -45,6 +46,10 @@ public class BungeeCore extends Plugin {
     instance = this;
 
     this.manager = new MessageManager(new BungeeProxy());
+    this.manager.persist(getDataFolder());
+
+    //Save any backlogged messages periodically, so they aren't lost if the proxy stops unexpectedly.
+    getProxy().getScheduler().schedule(this, manager::save, 30, 30, TimeUnit.SECONDS);
 
     getProxy().registerChannel("tne:balance");
     getProxy().registerChannel("tne:sync");
@@ -52,6 +57,13 @@ public class BungeeCore extends Plugin {
     getProxy().getPluginManager().registerListener(this, new PlayerConnectListener());
   }
 
+  @Override
+  public void onDisable() {
+    if(manager != null) {
+      manager.save();
+    }
+  }
+
   public static BungeeCore instance() {
     return instance;
   }
@@ -22,6 +22,8 @@ import net.tnemc.bungee.message.backlog.BacklogEntry;
 import net.tnemc.bungee.message.backlog.MessageData;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.logging.Logger;
+
 /**
  * BungeeProxy
  *
@@ -78,4 +80,14 @@ public class BungeeProxy implements ProxyProvider {
       }
     });
   }
+
+  /**
+   * Used to get the logger of the proxy plugin.
+   *
+   * @return The logger.
+   */
+  @Override
+  public Logger logger() {
+    return BungeeCore.instance().getLogger();
+  }
 }
\ No newline at end of file
@@ -20,6 +20,8 @@ package net.tnemc.bungee;
 import net.tnemc.bungee.message.backlog.MessageData;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.logging.Logger;
+
 /**
  * ProxyProvider
  *
@@ -48,4 +50,10 @@ public interface ProxyProvider {
    * @param data The {@link MessageData} to use for determining the server, and backlog to send.
    */
   void sendBacklog(@NotNull final MessageData data);
+
+  /**
+   * Used to get the logger of the proxy plugin.
+   * @return The logger.
+   */
+  Logger logger();
 }
\ No newline at end of file
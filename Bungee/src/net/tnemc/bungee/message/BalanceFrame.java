@@ -0,0 +1,264 @@
+package net.tnemc.bungee.message;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * A binary tne:balance frame, which carries any number of balance changes from a single server.
+ *
+ * Frames start with a marker byte and version, followed by the server's identifier, a table of the
+ * account identifiers, regions and handlers used in the frame, and then each change, which refers to
+ * the table by index. Legacy messages start with the length of the server's identifier as written by
+ * writeUTF, so their first byte is always 0, and they can't be mistaken for a frame.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public record BalanceFrame(UUID server, List<BalanceFrame.Update> updates) {
+
+  public static final byte MARKER = (byte)0xB1;
+  public static final byte VERSION = 2;
+
+  private static final int TABLE_STRING = 0;
+  private static final int TABLE_UUID = 1;
+
+  /**
+   * A single balance change within a frame. The version orders changes to the same balance, and is 0
+   * for changes from servers that don't send versions.
+   */
+  public record Update(String account, String region, UUID currency, String handler, BigDecimal amount,
+                       long version) {
+  }
+
+  /**
+   * Used to determine if a message is a binary frame, rather than a legacy message.
+   * @param data The message.
+   * @return True if the message is a binary frame.
+   */
+  public static boolean binary(final byte[] data) {
+    return data.length > 1 && data[0] == MARKER;
+  }
+
+  /**
+   * Used to decode a binary frame.
+   * @param data The frame.
+   * @return The decoded frame.
+   * @throws IOException If the frame is malformed, or its version is newer than this one.
+   */
+  public static BalanceFrame decode(final byte[] data) throws IOException {
+    try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+
+      if(in.readByte() != MARKER) {
+        throw new IOException("Not a binary frame.");
+      }
+
+      final int version = in.readUnsignedByte();
+      if(version > VERSION) {
+        throw new IOException("Unsupported frame version " + version + ".");
+      }
+
+      final UUID server = new UUID(in.readLong(), in.readLong());
+
+      final String[] table = new String[(int)readVarLong(in)];
+      for(int i = 0; i < table.length; i++) {
+        table[i] = (in.readUnsignedByte() == TABLE_UUID)? new UUID(in.readLong(), in.readLong()).toString() : in.readUTF();
+      }
+
+      final int count = (int)readVarLong(in);
+      final List<Update> updates = new ArrayList<>(count);
+      for(int i = 0; i < count; i++) {
+        final String account = table[(int)readVarLong(in)];
+        final String region = table[(int)readVarLong(in)];
+        final UUID currency = new UUID(in.readLong(), in.readLong());
+        final String handler = table[(int)readVarLong(in)];
+
+        final BigDecimal amount = readBigDecimal(in);
+        final long changeVersion = (version >= 2)? readVarLong(in) : 0;
+
+        updates.add(new Update(account, region, currency, handler, amount, changeVersion));
+      }
+      return new BalanceFrame(server, updates);
+    }
+  }
+
+  /**
+   * Used to encode this frame.
+   * @return The encoded frame.
+   */
+  public byte[] encode() {
+    final Map<String, Integer> table = new LinkedHashMap<>();
+    for(Update update : updates) {
+      table.putIfAbsent(update.account(), table.size());
+      table.putIfAbsent(update.region(), table.size());
+      table.putIfAbsent(update.handler(), table.size());
+    }
+
+    final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+    out.writeByte(MARKER);
+    out.writeByte(VERSION);
+    out.writeLong(server.getMostSignificantBits());
+    out.writeLong(server.getLeastSignificantBits());
+
+    writeVarLong(out, table.size());
+    for(String value : table.keySet()) {
+      final UUID id = uuid(value);
+      if(id != null) {
+        out.writeByte(TABLE_UUID);
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+        continue;
+      }
+      out.writeByte(TABLE_STRING);
+      out.writeUTF(value);
+    }
+
+    writeVarLong(out, updates.size());
+    for(Update update : updates) {
+      writeVarLong(out, table.get(update.account()));
+      writeVarLong(out, table.get(update.region()));
+      out.writeLong(update.currency().getMostSignificantBits());
+      out.writeLong(update.currency().getLeastSignificantBits());
+      writeVarLong(out, table.get(update.handler()));
+      writeBigDecimal(out, update.amount());
+      writeVarLong(out, update.version());
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Used to decode a legacy balance message, which carries a single change.
+   * @param data The message.
+   * @return The decoded message, as a frame with a single change.
+   * @throws IOException If the message is malformed.
+   */
+  public static BalanceFrame decodeLegacy(final byte[] data) throws IOException {
+    try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+
+      final UUID server = UUID.fromString(in.readUTF());
+      final String account = in.readUTF();
+      final String region = in.readUTF();
+      final UUID currency = UUID.fromString(in.readUTF());
+      final String handler = in.readUTF();
+      final BigDecimal amount = new BigDecimal(in.readUTF());
+
+      return new BalanceFrame(server, List.of(new Update(account, region, currency, handler, amount, 0)));
+    } catch(IllegalArgumentException e) {
+      throw new IOException("Malformed legacy balance message.", e);
+    }
+  }
+
+  /**
+   * Used to encode a single change as a legacy balance message, for servers that don't understand
+   * binary frames.
+   * @param server The identifier of the server that made the change.
+   * @param update The change.
+   * @return The encoded message.
+   */
+  public static byte[] encodeLegacy(final UUID server, final Update update) {
+    final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+    out.writeUTF(server.toString());
+    out.writeUTF(update.account());
+    out.writeUTF(update.region());
+    out.writeUTF(update.currency().toString());
+    out.writeUTF(update.handler());
+    out.writeUTF(update.amount().toPlainString());
+    return out.toByteArray();
+  }
+
+  private static UUID uuid(final String value) {
+    try {
+      final UUID id = UUID.fromString(value);
+      return (id.toString().equals(value))? id : null;
+    } catch(Exception ignore) {
+      return null;
+    }
+  }
+
+  private static long readVarLong(final DataInputStream in) throws IOException {
+    long value = 0;
+    for(int shift = 0; shift < 64; shift += 7) {
+      final int read = in.readUnsignedByte();
+      value |= (long)(read & 0x7F) << shift;
+
+      if((read & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length number.");
+  }
+
+  private static void writeVarLong(final ByteArrayDataOutput out, long value) {
+    while((value & ~0x7FL) != 0) {
+      out.writeByte((int)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int)value);
+  }
+
+  /*
+   * Amounts are written as their scale, along with a flag noting whether the unscaled value fits in a
+   * long, followed by the unscaled value as a variable length long or as its bytes.
+   */
+  private static BigDecimal readBigDecimal(final DataInputStream in) throws IOException {
+    final long head = readVarLong(in);
+    final int scale = (int)unzigzag(head >>> 1);
+
+    if((head & 1) == 0) {
+      return BigDecimal.valueOf(unzigzag(readVarLong(in)), scale);
+    }
+
+    final byte[] unscaled = new byte[(int)readVarLong(in)];
+    in.readFully(unscaled);
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+
+  private static void writeBigDecimal(final ByteArrayDataOutput out, final BigDecimal value) {
+    final boolean big = value.unscaledValue().bitLength() > 63;
+
+    writeVarLong(out, (zigzag(value.scale()) << 1) | (big? 1 : 0));
+    if(!big) {
+      writeVarLong(out, zigzag(value.unscaledValue().longValue()));
+      return;
+    }
+
+    final byte[] unscaled = value.unscaledValue().toByteArray();
+    writeVarLong(out, unscaled.length);
+    out.write(unscaled);
+  }
+
+  private static long zigzag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
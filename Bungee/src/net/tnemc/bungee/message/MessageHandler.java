@@ -59,4 +59,12 @@ public abstract class MessageHandler {
   }
 
   public abstract void handle(String player, UUID server, DataInputStream stream);
+
+  /**
+   * Used to handle a binary {@link BalanceFrame frame}. Handlers for channels that don't use binary
+   * frames ignore them.
+   * @param frame The decoded frame.
+   */
+  public void handle(final BalanceFrame frame) {
+  }
 }
\ No newline at end of file
@@ -24,25 +24,48 @@ import net.tnemc.bungee.message.backlog.MessageData;
 import net.tnemc.bungee.message.handlers.BalanceMessageHandler;
 import net.tnemc.bungee.message.handlers.SyncAllMessageHandler;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
 
 /**
  * Manages all Plugin Channel messages.
  *
+ * Messages for servers without any players are held in a backlog for each server until a player
+ * connects. Each backlog is capped at {@code tne.backlog.max} entries, which defaults to 10000, and
+ * the backlogs are saved to a file so they survive a restart unless {@code tne.backlog.persist} is
+ * set to false.
+ *
  * @author creatorfromhell
  * @since 0.1.2.0
  */
 public class MessageManager {
 
   private final Map<String, MessageHandler> handlers = new HashMap<>();
-  private final Map<String, MessageData> data = new HashMap<>();
+  private final Map<String, MessageData> data = new ConcurrentHashMap<>();
   private final ProxyProvider proxy;
   private static MessageManager instance;
 
+  private static final int BACKLOG_MAGIC = 0x544E4542;
+  private static final int BACKLOG_VERSION = 3;
+
+  private final int backlogMax = Integer.getInteger("tne.backlog.max", 10000);
+  private File backlogFile = null;
+  private volatile boolean dirty = false;
+
   public MessageManager(final ProxyProvider proxy) {
     instance = this;
     this.proxy = proxy;
@@ -56,6 +79,13 @@ public class MessageManager {
 
     if(handlers.containsKey(tag)) {
       try {
+
+        //Binary frames carry their own server identifier, along with every change they contain.
+        if(BalanceFrame.binary(data)) {
+          handlers.get(tag).handle(BalanceFrame.decode(data));
+          return;
+        }
+
         final ByteArrayInputStream stream = new ByteArrayInputStream(data);
         final DataInputStream in = new DataInputStream(stream);
 
@@ -66,7 +96,7 @@ public class MessageManager {
         in.close();
         stream.close();
       } catch(Exception e) {
-        e.printStackTrace();
+        proxy.logger().log(Level.SEVERE, "Unable to handle a message on " + channel + ".", e);
       }
     }
   }
@@ -80,20 +110,120 @@ public class MessageManager {
   }
 
   public void backlog(final String server) {
-    if(data.containsKey(server)) {
-      proxy.sendBacklog(data.get(server));
-      data.remove(server);
+    final MessageData backlog = data.remove(server);
+    if(backlog != null) {
+      proxy.sendBacklog(backlog);
+      dirty = true;
     }
   }
 
   public void addData(final String server, BacklogEntry entry) {
-    if(data.containsKey(server)) {
-      data.get(server).getBacklog().add(entry);
+    final MessageData backlog = data.computeIfAbsent(server, k->new MessageData(server, backlogMax));
+
+    dirty = true;
+    if(entry.channel().equalsIgnoreCase("tne:balance")) {
+      try {
+
+        //Balance changes are compacted, so only the latest amount for each balance is replayed.
+        final boolean legacy = !BalanceFrame.binary(entry.out());
+        final BalanceFrame frame = (legacy)? BalanceFrame.decodeLegacy(entry.out()) : BalanceFrame.decode(entry.out());
+        for(BalanceFrame.Update update : frame.updates()) {
+          backlog.add(frame.server(), update, legacy);
+        }
+        return;
+      } catch(IOException ignore) {
+        //We couldn't read the change, so it's replayed exactly as it was received.
+      }
+    }
+    backlog.add(entry);
+  }
+
+  /**
+   * The total number of entries dropped from the backlogs because they were full.
+   * @return The number of dropped entries.
+   */
+  public long overflow() {
+    long overflow = 0;
+    for(MessageData backlog : data.values()) {
+      overflow += backlog.getOverflow();
+    }
+    return overflow;
+  }
+
+  /**
+   * The total number of entries waiting in the backlogs.
+   * @return The number of waiting entries.
+   */
+  public int backlogSize() {
+    int size = 0;
+    for(MessageData backlog : data.values()) {
+      size += backlog.size();
+    }
+    return size;
+  }
+
+  /**
+   * Used to set the file that the backlogs are saved to, and load any backlogs that were saved to it.
+   * @param directory The directory for the backlog file.
+   */
+  public void persist(final File directory) {
+    if(!Boolean.parseBoolean(System.getProperty("tne.backlog.persist", "true"))) {
       return;
     }
 
-    MessageData data = new MessageData(server);
-    data.getBacklog().add(entry);
-    this.data.put(server, data);
+    this.backlogFile = new File(directory, "backlog.dat");
+    if(!backlogFile.exists()) {
+      return;
+    }
+
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(backlogFile)))) {
+      if(in.readInt() != BACKLOG_MAGIC) {
+        return;
+      }
+
+      final int version = in.readInt();
+      if(version > BACKLOG_VERSION) {
+        return;
+      }
+
+      final int servers = in.readInt();
+      for(int i = 0; i < servers; i++) {
+        final MessageData backlog = MessageData.read(in, version, backlogMax);
+        data.put(backlog.getServerName(), backlog);
+      }
+    } catch(IOException e) {
+      proxy.logger().log(Level.SEVERE, "Unable to load the saved backlog from " + backlogFile.getName() + ".", e);
+    }
+  }
+
+  /**
+   * Used to save the backlogs to the backlog file, if they've changed since the last save. The file
+   * is written to a temporary file first, so a failed save doesn't lose the previous one.
+   */
+  public void save() {
+    if(backlogFile == null || !dirty) {
+      return;
+    }
+    dirty = false;
+
+    final File temp = new File(backlogFile.getParentFile(), backlogFile.getName() + ".tmp");
+    try {
+      Files.createDirectories(backlogFile.getParentFile().toPath());
+
+      try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+        out.writeInt(BACKLOG_MAGIC);
+        out.writeInt(BACKLOG_VERSION);
+
+        final Map<String, MessageData> snapshot = new HashMap<>(data);
+        out.writeInt(snapshot.size());
+        for(MessageData backlog : snapshot.values()) {
+          backlog.write(out);
+        }
+      }
+      Files.move(temp.toPath(), backlogFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } catch(IOException e) {
+      dirty = true;
+      proxy.logger().log(Level.SEVERE, "Unable to save the backlog to " + backlogFile.getName() + ".", e);
+    }
   }
 }
\ No newline at end of file
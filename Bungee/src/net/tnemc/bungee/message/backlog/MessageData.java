@@ -17,30 +17,293 @@ package net.tnemc.bungee.message.backlog;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import net.tnemc.bungee.message.BalanceFrame;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 /**
- * MessageData
+ * MessageData holds the messages waiting to be sent to a server that has no players connected.
+ *
+ * Balance changes are compacted so that only the latest amount for each account, region, currency,
+ * and handler is kept, using their versions when they have them. Every entry is numbered as it is
+ * added, and the backlog is replayed in that order, so a change is never replayed before a message
+ * that arrived ahead of it. Consecutive balance changes are replayed as frames for each originating
+ * server, split so that no frame is larger than a plugin message may be. Once the backlog reaches
+ * its cap the oldest entries are dropped, and counted as overflow.
  *
  * @author creatorfromhell
  * @since 0.1.2.0
  */
 public class MessageData {
 
-  private final List<BacklogEntry> backlog = new LinkedList<>();
+  //Plugin messages are limited to 32767 bytes, which leaves some room for the channel and framing.
+  private static final int MAX_FRAME = 32000;
+
+  private final Map<Key, Pending> balances = new LinkedHashMap<>();
+
+  private final List<Queued> backlog = new LinkedList<>();
 
   private final String serverName;
+  private final int max;
+
+  private long sequence = 0;
+  private long added = 0;
+  private long compacted = 0;
+  private long overflow = 0;
 
   public MessageData(String serverName) {
+    this(serverName, Integer.MAX_VALUE);
+  }
+
+  public MessageData(String serverName, final int max) {
     this.serverName = serverName;
+    this.max = Math.max(1, max);
   }
 
   public String getServerName() {
     return serverName;
   }
 
-  public List<BacklogEntry> getBacklog() {
-    return backlog;
+  /**
+   * Used to add a balance change to this backlog, replacing any pending change for the same key.
+   * @param server The identifier of the server that made the change.
+   * @param update The change.
+   * @param legacy Whether the change was received as a legacy message, and should be replayed as one.
+   */
+  public synchronized void add(final UUID server, final BalanceFrame.Update update, final boolean legacy) {
+    add(server, update, legacy, sequence++);
+  }
+
+  private void add(final UUID server, final BalanceFrame.Update update, final boolean legacy, final long seq) {
+    final Key key = new Key(update.account(), update.region(), update.currency(), update.handler());
+
+    added++;
+
+    //A change that arrived late is older than the one we're holding, so it's dropped.
+    final Pending current = balances.get(key);
+    if(current != null && update.version() != 0 && current.update().version() > update.version()) {
+      compacted++;
+      return;
+    }
+
+    //Removed first so that the replaced change moves to the end, and isn't the first to be dropped.
+    if(balances.remove(key) != null) {
+      compacted++;
+    } else {
+      trim();
+    }
+    balances.put(key, new Pending(server, update, legacy, seq));
+  }
+
+  /**
+   * Used to add a message that isn't a balance change to this backlog.
+   * @param entry The message.
+   */
+  public synchronized void add(final BacklogEntry entry) {
+    add(entry, sequence++);
+  }
+
+  private void add(final BacklogEntry entry, final long seq) {
+    added++;
+    trim();
+    backlog.add(new Queued(entry, seq));
+  }
+
+  private void trim() {
+    while(size() >= max) {
+      if(!backlog.isEmpty()) {
+        backlog.remove(0);
+      } else {
+        final Iterator<Key> it = balances.keySet().iterator();
+        it.next();
+        it.remove();
+      }
+      overflow++;
+    }
+  }
+
+  /**
+   * The messages to replay to this server, in the order they were added. Each run of balance changes
+   * between other messages is sent as frames for each server that made them, with legacy changes sent
+   * as individual legacy messages. Changes within a run are for different balances, so grouping them
+   * by server doesn't change the outcome.
+   * @return The messages to replay, in order.
+   */
+  public synchronized List<BacklogEntry> getBacklog() {
+    final List<BacklogEntry> entries = new ArrayList<>(size());
+    final List<Pending> run = new ArrayList<>();
+
+    //Both are kept in the order their entries were added, so they're merged by their sequence.
+    final Iterator<Queued> messages = backlog.iterator();
+    Queued message = (messages.hasNext())? messages.next() : null;
+
+    for(Pending pending : balances.values()) {
+      while(message != null && message.seq() < pending.seq()) {
+        balances(entries, run);
+        entries.add(message.entry());
+        message = (messages.hasNext())? messages.next() : null;
+      }
+      run.add(pending);
+    }
+    balances(entries, run);
+
+    while(message != null) {
+      entries.add(message.entry());
+      message = (messages.hasNext())? messages.next() : null;
+    }
+    return entries;
+  }
+
+  /**
+   * Used to add a run of balance changes to the messages being replayed, and clear the run.
+   * @param entries The messages being replayed.
+   * @param run The balance changes.
+   */
+  private void balances(final List<BacklogEntry> entries, final List<Pending> run) {
+    final Map<UUID, List<BalanceFrame.Update>> frames = new LinkedHashMap<>();
+    for(Pending pending : run) {
+      if(pending.legacy()) {
+        entries.add(new BacklogEntry("tne:balance", BalanceFrame.encodeLegacy(pending.server(), pending.update())));
+        continue;
+      }
+      frames.computeIfAbsent(pending.server(), k->new ArrayList<>()).add(pending.update());
+    }
+
+    for(Map.Entry<UUID, List<BalanceFrame.Update>> frame : frames.entrySet()) {
+      frames(entries, frame.getKey(), frame.getValue());
+    }
+    run.clear();
+  }
+
+  /**
+   * Used to encode balance changes as frames, halving them until each frame fits in a plugin message.
+   * @param entries The messages being replayed.
+   * @param server The server that made the changes.
+   * @param updates The changes.
+   */
+  private void frames(final List<BacklogEntry> entries, final UUID server, final List<BalanceFrame.Update> updates) {
+    final byte[] frame = new BalanceFrame(server, updates).encode();
+    if(frame.length <= MAX_FRAME || updates.size() == 1) {
+      entries.add(new BacklogEntry("tne:balance", frame));
+      return;
+    }
+
+    final int half = updates.size() / 2;
+    frames(entries, server, updates.subList(0, half));
+    frames(entries, server, updates.subList(half, updates.size()));
+  }
+
+  /**
+   * The number of entries waiting in this backlog.
+   * @return The number of entries.
+   */
+  public synchronized int size() {
+    return balances.size() + backlog.size();
+  }
+
+  public synchronized long getAdded() {
+    return added;
+  }
+
+  public synchronized long getCompacted() {
+    return compacted;
+  }
+
+  public synchronized long getOverflow() {
+    return overflow;
+  }
+
+  /**
+   * Used to write this backlog to a stream.
+   * @param out The stream to write to.
+   * @throws IOException If an issue occurs while writing.
+   */
+  public synchronized void write(final DataOutputStream out) throws IOException {
+    out.writeUTF(serverName);
+
+    out.writeInt(balances.size());
+    for(Pending pending : balances.values()) {
+      out.writeLong(pending.server().getMostSignificantBits());
+      out.writeLong(pending.server().getLeastSignificantBits());
+      out.writeBoolean(pending.legacy());
+      out.writeUTF(pending.update().account());
+      out.writeUTF(pending.update().region());
+      out.writeLong(pending.update().currency().getMostSignificantBits());
+      out.writeLong(pending.update().currency().getLeastSignificantBits());
+      out.writeUTF(pending.update().handler());
+      out.writeUTF(pending.update().amount().toPlainString());
+      out.writeLong(pending.update().version());
+      out.writeLong(pending.seq());
+    }
+
+    out.writeInt(backlog.size());
+    for(Queued message : backlog) {
+      out.writeUTF(message.entry().channel());
+      out.writeInt(message.entry().out().length);
+      out.write(message.entry().out());
+      out.writeLong(message.seq());
+    }
+  }
+
+  /**
+   * Used to read a backlog that was written using {@link #write(DataOutputStream)}.
+   * @param in The stream to read from.
+   * @param fileVersion The version of the file being read.
+   * @param max The max number of entries for the backlog.
+   * @return The backlog that was read.
+   * @throws IOException If an issue occurs while reading.
+   */
+  public static MessageData read(final DataInputStream in, final int fileVersion, final int max) throws IOException {
+    final MessageData data = new MessageData(in.readUTF(), max);
+
+    final int balances = in.readInt();
+    for(int i = 0; i < balances; i++) {
+      final UUID server = new UUID(in.readLong(), in.readLong());
+      final boolean legacy = in.readBoolean();
+      final String account = in.readUTF();
+      final String region = in.readUTF();
+      final UUID currency = new UUID(in.readLong(), in.readLong());
+      final String handler = in.readUTF();
+      final BigDecimal amount = new BigDecimal(in.readUTF());
+      final long version = (fileVersion >= 2)? in.readLong() : 0;
+
+      //Files from before entries were numbered are replayed with their balance changes first.
+      final long seq = (fileVersion >= 3)? in.readLong() : data.sequence;
+      data.sequence = Math.max(data.sequence, seq + 1);
+
+      data.add(server, new BalanceFrame.Update(account, region, currency, handler, amount, version), legacy, seq);
+    }
+
+    final int entries = in.readInt();
+    for(int i = 0; i < entries; i++) {
+      final String channel = in.readUTF();
+      final byte[] out = new byte[in.readInt()];
+      in.readFully(out);
+
+      final long seq = (fileVersion >= 3)? in.readLong() : data.sequence;
+      data.sequence = Math.max(data.sequence, seq + 1);
+
+      data.add(new BacklogEntry(channel, out), seq);
+    }
+    return data;
+  }
+
+  private record Key(String account, String region, UUID currency, String handler) {
+  }
+
+  private record Pending(UUID server, BalanceFrame.Update update, boolean legacy, long seq) {
+  }
+
+  private record Queued(BacklogEntry entry, long seq) {
   }
-}
\ No newline at end of file
+}
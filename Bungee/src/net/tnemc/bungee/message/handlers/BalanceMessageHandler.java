@@ -19,6 +19,7 @@ package net.tnemc.bungee.message.handlers;
 
 import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
+import net.tnemc.bungee.message.BalanceFrame;
 import net.tnemc.bungee.message.MessageHandler;
 
 import java.io.DataInputStream;
@@ -50,6 +51,11 @@ public class BalanceMessageHandler extends MessageHandler {
     }
   }
 
+  @Override
+  public void handle(final BalanceFrame frame) {
+    sendToAll("tne:balance", frame.encode());
+  }
+
   public static void send(UUID server, String account, String region, String currency, String handler, String amount) {
     final ByteArrayDataOutput out = ByteStreams.newDataOutput();
     out.writeUTF(server.toString());
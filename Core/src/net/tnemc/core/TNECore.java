@@ -313,7 +313,10 @@ public abstract class TNECore {
       return;
     }
 
-    this.storage.loadAll(Account.class, "");
+    //When accounts are loaded on demand, they're loaded the first time they're looked up instead.
+    if(!economyManager.account().onDemand()) {
+      this.storage.loadAll(Account.class, "");
+    }
 
     //Call the enableSave method for all modules loaded.
     loader.getModules().values().forEach((moduleWrapper -> moduleWrapper.getModule().enableSave(this.storage)));
@@ -412,6 +415,15 @@ public abstract class TNECore {
          ChoreExecution.SECONDARY);
     }
 
+    //Set up the eviction of idle offline accounts if accounts are loaded on demand.
+    if(economyManager.account().onDemand()) {
+
+      server.scheduler().createRepeatingTask(()->economyManager.account().evict(),
+         new ChoreTime(DataConfig.yaml().getInt("Data.Cache.Interval", 60), TimeUnit.SECONDS),
+         new ChoreTime(DataConfig.yaml().getInt("Data.Cache.Interval", 60), TimeUnit.SECONDS),
+         ChoreExecution.SECONDARY);
+    }
+
     this.moduleCache = new ModuleFileCache();
 
     if(MainConfig.yaml().getBoolean("Core.Update.Check")) {
@@ -439,6 +451,13 @@ public abstract class TNECore {
       data.get().storeAll(storage.getConnector(), null);
     }
 
+    //send any balance changes that haven't been sent to the other servers yet.
+    channelMessageManager.getBalanceBuffer().flush();
+
+    //write any receipts that haven't been written yet.
+    storage.flushReceipts();
+    storage.close();
+
     loader.getModules().values().forEach((moduleWrapper -> moduleWrapper.getModule().disable(this)));
   }
 
@@ -22,9 +22,6 @@ import net.tnemc.core.EconomyManager;
 import net.tnemc.core.TNECore;
 import net.tnemc.core.account.holdings.HoldingsEntry;
 import net.tnemc.core.account.holdings.Wallet;
-import net.tnemc.core.channel.handlers.BalanceHandler;
-import net.tnemc.core.compatibility.scheduler.ChoreExecution;
-import net.tnemc.core.compatibility.scheduler.ChoreTime;
 import net.tnemc.core.currency.Currency;
 import net.tnemc.core.io.maps.MapKey;
 import net.tnemc.core.transaction.receipt.ReceiptBox;
@@ -37,6 +34,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An object that is used to represent an Account within the economy plugin.
@@ -56,6 +54,18 @@ public class Account extends ReceiptBox {
 
   protected AccountStatus status;
 
+  /**
+   * The revision of this account's information, such as its name, pin and status. This is compared
+   * against {@link #persisted} to determine if the information needs to be saved. Holdings are
+   * tracked separately within the {@link Wallet}.
+   */
+  protected final AtomicLong revision = new AtomicLong(1);
+
+  /**
+   * The last revision of this account's information that was persisted to storage.
+   */
+  protected volatile long persisted = 0;
+
   public Account(String identifier, String name) {
     this.identifier = identifier;
     this.name = name;
@@ -213,12 +223,9 @@ public class Account extends ReceiptBox {
 
     if(result) {
       //Send out our update to our proxies.
-      if(!TNECore.instance().getChannelMessageManager().isAffected(identifier) && !TNECore.eco().account().getLoading().contains(identifier)) {
-        TNECore.server().scheduler().createDelayedTask(()->{
-          BalanceHandler.send(identifier, region, currencyObject.get().getUid(), entry.getHandler(), entry.getAmount());
-        }, new ChoreTime(1), ChoreExecution.SECONDARY);
-      } else {
-        TNECore.instance().getChannelMessageManager().removeAccount(identifier);
+      if(!TNECore.instance().getChannelMessageManager().isRemote() && !TNECore.eco().account().getLoading().contains(identifier)) {
+        TNECore.instance().getChannelMessageManager().getBalanceBuffer()
+            .add(identifier, region, currencyObject.get().getUid(), entry.getHandler(), entry.getAmount());
       }
     }
 
@@ -240,6 +247,7 @@ public class Account extends ReceiptBox {
 
   public void setName(String name) {
     this.name = name;
+    markDirty();
   }
 
   public long getCreationDate() {
@@ -248,6 +256,7 @@ public class Account extends ReceiptBox {
 
   public void setCreationDate(long creationDate) {
     this.creationDate = creationDate;
+    markDirty();
   }
 
   public String getPin() {
@@ -256,6 +265,7 @@ public class Account extends ReceiptBox {
 
   public void setPin(String pin) {
     this.pin = pin;
+    markDirty();
   }
 
   public AccountStatus getStatus() {
@@ -264,6 +274,56 @@ public class Account extends ReceiptBox {
 
   public void setStatus(AccountStatus status) {
     this.status = status;
+    markDirty();
+  }
+
+  /**
+   * Used to determine if this account, or any of its holdings, has changed since it was last persisted.
+   * @return True if this account needs to be saved, otherwise false.
+   */
+  public boolean isDirty() {
+    return isInfoDirty() || wallet.isDirty();
+  }
+
+  /**
+   * Used to determine if this account's information, excluding holdings, has changed since it was
+   * last persisted.
+   * @return True if this account's information needs to be saved, otherwise false.
+   */
+  public boolean isInfoDirty() {
+    return revision.get() != persisted;
+  }
+
+  /**
+   * Used to mark this account's information as changed, so that it is saved during the next save.
+   * @return The new revision of this account's information.
+   */
+  public long markDirty() {
+    return revision.incrementAndGet();
+  }
+
+  /**
+   * Used to mark a revision of this account's information as persisted. This should be called with
+   * the revision captured when the account was written, after the write has been committed.
+   * @param revision The revision that was persisted.
+   */
+  public void markPersisted(final long revision) {
+    if(revision > persisted) {
+      persisted = revision;
+    }
+  }
+
+  /**
+   * Used to mark this account and all of its holdings as persisted at their current revisions. This
+   * should be used after the account has been loaded from storage.
+   */
+  public void markPersisted() {
+    markPersisted(revision.get());
+    wallet.markPersisted();
+  }
+
+  public long getRevision() {
+    return revision.get();
   }
 
   public Wallet getWallet() {
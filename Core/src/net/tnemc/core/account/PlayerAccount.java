@@ -106,6 +106,7 @@ public class PlayerAccount extends Account {
 
   public void setLastOnline(long lastOnline) {
     this.lastOnline = lastOnline;
+    markDirty();
   }
 
   public String getLanguage() {
@@ -82,6 +82,7 @@ public class SharedAccount extends Account {
     }
     member.addPermission(permission, value);
     members.put(identifier, member);
+    markDirty();
   }
 
   /**
@@ -98,6 +99,7 @@ public class SharedAccount extends Account {
     }
     member.addPermission(permission, value);
     members.put(identifier, member);
+    markDirty();
   }
 
   /**
@@ -108,6 +110,7 @@ public class SharedAccount extends Account {
    */
   public void removePermission(UUID identifier, Permission permission) {
     findMember(identifier).ifPresent(mem->mem.removePermission(permission));
+    markDirty();
   }
 
   /**
@@ -118,6 +121,7 @@ public class SharedAccount extends Account {
    */
   public void removePermission(UUID identifier, String permission) {
     findMember(identifier).ifPresent(mem->mem.removePermission(permission));
+    markDirty();
   }
 
   /**
@@ -164,5 +168,6 @@ public class SharedAccount extends Account {
 
   public void setOwner(UUID owner) {
     this.owner = owner;
+    markDirty();
   }
 }
\ No newline at end of file
@@ -28,6 +28,7 @@ import org.jetbrains.annotations.NotNull;
 import java.math.BigDecimal;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents an entry for holdings. This contains all the information including region, currency
@@ -61,6 +62,23 @@ public class HoldingsEntry {
 
   private Monetary monetary;
 
+  /**
+   * The revision of this entry. This is incremented each time the entry is changed, and is compared
+   * against {@link #persisted} to determine if this entry needs to be saved.
+   */
+  private final AtomicLong revision = new AtomicLong(1);
+
+  /**
+   * The last revision of this entry that was persisted to storage.
+   */
+  private volatile long persisted = 0;
+
+  /**
+   * The version of the stored holdings row that this entry is based on. This is 0 if the entry
+   * hasn't been stored or loaded from a storage that tracks versions.
+   */
+  private volatile long version = 0;
+
   /**
    * Constructs an object that represents a holding's entry.
    *
@@ -90,6 +108,7 @@ public class HoldingsEntry {
 
   public void modify(final HoldingsModifier modifier) {
     amount = modifier.modify(amount);
+    markDirty();
   }
 
   public HoldingsEntry modifyGrab(final BigDecimal modifier) {
@@ -114,6 +133,7 @@ public class HoldingsEntry {
 
   public void setCurrency(UUID currency) {
     this.currency = currency;
+    markDirty();
   }
 
   public String getRegion() {
@@ -122,6 +142,7 @@ public class HoldingsEntry {
 
   public void setRegion(String region) {
     this.region = region;
+    markDirty();
   }
 
   public BigDecimal getAmount() {
@@ -141,6 +162,7 @@ public class HoldingsEntry {
     this.amount = amount;
     final Optional<Currency> cur = currency();
     monetary = new Monetary(amount, cur.map(Currency::getDecimalPlaces).orElse(2));
+    markDirty();
   }
 
   public Identifier getHandler() {
@@ -149,5 +171,53 @@ public class HoldingsEntry {
 
   public void setHandler(Identifier handler) {
     this.handler = handler;
+    markDirty();
+  }
+
+  /**
+   * Used to determine if this entry has changed since it was last persisted.
+   * @return True if this entry needs to be saved, otherwise false.
+   */
+  public boolean isDirty() {
+    return revision.get() != persisted;
+  }
+
+  /**
+   * Used to mark this entry as changed, so that it is saved during the next save.
+   * @return The new revision of this entry.
+   */
+  public long markDirty() {
+    return revision.incrementAndGet();
+  }
+
+  /**
+   * Used to mark a revision of this entry as persisted. This should be called with the revision
+   * captured when the entry was written, after the write has been committed, so that any changes
+   * made during the write are still saved later.
+   * @param revision The revision that was persisted.
+   */
+  public void markPersisted(final long revision) {
+    if(revision > persisted) {
+      persisted = revision;
+    }
+  }
+
+  public long getRevision() {
+    return revision.get();
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Used to set the version of the stored holdings row that this entry is based on. Versions only
+   * move forward, so an older version is ignored.
+   * @param version The version of the stored row.
+   */
+  public void setVersion(final long version) {
+    if(version > this.version) {
+      this.version = version;
+    }
   }
 }
\ No newline at end of file
@@ -23,6 +23,7 @@ import net.tnemc.core.account.holdings.modify.HoldingsModifier;
 import net.tnemc.core.utils.Identifier;
 import org.jetbrains.annotations.NotNull;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +41,12 @@ public class Wallet {
 
   private final Map<String, RegionHoldings> holdings = new ConcurrentHashMap<>();
 
+  /**
+   * The amount of each holdings entry as it's known to be in storage, keyed by region, currency and
+   * handler. This lets storage engines write the changes made on this server as deltas.
+   */
+  private final Map<String, BigDecimal> stored = new ConcurrentHashMap<>();
+
   /**
    * Used to get the holdings based on specific specifications, or returns an empty optional
    * if no holdings for the specifications exists.
@@ -116,6 +123,16 @@ public class Wallet {
    */
   public void setHoldings(final @NotNull HoldingsEntry entry) {
 
+    //If we're replacing a clean entry with an equal value, then there's nothing new to save.
+    final Optional<HoldingsEntry> existing = getHoldings(entry.getRegion(), entry.getCurrency(), entry.getHandler());
+    if(existing.isPresent() && existing.get() != entry && !existing.get().isDirty()
+        && existing.get().getAmount().compareTo(entry.getAmount()) == 0) {
+      entry.markPersisted(entry.getRevision());
+    }
+
+    //Keep track of the stored version that the replaced entry was based on.
+    existing.ifPresent(value->entry.setVersion(value.getVersion()));
+
     final RegionHoldings regionHoldings =
         holdings.getOrDefault(entry.getRegion(), new RegionHoldings());
 
@@ -224,6 +241,106 @@ public class Wallet {
     return holdingsEntries;
   }
 
+  /**
+   * Used to determine if any {@link HoldingsEntry entry} in this wallet has changed since it was last
+   * persisted.
+   * @return True if any entry in this wallet needs to be saved, otherwise false.
+   */
+  public boolean isDirty() {
+    for(RegionHoldings region : holdings.values()) {
+      for(CurrencyHoldings currency : region.getHoldings().values()) {
+        for(HoldingsEntry entry : currency.getHoldings().values()) {
+          if(entry.isDirty()) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Used to get a list of every {@link HoldingsEntry entry} in this wallet that has changed since it
+   * was last persisted.
+   * @return The list of dirty entries.
+   */
+  public List<HoldingsEntry> dirtyList() {
+
+    final List<HoldingsEntry> dirty = new ArrayList<>();
+    for(HoldingsEntry entry : entryList()) {
+      if(entry.isDirty()) {
+        dirty.add(entry);
+      }
+    }
+    return dirty;
+  }
+
+  /**
+   * Used to mark every {@link HoldingsEntry entry} in this wallet as persisted at its current revision.
+   * This should be used after the wallet has been loaded from storage.
+   */
+  public void markPersisted() {
+    for(HoldingsEntry entry : entryList()) {
+      entry.markPersisted(entry.getRevision());
+      stored.put(storedKey(entry.getRegion(), entry.getCurrency(), entry.getHandler()), entry.getAmount());
+    }
+  }
+
+  /**
+   * Used to reserve the change to an entry since it was last stored. The stored amount is moved to
+   * the amount given, so that a concurrent save doesn't write the same change again. If the change
+   * isn't written, it should be given back using {@link #shiftStored(String, UUID, Identifier, BigDecimal)}
+   * with the negated change.
+   *
+   * @param entry The entry that is being stored.
+   * @param amount The amount of the entry that is being stored.
+   * @return The change since the entry was last stored. If the entry has never been stored, this is
+   * the full amount.
+   */
+  public BigDecimal reserveStored(final @NotNull HoldingsEntry entry, final @NotNull BigDecimal amount) {
+    final BigDecimal[] change = new BigDecimal[1];
+
+    stored.compute(storedKey(entry.getRegion(), entry.getCurrency(), entry.getHandler()), (key, previous)->{
+      change[0] = (previous == null)? amount : amount.subtract(previous);
+      return amount;
+    });
+    return change[0];
+  }
+
+  /**
+   * Used to shift the amount an entry is known to have in storage. This should be used when an entry
+   * is changed by something that has already been stored elsewhere, such as a balance update from
+   * another server, so that the change isn't written again as one made by this server.
+   *
+   * @param region The region of the entry.
+   * @param currency The currency of the entry.
+   * @param handler The handler of the entry.
+   * @param change The amount to shift the stored amount by.
+   */
+  public void shiftStored(final @NotNull String region, final @NotNull UUID currency,
+                          final @NotNull Identifier handler, final @NotNull BigDecimal change) {
+    if(change.signum() != 0) {
+      stored.merge(storedKey(region, currency, handler), change, BigDecimal::add);
+    }
+  }
+
+  /**
+   * Used to get the amount an entry is known to have in storage.
+   *
+   * @param region The region of the entry.
+   * @param currency The currency of the entry.
+   * @param handler The handler of the entry.
+   * @return The stored amount, or an empty optional if the entry hasn't been stored or loaded.
+   */
+  public Optional<BigDecimal> getStored(final @NotNull String region, final @NotNull UUID currency,
+                                        final @NotNull Identifier handler) {
+    return Optional.ofNullable(stored.get(storedKey(region, currency, handler)));
+  }
+
+  private String storedKey(final String region, final UUID currency, final Identifier handler) {
+    return region + ":" + currency.toString() + ":" + handler.asID();
+  }
+
   public Map<String, RegionHoldings> getHoldings() {
     return holdings;
   }
@@ -0,0 +1,111 @@
+package net.tnemc.core.channel;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.TNECore;
+import net.tnemc.core.channel.handlers.BalanceHandler;
+import net.tnemc.core.compatibility.scheduler.ChoreExecution;
+import net.tnemc.core.compatibility.scheduler.ChoreTime;
+import net.tnemc.core.config.DataConfig;
+import net.tnemc.core.utils.Identifier;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Used to buffer outbound balance changes so that they may be sent to the other servers together.
+ *
+ * Only the latest amount for each account, region, currency, and handler is kept, so a balance that
+ * changes many times within a window results in a single update, carrying the latest version. A
+ * flush is only scheduled while the buffer has pending changes, and it sends everything pending as a
+ * single batched message.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ * @see BalanceHandler#send(java.util.Collection)
+ */
+public class BalanceBuffer {
+
+  private final Map<Key, BalanceUpdate> pending = new ConcurrentHashMap<>();
+
+  private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+  /**
+   * Used to add a balance change to this buffer, replacing any pending change for the same key.
+   * @param account The identifier of the account.
+   * @param region The region of the holdings.
+   * @param currency The {@link UUID} of the currency.
+   * @param handler The {@link Identifier} of the holdings handler.
+   * @param amount The new amount.
+   */
+  public void add(final String account, final String region, final UUID currency, final Identifier handler,
+                  final BigDecimal amount) {
+    final BalanceUpdate update = BalanceHandler.update(account, region, currency, handler, amount);
+    pending.put(new Key(account, region, currency, handler.asID()), update);
+
+    if(scheduled.compareAndSet(false, true)) {
+      TNECore.server().scheduler().createDelayedTask(this::flush, new ChoreTime(interval()), ChoreExecution.SECONDARY);
+    }
+  }
+
+  /**
+   * Used to send every pending change to the other servers.
+   */
+  public void flush() {
+
+    //Cleared before draining so that changes made during the flush schedule the next one.
+    scheduled.set(false);
+
+    //Only the update that was drained is removed, so a newer one added for the same key during the
+    //flush stays pending for the next flush.
+    final List<BalanceUpdate> updates = new ArrayList<>(pending.size());
+    for(Map.Entry<Key, BalanceUpdate> entry : pending.entrySet()) {
+      if(pending.remove(entry.getKey(), entry.getValue())) {
+        updates.add(entry.getValue());
+      }
+    }
+
+    if(!updates.isEmpty()) {
+      BalanceHandler.send(updates);
+    }
+  }
+
+  /**
+   * The number of changes waiting to be sent.
+   * @return The number of pending changes.
+   */
+  public int size() {
+    return pending.size();
+  }
+
+  /**
+   * The flush interval, in ticks.
+   * @return The flush interval.
+   */
+  private int interval() {
+    return Math.max(1, DataConfig.yaml().getInt("Data.Sync.Interval", 1));
+  }
+
+  private record Key(String account, String region, UUID currency, String handler) {
+  }
+}
@@ -0,0 +1,40 @@
+package net.tnemc.core.channel;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.utils.Identifier;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * A single balance change that is synced to other servers.
+ *
+ * @param account The identifier of the account.
+ * @param region The region of the balance.
+ * @param currency The {@link UUID} of the currency.
+ * @param handler The {@link Identifier} of the holdings handler.
+ * @param amount The new balance.
+ * @param version The {@link BalanceVersions version} of the change, or 0 if it doesn't have one.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public record BalanceUpdate(String account, String region, UUID currency, Identifier handler, BigDecimal amount,
+                            long version) {
+}
@@ -0,0 +1,133 @@
+package net.tnemc.core.channel;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BalanceVersions is used to order balance changes between servers, so that a change which arrives
+ * late can't roll a balance back.
+ *
+ * Versions come from a hybrid logical clock, which is the current time in milliseconds shifted left
+ * sixteen bits, plus a counter. Every change made on this server gets a version greater than any
+ * version this server has made or seen, so versions can be compared across servers, and keep
+ * increasing after a restart without being stored. Version 0 is used for changes from servers that
+ * don't send versions, which are always applied.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class BalanceVersions {
+
+  /**
+   * How long the last version of a balance is remembered. Changes are only delivered out of order
+   * within a short window, so older versions don't need to be kept.
+   */
+  private static final long RETENTION = TimeUnit.MINUTES.toMillis(10);
+
+  private final Map<Key, Version> versions = new ConcurrentHashMap<>();
+
+  private final AtomicLong clock = new AtomicLong();
+
+  private volatile long lastPrune = System.currentTimeMillis();
+
+  /**
+   * Used to get the version for a new change made on this server.
+   * @return The version.
+   */
+  public long tick() {
+    final long physical = System.currentTimeMillis() << 16;
+    return clock.updateAndGet(last->Math.max(last + 1, physical));
+  }
+
+  /**
+   * Used to record the version of a change made on this server.
+   * @param origin The identifier of this server.
+   * @param update The change.
+   */
+  public void local(final UUID origin, final BalanceUpdate update) {
+    versions.put(key(update.account(), update.region(), update.currency(), update.handler().asID()),
+                 new Version(update.version(), origin));
+  }
+
+  /**
+   * Used to determine if a change from another server is newer than the last change applied to the
+   * same balance. If it is, it's recorded as the last change.
+   * @param origin The identifier of the server that made the change.
+   * @param account The identifier of the account.
+   * @param region The region of the balance.
+   * @param currency The {@link UUID} of the currency.
+   * @param handler The identifier of the holdings handler.
+   * @param version The version of the change.
+   * @return True if the change should be applied, otherwise false if it's stale.
+   */
+  public boolean accept(final UUID origin, final String account, final String region, final UUID currency,
+                        final String handler, final long version) {
+    if(version == 0) {
+      return true;
+    }
+    clock.accumulateAndGet(version, Math::max);
+    prune();
+
+    final Version incoming = new Version(version, origin);
+    final boolean[] accepted = new boolean[] { false };
+    versions.compute(key(account, region, currency, handler), (key, current)->{
+      if(current == null || incoming.newer(current)) {
+        accepted[0] = true;
+        return incoming;
+      }
+      return current;
+    });
+    return accepted[0];
+  }
+
+  private void prune() {
+    final long now = System.currentTimeMillis();
+    if(now - lastPrune < TimeUnit.MINUTES.toMillis(1)) {
+      return;
+    }
+    lastPrune = now;
+
+    final long cutoff = (now - RETENTION) << 16;
+    versions.values().removeIf(version->version.clock() < cutoff);
+  }
+
+  private static Key key(final String account, final String region, final UUID currency, final String handler) {
+    return new Key(account, region, currency, handler);
+  }
+
+  private record Key(String account, String region, UUID currency, String handler) {
+  }
+
+  /**
+   * A version, along with the server that made it, which breaks ties between servers.
+   */
+  private record Version(long clock, UUID origin) {
+
+    boolean newer(final Version other) {
+      if(clock != other.clock) {
+        return clock > other.clock;
+      }
+      return origin.compareTo(other.origin) > 0;
+    }
+  }
+}
@@ -21,6 +21,7 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -32,8 +33,20 @@ import java.util.UUID;
  */
 public class ChannelBytesWrapper implements AutoCloseable {
 
+  /**
+   * The first byte of every binary frame. Legacy frames start with the length of the server's
+   * identifier as written by writeUTF, so their first byte is always 0.
+   */
+  public static final byte MARKER = (byte)0xB1;
+
+  /**
+   * The version of the binary format that is written.
+   */
+  public static final byte VERSION = 2;
+
   private final byte[] data;
   private DataInputStream in;
+  private int version = 0;
 
   public ChannelBytesWrapper(byte[] data) {
     this.data = data;
@@ -53,6 +66,95 @@ public class ChannelBytesWrapper implements AutoCloseable {
     }
   }
 
+  /**
+   * Used to determine if the data is a binary frame, rather than a legacy frame of UTF strings.
+   * @return True if the data is a binary frame.
+   */
+  public boolean binary() {
+    return data.length > 1 && data[0] == MARKER;
+  }
+
+  /**
+   * Used to read the header of a binary frame.
+   * @return The version of the frame.
+   * @throws IOException If the data isn't a binary frame, or its version is newer than this one.
+   */
+  public int readHeader() throws IOException {
+    if(in.readByte() != MARKER) {
+      throw new IOException("Not a binary frame.");
+    }
+
+    final int version = in.readUnsignedByte();
+    if(version > VERSION) {
+      throw new IOException("Unsupported frame version " + version + ".");
+    }
+    this.version = version;
+    return version;
+  }
+
+  /**
+   * The version of the binary frame, which is set once its header has been read.
+   * @return The version of the frame, or 0 if this isn't a binary frame.
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  public int readUnsignedByte() throws IOException {
+    return in.readUnsignedByte();
+  }
+
+  /**
+   * Used to read a {@link UUID} written as its two halves.
+   * @return The {@link UUID}.
+   */
+  public UUID readUUIDBits() throws IOException {
+    return new UUID(in.readLong(), in.readLong());
+  }
+
+  /**
+   * Used to read an unsigned variable length int, written seven bits at a time.
+   * @return The int.
+   */
+  public int readVarInt() throws IOException {
+    return (int)readVarLong();
+  }
+
+  /**
+   * Used to read an unsigned variable length long, written seven bits at a time.
+   * @return The long.
+   */
+  public long readVarLong() throws IOException {
+    long value = 0;
+    for(int shift = 0; shift < 64; shift += 7) {
+      final int read = in.readUnsignedByte();
+      value |= (long)(read & 0x7F) << shift;
+
+      if((read & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable length number.");
+  }
+
+  /**
+   * Used to read a {@link BigDecimal} written as its scale and unscaled value.
+   * @return The {@link BigDecimal}.
+   * @see ChannelBytesWriter#writeBigDecimal(BigDecimal)
+   */
+  public BigDecimal readBigDecimalBits() throws IOException {
+    final long head = readVarLong();
+    final int scale = (int)ChannelBytesWriter.unzigzag(head >>> 1);
+
+    if((head & 1) == 0) {
+      return BigDecimal.valueOf(ChannelBytesWriter.unzigzag(readVarLong()), scale);
+    }
+
+    final byte[] unscaled = new byte[readVarInt()];
+    in.readFully(unscaled);
+    return new BigDecimal(new BigInteger(unscaled), scale);
+  }
+
   public String readUTF() throws IOException {
     return in.readUTF();
   }
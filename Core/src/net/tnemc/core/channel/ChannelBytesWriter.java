@@ -0,0 +1,126 @@
+package net.tnemc.core.channel;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * ChannelBytesWriter is used to write the binary frames that are read using a
+ * {@link ChannelBytesWrapper}.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class ChannelBytesWriter {
+
+  private final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+
+  /**
+   * Used to write the header of a binary frame.
+   * @return This writer, for chaining.
+   */
+  public ChannelBytesWriter writeHeader() {
+    out.writeByte(ChannelBytesWrapper.MARKER);
+    out.writeByte(ChannelBytesWrapper.VERSION);
+    return this;
+  }
+
+  public ChannelBytesWriter writeByte(final int value) {
+    out.writeByte(value);
+    return this;
+  }
+
+  public ChannelBytesWriter writeUTF(final String value) {
+    out.writeUTF(value);
+    return this;
+  }
+
+  /**
+   * Used to write a {@link UUID} as its two halves.
+   * @param value The {@link UUID} to write.
+   * @return This writer, for chaining.
+   */
+  public ChannelBytesWriter writeUUIDBits(final UUID value) {
+    out.writeLong(value.getMostSignificantBits());
+    out.writeLong(value.getLeastSignificantBits());
+    return this;
+  }
+
+  /**
+   * Used to write an unsigned variable length int, seven bits at a time.
+   * @param value The int to write.
+   * @return This writer, for chaining.
+   */
+  public ChannelBytesWriter writeVarInt(final int value) {
+    return writeVarLong(value & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Used to write an unsigned variable length long, seven bits at a time.
+   * @param value The long to write.
+   * @return This writer, for chaining.
+   */
+  public ChannelBytesWriter writeVarLong(long value) {
+    while((value & ~0x7FL) != 0) {
+      out.writeByte((int)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int)value);
+    return this;
+  }
+
+  /**
+   * Used to write a {@link BigDecimal} as its scale and unscaled value. The scale is written along
+   * with a flag that notes if the unscaled value fits in a long, in which case it's written as a
+   * variable length long, otherwise its bytes are written.
+   * @param value The {@link BigDecimal} to write.
+   * @return This writer, for chaining.
+   */
+  public ChannelBytesWriter writeBigDecimal(final BigDecimal value) {
+    final boolean big = value.unscaledValue().bitLength() > 63;
+
+    writeVarLong((zigzag(value.scale()) << 1) | (big? 1 : 0));
+    if(!big) {
+      return writeVarLong(zigzag(value.unscaledValue().longValue()));
+    }
+
+    final byte[] unscaled = value.unscaledValue().toByteArray();
+    writeVarInt(unscaled.length);
+    out.write(unscaled);
+    return this;
+  }
+
+  public byte[] toByteArray() {
+    return out.toByteArray();
+  }
+
+  /**
+   * Used to map a signed value to an unsigned one so that small negative values stay small.
+   */
+  public static long zigzag(final long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  public static long unzigzag(final long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
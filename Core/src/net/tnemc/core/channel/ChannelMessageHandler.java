@@ -33,7 +33,6 @@ import java.util.UUID;
 public abstract class ChannelMessageHandler {
 
   protected final String tag;
-  protected UUID server;
 
   public ChannelMessageHandler(String tag) {
     this.tag = tag;
@@ -45,23 +44,36 @@ public abstract class ChannelMessageHandler {
 
       Optional<UUID> serverID = Optional.empty();
       try {
-        serverID = wrapper.readUUID();
+
+        //Binary frames start with a header, and the server's identifier is written as its two halves.
+        if(wrapper.binary()) {
+          wrapper.readHeader();
+          serverID = Optional.of(wrapper.readUUIDBits());
+        } else {
+          serverID = wrapper.readUUID();
+        }
       } catch (IOException e) {
         e.printStackTrace();
       }
 
       if(serverID.isPresent()) {
-        server = serverID.get();
+        final UUID server = serverID.get();
 
         TNECore.log().debug("Message Received:", DebugLevel.DEVELOPER);
         TNECore.log().debug("ID:" + TNECore.instance().getServerID().toString(), DebugLevel.DEVELOPER);
         TNECore.log().debug("Received:" + server, DebugLevel.DEVELOPER);
         if(!TNECore.instance().getServerID().equals(server)) {
-          handle(wrapper);
+          handle(server, wrapper);
         }
       }
     }
   }
 
-  public abstract void handle(ChannelBytesWrapper wrapper);
+  /**
+   * Used to handle a message from another server. Handlers are shared between every message, so the
+   * sending server is passed along rather than kept on the handler.
+   * @param server The identifier of the server that sent the message.
+   * @param wrapper The message, positioned after the sending server's identifier.
+   */
+  public abstract void handle(UUID server, ChannelBytesWrapper wrapper);
 }
\ No newline at end of file
@@ -21,10 +21,10 @@ import net.tnemc.core.TNECore;
 import net.tnemc.core.channel.handlers.BalanceHandler;
 import net.tnemc.core.channel.handlers.SyncHandler;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * ChannelMessageManager
@@ -36,7 +36,15 @@ public class ChannelMessageManager {
 
   private final Map<String, ChannelMessageHandler> handlers = new HashMap<>();
 
-  private final List<String> accountsMessage = new ArrayList<>();
+  private final BalanceBuffer balanceBuffer = new BalanceBuffer();
+
+  private final BalanceVersions balanceVersions = new BalanceVersions();
+
+  /**
+   * The server whose change is currently being applied on this thread, which is used to keep changes
+   * received from other servers from being sent back out.
+   */
+  private final ThreadLocal<UUID> remote = new ThreadLocal<>();
 
   public ChannelMessageManager() {
 
@@ -55,21 +63,52 @@ public class ChannelMessageManager {
     });
   }
 
+  /**
+   * The names of every channel that has a registered handler.
+   * @return The channel names.
+   */
+  public Set<String> channels() {
+    return handlers.keySet();
+  }
+
   public void handle(String channel, byte[] bytes) {
     if(handlers.containsKey(channel)) {
       handlers.get(channel).handle(bytes);
     }
   }
 
-  public boolean isAffected(final String account) {
-    return accountsMessage.contains(account);
+  public BalanceBuffer getBalanceBuffer() {
+    return balanceBuffer;
   }
 
-  public void removeAccount(final String account) {
-    accountsMessage.remove(account);
+  public BalanceVersions getBalanceVersions() {
+    return balanceVersions;
+  }
+
+  /**
+   * Used to apply a change received from another server.
+   * @param origin The identifier of the server that made the change.
+   * @param apply The action that applies the change.
+   */
+  public void applyRemote(final UUID origin, final Runnable apply) {
+    final UUID previous = remote.get();
+    remote.set(origin);
+    try {
+      apply.run();
+    } finally {
+      if(previous == null) {
+        remote.remove();
+      } else {
+        remote.set(previous);
+      }
+    }
   }
 
-  public void addAccount(final String account) {
-    accountsMessage.add(account);
+  /**
+   * Used to determine if a change from another server is being applied on this thread.
+   * @return True if a change from another server is being applied.
+   */
+  public boolean isRemote() {
+    return remote.get() != null;
   }
 }
\ No newline at end of file
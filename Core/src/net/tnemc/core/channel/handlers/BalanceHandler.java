@@ -22,12 +22,21 @@ import com.google.common.io.ByteStreams;
 import net.tnemc.core.TNECore;
 import net.tnemc.core.account.Account;
 import net.tnemc.core.account.holdings.HoldingsEntry;
+import net.tnemc.core.channel.BalanceUpdate;
+import net.tnemc.core.channel.BalanceVersions;
 import net.tnemc.core.channel.ChannelBytesWrapper;
+import net.tnemc.core.channel.ChannelBytesWriter;
 import net.tnemc.core.channel.ChannelMessageHandler;
 import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.config.DataConfig;
+import net.tnemc.core.manager.id.UUIDProvider;
 import net.tnemc.core.utils.Identifier;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -39,27 +48,141 @@ import java.util.UUID;
  */
 public class BalanceHandler extends ChannelMessageHandler {
 
+  private static final int TABLE_STRING = 0;
+  private static final int TABLE_UUID = 1;
+
   public BalanceHandler() {
     super("balance");
   }
 
   public static void send(final String account, String region, UUID currency, Identifier handler, BigDecimal amount) {
+    send(Collections.singletonList(update(account, region, currency, handler, amount)));
+  }
+
+  /**
+   * Used to create a balance change made on this server. The change gets a new version, which is
+   * recorded so that older changes for the same balance received from other servers are dropped.
+   * @param account The identifier of the account.
+   * @param region The region of the holdings.
+   * @param currency The {@link UUID} of the currency.
+   * @param handler The {@link Identifier} of the holdings handler.
+   * @param amount The new amount.
+   * @return The balance change.
+   */
+  public static BalanceUpdate update(final String account, final String region, final UUID currency,
+                                     final Identifier handler, final BigDecimal amount) {
+    final BalanceVersions versions = TNECore.instance().getChannelMessageManager().getBalanceVersions();
+    final BalanceUpdate update = new BalanceUpdate(account, region, currency, handler, amount, versions.tick());
+
+    versions.local(TNECore.instance().getServerID(), update);
+    return update;
+  }
+
+  /**
+   * Used to send a collection of balance changes to the other servers. In the binary format every
+   * change is sent in a single frame, otherwise each change is sent as its own legacy message.
+   * @param updates The balance changes to send.
+   */
+  public static void send(final Collection<BalanceUpdate> updates) {
+    if(updates.isEmpty()) {
+      return;
+    }
+
+    if(DataConfig.yaml().getString("Data.Sync.Format", "Binary").equalsIgnoreCase("legacy")) {
+      for(BalanceUpdate update : updates) {
+        TNECore.storage().sendMessage("tne:balance", legacy(update));
+      }
+      return;
+    }
+    TNECore.storage().sendMessage("tne:balance", frame(updates));
+  }
+
+  /**
+   * Used to encode balance changes as a single binary frame. The account identifiers, regions, and
+   * handlers are written once to a table at the start of the frame, and each change refers to them by
+   * their index. Each change ends with its version, which receivers use to drop stale changes.
+   * @param updates The balance changes to encode.
+   * @return The encoded frame.
+   */
+  public static byte[] frame(final Collection<BalanceUpdate> updates) {
+    final Map<String, Integer> table = new LinkedHashMap<>();
+    for(BalanceUpdate update : updates) {
+      table.putIfAbsent(update.account(), table.size());
+      table.putIfAbsent(update.region(), table.size());
+      table.putIfAbsent(update.handler().asID(), table.size());
+    }
+
+    final ChannelBytesWriter out = new ChannelBytesWriter().writeHeader()
+        .writeUUIDBits(TNECore.instance().getServerID())
+        .writeVarInt(table.size());
+
+    for(String value : table.keySet()) {
+
+      //Account identifiers are usually UUIDs, which are smaller written as their two halves.
+      if(UUIDProvider.isUUID(value) && UUID.fromString(value).toString().equals(value)) {
+        out.writeByte(TABLE_UUID).writeUUIDBits(UUID.fromString(value));
+        continue;
+      }
+      out.writeByte(TABLE_STRING).writeUTF(value);
+    }
+
+    out.writeVarInt(updates.size());
+    for(BalanceUpdate update : updates) {
+      out.writeVarInt(table.get(update.account()))
+          .writeVarInt(table.get(update.region()))
+          .writeUUIDBits(update.currency())
+          .writeVarInt(table.get(update.handler().asID()))
+          .writeBigDecimal(update.amount())
+          .writeVarLong(update.version());
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Used to encode a balance change in the legacy format, which proxy bridges older than the binary
+   * format understand.
+   * @param update The balance change to encode.
+   * @return The encoded message.
+   */
+  public static byte[] legacy(final BalanceUpdate update) {
     final ByteArrayDataOutput out = ByteStreams.newDataOutput();
     out.writeUTF(TNECore.instance().getServerID().toString());
-    out.writeUTF(account);
-    out.writeUTF(region);
-    out.writeUTF(currency.toString());
-    out.writeUTF(handler.asID());
-    out.writeUTF(amount.toPlainString());
-
-    TNECore.storage().sendMessage("tne:balance", out.toByteArray());
+    out.writeUTF(update.account());
+    out.writeUTF(update.region());
+    out.writeUTF(update.currency().toString());
+    out.writeUTF(update.handler().asID());
+    out.writeUTF(update.amount().toPlainString());
+    return out.toByteArray();
   }
 
   @Override
-  public void handle(ChannelBytesWrapper wrapper) {
+  public void handle(UUID server, ChannelBytesWrapper wrapper) {
 
     try {
 
+      if(wrapper.binary()) {
+
+        final String[] table = new String[wrapper.readVarInt()];
+        for(int i = 0; i < table.length; i++) {
+          table[i] = (wrapper.readUnsignedByte() == TABLE_UUID)? wrapper.readUUIDBits().toString() : wrapper.readUTF();
+        }
+
+        final int count = wrapper.readVarInt();
+        for(int i = 0; i < count; i++) {
+          final String account = table[wrapper.readVarInt()];
+          final String region = table[wrapper.readVarInt()];
+          final UUID currency = wrapper.readUUIDBits();
+          final String handler = table[wrapper.readVarInt()];
+          final BigDecimal amount = wrapper.readBigDecimalBits();
+
+          //Frames from before versions were added are always applied.
+          final long version = (wrapper.getVersion() >= 2)? wrapper.readVarLong() : 0;
+
+          apply(server, account, region, currency, handler, amount, version);
+        }
+        return;
+      }
+
       final String accountID = wrapper.readUTF();
       final String region = wrapper.readUTF();
       final Optional<UUID> currency = wrapper.readUUID();
@@ -67,21 +190,43 @@ public class BalanceHandler extends ChannelMessageHandler {
       final Optional<BigDecimal> amountOPT = wrapper.readBigDecimal();
 
       if(amountOPT.isPresent() && currency.isPresent()) {
-
-        final Optional<Account> account = TNECore.eco().account().findAccount(accountID);
-        if(account.isPresent()) {
-          TNECore.instance().getChannelMessageManager().addAccount(accountID);
-
-          final Identifier type = Identifier.fromID(handler);
-
-          final HoldingsEntry entry = new HoldingsEntry(region, currency.get(),
-                                                        amountOPT.get(), type);
-          account.get().setHoldings(entry, type);
-        }
+        apply(server, accountID, region, currency.get(), handler, amountOPT.get(), 0);
       }
 
     } catch(Exception e) {
       TNECore.log().error("Issue with balance plugin message handler.", e, DebugLevel.STANDARD);
     }
   }
+
+  private void apply(final UUID origin, final String accountID, final String region, final UUID currency,
+                     final String handler, final BigDecimal amount, final long version) {
+
+    if(!TNECore.instance().getChannelMessageManager().getBalanceVersions()
+        .accept(origin, accountID, region, currency, handler, version)) {
+
+      TNECore.log().debug("Dropped stale balance change for " + accountID + " from " + origin, DebugLevel.DEVELOPER);
+      return;
+    }
+
+    final Optional<Account> account = TNECore.eco().account().findAccount(accountID);
+    if(account.isPresent()) {
+      TNECore.instance().getChannelMessageManager().applyRemote(origin, ()->set(account.get(), region, currency, handler, amount));
+    }
+  }
+
+  private void set(final Account account, final String region, final UUID currency, final String handler,
+                   final BigDecimal amount) {
+
+    final Identifier type = Identifier.fromID(handler);
+    final String resolved = TNECore.eco().region().resolve(region);
+    final BigDecimal before = account.getWallet().getHoldings(resolved, currency, type)
+        .map(HoldingsEntry::getAmount).orElse(BigDecimal.ZERO);
+
+    final HoldingsEntry entry = new HoldingsEntry(region, currency, amount, type);
+    if(account.setHoldings(entry, type)) {
+
+      //The sending server saves its own delta for this change, so this server must not write it again.
+      account.getWallet().shiftStored(resolved, currency, type, amount.subtract(before));
+    }
+  }
 }
\ No newline at end of file
@@ -23,6 +23,8 @@ import net.tnemc.core.TNECore;
 import net.tnemc.core.channel.ChannelBytesWrapper;
 import net.tnemc.core.channel.ChannelMessageHandler;
 
+import java.util.UUID;
+
 /**
  * SyncHandler
  *
@@ -44,7 +46,7 @@ public class SyncHandler extends ChannelMessageHandler {
   }
 
   @Override
-  public void handle(ChannelBytesWrapper wrapper) {
+  public void handle(UUID server, ChannelBytesWrapper wrapper) {
 
     //This will never come into the server by design.
   }
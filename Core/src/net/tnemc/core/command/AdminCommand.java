@@ -124,6 +124,11 @@ public class AdminCommand extends BaseCommand {
     sender.message(new MessageData("Messages.Admin.Extraction"));
   }
 
+  public static void onMigrate(CmdSource<?> sender) {
+    TNECore.storage().migrate();
+    sender.message(new MessageData("Messages.Admin.Migration"));
+  }
+
   public static void onPurge(CmdSource<?> sender) {
     TNECore.storage().purge();
   }
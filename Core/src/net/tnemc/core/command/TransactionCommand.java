@@ -27,7 +27,6 @@ import net.tnemc.core.transaction.Receipt;
 import net.tnemc.core.transaction.history.AwayHistory;
 import net.tnemc.core.transaction.history.SortedHistory;
 
-import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -59,16 +58,12 @@ public class TransactionCommand {
     heading.addReplacement("$page_top", String.valueOf(away.get().maxPages()));
     sender.message(heading);
 
-    for(Map.Entry<Long, UUID> entry : away.get().getPage(page).entrySet()) {
+    for(Receipt receipt : away.get().getPage(page)) {
 
-      final Optional<Receipt> receipt = account.get().findReceipt(entry.getValue());
-      if(receipt.isPresent()) {
-
-        final MessageData awayEntry = new MessageData("Messages.Transaction.AwayEntry");
-        awayEntry.addReplacement("$id", entry.getValue().toString());
-        awayEntry.addReplacement("$type", receipt.get().getType());
-        sender.message(awayEntry);
-      }
+      final MessageData awayEntry = new MessageData("Messages.Transaction.AwayEntry");
+      awayEntry.addReplacement("$id", receipt.getId().toString());
+      awayEntry.addReplacement("$type", receipt.getType());
+      sender.message(awayEntry);
     }
   }
 
@@ -78,7 +73,7 @@ public class TransactionCommand {
 
     final SortedHistory sorted = account.getSorted(account.getIdentifier());
 
-    if(sorted == null || sorted.getReceipts().size() == 0) {
+    if(sorted == null || sorted.total() == 0) {
       sender.message(new MessageData("Messages.Transaction.HistoryNone"));
       return;
     }
@@ -88,30 +83,30 @@ public class TransactionCommand {
     heading.addReplacement("$page_top", String.valueOf(sorted.maxPages()));
     sender.message(heading);
 
-    for(Map.Entry<Long, UUID> entry : sorted.getPage(page).entrySet()) {
-
-      final Optional<Receipt> receipt = account.findReceipt(entry.getValue());
-      if(receipt.isPresent()) {
-
-         String from = "None";
-         final Optional<Account> fromACC = receipt.get().getFrom().asAccount();
-         if(fromACC.isPresent()) {
-           from = fromACC.get().getName();
-         }
-
-         String to = "None";
-         final Optional<Account> toACC = receipt.get().getTo().asAccount();
-         if(toACC.isPresent()) {
-           to = toACC.get().getName();
-         }
-
-        final MessageData awayEntry = new MessageData("Messages.Transaction.HistoryEntry");
-        awayEntry.addReplacement("$id", entry.getValue().toString());
-        awayEntry.addReplacement("$type", receipt.get().getType());
-        awayEntry.addReplacement("$initiator", from);
-        awayEntry.addReplacement("$recipient", to);
-        sender.message(awayEntry);
+    for(Receipt receipt : sorted.getPage(page)) {
+
+      String from = "None";
+      if(receipt.getFrom() != null) {
+        final Optional<Account> fromACC = receipt.getFrom().asAccount();
+        if(fromACC.isPresent()) {
+          from = fromACC.get().getName();
+        }
       }
+
+      String to = "None";
+      if(receipt.getTo() != null) {
+        final Optional<Account> toACC = receipt.getTo().asAccount();
+        if(toACC.isPresent()) {
+          to = toACC.get().getName();
+        }
+      }
+
+      final MessageData historyEntry = new MessageData("Messages.Transaction.HistoryEntry");
+      historyEntry.addReplacement("$id", receipt.getId().toString());
+      historyEntry.addReplacement("$type", receipt.getType());
+      historyEntry.addReplacement("$initiator", from);
+      historyEntry.addReplacement("$recipient", to);
+      sender.message(historyEntry);
     }
   }
 
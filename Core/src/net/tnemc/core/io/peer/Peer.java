@@ -0,0 +1,302 @@
+package net.tnemc.core.io.peer;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.TNECore;
+import net.tnemc.core.compatibility.log.DebugLevel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Peer represents the outbound connection from this server to another server in the sync mesh.
+ *
+ * Messages are queued while the peer is unreachable, and the oldest are dropped once the queue is
+ * full, since newer balance changes replace older ones anyway. Queued messages are written as a
+ * batch of length prefixed frames. If the connection is lost mid-batch, the whole batch is sent again
+ * after reconnecting, which is safe because receivers drop changes they've already applied.
+ *
+ * All methods other than {@link #offer(byte[])} and the metrics are called from the peer sync thread.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class Peer {
+
+  private static final int BATCH_BYTES = 64 * 1024;
+
+  private final InetSocketAddress address;
+  private final BlockingQueue<byte[]> queue;
+
+  private final long backoffMin;
+  private final long backoffMax;
+  private final long timeout;
+
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong reconnects = new AtomicLong();
+
+  private SocketChannel channel;
+  private SelectionKey key;
+  private ByteBuffer hello;
+  private ByteBuffer batch;
+  private int batchFrames = 0;
+
+  private volatile boolean connected = false;
+  private long nextAttempt = 0;
+  private long connectStarted = 0;
+  private long backoff;
+
+  public Peer(final InetSocketAddress address, final int queueSize, final long backoffMin, final long backoffMax,
+              final long timeout) {
+    this.address = address;
+    this.queue = new LinkedBlockingQueue<>(Math.max(1, queueSize));
+    this.backoffMin = backoffMin;
+    this.backoffMax = backoffMax;
+    this.timeout = timeout;
+    this.backoff = backoffMin;
+  }
+
+  /**
+   * Used to queue a frame for this peer, dropping the oldest queued frame if the queue is full.
+   * @param frame The frame payload, without its length prefix.
+   */
+  public void offer(final byte[] frame) {
+    while(!queue.offer(frame)) {
+      if(queue.poll() != null) {
+        dropped.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Used to start connecting to this peer, if it isn't connected and its reconnect delay has passed.
+   * @param selector The selector to register the connection with.
+   * @param helloFrame The handshake frame payload to send once connected.
+   * @param now The current time, in milliseconds.
+   */
+  public void connect(final Selector selector, final byte[] helloFrame, final long now) {
+    if(channel != null || now < nextAttempt) {
+      return;
+    }
+
+    try {
+      channel = SocketChannel.open();
+      channel.configureBlocking(false);
+      channel.socket().setTcpNoDelay(true);
+
+      hello = ByteBuffer.allocate(4 + helloFrame.length);
+      hello.putInt(helloFrame.length).put(helloFrame).flip();
+
+      connectStarted = now;
+      final boolean immediate = channel.connect(address);
+      key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+
+      //Local connections may complete straight away, in which case OP_CONNECT never fires.
+      if(immediate) {
+        finishConnect(now);
+      }
+    } catch(IOException e) {
+      disconnect(now);
+    }
+  }
+
+  /**
+   * Used to give up on a connection attempt that hasn't completed within the connect timeout, such as
+   * to a peer that silently drops packets, so the next attempt is backed off.
+   * @param now The current time, in milliseconds.
+   */
+  public void timeout(final long now) {
+    if(channel != null && !connected && now - connectStarted >= timeout) {
+      TNECore.log().debug("Timed out connecting to sync peer " + address + ".", DebugLevel.DETAILED);
+      disconnect(now);
+    }
+  }
+
+  /**
+   * Called once the connection is ready to complete.
+   * @param now The current time, in milliseconds.
+   */
+  public void finishConnect(final long now) {
+    try {
+      if(channel.finishConnect()) {
+        connected = true;
+        backoff = backoffMin;
+
+        //Peers never send anything on our outbound connections, but reading lets us notice a close.
+        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+      }
+    } catch(IOException e) {
+      disconnect(now);
+    }
+  }
+
+  /**
+   * Called when the connection is readable, which only happens when the peer closes it.
+   * @param now The current time, in milliseconds.
+   */
+  public void read(final long now) {
+    try {
+      if(channel.read(ByteBuffer.allocate(64)) < 0) {
+        disconnect(now);
+      }
+    } catch(IOException e) {
+      disconnect(now);
+    }
+  }
+
+  /**
+   * Used to write the handshake and any queued frames to this peer. Stops when the socket can't take
+   * any more, and waits to be writable again.
+   * @param now The current time, in milliseconds.
+   */
+  public void write(final long now) {
+    if(!connected) {
+      return;
+    }
+
+    try {
+      if(hello != null) {
+        channel.write(hello);
+        if(hello.hasRemaining()) {
+          return;
+        }
+        hello = null;
+      }
+
+      while(true) {
+        if(batch == null && !fill()) {
+          key.interestOps(SelectionKey.OP_READ);
+          return;
+        }
+
+        channel.write(batch);
+        if(batch.hasRemaining()) {
+          key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+          return;
+        }
+
+        sent.addAndGet(batchFrames);
+        batch = null;
+        batchFrames = 0;
+      }
+    } catch(IOException e) {
+      disconnect(now);
+    }
+  }
+
+  /**
+   * Used to ask to be told when the socket is writable, if there's anything waiting to be written.
+   */
+  public void wantWrite() {
+    if(connected && key != null && key.isValid() && (batch != null || !queue.isEmpty())) {
+      key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+  }
+
+  /*
+   * Builds the next batch from the queue, as length prefixed frames.
+   */
+  private boolean fill() {
+    final List<byte[]> frames = new ArrayList<>();
+    int size = 0;
+
+    byte[] frame;
+    while((frame = queue.peek()) != null) {
+      if(!frames.isEmpty() && size + 4 + frame.length > BATCH_BYTES) {
+        break;
+      }
+      frames.add(queue.poll());
+      size += 4 + frame.length;
+    }
+
+    if(frames.isEmpty()) {
+      return false;
+    }
+
+    batch = ByteBuffer.allocate(size);
+    for(byte[] payload : frames) {
+      batch.putInt(payload.length).put(payload);
+    }
+    batch.flip();
+    batchFrames = frames.size();
+    return true;
+  }
+
+  /**
+   * Used to close the connection, and schedule the next attempt to reconnect. Any batch that was being
+   * written is kept, and sent again from its start once reconnected.
+   * @param now The current time, in milliseconds.
+   */
+  public void disconnect(final long now) {
+    if(channel != null) {
+      try {
+        channel.close();
+      } catch(IOException ignore) {}
+    }
+
+    if(connected) {
+      reconnects.incrementAndGet();
+    }
+
+    channel = null;
+    key = null;
+    hello = null;
+    connected = false;
+
+    if(batch != null) {
+      batch.rewind();
+    }
+
+    nextAttempt = now + backoff;
+    backoff = Math.min(backoffMax, backoff * 2);
+  }
+
+  public InetSocketAddress getAddress() {
+    return address;
+  }
+
+  public boolean isConnected() {
+    return connected;
+  }
+
+  public int queued() {
+    return queue.size() + batchFrames;
+  }
+
+  public long sent() {
+    return sent.get();
+  }
+
+  public long dropped() {
+    return dropped.get();
+  }
+
+  public long reconnects() {
+    return reconnects.get();
+  }
+}
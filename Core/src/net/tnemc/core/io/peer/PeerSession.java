@@ -0,0 +1,114 @@
+package net.tnemc.core.io.peer;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * PeerSession represents an inbound connection from another server in the sync mesh. It reads length
+ * prefixed frames, and passes each one to the {@link TNEPeerManager}. Until the session has sent a
+ * valid hello, no frame may be larger than a hello frame.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class PeerSession {
+
+  private final SocketChannel channel;
+  private final long opened;
+
+  private ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+
+  private boolean authenticated = false;
+
+  public PeerSession(final SocketChannel channel, final long opened) {
+    this.channel = channel;
+    this.opened = opened;
+  }
+
+  /**
+   * Used to read whatever is available, and handle every complete frame.
+   * @param manager The manager handling the frames.
+   * @return False if the connection was closed, or sent something invalid, otherwise true.
+   */
+  public boolean read(final TNEPeerManager manager) {
+    try {
+      if(channel.read(buffer) < 0) {
+        return false;
+      }
+
+      buffer.flip();
+      while(buffer.remaining() >= 4) {
+        final int length = buffer.getInt(buffer.position());
+        if(length <= 0 || length > manager.maxFrame(this)) {
+          return false;
+        }
+
+        if(buffer.remaining() < 4 + length) {
+
+          //Make room for the rest of a frame that's larger than our buffer.
+          if(buffer.capacity() < 4 + length) {
+            final ByteBuffer larger = ByteBuffer.allocate(4 + length);
+            larger.put(buffer);
+            buffer = larger;
+            return true;
+          }
+          break;
+        }
+
+        buffer.getInt();
+        final byte[] frame = new byte[length];
+        buffer.get(frame);
+
+        if(!manager.receive(this, frame)) {
+          return false;
+        }
+      }
+      buffer.compact();
+      return true;
+    } catch(IOException e) {
+      return false;
+    }
+  }
+
+  public void close() {
+    try {
+      channel.close();
+    } catch(IOException ignore) {}
+  }
+
+  /**
+   * Used to determine if this session has gone too long without sending a valid hello.
+   * @param now The current time in milliseconds.
+   * @param timeout The time, in milliseconds, a session has to send its hello.
+   * @return True if the session should be closed, otherwise false.
+   */
+  public boolean expired(final long now, final long timeout) {
+    return !authenticated && now - opened >= timeout;
+  }
+
+  public boolean isAuthenticated() {
+    return authenticated;
+  }
+
+  public void setAuthenticated(boolean authenticated) {
+    this.authenticated = authenticated;
+  }
+}
@@ -0,0 +1,390 @@
+package net.tnemc.core.io.peer;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
+import net.tnemc.core.TNECore;
+import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.config.DataConfig;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TNEPeerManager is used to sync data directly between servers over TCP, without a proxy or redis.
+ *
+ * Every server listens for connections from the other servers, and opens its own connection to each
+ * server listed in Data.Sync.Peer.Peers, which it only uses for sending. Each connection starts with a
+ * handshake carrying the shared secret, followed by length prefixed message frames. All sockets are
+ * handled by a single thread using a {@link Selector}.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class TNEPeerManager {
+
+  public static final int MAX_FRAME = 1024 * 1024;
+
+  private static final int MAGIC = 0x544E4550;
+  private static final byte PROTOCOL = 1;
+
+  private static final byte TYPE_HELLO = 0;
+  private static final byte TYPE_MESSAGE = 1;
+
+  private static final String DEFAULT_SECRET = "change-me";
+
+  private final Selector selector;
+  private final ServerSocketChannel server;
+  private final List<Peer> peers = new ArrayList<>();
+  private final List<PeerSession> sessions = new ArrayList<>();
+
+  private final byte[] secret;
+  private final byte[] hello;
+  private final long timeout;
+
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  private static TNEPeerManager instance;
+
+  public TNEPeerManager() throws IOException {
+    final String configured = DataConfig.yaml().getString("Data.Sync.Peer.Secret", "");
+
+    //Without a real secret, anything that can reach the sync port could change balances.
+    if(configured.isBlank() || configured.equals(DEFAULT_SECRET)) {
+      throw new IOException("Data.Sync.Peer.Secret must be set to something other than \"\" or \""
+                                + DEFAULT_SECRET + "\".");
+    }
+    this.secret = configured.getBytes(StandardCharsets.UTF_8);
+    this.hello = hello(TNECore.instance().getServerID());
+
+    final int queueSize = DataConfig.yaml().getInt("Data.Sync.Peer.Queue.Size", 10000);
+    final long backoffMin = Math.max(100, DataConfig.yaml().getLong("Data.Sync.Peer.Reconnect.Min", 1000));
+    final long backoffMax = Math.max(backoffMin, DataConfig.yaml().getLong("Data.Sync.Peer.Reconnect.Max", 30000));
+    this.timeout = Math.max(100, DataConfig.yaml().getLong("Data.Sync.Peer.Reconnect.Timeout", 5000));
+
+    for(String peer : DataConfig.yaml().getStringList("Data.Sync.Peer.Peers")) {
+      final InetSocketAddress address = address(peer);
+      if(address == null) {
+        TNECore.log().error("Invalid sync peer address \"" + peer + "\", expected host:port.", DebugLevel.OFF);
+        continue;
+      }
+      peers.add(new Peer(address, queueSize, backoffMin, backoffMax, timeout));
+    }
+
+    this.selector = Selector.open();
+
+    this.server = ServerSocketChannel.open();
+    this.server.configureBlocking(false);
+    this.server.bind(new InetSocketAddress(DataConfig.yaml().getString("Data.Sync.Peer.Host", "0.0.0.0"),
+                                           DataConfig.yaml().getInt("Data.Sync.Peer.Port", 7420)));
+    this.server.register(selector, SelectionKey.OP_ACCEPT);
+
+    instance = this;
+
+    thread = new Thread(this::run, "TNE Peer Sync");
+    thread.setDaemon(true);
+    thread.start();
+
+    TNECore.log().inform("Peer sync listening on " + server.getLocalAddress() + " with " + peers.size() + " peer(s).", DebugLevel.OFF);
+  }
+
+  /**
+   * Used to queue a message for every peer.
+   * @param channel The channel the message is for.
+   * @param data The message.
+   */
+  public void publish(final String channel, final byte[] data) {
+    if(!running || peers.isEmpty()) {
+      return;
+    }
+
+    final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+    out.writeByte(TYPE_MESSAGE);
+    out.writeUTF(channel);
+    out.write(data);
+
+    final byte[] frame = out.toByteArray();
+    if(frame.length > MAX_FRAME) {
+      TNECore.log().error("Sync message for " + channel + " is too large to send to peers.", DebugLevel.STANDARD);
+      return;
+    }
+
+    for(Peer peer : peers) {
+      peer.offer(frame);
+    }
+    selector.wakeup();
+  }
+
+  private void run() {
+    while(running) {
+      try {
+        final long now = System.currentTimeMillis();
+        for(Peer peer : peers) {
+          peer.timeout(now);
+          peer.connect(selector, hello, now);
+          peer.wantWrite();
+        }
+        expire(now);
+
+        selector.select(250);
+
+        final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while(it.hasNext()) {
+          final SelectionKey key = it.next();
+          it.remove();
+
+          if(!key.isValid()) {
+            continue;
+          }
+          handle(key, System.currentTimeMillis());
+        }
+      } catch(Exception e) {
+        TNECore.log().error("Issue in the peer sync thread: " + e.getMessage(), DebugLevel.STANDARD);
+      }
+    }
+
+    //Give anything still queued one last chance to be written before closing.
+    final long now = System.currentTimeMillis();
+    for(Peer peer : peers) {
+      peer.write(now);
+      peer.disconnect(now);
+    }
+    for(PeerSession session : sessions) {
+      session.close();
+    }
+
+    try {
+      server.close();
+      selector.close();
+    } catch(IOException ignore) {}
+  }
+
+  private void handle(final SelectionKey key, final long now) throws IOException {
+    if(key.isAcceptable()) {
+      final SocketChannel channel = server.accept();
+      if(channel != null) {
+        channel.configureBlocking(false);
+
+        final PeerSession session = new PeerSession(channel, now);
+        sessions.add(session);
+        channel.register(selector, SelectionKey.OP_READ, session);
+      }
+      return;
+    }
+
+    if(key.attachment() instanceof Peer peer) {
+      if(key.isConnectable()) {
+        peer.finishConnect(now);
+        if(peer.isConnected()) {
+          TNECore.log().inform("Connected to sync peer " + peer.getAddress() + ".", DebugLevel.STANDARD);
+        }
+      }
+
+      if(key.isValid() && key.isReadable()) {
+        peer.read(now);
+      }
+
+      if(key.isValid() && key.isWritable()) {
+        peer.write(now);
+      }
+      return;
+    }
+
+    if(key.attachment() instanceof PeerSession session && key.isReadable()) {
+      if(!session.read(this)) {
+        session.close();
+        sessions.remove(session);
+      }
+    }
+  }
+
+  /**
+   * Used to close inbound sessions that haven't sent a valid hello within the connect timeout, so
+   * connections that never authenticate can't hold sockets open.
+   * @param now The current time in milliseconds.
+   */
+  private void expire(final long now) {
+    final Iterator<PeerSession> it = sessions.iterator();
+    while(it.hasNext()) {
+      final PeerSession session = it.next();
+      if(session.expired(now, timeout)) {
+        rejected.incrementAndGet();
+        session.close();
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * The largest frame a session may send. Before a session is authenticated, the only frame it may
+   * send is a hello, which is the same size as our own since the secret has to match.
+   * @param session The session.
+   * @return The largest frame length, in bytes, the session may send.
+   */
+  protected int maxFrame(final PeerSession session) {
+    return (session.isAuthenticated())? MAX_FRAME : hello.length;
+  }
+
+  /**
+   * Called by a {@link PeerSession} for every frame it receives.
+   * @param session The session the frame was received on.
+   * @param frame The frame payload.
+   * @return False if the session should be closed, otherwise true.
+   */
+  protected boolean receive(final PeerSession session, final byte[] frame) {
+    try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(frame))) {
+
+      final byte type = in.readByte();
+      if(!session.isAuthenticated()) {
+        if(type != TYPE_HELLO || in.readInt() != MAGIC || in.readByte() > PROTOCOL) {
+          rejected.incrementAndGet();
+          return false;
+        }
+
+        final UUID server = new UUID(in.readLong(), in.readLong());
+        final byte[] offered = new byte[in.readUnsignedShort()];
+        in.readFully(offered);
+
+        if(!MessageDigest.isEqual(secret, offered)) {
+          rejected.incrementAndGet();
+          TNECore.log().error("Rejected sync peer " + server + ", its secret doesn't match.", DebugLevel.STANDARD);
+          return false;
+        }
+        session.setAuthenticated(true);
+        return true;
+      }
+
+      if(type != TYPE_MESSAGE) {
+        return true;
+      }
+
+      final String channel = in.readUTF();
+      final byte[] data = in.readAllBytes();
+
+      received.incrementAndGet();
+      TNECore.instance().getChannelMessageManager().handle(channel, data);
+      return true;
+    } catch(IOException e) {
+      rejected.incrementAndGet();
+      return false;
+    }
+  }
+
+  private byte[] hello(final UUID serverID) {
+    final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+    out.writeByte(TYPE_HELLO);
+    out.writeInt(MAGIC);
+    out.writeByte(PROTOCOL);
+    out.writeLong(serverID.getMostSignificantBits());
+    out.writeLong(serverID.getLeastSignificantBits());
+    out.writeShort(secret.length);
+    out.write(secret);
+    return out.toByteArray();
+  }
+
+  private static InetSocketAddress address(final String value) {
+    final int split = value.lastIndexOf(':');
+    if(split <= 0) {
+      return null;
+    }
+
+    try {
+      return new InetSocketAddress(value.substring(0, split).trim(), Integer.parseInt(value.substring(split + 1).trim()));
+    } catch(IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Used to stop syncing. Anything still queued is given a last chance to be written.
+   */
+  public void close() {
+    running = false;
+    selector.wakeup();
+
+    try {
+      thread.join(5000);
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * A snapshot of the health of this sync transport.
+   * @return The current {@link Health}.
+   */
+  public Health health() {
+    int connected = 0;
+    int queued = 0;
+    long sent = 0;
+    long dropped = 0;
+    long reconnects = 0;
+
+    for(Peer peer : peers) {
+      connected += (peer.isConnected())? 1 : 0;
+      queued += peer.queued();
+      sent += peer.sent();
+      dropped += peer.dropped();
+      reconnects += peer.reconnects();
+    }
+    return new Health(peers.size(), connected, queued, sent, received.get(), dropped, rejected.get(), reconnects);
+  }
+
+  public List<Peer> getPeers() {
+    return Collections.unmodifiableList(peers);
+  }
+
+  public static TNEPeerManager instance() {
+    return instance;
+  }
+
+  /**
+   * The health metrics of the peer sync transport.
+   *
+   * @param peers The number of configured peers.
+   * @param connected The number of peers currently connected.
+   * @param queued The number of messages waiting to be sent.
+   * @param sent The number of messages sent.
+   * @param received The number of messages received.
+   * @param dropped The number of messages dropped because a peer's queue was full.
+   * @param rejected The number of inbound connections rejected for a bad handshake or frame.
+   * @param reconnects The number of times a peer connection has been reestablished.
+   */
+  public record Health(int peers, int connected, int queued, long sent, long received, long dropped,
+                       long rejected, long reconnects) {
+  }
+}
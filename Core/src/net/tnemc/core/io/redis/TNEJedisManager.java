@@ -17,22 +17,33 @@ package net.tnemc.core.io.redis;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import com.google.common.io.ByteArrayDataOutput;
-import com.google.common.io.ByteStreams;
 import net.tnemc.core.TNECore;
+import net.tnemc.core.channel.handlers.BalanceHandler;
 import net.tnemc.core.compatibility.log.DebugLevel;
 import net.tnemc.core.config.DataConfig;
 import net.tnemc.core.utils.Identifier;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.Pipeline;
 
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * TNEJedisManager
+ * TNEJedisManager is used to sync data between servers using redis pub/sub.
+ *
+ * The subscriber runs on its own thread, which reconnects with an increasing delay whenever its
+ * connection is lost. Messages are published from a queue by a separate thread, which sends every
+ * queued message in a single pipeline, so a burst of changes costs one round trip.
  *
  * @author creatorfromhell
  * @since 0.1.2.0
@@ -40,9 +51,26 @@ import java.util.UUID;
 public class TNEJedisManager {
 
   protected final JedisPool pool;
-  protected final TNESubscriber subscriber = new TNESubscriber();
   protected final byte[] channel = "tne:balance".getBytes(StandardCharsets.UTF_8);
-  final Thread redisThread;
+
+  private final BlockingQueue<Outbound> queue;
+
+  private final Thread subscriberThread;
+  private final Thread publisherThread;
+
+  private final long backoffMin;
+  private final long backoffMax;
+  private final int batchSize;
+
+  private final AtomicLong published = new AtomicLong();
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong reconnects = new AtomicLong();
+
+  private volatile TNESubscriber subscriber;
+  private volatile boolean connected = false;
+  private volatile boolean running = true;
 
   private static TNEJedisManager instance;
 
@@ -56,23 +84,26 @@ public class TNEJedisManager {
             DataConfig.yaml().getString("Data.Sync.Redis.Password"), DataConfig.yaml().getInt("Data.Sync.Redis.Index"),
             DataConfig.yaml().getBoolean("Data.Sync.Redis.SSL"));
 
-    if(connectionTest()) {
-
-      redisThread = new Thread(() -> {
-        try(Jedis jedis = pool.getResource()) {
-          jedis.subscribe(subscriber, channel);
-        }
-      }, "TNE Redis Thread");
-
-      redisThread.start();
+    this.queue = new LinkedBlockingQueue<>(Math.max(1, DataConfig.yaml().getInt("Data.Sync.Redis.Queue.Size", 10000)));
+    this.batchSize = Math.max(1, DataConfig.yaml().getInt("Data.Sync.Redis.Queue.Batch", 256));
+    this.backoffMin = Math.max(100, DataConfig.yaml().getLong("Data.Sync.Redis.Reconnect.Min", 1000));
+    this.backoffMax = Math.max(backoffMin, DataConfig.yaml().getLong("Data.Sync.Redis.Reconnect.Max", 30000));
 
-      TNECore.log().error("Redis Subscriber Thread Started", DebugLevel.OFF);
-    } else {
-      TNECore.log().error("Redis Connection Test Failed!", DebugLevel.OFF);
-      redisThread = null;
+    if(!connectionTest()) {
+      TNECore.log().error("Redis Connection Test Failed! Sync will keep trying to connect.", DebugLevel.OFF);
     }
 
     instance = this;
+
+    subscriberThread = new Thread(this::subscribe, "TNE Redis Subscriber");
+    subscriberThread.setDaemon(true);
+    subscriberThread.start();
+
+    publisherThread = new Thread(this::publishLoop, "TNE Redis Publisher");
+    publisherThread.setDaemon(true);
+    publisherThread.start();
+
+    TNECore.log().inform("Redis sync started.", DebugLevel.OFF);
   }
 
   public boolean connectionTest() {
@@ -84,16 +115,185 @@ public class TNEJedisManager {
     }
   }
 
+  /**
+   * Used to queue a message for the balance channel.
+   * @param data The message.
+   */
   public void publish(final byte[] data) {
-    try(Jedis jedis = pool.getResource()) {
-      jedis.publish(channel, data);
-    }
+    enqueue(new Outbound(channel, data));
   }
 
+  /**
+   * Used to queue a message for the specified channel.
+   * @param channel The channel to publish to.
+   * @param data The message.
+   */
   public void publish(final String channel, final byte[] data) {
-    try(Jedis jedis = pool.getResource()) {
-      jedis.publish(channel.getBytes(StandardCharsets.UTF_8), data);
+    enqueue(new Outbound(channel.getBytes(StandardCharsets.UTF_8), data));
+  }
+
+  private void enqueue(final Outbound message) {
+    if(!running || !queue.offer(message)) {
+      dropped.incrementAndGet();
+      TNECore.log().debug("Redis send queue is full, dropping a sync message.", DebugLevel.DEVELOPER);
+    }
+  }
+
+  /**
+   * Called by the {@link TNESubscriber} for every message received, which is passed on to the
+   * handler registered for its channel.
+   * @param channel The channel the message was received on.
+   * @param message The message.
+   */
+  protected void receive(final byte[] channel, final byte[] message) {
+    received.incrementAndGet();
+    TNECore.instance().getChannelMessageManager().handle(new String(channel, StandardCharsets.UTF_8), message);
+  }
+
+  /**
+   * Called by the {@link TNESubscriber} once its subscription is in place.
+   */
+  protected void subscribed() {
+    connected = true;
+    TNECore.log().inform("Redis subscriber connected.", DebugLevel.STANDARD);
+  }
+
+  /**
+   * Subscribes to every registered channel, and reconnects whenever the subscription ends while this
+   * manager is still running. The delay between attempts doubles on each failure up to the maximum,
+   * and is reset after a subscription succeeds.
+   */
+  private void subscribe() {
+    long backoff = backoffMin;
+
+    while(running) {
+      final TNESubscriber current = new TNESubscriber(this);
+      subscriber = current;
+
+      try(Jedis jedis = pool.getResource()) {
+        jedis.subscribe(current, channels());
+      } catch(Exception e) {
+        failures.incrementAndGet();
+        TNECore.log().error("Redis subscriber lost its connection: " + e.getMessage(), DebugLevel.STANDARD);
+      }
+
+      if(current.wasSubscribed()) {
+        backoff = backoffMin;
+      }
+      connected = false;
+
+      if(!running) {
+        break;
+      }
+
+      reconnects.incrementAndGet();
+      if(!sleep(backoff)) {
+        break;
+      }
+      backoff = Math.min(backoffMax, backoff * 2);
+    }
+  }
+
+  /**
+   * Publishes queued messages. Everything waiting in the queue, up to the batch size, is sent in a
+   * single pipeline. If the pipeline fails, the batch is retried after a delay rather than dropped.
+   */
+  private void publishLoop() {
+    final List<Outbound> batch = new ArrayList<>(batchSize);
+    long backoff = backoffMin;
+
+    while(running || !queue.isEmpty() || !batch.isEmpty()) {
+      try {
+        if(batch.isEmpty()) {
+          final Outbound first = queue.poll(1, TimeUnit.SECONDS);
+          if(first == null) {
+            continue;
+          }
+          batch.add(first);
+          queue.drainTo(batch, batchSize - 1);
+        }
+
+        try(Jedis jedis = pool.getResource()) {
+          final Pipeline pipeline = jedis.pipelined();
+          for(Outbound message : batch) {
+            pipeline.publish(message.channel(), message.data());
+          }
+          pipeline.sync();
+        }
+
+        published.addAndGet(batch.size());
+        batch.clear();
+        backoff = backoffMin;
+
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch(Exception e) {
+        failures.incrementAndGet();
+        TNECore.log().error("Failed to publish " + batch.size() + " redis sync message(s): " + e.getMessage(), DebugLevel.STANDARD);
+
+        //Don't hold on to messages forever once we're shutting down.
+        if(!running) {
+          dropped.addAndGet(batch.size() + queue.size());
+          break;
+        }
+
+        if(!sleep(backoff)) {
+          break;
+        }
+        backoff = Math.min(backoffMax, backoff * 2);
+      }
+    }
+  }
+
+  private byte[][] channels() {
+    final List<byte[]> channels = new ArrayList<>();
+    for(String name : TNECore.instance().getChannelMessageManager().channels()) {
+      channels.add(name.getBytes(StandardCharsets.UTF_8));
     }
+    return channels.toArray(new byte[0][]);
+  }
+
+  private boolean sleep(final long millis) {
+    try {
+      Thread.sleep(millis);
+      return true;
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Used to stop syncing. Messages that are still queued are given a short time to be published.
+   */
+  public void close() {
+    running = false;
+
+    final TNESubscriber current = subscriber;
+    if(current != null && current.isSubscribed()) {
+      try {
+        current.unsubscribe();
+      } catch(Exception ignore) {}
+    }
+
+    try {
+      publisherThread.join(5000);
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    subscriberThread.interrupt();
+    publisherThread.interrupt();
+    pool.close();
+  }
+
+  /**
+   * A snapshot of the health of this sync transport.
+   * @return The current {@link Health}.
+   */
+  public Health health() {
+    return new Health(connected, queue.size(), published.get(), received.get(), dropped.get(),
+                      failures.get(), reconnects.get());
   }
 
   public static TNEJedisManager instance() {
@@ -101,15 +301,24 @@ public class TNEJedisManager {
   }
 
   public static void send(final String account, final String region, final UUID currency, final Identifier handler, final BigDecimal amount) {
+    instance.publish(BalanceHandler.frame(Collections.singletonList(BalanceHandler.update(account, region, currency, handler, amount))));
+  }
 
-    final ByteArrayDataOutput out = ByteStreams.newDataOutput();
-    out.writeUTF(TNECore.instance().getServerID().toString());
-    out.writeUTF(account);
-    out.writeUTF(region);
-    out.writeUTF(currency.toString());
-    out.writeUTF(handler.asID());
-    out.writeUTF(amount.toPlainString());
+  /**
+   * The health metrics of the redis sync transport.
+   *
+   * @param connected Whether the subscriber is currently connected.
+   * @param queued The number of messages waiting to be published.
+   * @param published The number of messages published.
+   * @param received The number of messages received.
+   * @param dropped The number of messages dropped because the queue was full, or sync was stopping.
+   * @param failures The number of failed subscriptions and publishes.
+   * @param reconnects The number of times the subscriber has reconnected.
+   */
+  public record Health(boolean connected, int queued, long published, long received, long dropped,
+                       long failures, long reconnects) {
+  }
 
-    instance.publish(out.toByteArray());
+  private record Outbound(byte[] channel, byte[] data) {
   }
-}
\ No newline at end of file
+}
@@ -17,20 +17,43 @@ package net.tnemc.core.io.redis;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import net.tnemc.core.TNECore;
 import redis.clients.jedis.BinaryJedisPubSub;
 
 /**
- * TNESubscriber
+ * TNESubscriber receives the sync messages published by the other servers, and passes them to the
+ * {@link TNEJedisManager} that owns it. A new subscriber is used for every connection.
  *
  * @author creatorfromhell
  * @since 0.1.2.0
  */
 public class TNESubscriber extends BinaryJedisPubSub {
 
+  private final TNEJedisManager manager;
+
+  private volatile boolean subscribed = false;
+
+  public TNESubscriber(final TNEJedisManager manager) {
+    this.manager = manager;
+  }
+
+  @Override
+  public void onSubscribe(byte[] channel, int subscribedChannels) {
+    if(!subscribed) {
+      subscribed = true;
+      manager.subscribed();
+    }
+  }
+
   @Override
   public void onMessage(byte[] channel, byte[] message) {
-    super.onMessage(channel, message);
-    TNECore.instance().getChannelMessageManager().handle("tne:balance", message);
+    manager.receive(channel, message);
+  }
+
+  /**
+   * Whether this subscriber was subscribed at any point during its connection.
+   * @return True if this subscriber was subscribed.
+   */
+  public boolean wasSubscribed() {
+    return subscribed;
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package net.tnemc.core.io.storage;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+/**
+ * Represents a {@link Datable} that is able to store a collection of its objects together, such as
+ * within a single database transaction.
+ *
+ * @param <O> The object that is going to be stored to the database.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ * @see QueuedWriter
+ */
+public interface BatchDatable<O> {
+
+  /**
+   * Used to store a collection of objects together.
+   * @param connector The storage connector to use for this transaction.
+   * @param objects The objects to be stored.
+   * @return True if all the objects were stored, otherwise false.
+   */
+  boolean storeBatch(StorageConnector<?> connector, @NotNull Collection<O> objects);
+}
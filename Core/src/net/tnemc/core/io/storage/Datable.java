@@ -20,6 +20,7 @@ package net.tnemc.core.io.storage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Optional;
 
@@ -79,4 +80,14 @@ public interface Datable<O> {
    * @return A collection containing the objects loaded.
    */
   Collection<O> loadAll(StorageConnector<?> connector, @Nullable final String identifier);
+
+  /**
+   * Used to get the identifiers of every stored object of this type, without loading the objects.
+   * @param connector The storage connector to use for this transaction.
+   * @return A collection containing the identifiers, or an empty collection if this type of object
+   * isn't stored by an identifier.
+   */
+  default Collection<String> identifiers(StorageConnector<?> connector) {
+    return new ArrayList<>();
+  }
 }
\ No newline at end of file
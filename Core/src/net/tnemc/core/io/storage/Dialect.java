@@ -18,8 +18,12 @@ package net.tnemc.core.io.storage;
  */
 
 import com.vdurmont.semver4j.Semver;
+import net.tnemc.core.io.storage.connect.CopyStatement;
 import org.intellij.lang.annotations.Language;
 
+import java.time.LocalDate;
+import java.time.Period;
+
 /**
  * Dialect
  *
@@ -38,6 +42,14 @@ public interface Dialect {
 
   @Language("SQL") String holdingsTable();
 
+  /**
+   * Used to add the version column to holdings tables that were created before holdings were
+   * versioned. Existing rows start at version 1, as version 0 is used for entries that have
+   * never been stored.
+   * @return The statement used to add the version column.
+   */
+  @Language("SQL") String holdingsVersionColumn();
+
   @Language("SQL") String receiptsTable();
 
   @Language("SQL") String receiptsHoldingsTable();
@@ -46,10 +58,119 @@ public interface Dialect {
 
   @Language("SQL") String receiptsModifiersTable();
 
+  /**
+   * Used to get any indexes that need to be created separately from the tables. These are executed
+   * after the tables are created, and should not fail if the index already exists.
+   * @return The index creation statements for this dialect.
+   */
+  default String[] indexes() {
+    return new String[0];
+  }
+
+  /**
+   * Used to get the {@link CopyStatement} used to bulk load the statements of an upsert query, for
+   * dialects that support bulk loading.
+   * @param query The upsert query.
+   * @return The copy statement for the query, or null if the query can't be bulk loaded.
+   */
+  default CopyStatement copy(final String query) {
+    return null;
+  }
+
   @Language("SQL") String accountPurge(final int days);
 
   @Language("SQL") String receiptPurge(final int days);
 
+  /**
+   * Used to add the performed column to a receipt table created before the column existed.
+   * @param table The receipt table, without the prefix.
+   * @return The alter statement.
+   */
+  @Language("SQL") String receiptsPerformedColumn(final String table);
+
+  /**
+   * Used to upgrade receipt tables created before receipts were keyed on their participants. The
+   * participants table gets its performed column, filled from the receipts, and the participant,
+   * modifier, and holdings tables get their new keys.
+   * @return The upgrade statements, in the order they should be executed.
+   */
+  default String[] receiptsKeyUpgrade() {
+    return new String[0];
+  }
+
+  /**
+   * Used to delete a limited number of old receipts. The variables are the cutoff time, the two
+   * archive values that may be deleted, and the maximum number of receipts to delete.
+   * @return The chunked purge query.
+   */
+  @Language("SQL") String receiptPurgeChunk();
+
+  /**
+   * Used to count the archived receipts performed within a time range. The variables are the archive
+   * value, the start of the range, and the end of the range.
+   * @return The count query.
+   */
+  @Language("SQL") String countArchivedReceipts();
+
+  /**
+   * The length of each partition of the receipt tables.
+   * @return The partition length, or null if this dialect doesn't partition the receipt tables.
+   */
+  default Period receiptPartitioning() {
+    return null;
+  }
+
+  /**
+   * Used to check if a receipt table is partitioned. The only variable is the table name, and the
+   * query returns a count named total that's above zero if the table is partitioned.
+   * @return The query, or null if this dialect doesn't support partitioning.
+   */
+  default @Language("SQL") String receiptsPartitioned() {
+    return null;
+  }
+
+  /**
+   * Used to list the partitions of a receipt table. The only variable is the table name, and the
+   * query returns each partition's name as name.
+   * @return The query, or null if this dialect doesn't support partitioning.
+   */
+  default @Language("SQL") String receiptPartitions() {
+    return null;
+  }
+
+  /**
+   * Used to add a partition to a receipt table.
+   * @param table The receipt table, without the prefix.
+   * @param name The name of the partition.
+   * @param from The first day of the partition.
+   * @param to The day after the last day of the partition.
+   * @return The statement, or null if this dialect doesn't support partitioning.
+   */
+  default @Language("SQL") String addReceiptPartition(final String table, final String name,
+                                                      final LocalDate from, final LocalDate to) {
+    return null;
+  }
+
+  /**
+   * Used to create the partition that holds any receipts outside of the other partitions, for
+   * dialects that need one.
+   * @param table The receipt table, without the prefix.
+   * @return The statement, or null if this dialect doesn't need one.
+   */
+  default @Language("SQL") String defaultReceiptPartition(final String table) {
+    return null;
+  }
+
+  /**
+   * Used to drop a partition from a receipt table, along with every receipt in it.
+   * @param table The receipt table, without the prefix.
+   * @param name The name of the partition.
+   * @return The statement, or null if this dialect doesn't support partitioning.
+   */
+  default @Language("SQL") String dropReceiptPartition(final String table, final String name) {
+    return null;
+  }
+
   //player name save
   @Language("SQL") String saveName();
 
@@ -86,26 +207,86 @@ public interface Dialect {
   //holdings save
   @Language("SQL") String saveHoldings();
 
+  /**
+   * Used to save holdings by adding the change made to them to the stored value, rather than
+   * overwriting it. The variables are the same as {@link #saveHoldings()}, except the last one is
+   * the change to add when the row already exists.
+   * @return The query, or null if this dialect can't add to holdings exactly, in which case holdings
+   * are always saved using {@link #saveHoldings()}.
+   */
+  @Language("SQL") String saveHoldingsDelta();
+
+  //single holdings row load, with its version
+  @Language("SQL") String loadHolding();
+
+  /**
+   * Used to create a holdings row at version 1, only if the row doesn't already exist. The variables
+   * are uid, server, region, currency, holdings type and holdings.
+   * @return The query.
+   */
+  @Language("SQL") String createHoldingsVersion();
+
+  /**
+   * Used to overwrite a holdings row, only if it is still at the expected version. The version is
+   * incremented by the update. The variables are holdings, uid, server, region, currency, holdings
+   * type and the expected version.
+   * @return The query.
+   */
+  @Language("SQL") String saveHoldingsVersion();
+
+  //all players load
+  @Language("SQL") String loadAllPlayers();
+
+  //all non players load
+  @Language("SQL") String loadAllNonPlayers();
+
+  //all members load
+  @Language("SQL") String loadAllMembers();
+
+  //all holdings load for a server
+  @Language("SQL") String loadAllHoldings();
+
   //receipts load
   @Language("SQL") String loadReceipts();
 
   //receipt save
   @Language("SQL") String saveReceipt();
 
-  //receipts load
-  @Language("SQL") String loadReceiptHolding();
+  //single receipt load
+  @Language("SQL") String loadReceipt();
+
+  //first page of receipts for a participant, newest first
+  @Language("SQL") String loadReceiptPage();
+
+  //page of receipts for a participant after a (performed, uid) cursor, newest first
+  @Language("SQL") String loadReceiptPageAfter();
+
+  //first chunk of every receipt, oldest first
+  @Language("SQL") String loadReceiptChunk();
+
+  //chunk of every receipt after a (performed, uid) cursor, oldest first
+  @Language("SQL") String loadReceiptChunkAfter();
+
+  //the (performed, uid) cursor at an offset within a participant's receipts, newest first
+  @Language("SQL") String seekReceipt();
+
+  //count of receipts for a participant
+  @Language("SQL") String countReceipts();
+
+  //receipt holdings load for a batch of receipts
+  @Language("SQL") String loadReceiptHolding(int receipts);
 
   //receipt holding save
   @Language("SQL") String saveReceiptHolding();
 
-  //receipt participants load
-  @Language("SQL") String loadParticipants();
+  //receipt participants load for a batch of receipts
+  @Language("SQL") String loadParticipants(int receipts);
 
   //receipt participant save
   @Language("SQL") String saveParticipant();
 
-  //receipt modifiers load
-  @Language("SQL") String loadModifiers();
+  //receipt modifiers load for a batch of receipts
+  @Language("SQL") String loadModifiers(int receipts);
 
   //receipt modifier save
   @Language("SQL") String saveModifier();
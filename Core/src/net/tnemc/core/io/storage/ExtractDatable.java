@@ -0,0 +1,56 @@
+package net.tnemc.core.io.storage;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.account.holdings.HoldingsEntry;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Represents a {@link Datable} that is able to read the stored state of an account straight from
+ * storage, without creating the account or adding it to the account manager. This is used by
+ * extractions and backups, which have to cover accounts that aren't loaded without loading them.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ * @see SnapshotBackup
+ */
+public interface ExtractDatable {
+
+  /**
+   * Used to read the stored state of an account.
+   * @param connector The storage connector to use for this transaction.
+   * @param identifier The identifier of the account.
+   * @return An Optional containing the stored state of the account, or an empty Optional if the
+   * account isn't stored.
+   */
+  Optional<Extracted> extract(StorageConnector<?> connector, @NotNull String identifier);
+
+  /**
+   * The stored state of a single account.
+   *
+   * @param identifier The account's identifier.
+   * @param name The account's name.
+   * @param type The account's type.
+   * @param holdings The account's holdings.
+   */
+  record Extracted(String identifier, String name, String type, List<HoldingsEntry> holdings) {
+  }
+}
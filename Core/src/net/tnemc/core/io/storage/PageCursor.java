@@ -0,0 +1,33 @@
+package net.tnemc.core.io.storage;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Represents a position within a list of objects that is ordered by time, and then identifier, from
+ * newest to oldest. This is used for keyset pagination, so that a page can be read directly after the
+ * last object of the previous page, regardless of how many objects come before it.
+ *
+ * @param time The time of the last object on the previous page.
+ * @param id The identifier of the last object on the previous page.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ * @see PagedDatable
+ */
+public record PageCursor(long time, String id) {
+}
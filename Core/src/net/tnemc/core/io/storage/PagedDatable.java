@@ -0,0 +1,69 @@
+package net.tnemc.core.io.storage;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Represents a {@link Datable} that is able to load its objects for an identifier one page at a time,
+ * ordered from newest to oldest, rather than all at once.
+ *
+ * @param <O> The object that is going to be loaded from the database.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ * @see PageCursor
+ */
+public interface PagedDatable<O> {
+
+  /**
+   * Used to load a page of objects for an identifier.
+   * @param connector The storage connector to use for this transaction.
+   * @param identifier The identifier the objects relate to.
+   * @param since The oldest time that should be included in the results.
+   * @param after The cursor for the last object of the previous page, or null for the first page.
+   * @param size The maximum amount of objects in the page.
+   * @return A list containing the objects in the page, from newest to oldest.
+   */
+  List<O> page(StorageConnector<?> connector, @NotNull String identifier, long since,
+               @Nullable PageCursor after, int size);
+
+  /**
+   * Used to find the cursor at a specific offset, which may be used to jump directly to a page.
+   * @param connector The storage connector to use for this transaction.
+   * @param identifier The identifier the objects relate to.
+   * @param since The oldest time that should be included in the results.
+   * @param offset The offset of the object to get the cursor for, starting at 0 for the newest.
+   * @return An Optional containing the cursor if an object exists at the offset, otherwise an empty
+   * Optional.
+   */
+  Optional<PageCursor> seek(StorageConnector<?> connector, @NotNull String identifier, long since, int offset);
+
+  /**
+   * Used to count the objects for an identifier.
+   * @param connector The storage connector to use for this transaction.
+   * @param identifier The identifier the objects relate to.
+   * @param since The oldest time that should be included in the count.
+   * @return The amount of objects.
+   */
+  int count(StorageConnector<?> connector, @NotNull String identifier, long since);
+}
@@ -0,0 +1,281 @@
+package net.tnemc.core.io.storage;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.TNECore;
+import net.tnemc.core.compatibility.log.DebugLevel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Used to write objects to storage in groups on a dedicated thread. Objects are appended to a bounded
+ * queue without blocking the caller, and the writer thread drains up to a maximum amount of them, or
+ * whatever has arrived within a linger time, into a single write.
+ *
+ * If the queue is full the caller waits briefly for space, and if there still isn't any, the object is
+ * written on the caller's thread instead. This slows down producers rather than dropping writes.
+ *
+ * A batch that fails to write is retried a couple of times. If it still fails, each object in it is
+ * written on its own, so only the objects that can't be written are dropped.
+ *
+ * @param <T> The type of object that is written.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ * @see BatchDatable
+ */
+public class QueuedWriter<T> {
+
+  //The amount of times a failed batch is retried, and the base delay between retries in milliseconds.
+  private static final int RETRIES = 2;
+  private static final long RETRY_DELAY = 250;
+
+  private final BlockingQueue<T> queue;
+  private final Predicate<List<T>> writer;
+
+  private final String name;
+  private final int batchSize;
+  private final long linger;
+  private final long wait;
+
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  //metrics
+  private final AtomicLong queued = new AtomicLong();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong overflow = new AtomicLong();
+  private final AtomicLong writeTime = new AtomicLong();
+
+  /**
+   * @param name The name of this writer, used for the thread name and logging.
+   * @param capacity The maximum amount of objects that may be waiting to be written.
+   * @param batchSize The maximum amount of objects to write at once.
+   * @param linger The maximum time, in milliseconds, to wait for a batch to fill before writing it.
+   * @param wait The time, in milliseconds, a caller waits for space before writing on its own thread.
+   * @param writer The function used to write a batch, which returns true if it was written.
+   */
+  public QueuedWriter(final String name, final int capacity, final int batchSize, final long linger,
+                      final long wait, final Predicate<List<T>> writer) {
+    this.name = name;
+    this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    this.batchSize = Math.max(1, batchSize);
+    this.linger = Math.max(0, linger);
+    this.wait = Math.max(0, wait);
+    this.writer = writer;
+
+    this.thread = new Thread(this::run, "TNE-" + name);
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Used to add an object to be written.
+   * @param object The object to write.
+   */
+  public void offer(final T object) {
+    queued.incrementAndGet();
+
+    try {
+      if(running && queue.offer(object, wait, TimeUnit.MILLISECONDS)) {
+        return;
+      }
+    } catch(InterruptedException ignore) {
+      Thread.currentThread().interrupt();
+    }
+
+    //The queue is full, or we're shutting down, so we write this one ourselves.
+    overflow.incrementAndGet();
+    write(Collections.singletonList(object));
+  }
+
+  private void run() {
+    final List<T> batch = new ArrayList<>(batchSize);
+
+    while(running || !queue.isEmpty()) {
+      try {
+        final T first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if(first == null) continue;
+
+        batch.add(first);
+
+        //Wait for the batch to fill up, or the linger time to pass.
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(linger);
+        while(batch.size() < batchSize) {
+          queue.drainTo(batch, batchSize - batch.size());
+          if(batch.size() >= batchSize) break;
+
+          final long remaining = deadline - System.nanoTime();
+          if(remaining <= 0) break;
+
+          final T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if(next == null) break;
+          batch.add(next);
+        }
+
+        write(batch);
+      } catch(InterruptedException ignore) {
+        //Write what we've taken so far, the remaining objects are written by flush.
+        write(batch);
+        break;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void write(final List<T> batch) {
+    if(batch.isEmpty()) return;
+
+    //Failures are usually temporary, such as a lost connection, so the batch is retried first.
+    for(int attempt = 0; attempt <= RETRIES; attempt++) {
+      if(attempt > 0 && !backoff(attempt)) break;
+
+      if(attempt(batch)) {
+        written.addAndGet(batch.size());
+        return;
+      }
+    }
+
+    if(batch.size() == 1) {
+      failed.incrementAndGet();
+      TNECore.log().error(name + " was unable to write " + batch.get(0) + ", it has been dropped.");
+      return;
+    }
+
+    //Something in the batch can't be written, so each object is written on its own, and only the ones
+    //that still fail are dropped.
+    TNECore.log().error(name + " was unable to write a batch of " + batch.size() + ", writing them individually.");
+    for(T object : batch) {
+      if(attempt(Collections.singletonList(object))) {
+        written.incrementAndGet();
+        continue;
+      }
+      failed.incrementAndGet();
+      TNECore.log().error(name + " was unable to write " + object + ", it has been dropped.");
+    }
+  }
+
+  /**
+   * Used to make a single attempt at writing a batch.
+   * @param batch The batch to write.
+   * @return True if the batch was written, otherwise false.
+   */
+  private boolean attempt(final List<T> batch) {
+    final long start = System.nanoTime();
+    boolean success;
+    try {
+      success = writer.test(batch);
+    } catch(Exception e) {
+      TNECore.log().error("Issue while writing batch for " + name + ".", e, DebugLevel.OFF);
+      success = false;
+    }
+
+    final long time = System.nanoTime() - start;
+    writeTime.addAndGet(time);
+    batches.incrementAndGet();
+
+    TNECore.log().debug(name + " wrote " + batch.size() + " in " + TimeUnit.NANOSECONDS.toMillis(time)
+                            + "ms. Success: " + success + " Pending: " + queue.size(), DebugLevel.DEVELOPER);
+    return success;
+  }
+
+  /**
+   * Used to wait before retrying a failed batch.
+   * @param attempt The retry attempt, starting at 1.
+   * @return True if the retry should go ahead, or false if the thread was interrupted.
+   */
+  private boolean backoff(final int attempt) {
+    try {
+      Thread.sleep(RETRY_DELAY * attempt);
+      return true;
+    } catch(InterruptedException ignore) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Used to stop the writer thread, and write everything that is still queued on the calling thread.
+   * This should be called when the plugin is disabled.
+   */
+  public void flush() {
+    //The writer thread finishes whatever is queued before it stops.
+    running = false;
+
+    try {
+      thread.join(TimeUnit.SECONDS.toMillis(10));
+    } catch(InterruptedException ignore) {
+      Thread.currentThread().interrupt();
+    }
+
+    final List<T> remaining = new ArrayList<>(batchSize);
+    while(queue.drainTo(remaining, batchSize) > 0) {
+      write(remaining);
+      remaining.clear();
+    }
+
+    TNECore.log().inform(name + " flushed. " + metrics());
+  }
+
+  /**
+   * Used to get a readable summary of this writer's metrics.
+   * @return The summary.
+   */
+  public String metrics() {
+    final long count = batches.get();
+    final long average = (count == 0)? 0 : TimeUnit.NANOSECONDS.toMicros(writeTime.get() / count);
+
+    return "Queued: " + queued.get() + " Written: " + written.get() + " Failed: " + failed.get()
+        + " Overflow: " + overflow.get() + " Batches: " + count + " Avg Batch: " + average + "us"
+        + " Pending: " + queue.size();
+  }
+
+  public int pending() {
+    return queue.size();
+  }
+
+  public long getQueued() {
+    return queued.get();
+  }
+
+  public long getWritten() {
+    return written.get();
+  }
+
+  public long getBatches() {
+    return batches.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  public long getOverflow() {
+    return overflow.get();
+  }
+}
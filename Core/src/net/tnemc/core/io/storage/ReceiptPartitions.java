@@ -0,0 +1,236 @@
+package net.tnemc.core.io.storage;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.TNECore;
+import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.config.DataConfig;
+import net.tnemc.core.io.storage.connect.SQLConnector;
+import net.tnemc.core.io.storage.engine.StandardSQL;
+
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Used to maintain and purge the receipt tables when they're partitioned by the time each receipt
+ * was performed.
+ *
+ * Every receipt table shares the same partitions, which are added ahead of time, and a purge drops
+ * whole partitions instead of deleting receipts one by one. Receipt tables that were created before
+ * partitioning was enabled, or for dialects that don't support it, are purged in chunks instead so
+ * that no single delete holds its locks for long.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class ReceiptPartitions {
+
+  /**
+   * The partitioned receipt tables, in the order their partitions are dropped.
+   */
+  public static final String[] TABLES = new String[] {
+      "receipts_holdings", "receipts_participants", "receipts_modifiers", "receipts"
+  };
+
+  private static final Pattern NAME_PATTERN = Pattern.compile("p(\\d{8})_(\\d{8})$");
+
+  private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+  /**
+   * The length of each receipt partition, based on the configuration.
+   * @return The length of each partition, or null if the receipt tables shouldn't be partitioned.
+   */
+  public static Period period() {
+    final String partition = DataConfig.yaml().getString("Data.Purge.Transaction.Partition", "Monthly");
+
+    return switch(partition.toLowerCase()) {
+      case "weekly" -> Period.ofWeeks(1);
+      case "none" -> null;
+      default -> Period.ofMonths(1);
+    };
+  }
+
+  /**
+   * Used to determine if the receipt tables are partitioned. This is false for tables created before
+   * partitioning was enabled, since those can't be partitioned without rebuilding them.
+   * @param connector The connector to use.
+   * @return True if the receipt tables are partitioned, otherwise false.
+   */
+  public static boolean partitioned(final SQLConnector connector) {
+    final Dialect dialect = connector.dialect();
+    if(dialect.receiptPartitioning() == null || dialect.receiptsPartitioned() == null) {
+      return false;
+    }
+
+    final List<Integer> totals = connector.executeQuery(dialect.receiptsPartitioned(),
+                                                        new Object[] { prefix(connector) + "receipts" },
+                                                        row->row.getInt("total"));
+    return !totals.isEmpty() && totals.get(0) > 0;
+  }
+
+  /**
+   * Used to make sure that every receipt table has partitions for the current period, and for the
+   * configured number of periods ahead of it.
+   * @param connector The connector to use.
+   */
+  public static void maintain(final SQLConnector connector) {
+    if(!partitioned(connector)) {
+      return;
+    }
+
+    final Dialect dialect = connector.dialect();
+    final Period period = dialect.receiptPartitioning();
+    final LocalDate current = floor(LocalDate.now(), period);
+    final LocalDate end = current.plus(period.multipliedBy(DataConfig.yaml().getInt("Data.Purge.Transaction.Ahead", 2) + 1));
+
+    for(String table : TABLES) {
+      if(dialect.defaultReceiptPartition(table) != null) {
+        connector.executeUpdate(dialect.defaultReceiptPartition(table), new Object[] {});
+      }
+
+      //Each table continues from its own last partition, so a table that missed a partition catches up.
+      LocalDate from = current;
+      for(PartitionRange range : partitions(connector, table)) {
+        if(range.to().isAfter(from)) {
+          from = range.to();
+        }
+      }
+
+      while(from.isBefore(end)) {
+        final LocalDate to = from.plus(period);
+        connector.executeUpdate(dialect.addReceiptPartition(table, name(from, to), from, to), new Object[] {});
+
+        TNECore.log().debug("Added receipt partition " + name(from, to) + " to " + table + ".", DebugLevel.DETAILED);
+        from = to;
+      }
+    }
+  }
+
+  /**
+   * Used to purge the receipts that were performed more than the provided number of days ago.
+   * @param connector The connector to use.
+   * @param days The number of days to keep receipts for.
+   */
+  public static void purge(final SQLConnector connector, final int days) {
+    final Dialect dialect = connector.dialect();
+    final boolean skipArchived = DataConfig.yaml().getBoolean("Data.Purge.Transaction.Archive");
+
+    if(partitioned(connector)) {
+      final LocalDate cutoff = LocalDate.now().minusDays(days);
+
+      for(PartitionRange range : partitions(connector, "receipts")) {
+
+        //Only drop partitions that are entirely older than the cutoff.
+        if(range.to().isAfter(cutoff)) {
+          continue;
+        }
+
+        if(skipArchived) {
+          final List<Integer> archived = connector.executeQuery(dialect.countArchivedReceipts(),
+                                                                new Object[] {
+                                                                    true,
+                                                                    Timestamp.valueOf(range.from().atStartOfDay()),
+                                                                    Timestamp.valueOf(range.to().atStartOfDay())
+                                                                }, row->row.getInt("total"));
+          if(!archived.isEmpty() && archived.get(0) > 0) {
+            TNECore.log().inform("Keeping receipt partition " + range.name() + ", it contains "
+                                     + archived.get(0) + " archived receipts.");
+            continue;
+          }
+        }
+
+        for(String table : TABLES) {
+          connector.executeUpdate(dialect.dropReceiptPartition(table, range.name()), new Object[] {});
+        }
+        TNECore.log().debug("Dropped receipt partition " + range.name() + ".", DebugLevel.STANDARD);
+      }
+      return;
+    }
+
+    final Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minusDays(days));
+    final int chunk = DataConfig.yaml().getInt("Data.Purge.Transaction.ChunkSize", 5000);
+
+    long purged = 0;
+    int deleted;
+    do {
+      deleted = connector.executeUpdate(dialect.receiptPurgeChunk(), new Object[] {
+          cutoff, false, !skipArchived, chunk
+      });
+      purged += deleted;
+    } while(deleted >= chunk);
+
+    TNECore.log().debug("Purged " + purged + " receipts.", DebugLevel.STANDARD);
+  }
+
+  /**
+   * Used to get the partitions of a receipt table, ignoring any partition that doesn't cover a time
+   * range, such as a catch-all partition.
+   * @param connector The connector to use.
+   * @param table The receipt table, without the prefix.
+   * @return The partitions of the table.
+   */
+  public static List<PartitionRange> partitions(final SQLConnector connector, final String table) {
+    final List<PartitionRange> ranges = new ArrayList<>();
+
+    for(String name : connector.executeQuery(connector.dialect().receiptPartitions(),
+                                             new Object[] { prefix(connector) + table },
+                                             row->row.getString("name"))) {
+
+      final Matcher matcher = NAME_PATTERN.matcher(name);
+      if(matcher.find()) {
+        ranges.add(new PartitionRange(matcher.group(0),
+                                      LocalDate.parse(matcher.group(1), NAME_FORMAT),
+                                      LocalDate.parse(matcher.group(2), NAME_FORMAT)));
+      }
+    }
+    return ranges;
+  }
+
+  private static String name(final LocalDate from, final LocalDate to) {
+    return "p" + NAME_FORMAT.format(from) + "_" + NAME_FORMAT.format(to);
+  }
+
+  private static LocalDate floor(final LocalDate date, final Period period) {
+    if(period.getMonths() > 0) {
+      return date.withDayOfMonth(1);
+    }
+    return date.with(DayOfWeek.MONDAY);
+  }
+
+  private static String prefix(final SQLConnector connector) {
+    if(connector.engine() instanceof StandardSQL) {
+      return ((StandardSQL)connector.engine()).prefix();
+    }
+    return DataConfig.yaml().getString("Data.Database.Prefix");
+  }
+
+  /**
+   * A partition of a receipt table, covering the receipts performed from the first day up to, but not
+   * including, the last day.
+   */
+  public record PartitionRange(String name, LocalDate from, LocalDate to) {
+  }
+}
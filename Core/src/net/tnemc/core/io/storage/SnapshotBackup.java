@@ -0,0 +1,265 @@
+package net.tnemc.core.io.storage;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.TNECore;
+import net.tnemc.core.account.Account;
+import net.tnemc.core.account.holdings.HoldingsEntry;
+import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.utils.Extractor;
+import org.json.simple.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Used to back up every account's balances while the server keeps running.
+ *
+ * The balances of every account are captured at a single point in time by briefly holding the
+ * transaction snapshot lock, which only waits for transactions that are part way through applying
+ * their balances. Balances are immutable, so the capture only copies references. The captured
+ * snapshot is then written, without holding any lock or using the storage pool, to a gzipped archive
+ * in the backups directory, along with a SHA-256 checksum of the archive.
+ *
+ * When accounts are loaded on demand, accounts that aren't loaded are read straight from storage
+ * while the archive is written, one at a time, without loading them into the account manager. Their
+ * balances are captured after the cut, so they reflect storage at the time each one is read rather
+ * than the moment the loaded accounts were captured. An account that isn't loaded has no unsaved
+ * changes, so this only differs if it's loaded and changed while the backup is being written.
+ *
+ * Archives use the same format as /tne extract, so one can be restored by copying it over
+ * extracted.jsonl.gz and running /tne restore.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class SnapshotBackup {
+
+  private static final AtomicBoolean running = new AtomicBoolean(false);
+
+  private static volatile Result last = null;
+
+  /**
+   * Used to capture and write a snapshot backup. Only one backup may run at a time.
+   *
+   * @return An Optional containing the result of the backup, or an empty Optional if the backup failed
+   * or another backup is already running.
+   */
+  public static Optional<Result> backup() {
+    if(!running.compareAndSet(false, true)) {
+      TNECore.log().inform("A backup is already running.");
+      return Optional.empty();
+    }
+
+    try {
+      final long start = System.currentTimeMillis();
+      final Set<String> identifiers = new HashSet<>();
+      final List<AccountSnapshot> snapshot = capture(identifiers);
+      final long captured = System.currentTimeMillis();
+
+      final List<String> unloaded = new ArrayList<>();
+      if(TNECore.eco().account().onDemand()) {
+        for(String identifier : TNECore.storage().identifiers(Account.class)) {
+          if(!identifiers.contains(identifier)) {
+            unloaded.add(identifier);
+          }
+        }
+      }
+
+      final File directory = new File(TNECore.directory(), "backups");
+      if(!directory.exists() && !directory.mkdirs()) {
+        TNECore.log().error("Unable to create the backups directory.");
+        return Optional.empty();
+      }
+
+      final String name = "backup-" + new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date(start));
+      final File archive = new File(directory, name + ".jsonl.gz");
+      final File temp = new File(directory, name + ".jsonl.gz.tmp");
+
+      final MessageDigest digest;
+      try {
+        digest = MessageDigest.getInstance("SHA-256");
+      } catch(NoSuchAlgorithmException e) {
+        TNECore.log().error("Unable to create the backup checksum.", e, DebugLevel.STANDARD);
+        return Optional.empty();
+      }
+
+      int accounts = 0;
+      long entries = 0;
+      try(OutputStream file = Files.newOutputStream(temp.toPath());
+          BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+              new GZIPOutputStream(new DigestOutputStream(new BufferedOutputStream(file, 65536), digest), 65536),
+              StandardCharsets.UTF_8), 65536)) {
+
+        final JSONObject header = new JSONObject();
+        header.put("version", "0.1.2.0");
+        header.put("accounts", snapshot.size() + unloaded.size());
+        header.put("time", start);
+        writer.write(header.toJSONString());
+        writer.newLine();
+
+        for(AccountSnapshot account : snapshot) {
+          writer.write(Extractor.line(account.id(), account.name(), account.type(), account.holdings()).toJSONString());
+          writer.newLine();
+          accounts++;
+          entries += account.holdings().size();
+        }
+
+        for(String identifier : unloaded) {
+
+          final Optional<ExtractDatable.Extracted> account = TNECore.storage().extract(Account.class, identifier);
+          if(account.isEmpty()) {
+            TNECore.log().error("Unable to read account for backup. ID: " + identifier, DebugLevel.STANDARD);
+            continue;
+          }
+
+          writer.write(Extractor.line(identifier, account.get().name(), account.get().type(),
+                                      account.get().holdings()).toJSONString());
+          writer.newLine();
+          accounts++;
+          entries += account.get().holdings().size();
+        }
+      } catch(IOException e) {
+        TNECore.log().error("Failed to write backup archive.", e, DebugLevel.STANDARD);
+        return Optional.empty();
+      }
+
+      final String checksum = HexFormat.of().formatHex(digest.digest());
+      try {
+        Files.move(temp.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.writeString(new File(directory, name + ".jsonl.gz.sha256").toPath(),
+                          checksum + "  " + archive.getName() + System.lineSeparator());
+      } catch(IOException e) {
+        TNECore.log().error("Failed to save backup archive.", e, DebugLevel.STANDARD);
+        return Optional.empty();
+      }
+
+      final Result result = new Result(archive, checksum, accounts, entries, archive.length(),
+                                       captured - start, System.currentTimeMillis() - start);
+      last = result;
+
+      TNECore.log().inform("Backup has completed! " + result.summary());
+      return Optional.of(result);
+    } finally {
+      running.set(false);
+    }
+  }
+
+  /**
+   * Used to capture the balances of every loaded account at a single point in time.
+   *
+   * @param identifiers The set to add the identifiers of the captured accounts to.
+   * @return The captured snapshot.
+   */
+  private static List<AccountSnapshot> capture(final Set<String> identifiers) {
+    final List<AccountSnapshot> snapshot = new ArrayList<>(TNECore.eco().account().getAccounts().size());
+
+    final Lock lock = TNECore.eco().transaction().snapshotLock().writeLock();
+    lock.lock();
+    try {
+      for(Account account : TNECore.eco().account().getAccounts().values()) {
+        snapshot.add(snapshot(account));
+        identifiers.add(account.getIdentifier());
+      }
+    } finally {
+      lock.unlock();
+    }
+    return snapshot;
+  }
+
+  /**
+   * Used to copy the state of a single account.
+   *
+   * @param account The account to copy.
+   * @return The captured state of the account.
+   */
+  private static AccountSnapshot snapshot(final Account account) {
+    final List<HoldingsEntry> holdings = new ArrayList<>();
+    for(HoldingsEntry entry : account.getWallet().entryList()) {
+      holdings.add(new HoldingsEntry(entry.getRegion(), entry.getCurrency(), entry.getAmount(), entry.getHandler()));
+    }
+    return new AccountSnapshot(account.getIdentifier(), account.getName(), account.type(), holdings);
+  }
+
+  /**
+   * The result of the last backup that completed during this session.
+   *
+   * @return An Optional containing the result of the last backup, if there was one.
+   */
+  public static Optional<Result> last() {
+    return Optional.ofNullable(last);
+  }
+
+  /**
+   * The captured state of a single account.
+   */
+  private record AccountSnapshot(String id, String name, String type, List<HoldingsEntry> holdings) {
+  }
+
+  /**
+   * The result of a completed backup.
+   *
+   * @param archive The archive the backup was written to.
+   * @param checksum The SHA-256 checksum of the archive.
+   * @param accounts The amount of accounts backed up.
+   * @param entries The amount of holdings entries backed up.
+   * @param bytes The size of the archive in bytes.
+   * @param capture The time, in milliseconds, spent capturing the snapshot, during which transactions
+   *                wait to apply their balances.
+   * @param duration The total time, in milliseconds, the backup took.
+   */
+  public record Result(File archive, String checksum, int accounts, long entries, long bytes,
+                       long capture, long duration) {
+
+    /**
+     * The amount of accounts written per second.
+     *
+     * @return The amount of accounts written per second.
+     */
+    public long throughput() {
+      return (duration <= 0)? accounts : (accounts * 1000L) / duration;
+    }
+
+    public String summary() {
+      return "Accounts: " + accounts + " Entries: " + entries + " Size: " + bytes + " bytes"
+          + " Capture: " + capture + "ms Duration: " + duration + "ms Throughput: " + throughput()
+          + " accounts/s Archive: " + archive.getName();
+    }
+  }
+}
@@ -25,18 +25,27 @@ import net.tnemc.core.compatibility.log.DebugLevel;
 import net.tnemc.core.compatibility.scheduler.ChoreExecution;
 import net.tnemc.core.compatibility.scheduler.ChoreTime;
 import net.tnemc.core.config.DataConfig;
+import net.tnemc.core.io.peer.TNEPeerManager;
 import net.tnemc.core.io.redis.TNEJedisManager;
+import net.tnemc.core.io.storage.connect.JournalConnector;
 import net.tnemc.core.io.storage.connect.SQLConnector;
 import net.tnemc.core.io.storage.connect.YAMLConnector;
 import net.tnemc.core.io.storage.dialect.MariaDialect;
+import net.tnemc.core.io.storage.dialect.MySQLDialect;
+import net.tnemc.core.io.storage.engine.flat.Journal;
 import net.tnemc.core.io.storage.engine.flat.YAML;
 import net.tnemc.core.io.storage.engine.sql.MySQL;
 import net.tnemc.core.io.storage.engine.sql.PostgreSQL;
+import net.tnemc.core.io.storage.engine.sql.SQLite;
+import net.tnemc.core.transaction.Receipt;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -56,6 +65,8 @@ public class StorageManager {
   private StorageEngine engine;
   private final StorageConnector<?> connector;
   private final TNEJedisManager jedisManager;
+  private final TNEPeerManager peerManager;
+  private QueuedWriter<Receipt> receiptWriter;
 
   final String sync;
 
@@ -65,18 +76,35 @@ public class StorageManager {
     if(DataConfig.yaml().contains("Data.Sync")) {
 
       sync = DataConfig.yaml().getString("Data.Sync.Type", "Bungee");
-      switch(sync.toLowerCase()) {
-        case "jedis" -> this.jedisManager = new TNEJedisManager();
-        default -> this.jedisManager = null;
-      }
     } else {
       sync = "Bungee";
-      this.jedisManager = null;
     }
 
-    final String engine = DataConfig.yaml().getString("Data.Database.Type");
+    this.jedisManager = (sync.equalsIgnoreCase("redis") || sync.equalsIgnoreCase("jedis"))? new TNEJedisManager() : null;
+    this.peerManager = (sync.equalsIgnoreCase("peer"))? peer() : null;
+
+    this.engine = engine(DataConfig.yaml().getString("Data.Database.Type"),
+                         DataConfig.yaml().getString("Data.Database.Prefix"));
+
+    if(this.engine instanceof SQLEngine) {
+      this.connector = new SQLConnector();
+    } else if(this.engine instanceof Journal) {
+      this.connector = new JournalConnector();
+    } else {
+      this.connector = new YAMLConnector();
+    }
+
+    initialize();
+  }
 
-    switch(engine.toLowerCase()) {
+  /**
+   * Used to create the {@link StorageEngine} for a database type.
+   * @param type The database type, as used for Data.Database.Type.
+   * @param prefix The table prefix for SQL databases.
+   * @return The storage engine for the type.
+   */
+  public static StorageEngine engine(final String type, final String prefix) {
+    switch(type.toLowerCase()) {
       case "mysql" -> {
 
         boolean maria = false;
@@ -92,41 +120,49 @@ public class StorageManager {
         } catch(Exception ignore) {}
 
         if(maria) {
-
-          final String prefix = DataConfig.yaml().getString("Data.Database.Prefix");
-          this.engine = new MySQL(prefix, new MariaDialect(prefix));
-          this.connector = new SQLConnector();
-          break;
+          return new MySQL(prefix, new MariaDialect(prefix));
         }
-        this.engine = new MySQL();
-        this.connector = new SQLConnector();
+        return new MySQL(prefix, new MySQLDialect(prefix));
       }
       case "maria", "mariadb" -> {
-
-        final String prefix = DataConfig.yaml().getString("Data.Database.Prefix");
-        this.engine = new MySQL(prefix, new MariaDialect(prefix));
-        this.connector = new SQLConnector();
+        return new MySQL(prefix, new MariaDialect(prefix));
+      }
+      case "postgre", "postgres", "postgresql" -> {
+        return new PostgreSQL(prefix);
+      }
+      case "sqlite" -> {
+        return new SQLite(prefix);
       }
-      case "postgre" -> {
-        this.engine = new PostgreSQL();
-        this.connector = new SQLConnector();
+      case "journal" -> {
+        return new Journal();
       }
       default -> {
-        this.engine = new YAML();
-        this.connector = new YAMLConnector();
+        return new YAML();
       }
     }
+  }
 
-    initialize();
+  private static TNEPeerManager peer() {
+    try {
+      return new TNEPeerManager();
+    } catch(IOException e) {
+      TNECore.log().error("Unable to start peer sync: " + e.getMessage(), DebugLevel.OFF);
+      return null;
+    }
   }
 
   public void sendMessage(final String channel, final byte[] data) {
     switch(sync.toLowerCase()) {
-      case "redis":
+      case "redis", "jedis":
         if(jedisManager != null) {
           jedisManager.publish(channel, data);
         }
         break;
+      case "peer":
+        if(peerManager != null) {
+          peerManager.publish(channel, data);
+        }
+        break;
       default:
         TNECore.server().proxy().send(channel, data);
     }
@@ -144,6 +180,66 @@ public class StorageManager {
     //Initialize our connection.
     this.connector.initialize();
     this.engine.initialize(this.connector);
+
+    //Receipts are written in groups on their own thread if the engine is able to store them together.
+    final Datable<?> receipts = engine.datables().get(Receipt.class);
+    if(receipts instanceof BatchDatable) {
+      this.receiptWriter = new QueuedWriter<>("ReceiptWriter",
+                                              DataConfig.yaml().getInt("Data.Database.ReceiptQueue.Capacity", 10000),
+                                              DataConfig.yaml().getInt("Data.Database.ReceiptQueue.BatchSize", 500),
+                                              DataConfig.yaml().getLong("Data.Database.ReceiptQueue.Linger", 250),
+                                              DataConfig.yaml().getLong("Data.Database.ReceiptQueue.Wait", 50),
+                                              (batch)->((BatchDatable<Receipt>)receipts).storeBatch(connector, batch));
+    }
+  }
+
+  /**
+   * Used to store a {@link Receipt}. If the engine supports it, the receipt is added to the receipt
+   * writer's queue and written together with other receipts on a dedicated thread, otherwise it is
+   * stored the same as any other object.
+   * @param receipt The receipt to store.
+   */
+  public void storeReceipt(@NotNull final Receipt receipt) {
+    if(receiptWriter != null) {
+      receiptWriter.offer(receipt);
+      return;
+    }
+    store(receipt, null);
+  }
+
+  /**
+   * Used to write any receipts that are still waiting in the receipt writer's queue, and stop the
+   * writer. This should only be called when TNE is being disabled.
+   */
+  public void flushReceipts() {
+    if(receiptWriter != null) {
+      receiptWriter.flush();
+    }
+  }
+
+  /**
+   * Used to close the storage connector, if it holds anything open that should be closed on shutdown.
+   */
+  public void close() {
+    if(connector instanceof JournalConnector) {
+      ((JournalConnector)connector).close();
+    }
+
+    if(jedisManager != null) {
+      jedisManager.close();
+    }
+
+    if(peerManager != null) {
+      peerManager.close();
+    }
+  }
+
+  public TNEJedisManager getJedisManager() {
+    return jedisManager;
+  }
+
+  public TNEPeerManager getPeerManager() {
+    return peerManager;
   }
 
   public static StorageManager instance() {
@@ -180,6 +276,92 @@ public class StorageManager {
   }
 
 
+  /**
+   * Used to get the identifiers of every stored object of this type, without loading the objects.
+   * This method is not switched over to a secondary thread automatically.
+   * @param object The class of the objects.
+   * @return A collection containing the identifiers.
+   */
+  public Collection<String> identifiers(Class<?> object) {
+    final Datable<?> data = engine.datables().get(object);
+    if(data != null) {
+      return data.identifiers(connector);
+    }
+    return new ArrayList<>();
+  }
+
+  /**
+   * Used to read the stored state of an account straight from storage, without creating the account
+   * or adding it to the account manager, if the engine supports it. This method is not switched over
+   * to a secondary thread automatically.
+   * @param object The class of the objects.
+   * @param identifier The identifier of the account.
+   * @return An Optional containing the stored state of the account, or an empty Optional if it isn't
+   * stored or the engine doesn't support reading it.
+   */
+  public Optional<ExtractDatable.Extracted> extract(Class<?> object, @NotNull final String identifier) {
+    final Datable<?> data = engine.datables().get(object);
+    if(data instanceof ExtractDatable) {
+      return ((ExtractDatable)data).extract(connector, identifier);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Used to load a page of objects for an identifier, if the engine supports paged loading for this
+   * type of object. This method is not switched over to a secondary thread automatically.
+   * @param object The class of the objects to be loaded.
+   * @param identifier The identifier the objects relate to.
+   * @param since The oldest time that should be included in the results.
+   * @param after The cursor for the last object of the previous page, or null for the first page.
+   * @param size The maximum amount of objects in the page.
+   * @return An Optional containing the page from newest to oldest, or an empty Optional if the engine
+   * doesn't support paged loading for this type of object.
+   */
+  public <T> Optional<List<T>> page(Class<? extends T> object, @NotNull final String identifier,
+                                    final long since, @Nullable final PageCursor after, final int size) {
+    final Datable<T> data = (Datable<T>)engine.datables().get(object);
+    if(data instanceof PagedDatable) {
+      return Optional.of(((PagedDatable<T>)data).page(connector, identifier, since, after, size));
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Used to find the cursor at a specific offset within the objects for an identifier, if the engine
+   * supports paged loading for this type of object.
+   * @param object The class of the objects.
+   * @param identifier The identifier the objects relate to.
+   * @param since The oldest time that should be included in the results.
+   * @param offset The offset of the object to get the cursor for, starting at 0 for the newest.
+   * @return An Optional containing the cursor if it exists, otherwise an empty Optional.
+   */
+  public Optional<PageCursor> seek(Class<?> object, @NotNull final String identifier, final long since,
+                                   final int offset) {
+    final Datable<?> data = engine.datables().get(object);
+    if(data instanceof PagedDatable) {
+      return ((PagedDatable<?>)data).seek(connector, identifier, since, offset);
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Used to count the objects for an identifier, if the engine supports paged loading for this type
+   * of object.
+   * @param object The class of the objects to count.
+   * @param identifier The identifier the objects relate to.
+   * @param since The oldest time that should be included in the count.
+   * @return An Optional containing the count, or an empty Optional if the engine doesn't support
+   * paged loading for this type of object.
+   */
+  public Optional<Integer> count(Class<?> object, @NotNull final String identifier, final long since) {
+    final Datable<?> data = engine.datables().get(object);
+    if(data instanceof PagedDatable) {
+      return Optional.of(((PagedDatable<?>)data).count(connector, identifier, since));
+    }
+    return Optional.empty();
+  }
+
   /**
    * Used to store this object.
    * @param object The object to be stored.
@@ -196,6 +378,41 @@ public class StorageManager {
     }
   }
 
+  /**
+   * Used to store this object immediately on the calling thread. This method is not switched over to
+   * a secondary thread automatically. Please make sure to use wisely.
+   * @param object The object to be stored.
+   * @param identifier An optional identifier for loading this object. Note: some Datables may require
+   *                   this identifier.
+   */
+  public <T> void storeNow(T object, @Nullable String identifier) {
+    final Datable<T> data = (Datable<T>)engine.datables().get(object.getClass());
+    if(data != null) {
+      data.store(connector, object, identifier);
+    }
+  }
+
+  /**
+   * Used to store a collection of objects immediately on the calling thread. If the engine supports
+   * it, the objects are stored together, otherwise they're stored one at a time. This method is not
+   * switched over to a secondary thread automatically. Please make sure to use wisely.
+   * @param object The class of the objects to be stored.
+   * @param objects The objects to be stored.
+   */
+  public <T> void storeBatch(Class<T> object, Collection<T> objects) {
+    final Datable<T> data = (Datable<T>)engine.datables().get(object);
+    if(data instanceof BatchDatable) {
+      ((BatchDatable<T>)data).storeBatch(connector, objects);
+      return;
+    }
+
+    if(data != null) {
+      for(T value : objects) {
+        data.store(connector, value, null);
+      }
+    }
+  }
+
   /**
    * Used to store all data for an identifier in TNE. This method is not switched over to a secondary
    * thread automatically. Please make sure to use wisely.
@@ -210,7 +427,8 @@ public class StorageManager {
   }
 
   /**
-   * Used to store all data in TNE.
+   * Used to store all data in TNE. Only accounts and holdings that have changed since they were
+   * last persisted are written.
    */
   public void storeAll() {
     final Optional<Datable<?>> data = Optional.ofNullable(engine.datables().get(Account.class));
@@ -224,7 +442,9 @@ public class StorageManager {
    * Used to purge TNE data.
    */
   public void purge() {
-    for(Datable<?> data : engine.datables().values()) {
+
+    //The same datable is registered for each account type, so each one is only purged once.
+    for(Datable<?> data : new HashSet<>(engine.datables().values())) {
       TNECore.server().scheduler().createDelayedTask(()->data.purge(connector), new ChoreTime(0), ChoreExecution.SECONDARY);
     }
   }
@@ -247,14 +467,31 @@ public class StorageManager {
     //call the backup method for all modules.
     TNECore.loader().getModules().values().forEach((moduleWrapper -> moduleWrapper.getModule().enableSave(this)));
 
+    if(DataConfig.yaml().getString("Data.Backup.Mode", "Snapshot").equalsIgnoreCase("snapshot")) {
+      TNECore.server().scheduler().createDelayedTask(SnapshotBackup::backup, new ChoreTime(0), ChoreExecution.SECONDARY);
+      return true;
+    }
+
     TNECore.server().scheduler().createDelayedTask(()->engine.backup(connector), new ChoreTime(0), ChoreExecution.SECONDARY);
     return true;
   }
 
+  /**
+   * Used to migrate all data to the database configured under Data.Migration, on a secondary thread.
+   * @see StorageMigration
+   */
+  public void migrate() {
+    TNECore.server().scheduler().createDelayedTask(StorageMigration::migrate, new ChoreTime(0), ChoreExecution.SECONDARY);
+  }
+
   public StorageEngine getEngine() {
     return engine;
   }
 
+  public QueuedWriter<Receipt> getReceiptWriter() {
+    return receiptWriter;
+  }
+
   public StorageConnector<?> getConnector() {
     return connector;
   }
@@ -0,0 +1,383 @@
+package net.tnemc.core.io.storage;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.TNECore;
+import net.tnemc.core.account.Account;
+import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.config.DataConfig;
+import net.tnemc.core.io.storage.connect.SQLBatch;
+import net.tnemc.core.io.storage.connect.SQLConnector;
+import net.tnemc.core.io.storage.datables.sql.standard.SQLAccount;
+import net.tnemc.core.io.storage.datables.sql.standard.SQLReceipt;
+import net.tnemc.core.io.storage.engine.sql.SQLite;
+import net.tnemc.core.transaction.Receipt;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Used to migrate TNE's data directly from the database TNE is using to another SQL database, which
+ * is configured under Data.Migration.
+ *
+ * Accounts, along with their holdings and members, are copied from memory in batches that run in
+ * parallel on the target, while the transactions are streamed from the source database, if it's a
+ * SQL database, in chunks on their own thread. The accounts table is copied in full before anything
+ * that references it. The last batch committed in order is written to a checkpoint file after each
+ * batch, so a migration that stops part way through resumes from there the next time it's run. When
+ * the target is SQLite, everything is written from a single thread.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class StorageMigration {
+
+  private static final String PATH = "Data.Migration";
+
+  private static final AtomicBoolean running = new AtomicBoolean(false);
+
+  private final StorageEngine engine;
+  private final SQLConnector target;
+  private final File file;
+  private final Properties checkpoint = new Properties();
+
+  private final AtomicLong accounts = new AtomicLong(0);
+  private final AtomicLong receipts = new AtomicLong(0);
+
+  private final long start = System.currentTimeMillis();
+  private long reported = start;
+  private int totalAccounts = 0;
+
+  //The batches of accounts that have been committed, so the checkpoint only moves past a batch once
+  //every batch before it has been committed as well.
+  private boolean[] committed;
+  private String[] lastIds;
+  private int next = 0;
+
+  public StorageMigration(final StorageEngine engine, final SQLConnector target, final File file) {
+    this.engine = engine;
+    this.target = target;
+    this.file = file;
+  }
+
+  /**
+   * Used to migrate all data to the database configured under Data.Migration. Only one migration may
+   * run at a time. This method is not switched over to a secondary thread automatically.
+   *
+   * @return True if everything was migrated, otherwise false.
+   */
+  public static boolean migrate() {
+    if(!running.compareAndSet(false, true)) {
+      TNECore.log().inform("A migration is already running.");
+      return false;
+    }
+
+    final StorageEngine engine = StorageManager.engine(DataConfig.yaml().getString(PATH + ".Type", "mysql"),
+                                                       DataConfig.yaml().getString(PATH + ".Prefix", "tne_"));
+    if(!(engine instanceof SQLEngine)) {
+      TNECore.log().error("Data can only be migrated to a SQL database.");
+      running.set(false);
+      return false;
+    }
+
+    final SQLConnector target = new SQLConnector((SQLEngine)engine, PATH, "TNE-Migration");
+    try {
+      target.initialize();
+      if(!target.checkVersion()) {
+        TNECore.log().error("The migration database doesn't meet the version requirement of "
+                                + ((SQLEngine)engine).dialect().requirement() + ".");
+        return false;
+      }
+      engine.initialize(target);
+
+      return new StorageMigration(engine, target, new File(TNECore.directory(), "migration.properties")).run();
+    } catch(Exception e) {
+      TNECore.log().error("The migration failed: " + e.getMessage());
+      return false;
+    } finally {
+      target.close();
+      running.set(false);
+    }
+  }
+
+  /**
+   * Used to run this migration.
+   *
+   * @return True if everything was migrated, otherwise false.
+   */
+  public boolean run() throws Exception {
+    load();
+
+    //SQLite only allows a single writer, so everything is written from one thread.
+    final int threads = (engine instanceof SQLite)? 1 : Math.max(2, DataConfig.yaml().getInt(PATH + ".Threads", 4));
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      final Future<Boolean> receiptsMigrated = pool.submit(this::receipts);
+      final boolean accountsMigrated = accounts(pool);
+
+      if(accountsMigrated && receiptsMigrated.get()) {
+        final double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+
+        TNECore.log().inform("Migration complete. Migrated " + accounts.get() + " accounts and " + receipts.get()
+                                 + " transactions in " + String.format("%.1f", seconds) + " seconds ("
+                                 + rate() + " per second). Set Data.Database.Type to "
+                                 + DataConfig.yaml().getString(PATH + ".Type") + " and restart to use it.");
+
+        if(file.exists() && !file.delete()) {
+          TNECore.log().error("Unable to delete the migration checkpoint file.");
+        }
+        return true;
+      }
+
+      TNECore.log().error("The migration stopped after a batch failed. Run it again to resume from the last committed batch.");
+      return false;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Used to migrate every account, along with its holdings and members. The rows in the accounts
+   * table are all copied first, since owners, members and holdings reference them, and everything
+   * else is copied once they're committed. Accounts are sorted by their identifier so that the
+   * checkpoint of each phase may be the identifier of the last account committed.
+   */
+  private boolean accounts(final ExecutorService pool) throws Exception {
+
+    //Accounts loaded on demand aren't all in memory, so they're loaded for the migration.
+    if(TNECore.eco().account().onDemand()) {
+      TNECore.storage().loadAll(Account.class, null);
+    }
+
+    final List<Account> all = new ArrayList<>(TNECore.eco().account().getAccounts().values());
+    all.sort(Comparator.comparing(Account::getIdentifier));
+
+    final SQLAccount datable = (SQLAccount)engine.datables().get(Account.class);
+
+    if(!accounts(pool, all, "accounts.rows", false, (batch, account)->datable.copy(target, batch, account))) {
+      return false;
+    }
+    return accounts(pool, all, "accounts", true, (batch, account)->datable.copyDetails(target, batch, account));
+  }
+
+  /**
+   * Used to run a single phase of the account migration.
+   *
+   * @param pool The pool to run the batches on.
+   * @param all Every account, sorted by identifier.
+   * @param key The checkpoint key for this phase.
+   * @param count True if the accounts should be counted towards the migration's progress.
+   * @param copy Used to add the statements for an account to a batch.
+   * @return True if every batch was committed, otherwise false.
+   */
+  private boolean accounts(final ExecutorService pool, final List<Account> all, final String key,
+                           final boolean count, final BiConsumer<SQLBatch, Account> copy) throws Exception {
+
+    final String after = checkpoint.getProperty(key);
+    final List<Account> pending = new ArrayList<>();
+    for(Account account : all) {
+      if(after == null || account.getIdentifier().compareTo(after) > 0) {
+        pending.add(account);
+      }
+    }
+    if(count) {
+      totalAccounts = pending.size();
+    }
+
+    final int size = DataConfig.yaml().getInt(PATH + ".BatchSize", 500);
+    final int batches = (pending.size() + size - 1) / size;
+
+    synchronized(checkpoint) {
+      committed = new boolean[batches];
+      lastIds = new String[batches];
+      next = 0;
+    }
+
+    final List<Future<Boolean>> futures = new ArrayList<>();
+    for(int i = 0; i < batches; i++) {
+
+      final int index = i;
+      final List<Account> accountBatch = pending.subList(i * size, Math.min(pending.size(), (i + 1) * size));
+      lastIds[i] = accountBatch.get(accountBatch.size() - 1).getIdentifier();
+
+      futures.add(pool.submit(()->{
+        final SQLBatch batch = new SQLBatch();
+        for(Account account : accountBatch) {
+          copy.accept(batch, account);
+        }
+
+        if(!target.executeBatch(batch)) {
+          return false;
+        }
+
+        if(count) {
+          accounts.addAndGet(accountBatch.size());
+        }
+        commitAccounts(key, index);
+        return true;
+      }));
+    }
+
+    boolean result = true;
+    for(Future<Boolean> future : futures) {
+      result = future.get() && result;
+    }
+    return result;
+  }
+
+  /**
+   * Used to migrate every transaction, if the database TNE is using is a SQL database. Transactions
+   * are read from oldest to newest so that the checkpoint may be the cursor of the last one committed.
+   */
+  private boolean receipts() {
+    final StorageConnector<?> source = TNECore.storage().getConnector();
+    final Datable<?> datable = TNECore.storage().getEngine().datables().get(Receipt.class);
+
+    if(!(source instanceof SQLConnector) || !(datable instanceof SQLReceipt)) {
+      TNECore.log().inform("Transactions are only migrated from SQL databases, skipping them.");
+      return true;
+    }
+
+    final SQLReceipt receiptDatable = (SQLReceipt)engine.datables().get(Receipt.class);
+    final int size = DataConfig.yaml().getInt(PATH + ".BatchSize", 500);
+
+    PageCursor cursor = null;
+    synchronized(checkpoint) {
+      if(checkpoint.containsKey("receipts.time")) {
+        cursor = new PageCursor(Long.parseLong(checkpoint.getProperty("receipts.time")),
+                                checkpoint.getProperty("receipts.id"));
+      }
+    }
+
+    List<Receipt> chunk;
+    do {
+      chunk = ((SQLReceipt)datable).chunk((SQLConnector)source, cursor, size);
+      if(chunk.isEmpty()) {
+        break;
+      }
+
+      final SQLBatch batch = new SQLBatch();
+      for(Receipt receipt : chunk) {
+        receiptDatable.batch(target, batch, receipt);
+      }
+
+      if(!target.executeBatch(batch)) {
+        return false;
+      }
+
+      final Receipt last = chunk.get(chunk.size() - 1);
+      cursor = new PageCursor(last.getTime(), last.getId().toString());
+
+      receipts.addAndGet(chunk.size());
+      synchronized(checkpoint) {
+        checkpoint.setProperty("receipts.time", String.valueOf(cursor.time()));
+        checkpoint.setProperty("receipts.id", cursor.id());
+        save();
+      }
+      report();
+    } while(chunk.size() >= size);
+    return true;
+  }
+
+  private void commitAccounts(final String key, final int index) {
+    synchronized(checkpoint) {
+      committed[index] = true;
+
+      while(next < committed.length && committed[next]) {
+        checkpoint.setProperty(key, lastIds[next]);
+        next++;
+      }
+      save();
+    }
+    report();
+  }
+
+  private void report() {
+    final long now = System.currentTimeMillis();
+    synchronized(this) {
+      if(now - reported < 5000) {
+        return;
+      }
+      reported = now;
+    }
+
+    TNECore.log().inform("Migration progress: " + accounts.get() + "/" + totalAccounts + " accounts, "
+                             + receipts.get() + " transactions (" + rate() + " per second).");
+  }
+
+  private long rate() {
+    final long elapsed = Math.max(1, System.currentTimeMillis() - start);
+    return ((accounts.get() + receipts.get()) * 1000) / elapsed;
+  }
+
+  /**
+   * Used to load the checkpoint of a previous migration, if it was migrating to the same database.
+   */
+  private void load() {
+    final String signature = signature();
+
+    if(file.exists()) {
+      try(Reader reader = new FileReader(file)) {
+        checkpoint.load(reader);
+      } catch(IOException e) {
+        TNECore.log().error("Unable to read the migration checkpoint, starting from the beginning: " + e.getMessage());
+        checkpoint.clear();
+      }
+    }
+
+    if(!signature.equals(checkpoint.getProperty("target"))) {
+      checkpoint.clear();
+      checkpoint.setProperty("target", signature);
+    } else {
+      TNECore.log().inform("Resuming the previous migration from its last committed batch.");
+    }
+    TNECore.log().debug("Migration checkpoint: " + checkpoint, DebugLevel.DETAILED);
+  }
+
+  private void save() {
+    try(Writer writer = new FileWriter(file)) {
+      checkpoint.store(writer, "TNE migration checkpoint");
+    } catch(IOException e) {
+      TNECore.log().error("Unable to save the migration checkpoint: " + e.getMessage());
+    }
+  }
+
+  /**
+   * The details that identify the database being migrated to, so a checkpoint isn't reused for a
+   * different database.
+   */
+  private String signature() {
+    return DataConfig.yaml().getString(PATH + ".Type") + ":" + DataConfig.yaml().getString(PATH + ".Prefix") + ":"
+        + DataConfig.yaml().getString(PATH + ".File") + ":" + DataConfig.yaml().getString(PATH + ".SQL.Host") + ":"
+        + DataConfig.yaml().getInt(PATH + ".SQL.Port") + ":" + DataConfig.yaml().getString(PATH + ".SQL.DB");
+  }
+}
@@ -0,0 +1,39 @@
+package net.tnemc.core.io.storage.connect;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.intellij.lang.annotations.Language;
+
+/**
+ * Describes how the statements of an upsert query may be bulk loaded using PostgreSQL's COPY
+ * protocol instead of being executed one at a time. The rows are copied into a temporary staging
+ * table, and then merged into the real table with a single statement.
+ *
+ * @param stage The statement used to create the staging table, if it doesn't already exist. The
+ *              staging table should be emptied when the transaction is committed.
+ * @param copy The COPY statement used to load the staging table from CSV.
+ * @param merge The statement used to merge the staging table into the real table.
+ * @param columns The number of leading variables of each statement that are copied.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ * @see SQLConnector#executeBatch(SQLBatch)
+ */
+public record CopyStatement(@Language("SQL") String stage, @Language("SQL") String copy,
+                            @Language("SQL") String merge, int columns) {
+}
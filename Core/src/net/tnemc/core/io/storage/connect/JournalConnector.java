@@ -0,0 +1,72 @@
+package net.tnemc.core.io.storage.connect;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.TNECore;
+import net.tnemc.core.config.DataConfig;
+import net.tnemc.core.io.storage.StorageConnector;
+import net.tnemc.core.io.storage.StorageEngine;
+import net.tnemc.core.io.storage.engine.flat.AccountJournal;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Used to open the {@link AccountJournal} used by the journal {@link StorageEngine}.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class JournalConnector implements StorageConnector<AccountJournal> {
+
+  private AccountJournal journal;
+
+  /**
+   * Used to initialize a connection to the specified {@link StorageEngine}
+   */
+  @Override
+  public void initialize() {
+    journal = new AccountJournal(new File(TNECore.directory(), "journal"),
+                                 DataConfig.yaml().getLong("Data.Database.Journal.Sync", 100),
+                                 DataConfig.yaml().getLong("Data.Database.Journal.CompactSize", 16) * 1024 * 1024);
+    try {
+      journal.open();
+    } catch(IOException e) {
+      TNECore.log().error("Issue opening the journal: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Used to get the connection from the
+   *
+   * @return The connection.
+   */
+  @Override
+  public AccountJournal connection() {
+    return journal;
+  }
+
+  /**
+   * Used to force any pending journal entries to disk and close the journal.
+   */
+  public void close() {
+    if(journal != null) {
+      journal.close();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package net.tnemc.core.io.storage.connect;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Used to consume each row of a {@link ResultSet} while the connection that produced it is still
+ * open.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ * @see SQLConnector#executeStream(String, Object[], int, RowConsumer)
+ */
+@FunctionalInterface
+public interface RowConsumer {
+
+  /**
+   * Called for each row of the result. The result set is positioned on the current row, and should
+   * not be advanced by the consumer.
+   * @param row The {@link ResultSet} positioned at the current row.
+   * @throws SQLException If an issue occurs while reading the row.
+   */
+  void accept(ResultSet row) throws SQLException;
+}
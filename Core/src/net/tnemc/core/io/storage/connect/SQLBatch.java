@@ -0,0 +1,173 @@
+package net.tnemc.core.io.storage.connect;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.intellij.lang.annotations.Language;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Used to group a collection of prepared statements together so that they may be executed as
+ * JDBC batches on a single connection within a single transaction.
+ *
+ * Statements are grouped by their query string, and the groups are executed in the order in which
+ * each query was first added. This allows parent rows, such as accounts, to be written before any
+ * rows that reference them.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ * @see SQLConnector#executeBatch(SQLBatch)
+ */
+public class SQLBatch {
+
+  private final Map<String, List<Object[]>> statements = new LinkedHashMap<>();
+
+  private final List<Runnable> commitActions = new ArrayList<>();
+
+  private final List<Runnable> rollbackActions = new ArrayList<>();
+
+  /**
+   * The result consumers for queries that have at least one statement whose result is checked. Each
+   * list lines up with the query's variables in {@link #statements}, with null for unchecked ones.
+   */
+  private final Map<String, List<IntConsumer>> results = new HashMap<>();
+
+  private int size = 0;
+
+  /**
+   * Used to add a prepared statement to this batch.
+   * @param query The query string.
+   * @param variables An array of variables for the prepared statement.
+   * @return This batch, for chaining.
+   */
+  public SQLBatch add(@Language("SQL") final String query, Object[] variables) {
+    statements.computeIfAbsent(query, k->new ArrayList<>()).add(variables);
+    if(results.containsKey(query)) {
+      results.get(query).add(null);
+    }
+    size++;
+    return this;
+  }
+
+  /**
+   * Used to add a prepared statement to this batch whose number of affected rows is checked. The
+   * consumer is given the number of rows the statement changed once the batch has been committed.
+   * This is used for conditional updates, which may change nothing.
+   * @param query The query string.
+   * @param variables An array of variables for the prepared statement.
+   * @param result The consumer for the number of affected rows.
+   * @return This batch, for chaining.
+   */
+  public SQLBatch add(@Language("SQL") final String query, Object[] variables, final IntConsumer result) {
+    final List<Object[]> queryStatements = statements.computeIfAbsent(query, k->new ArrayList<>());
+    results.computeIfAbsent(query, k->new ArrayList<>(Collections.nCopies(queryStatements.size(), null)))
+        .add(result);
+    queryStatements.add(variables);
+    size++;
+    return this;
+  }
+
+  /**
+   * Used to add an action that should be run once this batch has been committed successfully. This
+   * is used for things such as clearing the dirty state of the objects that were written.
+   * @param action The action to run after the commit.
+   * @return This batch, for chaining.
+   */
+  public SQLBatch onCommit(final Runnable action) {
+    commitActions.add(action);
+    return this;
+  }
+
+  /**
+   * Used to add an action that should be run if this batch fails to commit. This is used for undoing
+   * anything that was reserved while building the batch.
+   * @param action The action to run if the batch isn't committed.
+   * @return This batch, for chaining.
+   */
+  public SQLBatch onRollback(final Runnable action) {
+    rollbackActions.add(action);
+    return this;
+  }
+
+  /**
+   * Used to add every statement from another batch to this one.
+   * @param batch The batch to merge into this batch.
+   * @return This batch, for chaining.
+   */
+  public SQLBatch merge(final SQLBatch batch) {
+    for(Map.Entry<String, List<Object[]>> entry : batch.statements.entrySet()) {
+      final List<IntConsumer> consumers = batch.results.get(entry.getKey());
+
+      for(int i = 0; i < entry.getValue().size(); i++) {
+        if(consumers != null && consumers.get(i) != null) {
+          add(entry.getKey(), entry.getValue().get(i), consumers.get(i));
+          continue;
+        }
+        add(entry.getKey(), entry.getValue().get(i));
+      }
+    }
+    commitActions.addAll(batch.commitActions);
+    rollbackActions.addAll(batch.rollbackActions);
+    return this;
+  }
+
+  /**
+   * Used to clear all statements from this batch.
+   */
+  public void clear() {
+    statements.clear();
+    commitActions.clear();
+    rollbackActions.clear();
+    results.clear();
+    size = 0;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * The total number of statements in this batch.
+   * @return The total number of statements.
+   */
+  public int size() {
+    return size;
+  }
+
+  public List<Runnable> getCommitActions() {
+    return commitActions;
+  }
+
+  public List<Runnable> getRollbackActions() {
+    return rollbackActions;
+  }
+
+  public Map<String, List<IntConsumer>> getResults() {
+    return results;
+  }
+
+  public Map<String, List<Object[]>> getStatements() {
+    return statements;
+  }
+}
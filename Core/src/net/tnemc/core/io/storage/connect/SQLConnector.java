@@ -28,15 +28,24 @@ import net.tnemc.core.io.storage.StorageConnector;
 import net.tnemc.core.io.storage.StorageEngine;
 import net.tnemc.core.io.storage.StorageManager;
 import org.intellij.lang.annotations.Language;
+import org.jetbrains.annotations.Nullable;
 
 import javax.sql.DataSource;
 import java.io.File;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
 /**
  * SQLConnector
@@ -47,10 +56,35 @@ import java.util.Map;
 public class SQLConnector implements StorageConnector<Connection> {
 
   private DataSource source;
+  private DataSource replica;
+
+  //The time at which the replica may be used again after it was found to be unavailable.
+  private volatile long replicaRetry = 0;
 
   private String sourceClass;
   private String driverClass;
 
+  private final SQLEngine engine;
+  private final String path;
+  private final String name;
+
+  public SQLConnector() {
+    this(null, "Data.Database", "TNE");
+  }
+
+  /**
+   * Used to create a connector for a database other than the one TNE is using, such as the target
+   * of a migration.
+   * @param engine The engine for the database, or null to use the engine TNE is using.
+   * @param path The configuration path in data.yml that contains the File and SQL settings.
+   * @param name The name of the connection pool.
+   */
+  public SQLConnector(@Nullable final SQLEngine engine, final String path, final String name) {
+    this.engine = engine;
+    this.path = path;
+    this.name = name;
+  }
+
   /**
    * Used to initialize a connection to the specified {@link StorageEngine}
    */
@@ -59,35 +93,81 @@ public class SQLConnector implements StorageConnector<Connection> {
 
     findDriverSource();
 
+    final HikariConfig config = config(DataConfig.yaml().getString(path + ".SQL.Host"),
+                                       DataConfig.yaml().getInt(path + ".SQL.Port"),
+                                       DataConfig.yaml().getString(path + ".SQL.DB"),
+                                       DataConfig.yaml().getString(path + ".SQL.User"),
+                                       DataConfig.yaml().getString(path + ".SQL.Password"));
+
+    config.setPoolName(name);
+    config.setMaximumPoolSize(DataConfig.yaml().getInt("Data.Pool.MaxSize"));
+    config.setConnectionTimeout(DataConfig.yaml().getLong("Data.Pool.Timeout"));
+
+    this.source = new HikariDataSource(config);
+
+    if(DataConfig.yaml().getBoolean(path + ".SQL.Replica.Enabled", false)) {
+
+      final HikariConfig replicaConfig = config(DataConfig.yaml().getString(path + ".SQL.Replica.Host", DataConfig.yaml().getString(path + ".SQL.Host")),
+                                                DataConfig.yaml().getInt(path + ".SQL.Replica.Port", DataConfig.yaml().getInt(path + ".SQL.Port")),
+                                                DataConfig.yaml().getString(path + ".SQL.Replica.DB", DataConfig.yaml().getString(path + ".SQL.DB")),
+                                                DataConfig.yaml().getString(path + ".SQL.Replica.User", DataConfig.yaml().getString(path + ".SQL.User")),
+                                                DataConfig.yaml().getString(path + ".SQL.Replica.Password", DataConfig.yaml().getString(path + ".SQL.Password")));
+
+      replicaConfig.setPoolName(name + "-Replica");
+      replicaConfig.setReadOnly(true);
+      replicaConfig.setMaximumPoolSize(DataConfig.yaml().getInt(path + ".SQL.Replica.MaxSize", 10));
+      replicaConfig.setConnectionTimeout(DataConfig.yaml().getLong(path + ".SQL.Replica.Timeout", 5000));
+
+      //Don't fail startup if the replica is down, reads will use the main database until it's back.
+      replicaConfig.setInitializationFailTimeout(-1);
+
+      try {
+        this.replica = new HikariDataSource(replicaConfig);
+      } catch(Exception e) {
+        TNECore.log().error("Unable to create the replica connection pool, reads will use the main database: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Used to build the {@link HikariConfig} for a connection pool.
+   */
+  private HikariConfig config(final String host, final int port, final String database,
+                              final String user, final String password) {
     final HikariConfig config = new HikariConfig();
 
+    //String file, String host, int port, String database
+    final String url = engine().url(
+        new File(TNECore.directory(), DataConfig.yaml().getString(path + ".File")).getAbsolutePath(),
+        host,
+        port,
+        database
+    );
+
     if(sourceClass != null) {
       config.setDataSourceClassName(sourceClass);
+
+      config.addDataSourceProperty("url", url);
+      config.addDataSourceProperty("user", user);
+      config.addDataSourceProperty("password", password);
+    } else {
+
+      //There's no data source available for this engine, so we connect using the driver instead.
+      if(driverClass != null) {
+        config.setDriverClassName(driverClass);
+      }
+      config.setJdbcUrl(url);
+      config.setUsername(user);
+      config.setPassword(password);
     }
 
-    //String file, String host, int port, String database
-    config.addDataSourceProperty("url",
-                                 ((SQLEngine)StorageManager.instance().getEngine()).url(
-                                     new File(TNECore.directory(), DataConfig.yaml().getString("Data.Database.File")).getAbsolutePath(),
-                                     DataConfig.yaml().getString("Data.Database.SQL.Host"),
-                                     DataConfig.yaml().getInt("Data.Database.SQL.Port"),
-                                     DataConfig.yaml().getString("Data.Database.SQL.DB")
-                                 ));
-
-    config.addDataSourceProperty("user",  DataConfig.yaml().getString("Data.Database.SQL.User"));
-    config.addDataSourceProperty("password",  DataConfig.yaml().getString("Data.Database.SQL.Password"));
-
-    config.setPoolName("TNE");
     config.setConnectionTestQuery("SELECT 1");
-    config.setMaximumPoolSize(DataConfig.yaml().getInt("Data.Pool.MaxSize"));
     config.setMaxLifetime(DataConfig.yaml().getInt("Data.Pool.MaxLife"));
-    config.setConnectionTimeout(DataConfig.yaml().getLong("Data.Pool.Timeout"));
 
-    for(Map.Entry<String, Object> entry : ((SQLEngine)StorageManager.instance().getEngine()).properties().entrySet()) {
+    for(Map.Entry<String, Object> entry : engine().properties().entrySet()) {
       config.addDataSourceProperty(entry.getKey(), entry.getValue());
     }
-
-    this.source = new HikariDataSource(config);
+    return config;
   }
 
   /**
@@ -101,6 +181,43 @@ public class SQLConnector implements StorageConnector<Connection> {
     return source.getConnection();
   }
 
+  /**
+   * Used to get a connection for a read-only query. This is a connection to the replica if one is
+   * configured and available, otherwise it's a connection to the main database.
+   *
+   * Reads of data that may have just been written, such as loading an account, should use
+   * {@link #connection()} instead, since the replica may not have caught up yet.
+   *
+   * @return The connection.
+   */
+  public Connection readConnection() throws SQLException {
+    if(replica != null && System.currentTimeMillis() >= replicaRetry) {
+      try {
+        return replica.getConnection();
+      } catch(SQLException e) {
+        replicaFailed(e);
+      }
+    }
+    return connection();
+  }
+
+  /**
+   * Used to determine if read-only queries are currently being sent to a replica.
+   *
+   * @return True if a replica is configured and available, otherwise false.
+   */
+  public boolean replicaAvailable() {
+    return replica != null && System.currentTimeMillis() >= replicaRetry;
+  }
+
+  private void replicaFailed(final Exception e) {
+    final long retry = DataConfig.yaml().getLong(path + ".SQL.Replica.Retry", 30);
+    replicaRetry = System.currentTimeMillis() + (retry * 1000);
+
+    TNECore.log().error("The replica is unavailable, reads will use the main database for the next "
+                            + retry + " seconds: " + e.getMessage());
+  }
+
   public boolean checkVersion() {
     boolean result = true;
 
@@ -121,52 +238,373 @@ public class SQLConnector implements StorageConnector<Connection> {
   }
 
   /**
-   * Used to execute a prepared query.
+   * The default number of rows the driver should fetch at a time when reading a result.
+   * @return The default fetch size.
+   */
+  public int fetchSize() {
+    return DataConfig.yaml().getInt("Data.Database.FetchSize", 1000);
+  }
+
+  /**
+   * Used to execute a prepared query, and map each resulting row using a {@link RowMapper}.
    * @param query The query string.
    * @param variables An array of variables for the prepared statement.
-   * @return The {@link ResultSet}.
+   * @param mapper The {@link RowMapper} used to map each row.
+   * @return A list containing the mapped rows, or an empty list if the query failed.
    */
-  public ResultSet executeQuery(@Language("SQL") final String query, Object[] variables) {
-    try(Connection connection = connection();
-        PreparedStatement statement = connection.prepareStatement(query)) {
+  public <T> List<T> executeQuery(@Language("SQL") final String query, Object[] variables,
+                                  final RowMapper<T> mapper) {
+    return executeQuery(query, variables, fetchSize(), mapper);
+  }
 
-      for(int i = 0; i < variables.length; i++) {
-        statement.setObject((i + 1), variables[i]);
+  /**
+   * Used to execute a prepared query, and map each resulting row using a {@link RowMapper}.
+   * @param query The query string.
+   * @param variables An array of variables for the prepared statement.
+   * @param fetchSize The number of rows the driver should fetch at a time.
+   * @param mapper The {@link RowMapper} used to map each row.
+   * @return A list containing the mapped rows, or an empty list if the query failed.
+   */
+  public <T> List<T> executeQuery(@Language("SQL") final String query, Object[] variables,
+                                  final int fetchSize, final RowMapper<T> mapper) {
+    return executeQuery(query, variables, fetchSize, false, mapper);
+  }
+
+  /**
+   * Used to execute a read-only prepared query, and map each resulting row using a
+   * {@link RowMapper}. The query is sent to the replica if one is available.
+   * @param query The query string.
+   * @param variables An array of variables for the prepared statement.
+   * @param mapper The {@link RowMapper} used to map each row.
+   * @return A list containing the mapped rows, or an empty list if the query failed.
+   * @see #readConnection()
+   */
+  public <T> List<T> executeRead(@Language("SQL") final String query, Object[] variables,
+                                 final RowMapper<T> mapper) {
+    return executeQuery(query, variables, fetchSize(), true, mapper);
+  }
+
+  /**
+   * Used to execute a prepared query, and map each resulting row using a {@link RowMapper}.
+   * @param query The query string.
+   * @param variables An array of variables for the prepared statement.
+   * @param fetchSize The number of rows the driver should fetch at a time.
+   * @param readOnly True if the query should be sent to the replica if one is available. If the query
+   *                 fails on the replica, it's retried on the main database.
+   * @param mapper The {@link RowMapper} used to map each row.
+   * @return A list containing the mapped rows, or an empty list if the query failed.
+   */
+  public <T> List<T> executeQuery(@Language("SQL") final String query, Object[] variables,
+                                  final int fetchSize, final boolean readOnly, final RowMapper<T> mapper) {
+    final List<T> rows = new ArrayList<>();
+    final boolean replicated = readOnly && replicaAvailable();
+
+    if(executeStream(query, variables, fetchSize, readOnly, (row)->rows.add(mapper.map(row)))) {
+      return rows;
+    }
+    rows.clear();
+
+    if(replicated) {
+      replicaFailed(new SQLException("Read-only query failed on the replica."));
+
+      if(!executeStream(query, variables, fetchSize, false, (row)->rows.add(mapper.map(row)))) {
+        rows.clear();
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Used to execute a prepared query, and stream each resulting row to a {@link RowConsumer} using
+   * the default fetch size.
+   * @param query The query string.
+   * @param variables An array of variables for the prepared statement.
+   * @param consumer The {@link RowConsumer} that each row is passed to.
+   * @return True if the query was read completely, otherwise false.
+   */
+  public boolean executeStream(@Language("SQL") final String query, Object[] variables,
+                               final RowConsumer consumer) {
+    return executeStream(query, variables, fetchSize(), consumer);
+  }
+
+  /**
+   * Used to execute a prepared query, and stream each resulting row to a {@link RowConsumer}. The
+   * connection is kept open for the duration of the iteration, and the fetch size is passed to the
+   * driver so that large results may be read with server-side cursors rather than all at once.
+   * @param query The query string.
+   * @param variables An array of variables for the prepared statement.
+   * @param fetchSize The number of rows the driver should fetch at a time.
+   * @param consumer The {@link RowConsumer} that each row is passed to.
+   * @return True if the query was read completely, otherwise false.
+   */
+  public boolean executeStream(@Language("SQL") final String query, Object[] variables,
+                               final int fetchSize, final RowConsumer consumer) {
+    return executeStream(query, variables, fetchSize, false, consumer);
+  }
+
+  /**
+   * Used to execute a read-only prepared query, and stream each resulting row to a
+   * {@link RowConsumer} using the default fetch size. The query is sent to the replica if one is
+   * available.
+   * @param query The query string.
+   * @param variables An array of variables for the prepared statement.
+   * @param consumer The {@link RowConsumer} that each row is passed to.
+   * @return True if the query was read completely, otherwise false.
+   * @see #readConnection()
+   */
+  public boolean executeReadStream(@Language("SQL") final String query, Object[] variables,
+                                   final RowConsumer consumer) {
+    return executeStream(query, variables, fetchSize(), true, consumer);
+  }
+
+  /**
+   * Used to execute a prepared query, and stream each resulting row to a {@link RowConsumer}. The
+   * connection is kept open for the duration of the iteration, and the fetch size is passed to the
+   * driver so that large results may be read with server-side cursors rather than all at once.
+   * @param query The query string.
+   * @param variables An array of variables for the prepared statement.
+   * @param fetchSize The number of rows the driver should fetch at a time.
+   * @param readOnly True if the query should be sent to the replica if one is available.
+   * @param consumer The {@link RowConsumer} that each row is passed to.
+   * @return True if the query was read completely, otherwise false.
+   */
+  public boolean executeStream(@Language("SQL") final String query, Object[] variables,
+                               final int fetchSize, final boolean readOnly, final RowConsumer consumer) {
+    try(Connection connection = (readOnly)? readConnection() : connection()) {
+
+      //Some drivers, such as postgres, only use cursors outside of auto commit mode.
+      final boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+
+      try(PreparedStatement statement = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+                                                                    ResultSet.CONCUR_READ_ONLY)) {
+
+        statement.setFetchSize(fetchSize);
+        for(int i = 0; i < variables.length; i++) {
+          statement.setObject((i + 1), variables[i]);
+        }
+
+        try(ResultSet result = statement.executeQuery()) {
+          while(result.next()) {
+            consumer.accept(result);
+          }
+        }
+        connection.commit();
+        return true;
+
+      } finally {
+        connection.setAutoCommit(autoCommit);
       }
-      return statement.executeQuery();
 
     } catch(SQLException e) {
       e.printStackTrace();
     }
-    return null;
+    return false;
   }
 
   /**
    * Used to execute a prepared update.
    * @param query The query string.
    * @param variables An array of variables for the prepared statement.
+   * @return The number of rows changed by the update, or 0 if the update failed.
    */
-  public void executeUpdate(@Language("SQL") final String query, Object[] variables) {
+  public int executeUpdate(@Language("SQL") final String query, Object[] variables) {
     try(Connection connection = connection();
         PreparedStatement statement = connection.prepareStatement(query)) {
 
       for(int i = 0; i < variables.length; i++) {
         statement.setObject((i + 1), variables[i]);
       }
-      statement.executeUpdate();
+      return statement.executeUpdate();
+
+    } catch(SQLException e) {
+      e.printStackTrace();
+    }
+    return 0;
+  }
+
+  /**
+   * Used to execute a {@link SQLBatch batch} of prepared updates. Every statement in the batch is
+   * executed as a JDBC batch on a single connection within a single transaction. If any statement
+   * fails the entire transaction is rolled back and the batch's rollback actions are run, otherwise the
+   * batch's commit actions are run, followed by the result consumers of any checked statements.
+   * @param batch The {@link SQLBatch batch} to execute.
+   * @return True if the batch was committed, otherwise false.
+   */
+  public boolean executeBatch(final SQLBatch batch) {
+    if(batch.isEmpty()) {
+      batch.getCommitActions().forEach(Runnable::run);
+      return true;
+    }
+
+    final List<Runnable> results = new ArrayList<>();
+    final int copyThreshold = DataConfig.yaml().getInt("Data.Database.CopyThreshold", 500);
+    boolean committed = false;
+
+    try(Connection connection = connection()) {
+
+      final boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+
+      try {
+        for(Map.Entry<String, List<Object[]>> entry : batch.getStatements().entrySet()) {
+
+          final List<IntConsumer> consumers = batch.getResults().get(entry.getKey());
+
+          //Large groups of upserts are bulk loaded if the dialect supports it.
+          final CopyStatement copy = (consumers == null && entry.getValue().size() >= copyThreshold)?
+              dialect().copy(entry.getKey()) : null;
+          if(copy != null) {
+            copy(connection, copy, entry.getValue());
+            continue;
+          }
+
+          try(PreparedStatement statement = connection.prepareStatement(entry.getKey())) {
+
+            for(int v = 0; v < entry.getValue().size(); v++) {
+              final Object[] variables = entry.getValue().get(v);
+              for(int i = 0; i < variables.length; i++) {
+                statement.setObject((i + 1), variables[i]);
+              }
+
+              if(consumers == null) {
+                statement.addBatch();
+                continue;
+              }
+
+              //Checked statements are executed one at a time, because drivers that rewrite batches
+              //don't report the rows changed by each statement.
+              final int count = statement.executeUpdate();
+              final IntConsumer consumer = consumers.get(v);
+              if(consumer != null) {
+                results.add(()->consumer.accept(count));
+              }
+            }
+
+            if(consumers == null) {
+              statement.executeBatch();
+            }
+          }
+        }
+        connection.commit();
+        committed = true;
+
+      } catch(SQLException e) {
+        connection.rollback();
+        TNECore.log().error("Issue executing SQL batch of " + batch.size() + " statements. Rolled back.");
+        e.printStackTrace();
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
 
     } catch(SQLException e) {
       e.printStackTrace();
     }
+
+    //These are run once the connection is released, as they may need a connection of their own.
+    if(committed) {
+      batch.getCommitActions().forEach(Runnable::run);
+      results.forEach(Runnable::run);
+      return true;
+    }
+
+    batch.getRollbackActions().forEach(Runnable::run);
+    return false;
+  }
+
+  /**
+   * Used to bulk load the statements of an upsert query using PostgreSQL's COPY protocol. The rows
+   * are copied into the staging table as CSV, and then merged into the real table.
+   *
+   * The driver is accessed reflectively, as it is provided by the server rather than bundled.
+   *
+   * @param connection The connection to use, which should be within a transaction.
+   * @param copy The {@link CopyStatement} for the query.
+   * @param rows The variables of each statement.
+   * @throws SQLException If an issue occurs while loading the rows.
+   */
+  private void copy(final Connection connection, final CopyStatement copy, final List<Object[]> rows) throws SQLException {
+
+    final StringBuilder csv = new StringBuilder();
+    for(Object[] variables : rows) {
+      for(int i = 0; i < copy.columns(); i++) {
+        if(i > 0) csv.append(',');
+
+        //Null values are left unquoted, so that they aren't loaded as empty strings.
+        if(variables[i] == null) continue;
+
+        final String value = (variables[i] instanceof BigDecimal)? ((BigDecimal)variables[i]).toPlainString() :
+                                                                   variables[i].toString();
+        csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+      }
+      csv.append('\n');
+    }
+
+    try(Statement statement = connection.createStatement()) {
+      statement.execute(copy.stage());
+
+      final Class<?> pgConnection = Class.forName("org.postgresql.PGConnection");
+      final Object api = pgConnection.getMethod("getCopyAPI").invoke(connection.unwrap(pgConnection));
+      api.getClass().getMethod("copyIn", String.class, Reader.class).invoke(api, copy.copy(), new StringReader(csv.toString()));
+
+      statement.executeUpdate(copy.merge());
+
+    } catch(InvocationTargetException e) {
+      if(e.getCause() instanceof SQLException) {
+        throw (SQLException)e.getCause();
+      }
+      throw new SQLException("Issue copying " + rows.size() + " rows.", e.getCause());
+    } catch(ReflectiveOperationException e) {
+      throw new SQLException("The PostgreSQL driver doesn't support COPY.", e);
+    }
+  }
+
+  /**
+   * Used to determine if a table has a column. This is used to add columns to tables that were
+   * created by older versions.
+   * @param table The name of the table.
+   * @param column The name of the column.
+   * @return True if the table has the column, otherwise false.
+   */
+  public boolean hasColumn(final String table, final String column) {
+    try(Connection connection = connection();
+        ResultSet result = connection.getMetaData().getColumns(connection.getCatalog(), null, table, column)) {
+
+      return result.next();
+    } catch(SQLException e) {
+      e.printStackTrace();
+    }
+    return false;
   }
 
   public Dialect dialect() {
-    return ((SQLEngine)StorageManager.instance().getEngine()).dialect();
+    return engine().dialect();
+  }
+
+  /**
+   * The engine for the database this connector connects to.
+   * @return The engine for this connector.
+   */
+  public SQLEngine engine() {
+    return (engine == null)? (SQLEngine)StorageManager.instance().getEngine() : engine;
+  }
+
+  /**
+   * Used to close the connection pools for this connector.
+   */
+  public void close() {
+    if(source instanceof HikariDataSource) {
+      ((HikariDataSource)source).close();
+    }
+
+    if(replica instanceof HikariDataSource) {
+      ((HikariDataSource)replica).close();
+    }
   }
 
   private void findDriverSource() {
 
-    for(final String source : ((SQLEngine)StorageManager.instance().getEngine()).dataSource()) {
+    for(final String source : engine().dataSource()) {
 
       if(sourceClass != null) {
         break;
@@ -180,7 +618,7 @@ public class SQLConnector implements StorageConnector<Connection> {
       } catch(Exception ignore) {}
     }
 
-    for(final String driver : ((SQLEngine)StorageManager.instance().getEngine()).driver()) {
+    for(final String driver : engine().driver()) {
 
       if(driverClass != null) {
         break;
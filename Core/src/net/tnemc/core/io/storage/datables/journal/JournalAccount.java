@@ -0,0 +1,283 @@
+package net.tnemc.core.io.storage.datables.journal;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.TNECore;
+import net.tnemc.core.account.Account;
+import net.tnemc.core.account.PlayerAccount;
+import net.tnemc.core.account.SharedAccount;
+import net.tnemc.core.account.holdings.HoldingsEntry;
+import net.tnemc.core.api.callback.account.AccountLoadCallback;
+import net.tnemc.core.api.callback.account.AccountSaveCallback;
+import net.tnemc.core.api.response.AccountAPIResponse;
+import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.config.DataConfig;
+import net.tnemc.core.io.storage.Datable;
+import net.tnemc.core.io.storage.ExtractDatable;
+import net.tnemc.core.io.storage.StorageConnector;
+import net.tnemc.core.io.storage.connect.JournalConnector;
+import net.tnemc.core.io.storage.engine.flat.AccountJournal;
+import net.tnemc.core.io.storage.engine.flat.JournalRecord;
+import net.tnemc.core.manager.id.UUIDPair;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JournalAccount
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class JournalAccount implements Datable<Account>, ExtractDatable {
+
+  /**
+   * The class that is represented by the O parameter.
+   *
+   * @return The class that represents the parameter.
+   */
+  @Override
+  public Class<? extends Account> clazz() {
+    return Account.class;
+  }
+
+  /**
+   * Used to purge player accounts that haven't been online within the configured amount of days.
+   *
+   * @param connector The storage connector to use for this transaction.
+   */
+  @Override
+  public void purge(StorageConnector<?> connector) {
+    if(connector instanceof JournalConnector) {
+      final long before = System.currentTimeMillis()
+          - TimeUnit.DAYS.toMillis(DataConfig.yaml().getInt("Data.Purge.Accounts.Days"));
+
+      final int purged = ((JournalConnector)connector).connection().purge(before);
+      TNECore.log().debug("Purged " + purged + " accounts from the journal.", DebugLevel.STANDARD);
+    }
+  }
+
+  /**
+   * Used to store this object. Only the parts of the account that have changed since they were last
+   * persisted are appended to the journal.
+   *
+   * @param connector The storage connector to use for this transaction.
+   * @param account    The object to be stored.
+   */
+  @Override
+  public void store(StorageConnector<?> connector, @NotNull Account account, @Nullable String identifier) {
+    if(connector instanceof JournalConnector) {
+
+      //Only accounts that have changed since they were last persisted need to be written.
+      if(!account.isDirty()) {
+        return;
+      }
+
+      final AccountJournal journal = ((JournalConnector)connector).connection();
+
+      if(account.isInfoDirty()) {
+        final long revision = account.getRevision();
+
+        try {
+          if(!journal.append(JournalRecord.INFO, JournalRecord.info(account))) {
+            return;
+          }
+          account.markPersisted(revision);
+        } catch(IOException e) {
+          TNECore.log().error("Issue encoding account for the journal. Account: " + account.getName());
+          return;
+        }
+      }
+
+      if(JournalHoldings.store(journal, account)) {
+
+        final AccountSaveCallback callback = new AccountSaveCallback(account);
+        TNECore.callbacks().call(callback);
+      }
+    }
+  }
+
+  /**
+   * Used to store all objects of this type.
+   *
+   * @param connector The storage connector to use for this transaction.
+   */
+  @Override
+  public void storeAll(StorageConnector<?> connector, @Nullable String identifier) {
+    for(Account account : TNECore.eco().account().getAccounts().values()) {
+      store(connector, account, account.getIdentifier());
+    }
+  }
+
+  /**
+   * Used to load this object.
+   *
+   * @param connector  The storage connector to use for this transaction.
+   * @param identifier The identifier used to identify the object to load.
+   *
+   * @return The object to load.
+   */
+  @Override
+  public Optional<Account> load(StorageConnector<?> connector, @NotNull String identifier) {
+    if(connector instanceof JournalConnector) {
+
+      final Optional<JournalRecord> record = ((JournalConnector)connector).connection().find(identifier);
+      if(record.isPresent()) {
+        return load(record.get());
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Used to create an account from its {@link JournalRecord record}.
+   *
+   * @param record The record to load.
+   * @return An Optional containing the account, if it was loaded.
+   */
+  private Optional<Account> load(final JournalRecord record) {
+    if(!record.hasInfo()) {
+      TNECore.log().debug("Skipping journal record without account information. Account: "
+                              + record.getIdentifier(), DebugLevel.STANDARD);
+      return Optional.empty();
+    }
+
+    //create our account from the type
+    final AccountAPIResponse response = TNECore.eco().account().createAccount(record.getIdentifier(),
+                                                                              record.getName(),
+                                                                              !(record.getType().equalsIgnoreCase("player") ||
+                                                                                  record.getType().equalsIgnoreCase("bedrock")),
+                                                                              false);
+    if(!response.getResponse().success() || response.getAccount().isEmpty()) {
+      return Optional.empty();
+    }
+
+    //load our basic account information
+    final Account account = response.getAccount().get();
+
+    account.setStatus(TNECore.eco().account().findStatus(record.getStatus()));
+    account.setCreationDate(record.getCreationDate());
+    account.setPin(record.getPin());
+
+    if(account instanceof PlayerAccount) {
+      ((PlayerAccount)account).setLastOnline(record.getLastOnline());
+    }
+
+    if(account instanceof SharedAccount) {
+      if(record.getOwner() != null) {
+        ((SharedAccount)account).setOwner(UUID.fromString(record.getOwner()));
+      }
+
+      for(Map.Entry<String, Map<String, Boolean>> member : record.getMembers().entrySet()) {
+        for(Map.Entry<String, Boolean> permission : member.getValue().entrySet()) {
+
+          ((SharedAccount)account).addPermission(UUID.fromString(member.getKey()), permission.getKey(),
+                                                 permission.getValue());
+        }
+      }
+    }
+
+    for(HoldingsEntry entry : JournalHoldings.entries(record)) {
+      account.getWallet().setHoldings(entry);
+    }
+
+    //Everything we just loaded matches what is stored, so there's nothing to save.
+    account.markPersisted();
+
+    final AccountLoadCallback callback = new AccountLoadCallback(account);
+    TNECore.callbacks().call(callback);
+
+    return Optional.of(account);
+  }
+
+  /**
+   * Used to read the stored state of an account, without creating the account or adding it to the
+   * account manager.
+   *
+   * @param connector The storage connector to use for this transaction.
+   * @param identifier The identifier of the account.
+   *
+   * @return An Optional containing the stored state of the account, if it's stored.
+   */
+  @Override
+  public Optional<Extracted> extract(StorageConnector<?> connector, @NotNull String identifier) {
+    if(connector instanceof JournalConnector) {
+
+      final Optional<JournalRecord> record = ((JournalConnector)connector).connection().find(identifier);
+      if(record.isPresent() && record.get().hasInfo()) {
+        return Optional.of(new Extracted(identifier, record.get().getName(), record.get().getType(),
+                                         JournalHoldings.entries(record.get())));
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Used to get the identifiers of every stored account, without loading the accounts.
+   *
+   * @param connector The storage connector to use for this transaction.
+   *
+   * @return A collection containing the identifiers.
+   */
+  @Override
+  public Collection<String> identifiers(StorageConnector<?> connector) {
+    final Collection<String> identifiers = new ArrayList<>();
+
+    if(connector instanceof JournalConnector) {
+      for(JournalRecord record : ((JournalConnector)connector).connection().records()) {
+        identifiers.add(record.getIdentifier());
+      }
+    }
+    return identifiers;
+  }
+
+  /**
+   * Used to load all objects of this type.
+   *
+   * @param connector The storage connector to use for this transaction.
+   *
+   * @return A collection containing the objects loaded.
+   */
+  @Override
+  public Collection<Account> loadAll(StorageConnector<?> connector, @Nullable String identifier) {
+    final Collection<Account> accounts = new ArrayList<>();
+
+    if(connector instanceof JournalConnector) {
+      for(JournalRecord record : ((JournalConnector)connector).connection().records()) {
+
+        final Optional<Account> loaded = load(record);
+        if(loaded.isPresent()) {
+          accounts.add(loaded.get());
+
+          if(loaded.get() instanceof PlayerAccount) {
+            TNECore.eco().account().uuidProvider().store(new UUIDPair(((PlayerAccount)loaded.get()).getUUID(),
+                                                                      loaded.get().getName()));
+          }
+        }
+      }
+    }
+    return accounts;
+  }
+}
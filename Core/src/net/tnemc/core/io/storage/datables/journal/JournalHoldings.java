@@ -0,0 +1,175 @@
+package net.tnemc.core.io.storage.datables.journal;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.EconomyManager;
+import net.tnemc.core.TNECore;
+import net.tnemc.core.account.Account;
+import net.tnemc.core.account.holdings.HoldingsEntry;
+import net.tnemc.core.io.storage.Datable;
+import net.tnemc.core.io.storage.StorageConnector;
+import net.tnemc.core.io.storage.connect.JournalConnector;
+import net.tnemc.core.io.storage.engine.flat.AccountJournal;
+import net.tnemc.core.io.storage.engine.flat.JournalRecord;
+import net.tnemc.core.utils.Identifier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * JournalHoldings
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class JournalHoldings implements Datable<HoldingsEntry> {
+
+  /**
+   * The class that is represented by the O parameter.
+   *
+   * @return The class that represents the parameter.
+   */
+  @Override
+  public Class<? extends HoldingsEntry> clazz() {
+    return HoldingsEntry.class;
+  }
+
+  /**
+   * USed to purge the objects of this datable.
+   *
+   * @param connector The storage connector to use for this transaction.
+   */
+  @Override
+  public void purge(StorageConnector<?> connector) {
+    //This isn't required, it'll be deleted with the account.
+  }
+
+  /**
+   * Used to store this object.
+   *
+   * @param connector The storage connector to use for this transaction.
+   * @param object    The object to be stored.
+   */
+  @Override
+  public void store(StorageConnector<?> connector, @NotNull HoldingsEntry object, @Nullable String identifier) {
+    if(connector instanceof JournalConnector && identifier != null) {
+      store(((JournalConnector)connector).connection(), identifier, object);
+    }
+  }
+
+  /**
+   * Used to store all objects of this type.
+   *
+   * @param connector The storage connector to use for this transaction.
+   */
+  @Override
+  public void storeAll(StorageConnector<?> connector, @Nullable String identifier) {
+    if(connector instanceof JournalConnector && identifier != null) {
+
+      final Optional<Account> account = TNECore.eco().account().findAccount(identifier);
+      account.ifPresent(value->store(((JournalConnector)connector).connection(), value));
+    }
+  }
+
+  /**
+   * Used to append every dirty {@link HoldingsEntry entry} of an account to the journal.
+   *
+   * @param journal The journal to append to.
+   * @param account The account whose holdings should be stored.
+   * @return True if every dirty entry was written, otherwise false.
+   */
+  public static boolean store(final AccountJournal journal, final Account account) {
+    boolean stored = true;
+    for(HoldingsEntry entry : account.getWallet().dirtyList()) {
+      stored = store(journal, account.getIdentifier(), entry) && stored;
+    }
+    return stored;
+  }
+
+  private static boolean store(final AccountJournal journal, final String identifier, final HoldingsEntry entry) {
+    final long revision = entry.getRevision();
+
+    try {
+      if(journal.append(JournalRecord.HOLDINGS, JournalRecord.holdings(identifier, entry))) {
+        entry.markPersisted(revision);
+        return true;
+      }
+    } catch(IOException e) {
+      TNECore.log().error("Issue encoding holdings for the journal. Account: " + identifier);
+    }
+    return false;
+  }
+
+  /**
+   * Used to create the {@link HoldingsEntry entries} contained in a {@link JournalRecord record}.
+   *
+   * @param record The record.
+   * @return The list of entries.
+   */
+  public static List<HoldingsEntry> entries(final JournalRecord record) {
+    final List<HoldingsEntry> entries = new ArrayList<>();
+
+    for(JournalRecord.Holding holding : record.getHoldings().values()) {
+      if(TNECore.eco().currency().findCurrency(holding.currency()).isEmpty()) {
+        EconomyManager.invalidCurrencies().add(holding.currency().toString());
+      }
+
+      entries.add(new HoldingsEntry(holding.region(), holding.currency(), holding.amount(),
+                                    Identifier.fromID(holding.handler())));
+    }
+    return entries;
+  }
+
+  /**
+   * Used to load this object.
+   *
+   * @param connector  The storage connector to use for this transaction.
+   * @param identifier The identifier used to identify the object to load.
+   *
+   * @return The object to load.
+   * @throws UnsupportedOperationException as this method is not valid for holdings.
+   */
+  @Override
+  public Optional<HoldingsEntry> load(StorageConnector<?> connector, @NotNull String identifier) {
+    throw new UnsupportedOperationException("load for HoldingsEntry is not a supported operation.");
+  }
+
+  /**
+   * Used to load all objects of this type.
+   *
+   * @param connector The storage connector to use for this transaction.
+   *
+   * @return A collection containing the objects loaded.
+   */
+  @Override
+  public Collection<HoldingsEntry> loadAll(StorageConnector<?> connector, @Nullable String identifier) {
+    if(connector instanceof JournalConnector && identifier != null) {
+
+      final Optional<JournalRecord> record = ((JournalConnector)connector).connection().find(identifier);
+      if(record.isPresent()) {
+        return entries(record.get());
+      }
+    }
+    return new ArrayList<>();
+  }
+}
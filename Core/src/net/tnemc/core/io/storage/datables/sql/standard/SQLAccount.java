@@ -28,17 +28,19 @@ import net.tnemc.core.api.callback.account.AccountSaveCallback;
 import net.tnemc.core.api.response.AccountAPIResponse;
 import net.tnemc.core.compatibility.log.DebugLevel;
 import net.tnemc.core.config.DataConfig;
+import net.tnemc.core.config.MainConfig;
+import net.tnemc.core.io.storage.BatchDatable;
 import net.tnemc.core.io.storage.Datable;
+import net.tnemc.core.io.storage.ExtractDatable;
 import net.tnemc.core.io.storage.StorageConnector;
+import net.tnemc.core.io.storage.connect.SQLBatch;
 import net.tnemc.core.io.storage.connect.SQLConnector;
-import net.tnemc.core.manager.id.UUIDPair;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -50,7 +52,7 @@ import java.util.UUID;
  * @author creatorfromhell
  * @since 0.1.2.0
  */
-public class SQLAccount implements Datable<Account> {
+public class SQLAccount implements Datable<Account>, BatchDatable<Account>, ExtractDatable {
 
   /**
    * The class that is represented by the O parameter.
@@ -87,66 +89,20 @@ public class SQLAccount implements Datable<Account> {
   public void store(StorageConnector<?> connector, @NotNull Account account, @Nullable String identifier) {
     if(connector instanceof SQLConnector) {
 
+      if(!account.isDirty()) {
+        return;
+      }
+
       TNECore.log().debug("Saving Account with ID: " + identifier, DebugLevel.STANDARD);
 
-      //store the basic account information(accounts table)
-      ((SQLConnector)connector).executeUpdate(((SQLConnector)connector).dialect().saveAccount(),
-                                              new Object[] {
-                                                  account.getIdentifier(),
-                                                  account.getName(),
-                                                  (account.type()),
-                                                  new java.sql.Timestamp(account.getCreationDate()),
-                                                  account.getPin(),
-                                                  account.getStatus().identifier(),
-                                                  account.getName(),
-                                                  account.getPin(),
-                                                  account.getStatus().identifier(),
-                                              });
-
-      if(account instanceof PlayerAccount) {
-
-        //Player account storage.(players_accounts table)
-        ((SQLConnector)connector).executeUpdate(((SQLConnector)connector).dialect().savePlayer(),
-                                                new Object[]{
-                                                    account.getIdentifier(),
-                                                    new java.sql.Timestamp(((PlayerAccount)account).getLastOnline()),
-                                                    new java.sql.Timestamp(((PlayerAccount)account).getLastOnline())
-                                                });
+      final SQLBatch batch = new SQLBatch();
+      batch((SQLConnector)connector, batch, account);
 
-      }
+      if(((SQLConnector)connector).executeBatch(batch)) {
 
-      if(account instanceof SharedAccount) {
-
-        //Non-player accounts.(non_players_accounts table)
-        final String owner = (((SharedAccount)account).getOwner() == null)? account.getIdentifier() :
-                                                       ((SharedAccount)account).getOwner().toString();
-        ((SQLConnector)connector).executeUpdate(((SQLConnector)connector).dialect().saveNonPlayer(),
-                                                new Object[]{
-                                                    account.getIdentifier(),
-                                                    owner,
-                                                    owner
-                                                });
-
-        //Account members(account_members table)
-        for(Member member : ((SharedAccount)account).getMembers().values()) {
-          for(Map.Entry<String, Boolean> entry : member.getPermissions().entrySet()) {
-            ((SQLConnector)connector).executeUpdate(((SQLConnector)connector).dialect().saveMembers(),
-                                                    new Object[]{
-                                                        member.getId().toString(),
-                                                        account.getIdentifier(),
-                                                        entry.getKey(),
-                                                        entry.getValue(),
-                                                        entry.getValue()
-                                                    }
-            );
-          }
-        }
+        final AccountSaveCallback callback = new AccountSaveCallback(account);
+        TNECore.callbacks().call(callback);
       }
-
-      final AccountSaveCallback callback = new AccountSaveCallback(account);
-      TNECore.callbacks().call(callback);
-
-      TNECore.storage().storeAll(account.getIdentifier());
     }
   }
 
@@ -158,8 +114,215 @@ public class SQLAccount implements Datable<Account> {
   @Override
   public void storeAll(StorageConnector<?> connector, @Nullable String identifier) {
     if(connector instanceof SQLConnector) {
+
+      final int size = DataConfig.yaml().getInt("Data.Database.BatchSize", 500);
+
+      final SQLBatch batch = new SQLBatch();
+      final List<Account> pending = new ArrayList<>();
+
       for(Account account : TNECore.eco().account().getAccounts().values()) {
-        store(connector, account, account.getIdentifier());
+
+        //Only accounts that have changed since they were last persisted need to be written.
+        if(!account.isDirty()) {
+          continue;
+        }
+
+        batch((SQLConnector)connector, batch, account);
+        pending.add(account);
+
+        if(pending.size() >= size) {
+          flush((SQLConnector)connector, batch, pending);
+        }
+      }
+      flush((SQLConnector)connector, batch, pending);
+    }
+  }
+
+  /**
+   * Used to store a collection of accounts together in a single batched transaction. Accounts that
+   * haven't changed since they were last persisted are skipped.
+   *
+   * @param connector The storage connector to use for this transaction.
+   * @param objects The accounts to be stored.
+   * @return True if all the accounts were stored, otherwise false.
+   */
+  @Override
+  public boolean storeBatch(StorageConnector<?> connector, @NotNull Collection<Account> objects) {
+    if(connector instanceof SQLConnector) {
+
+      final SQLBatch batch = new SQLBatch();
+      final List<Account> pending = new ArrayList<>();
+
+      for(Account account : objects) {
+        if(account.isDirty()) {
+          batch((SQLConnector)connector, batch, account);
+          pending.add(account);
+        }
+      }
+      return pending.isEmpty() || flush((SQLConnector)connector, batch, pending);
+    }
+    return false;
+  }
+
+  /**
+   * Used to execute a batch built from multiple accounts, and call the save callback for each of
+   * them once the batch has been committed.
+   *
+   * @param connector The connector to use.
+   * @param batch The batch to execute. This is cleared afterwards.
+   * @param pending The accounts that are contained in the batch. This is cleared afterwards.
+   */
+  private boolean flush(final SQLConnector connector, final SQLBatch batch, final List<Account> pending) {
+    final boolean executed = connector.executeBatch(batch);
+    if(executed) {
+      for(Account account : pending) {
+
+        final AccountSaveCallback callback = new AccountSaveCallback(account);
+        TNECore.callbacks().call(callback);
+      }
+    }
+    batch.clear();
+    pending.clear();
+    return executed;
+  }
+
+  /**
+   * Used to add all the statements required to store an account, including its holdings, to a
+   * {@link SQLBatch batch}. Only the parts of the account that have changed since they were last
+   * persisted are added, and their dirty state is cleared once the batch has been committed.
+   *
+   * @param connector The connector to use.
+   * @param batch The batch to add the statements to.
+   * @param account The account to store.
+   */
+  public void batch(final SQLConnector connector, final SQLBatch batch, @NotNull final Account account) {
+
+    if(account.isInfoDirty()) {
+      final long revision = account.getRevision();
+
+      batchInfo(connector, batch, account);
+      batch.onCommit(()->account.markPersisted(revision));
+    }
+
+    //Holdings(holdings table)
+    SQLHoldings.batch(connector, batch, account);
+  }
+
+  /**
+   * Used to add the statement required to copy an account's row in the accounts table to a
+   * {@link SQLBatch batch} for a database other than the one TNE is using. The rest of the account
+   * references this row, so it is copied first, using {@link #copyDetails}.
+   *
+   * @param connector The connector for the database the account is copied to.
+   * @param batch The batch to add the statements to.
+   * @param account The account to copy.
+   */
+  public void copy(final SQLConnector connector, final SQLBatch batch, @NotNull final Account account) {
+    batchAccount(connector, batch, account);
+  }
+
+  /**
+   * Used to add all the statements required to copy the rest of an account, including its holdings,
+   * to a {@link SQLBatch batch} for a database other than the one TNE is using. Everything is added
+   * whether it has changed or not, and the account's dirty state is left untouched. Owners and members
+   * reference other accounts, so every account must already have been copied using {@link #copy}.
+   *
+   * @param connector The connector for the database the account is copied to.
+   * @param batch The batch to add the statements to.
+   * @param account The account to copy.
+   */
+  public void copyDetails(final SQLConnector connector, final SQLBatch batch, @NotNull final Account account) {
+    batchDetails(connector, batch, account);
+
+    //Holdings(holdings table)
+    SQLHoldings.copy(connector, batch, account);
+  }
+
+  /**
+   * Used to add the statements required to store an account's information, excluding its holdings,
+   * to a {@link SQLBatch batch}.
+   *
+   * @param connector The connector to use.
+   * @param batch The batch to add the statements to.
+   * @param account The account to store.
+   */
+  private void batchInfo(final SQLConnector connector, final SQLBatch batch, @NotNull final Account account) {
+    batchAccount(connector, batch, account);
+    batchDetails(connector, batch, account);
+  }
+
+  /**
+   * Used to add the statement required to store an account's row in the accounts table to a
+   * {@link SQLBatch batch}.
+   *
+   * @param connector The connector to use.
+   * @param batch The batch to add the statement to.
+   * @param account The account to store.
+   */
+  private void batchAccount(final SQLConnector connector, final SQLBatch batch, @NotNull final Account account) {
+
+    //store the basic account information(accounts table)
+    batch.add(connector.dialect().saveAccount(),
+              new Object[] {
+                  account.getIdentifier(),
+                  account.getName(),
+                  (account.type()),
+                  new java.sql.Timestamp(account.getCreationDate()),
+                  account.getPin(),
+                  account.getStatus().identifier(),
+                  account.getName(),
+                  account.getPin(),
+                  account.getStatus().identifier(),
+              });
+  }
+
+  /**
+   * Used to add the statements required to store an account's player, non-player and member rows to
+   * a {@link SQLBatch batch}. These rows reference the account's row in the accounts table.
+   *
+   * @param connector The connector to use.
+   * @param batch The batch to add the statements to.
+   * @param account The account to store.
+   */
+  private void batchDetails(final SQLConnector connector, final SQLBatch batch, @NotNull final Account account) {
+
+    if(account instanceof PlayerAccount) {
+
+      //Player account storage.(players_accounts table)
+      batch.add(connector.dialect().savePlayer(),
+                new Object[]{
+                    account.getIdentifier(),
+                    new java.sql.Timestamp(((PlayerAccount)account).getLastOnline()),
+                    new java.sql.Timestamp(((PlayerAccount)account).getLastOnline())
+                });
+
+    }
+
+    if(account instanceof SharedAccount) {
+
+      //Non-player accounts.(non_players_accounts table)
+      final String owner = (((SharedAccount)account).getOwner() == null)? account.getIdentifier() :
+                                                     ((SharedAccount)account).getOwner().toString();
+      batch.add(connector.dialect().saveNonPlayer(),
+                new Object[]{
+                    account.getIdentifier(),
+                    owner,
+                    owner
+                });
+
+      //Account members(account_members table)
+      for(Member member : ((SharedAccount)account).getMembers().values()) {
+        for(Map.Entry<String, Boolean> entry : member.getPermissions().entrySet()) {
+          batch.add(connector.dialect().saveMembers(),
+                    new Object[]{
+                        member.getId().toString(),
+                        account.getIdentifier(),
+                        entry.getKey(),
+                        entry.getValue(),
+                        entry.getValue()
+                    }
+          );
+        }
       }
     }
   }
@@ -176,82 +339,56 @@ public class SQLAccount implements Datable<Account> {
   public Optional<Account> load(StorageConnector<?> connector, @NotNull String identifier) {
     if(connector instanceof SQLConnector) {
 
-      Account account = null;
+      final SQLConnector sql = (SQLConnector)connector;
 
       //Loading/creating our account object.
-      try(ResultSet result = ((SQLConnector)connector).executeQuery(((SQLConnector)connector).dialect().loadAccount(),
-                                                                    new Object[] {
-                                                                        identifier
-                                                                    })) {
-        if(result.next()) {
-          final String type = result.getString("account_type");
-
-          //create our account from the type
-          final AccountAPIResponse response = TNECore.eco().account().createAccount(identifier,
-                                                                                    result.getString("username"),
-                                                                                    !(type.equalsIgnoreCase("player") ||
-                                                                                     type.equalsIgnoreCase("bedrock")));
-          if(response.getResponse().success()) {
-
-            //load our basic account information
-            if(response.getAccount().isPresent()) {
-              account = response.getAccount().get();
-
-              account.setStatus(TNECore.eco().account().findStatus(result.getString("status")));
-              account.setCreationDate(result.getTimestamp("created").getTime());
-              account.setPin(result.getString("pin"));
-            }
-          }
+      final List<Account> loaded = sql.executeQuery(sql.dialect().loadAccount(), new Object[] {
+          identifier
+      }, (result)->{
+        final String type = result.getString("account_type");
+
+        //create our account from the type
+        final AccountAPIResponse response = TNECore.eco().account().createAccount(identifier,
+                                                                                  result.getString("username"),
+                                                                                  !(type.equalsIgnoreCase("player") ||
+                                                                                   type.equalsIgnoreCase("bedrock")),
+                                                                                  false);
+        if(response.getResponse().success() && response.getAccount().isPresent()) {
+
+          //load our basic account information
+          final Account created = response.getAccount().get();
+
+          created.setStatus(TNECore.eco().account().findStatus(result.getString("status")));
+          created.setCreationDate(result.getTimestamp("created").getTime());
+          created.setPin(result.getString("pin"));
+          return created;
         }
+        return null;
+      });
 
-      } catch(SQLException e) {
-        e.printStackTrace();
-      }
+      final Account account = (loaded.isEmpty())? null : loaded.get(0);
 
       if(account != null) {
 
         //Load our player account info
         if(account instanceof PlayerAccount) {
-          try(ResultSet result = ((SQLConnector)connector).executeQuery(((SQLConnector)connector).dialect().loadPlayer(),
-                                                                        new Object[] {
-                                                                            identifier
-                                                                        })) {
-            if(result.next()) {
-              ((PlayerAccount)account).setLastOnline(result.getTimestamp("last_online").getTime());
-            }
-          } catch(SQLException e) {
-            e.printStackTrace();
-          }
+          sql.executeStream(sql.dialect().loadPlayer(), new Object[] {
+              identifier
+          }, (result)->((PlayerAccount)account).setLastOnline(result.getTimestamp("last_online").getTime()));
         }
 
         //load our shared account info
         if(account instanceof SharedAccount) {
-          try(ResultSet result = ((SQLConnector)connector).executeQuery(((SQLConnector)connector).dialect().loadNonPlayer(),
-                                                                        new Object[] {
-                                                                            identifier
-                                                                        })) {
-            if(result.next()) {
-              ((SharedAccount)account).setOwner(UUID.fromString(result.getString("owner")));
-            }
-          } catch(SQLException e) {
-            e.printStackTrace();
-          }
+          sql.executeStream(sql.dialect().loadNonPlayer(), new Object[] {
+              identifier
+          }, (result)->((SharedAccount)account).setOwner(UUID.fromString(result.getString("owner"))));
 
           //Load our members for shared accounts
-          try(ResultSet result = ((SQLConnector)connector).executeQuery(((SQLConnector)connector).dialect().loadMembers(),
-                                                                        new Object[] {
-                                                                            identifier
-                                                                        })) {
-            while(result.next()) {
-              ((SharedAccount)account).addPermission(UUID.fromString(result.getString("uid")),
-                                                     result.getString("perm"),
-                                                     result.getBoolean("perm_value")
-              );
-            }
-          } catch(SQLException e) {
-            e.printStackTrace();
-          }
-
+          sql.executeStream(sql.dialect().loadMembers(), new Object[] {
+              identifier
+          }, (result)->((SharedAccount)account).addPermission(UUID.fromString(result.getString("uid")),
+                                                              result.getString("perm"),
+                                                              result.getBoolean("perm_value")));
         }
 
         Collection<HoldingsEntry> holdings = TNECore.storage().loadAll(HoldingsEntry.class, identifier);
@@ -259,6 +396,9 @@ public class SQLAccount implements Datable<Account> {
           account.getWallet().setHoldings(entry);
         }
 
+        //Everything we just loaded matches what is stored, so there's nothing to save.
+        account.markPersisted();
+
         final AccountLoadCallback callback = new AccountLoadCallback(account);
         TNECore.callbacks().call(callback);
       }
@@ -269,7 +409,52 @@ public class SQLAccount implements Datable<Account> {
   }
 
   /**
-   * Used to load all objects of this type.
+   * Used to read the stored state of an account, without creating the account or adding it to the
+   * account manager.
+   *
+   * @param connector The storage connector to use for this transaction.
+   * @param identifier The identifier of the account.
+   *
+   * @return An Optional containing the stored state of the account, if it's stored.
+   */
+  @Override
+  public Optional<Extracted> extract(StorageConnector<?> connector, @NotNull String identifier) {
+    if(connector instanceof SQLConnector) {
+
+      final SQLConnector sql = (SQLConnector)connector;
+      final List<Extracted> extracted = sql.executeQuery(sql.dialect().loadAccount(), new Object[] {
+          identifier
+      }, (result)->new Extracted(identifier, result.getString("username"), result.getString("account_type"),
+                                 new ArrayList<>()));
+
+      if(!extracted.isEmpty()) {
+        extracted.get(0).holdings().addAll(TNECore.storage().loadAll(HoldingsEntry.class, identifier));
+        return Optional.of(extracted.get(0));
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Used to get the identifiers of every stored account, without loading the accounts.
+   *
+   * @param connector The storage connector to use for this transaction.
+   *
+   * @return A collection containing the identifiers.
+   */
+  @Override
+  public Collection<String> identifiers(StorageConnector<?> connector) {
+    if(connector instanceof SQLConnector) {
+
+      final SQLConnector sql = (SQLConnector)connector;
+      return sql.executeQuery(sql.dialect().loadAccounts(), new Object[] {}, (result)->result.getString("uid"));
+    }
+    return new ArrayList<>();
+  }
+
+  /**
+   * Used to load all objects of this type. Rather than loading each account individually, each table
+   * is streamed once and the rows are joined to their accounts in memory by their identifier.
    *
    * @param connector The storage connector to use for this transaction.
    *
@@ -277,30 +462,83 @@ public class SQLAccount implements Datable<Account> {
    */
   @Override
   public Collection<Account> loadAll(StorageConnector<?> connector, @Nullable String identifier) {
-    final Collection<Account> accounts = new ArrayList<>();
+    final Map<String, Account> accounts = new HashMap<>();
 
     if(connector instanceof SQLConnector) {
 
-      final List<String> ids = new ArrayList<>();
-      try(ResultSet result = ((SQLConnector)connector).executeQuery(((SQLConnector)connector).dialect().loadAccounts(),
-                                                          new Object[]{})) {
-        while(result.next()) {
-          ids.add(result.getString("uid"));
+      final SQLConnector sql = (SQLConnector)connector;
+      final int fetch = sql.fetchSize();
+
+      //Accounts are only loaded from the replica if it's known to be caught up when TNE starts.
+      final boolean replica = DataConfig.yaml().getBoolean("Data.Database.SQL.Replica.StartupLoad", false);
+
+      //Load our basic account information(accounts table)
+      sql.executeStream(sql.dialect().loadAccounts(), new Object[] {}, fetch, replica, (result)->{
+        final String id = result.getString("uid");
+        final String type = result.getString("account_type");
+
+        //create our account from the type
+        final AccountAPIResponse response = TNECore.eco().account().createAccount(id,
+                                                                                  result.getString("username"),
+                                                                                  !(type.equalsIgnoreCase("player") ||
+                                                                                      type.equalsIgnoreCase("bedrock")),
+                                                                                  false);
+        if(response.getResponse().success() && response.getAccount().isPresent()) {
+
+          final Account account = response.getAccount().get();
+          account.setStatus(TNECore.eco().account().findStatus(result.getString("status")));
+          account.setCreationDate(result.getTimestamp("created").getTime());
+          account.setPin(result.getString("pin"));
+
+          accounts.put(id, account);
         }
+      });
 
-      } catch(SQLException e) {
-        e.printStackTrace();
-      }
+      //Load our player account info(players_accounts table)
+      sql.executeStream(sql.dialect().loadAllPlayers(), new Object[] {}, fetch, replica, (result)->{
+        final Account account = accounts.get(result.getString("uid"));
+        if(account instanceof PlayerAccount) {
+          ((PlayerAccount)account).setLastOnline(result.getTimestamp("last_online").getTime());
+        }
+      });
 
-      for(String id : ids) {
+      //Load our shared account info(non_players_accounts table)
+      sql.executeStream(sql.dialect().loadAllNonPlayers(), new Object[] {}, fetch, replica, (result)->{
+        final Account account = accounts.get(result.getString("uid"));
+        if(account instanceof SharedAccount) {
+          ((SharedAccount)account).setOwner(UUID.fromString(result.getString("owner")));
+        }
+      });
 
-        final Optional<Account> loaded = load(connector, id);
-        if(loaded.isPresent()) {
-          accounts.add(loaded.get());
-          TNECore.eco().account().uuidProvider().store(new UUIDPair(UUID.fromString(loaded.get().getIdentifier()), loaded.get().getName()));
+      //Load our members for shared accounts(account_members table)
+      sql.executeStream(sql.dialect().loadAllMembers(), new Object[] {}, fetch, replica, (result)->{
+        final Account account = accounts.get(result.getString("account"));
+        if(account instanceof SharedAccount) {
+          ((SharedAccount)account).addPermission(UUID.fromString(result.getString("uid")),
+                                                 result.getString("perm"),
+                                                 result.getBoolean("perm_value"));
+        }
+      });
+
+      //Load our holdings for this server(holdings table)
+      sql.executeStream(sql.dialect().loadAllHoldings(),
+                        new Object[] { MainConfig.yaml().getString("Core.Server.Name") }, fetch, replica, (result)->{
+        final Account account = accounts.get(result.getString("uid"));
+        if(account != null) {
+          account.getWallet().setHoldings(SQLHoldings.versioned(result));
         }
+      });
+
+      for(Account account : accounts.values()) {
+
+        //Everything we just loaded matches what is stored, so there's nothing to save.
+        account.markPersisted();
+
+        final AccountLoadCallback callback = new AccountLoadCallback(account);
+        TNECore.callbacks().call(callback);
       }
+      TNECore.log().inform("Loaded " + accounts.size() + " accounts.");
     }
-    return accounts;
+    return accounts.values();
   }
-}
\ No newline at end of file
+}
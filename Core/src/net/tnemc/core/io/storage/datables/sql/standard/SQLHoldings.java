@@ -21,24 +21,29 @@ package net.tnemc.core.io.storage.datables.sql.standard;
 import net.tnemc.core.EconomyManager;
 import net.tnemc.core.TNECore;
 import net.tnemc.core.account.Account;
-import net.tnemc.core.account.holdings.CurrencyHoldings;
 import net.tnemc.core.account.holdings.HoldingsEntry;
-import net.tnemc.core.account.holdings.RegionHoldings;
+import net.tnemc.core.account.holdings.Wallet;
 import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.config.DataConfig;
 import net.tnemc.core.config.MainConfig;
 import net.tnemc.core.io.storage.Datable;
 import net.tnemc.core.io.storage.StorageConnector;
+import net.tnemc.core.io.storage.connect.SQLBatch;
 import net.tnemc.core.io.storage.connect.SQLConnector;
 import net.tnemc.core.utils.Identifier;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.function.IntConsumer;
 
 /**
  * SQLHoldings
@@ -78,16 +83,11 @@ public class SQLHoldings implements Datable<HoldingsEntry> {
   public void store(StorageConnector<?> connector, @NotNull HoldingsEntry object, @Nullable String identifier) {
     if(connector instanceof SQLConnector && identifier != null) {
 
-      ((SQLConnector)connector).executeUpdate(((SQLConnector)connector).dialect().saveHoldings(),
-                                              new Object[] {
-                                                  identifier,
-                                                  MainConfig.yaml().getString("Core.Server.Name"),
-                                                  object.getRegion(),
-                                                  object.getCurrency().toString(),
-                                                  object.getHandler().asID(),
-                                                  object.getAmount(),
-                                                  object.getAmount()
-                                              });
+      final Optional<Account> account = TNECore.eco().account().findAccount(identifier);
+
+      final SQLBatch batch = new SQLBatch();
+      batch((SQLConnector)connector, batch, object, identifier, account.map(Account::getWallet).orElse(null));
+      ((SQLConnector)connector).executeBatch(batch);
     }
   }
 
@@ -102,16 +102,269 @@ public class SQLHoldings implements Datable<HoldingsEntry> {
 
       final Optional<Account> account = TNECore.eco().account().findAccount(identifier);
       if(account.isPresent()) {
-        for(RegionHoldings region : account.get().getWallet().getHoldings().values()) {
-          for(CurrencyHoldings currency : region.getHoldings().values()) {
-            for(HoldingsEntry entry : currency.getHoldings().values()) {
-              store(connector, entry, identifier);
-            }
-          }
-        }
+
+        final SQLBatch batch = new SQLBatch();
+        batch((SQLConnector)connector, batch, account.get());
+        ((SQLConnector)connector).executeBatch(batch);
+      }
+    }
+  }
+
+  /**
+   * Used to add the statements required to store every dirty {@link HoldingsEntry} of an account to
+   * a {@link SQLBatch batch}.
+   *
+   * @param connector The connector to use.
+   * @param batch The batch to add the statements to.
+   * @param account The account whose holdings should be stored.
+   */
+  public static void batch(final SQLConnector connector, final SQLBatch batch, @NotNull final Account account) {
+    for(HoldingsEntry entry : account.getWallet().dirtyList()) {
+      batch(connector, batch, entry, account.getIdentifier(), account.getWallet());
+    }
+  }
+
+  /**
+   * Used to add the statements required to copy every {@link HoldingsEntry} of an account to a
+   * {@link SQLBatch batch} for a database other than the one TNE is using. Each entry is saved as an
+   * exact value, and its dirty state is left untouched.
+   *
+   * @param connector The connector for the database the holdings are copied to.
+   * @param batch The batch to add the statements to.
+   * @param account The account whose holdings should be copied.
+   */
+  public static void copy(final SQLConnector connector, final SQLBatch batch, @NotNull final Account account) {
+    for(HoldingsEntry entry : account.getWallet().entryList()) {
+      batch.add(connector.dialect().saveHoldings(),
+                new Object[] {
+                    account.getIdentifier(),
+                    MainConfig.yaml().getString("Core.Server.Name"),
+                    entry.getRegion(),
+                    entry.getCurrency().toString(),
+                    entry.getHandler().asID(),
+                    entry.getAmount(),
+                    entry.getAmount()
+                });
+    }
+  }
+
+  /**
+   * Used to add the statement required to store a {@link HoldingsEntry} to a {@link SQLBatch batch}.
+   * The entry's dirty state is cleared once the batch has been committed.
+   *
+   * If versioning is enabled, the stored row is only overwritten if it is still at the version the
+   * entry is based on. Otherwise, if delta saving is enabled, and the dialect supports it, the change
+   * made to the entry since it was last stored is added to the stored value rather than overwriting
+   * it. Both let multiple servers change the same holdings without overwriting each other's changes.
+   *
+   * @param connector The connector to use.
+   * @param batch The batch to add the statement to.
+   * @param entry The entry to store.
+   * @param identifier The identifier of the account that the entry belongs to.
+   * @param wallet The wallet the entry belongs to, which tracks the amount last stored for the entry.
+   *               If this is null, the entry is always saved as an exact value.
+   */
+  public static void batch(final SQLConnector connector, final SQLBatch batch,
+                           @NotNull final HoldingsEntry entry, @NotNull final String identifier,
+                           @Nullable final Wallet wallet) {
+    batch(connector, batch, entry, identifier, wallet, 0);
+  }
+
+  private static void batch(final SQLConnector connector, final SQLBatch batch,
+                            @NotNull final HoldingsEntry entry, @NotNull final String identifier,
+                            @Nullable final Wallet wallet, final int attempt) {
+
+    final long revision = entry.getRevision();
+    final BigDecimal amount = entry.getAmount();
+
+    if(wallet != null && DataConfig.yaml().getBoolean("Data.Database.Versioned", false)) {
+      versioned(connector, batch, entry, identifier, wallet, attempt);
+      return;
+    }
+
+    final String delta = connector.dialect().saveHoldingsDelta();
+    if(wallet != null && delta != null && DataConfig.yaml().getBoolean("Data.Database.Delta", false)) {
+
+      final BigDecimal change = wallet.reserveStored(entry, amount);
+      if(change.signum() == 0) {
+        batch.onCommit(()->entry.markPersisted(revision));
+        return;
       }
 
+      batch.add(delta,
+                new Object[] {
+                    identifier,
+                    MainConfig.yaml().getString("Core.Server.Name"),
+                    entry.getRegion(),
+                    entry.getCurrency().toString(),
+                    entry.getHandler().asID(),
+                    amount,
+                    change
+                });
+      batch.onCommit(()->entry.markPersisted(revision));
+
+      //The change wasn't written, so it needs to be written during the next save.
+      batch.onRollback(()->wallet.shiftStored(entry.getRegion(), entry.getCurrency(), entry.getHandler(),
+                                              change.negate()));
+      return;
     }
+
+    batch.add(connector.dialect().saveHoldings(),
+              new Object[] {
+                  identifier,
+                  MainConfig.yaml().getString("Core.Server.Name"),
+                  entry.getRegion(),
+                  entry.getCurrency().toString(),
+                  entry.getHandler().asID(),
+                  amount,
+                  amount
+              });
+    batch.onCommit(()->{
+      entry.markPersisted(revision);
+      if(wallet != null) {
+        wallet.reserveStored(entry, amount);
+      }
+    });
+  }
+
+  /**
+   * Used to add a conditional save of a {@link HoldingsEntry} to a {@link SQLBatch batch}. A new
+   * row is only created if it doesn't exist, and an existing row is only overwritten if it is still
+   * at the version the entry is based on. If the row was changed by another server, it is reloaded
+   * and the save is retried.
+   *
+   * @param connector The connector to use.
+   * @param batch The batch to add the statement to.
+   * @param entry The entry to store.
+   * @param identifier The identifier of the account that the entry belongs to.
+   * @param wallet The wallet the entry belongs to.
+   * @param attempt The number of times this save has been retried.
+   */
+  private static void versioned(final SQLConnector connector, final SQLBatch batch,
+                                @NotNull final HoldingsEntry entry, @NotNull final String identifier,
+                                @NotNull final Wallet wallet, final int attempt) {
+
+    final long revision = entry.getRevision();
+    final long version = entry.getVersion();
+    final BigDecimal amount = entry.getAmount();
+
+    final String region = entry.getRegion();
+    final UUID currency = entry.getCurrency();
+    final Identifier handler = entry.getHandler();
+    final String server = MainConfig.yaml().getString("Core.Server.Name");
+
+    final IntConsumer result = (count)->{
+      if(count > 0) {
+        entry.markPersisted(revision);
+        entry.setVersion(version + 1);
+        wallet.getHoldings(region, currency, handler).ifPresent(current->current.setVersion(version + 1));
+        wallet.reserveStored(entry, amount);
+        return;
+      }
+      conflict(connector, identifier, wallet, region, currency, handler, attempt + 1);
+    };
+
+    if(version == 0) {
+      batch.add(connector.dialect().createHoldingsVersion(),
+                new Object[] {
+                    identifier,
+                    server,
+                    region,
+                    currency.toString(),
+                    handler.asID(),
+                    amount
+                }, result);
+      return;
+    }
+
+    batch.add(connector.dialect().saveHoldingsVersion(),
+              new Object[] {
+                  amount,
+                  identifier,
+                  server,
+                  region,
+                  currency.toString(),
+                  handler.asID(),
+                  version
+              }, result);
+  }
+
+  /**
+   * Used to resolve a versioned save that conflicted with a change made by another server. The row
+   * is reloaded, and the other server's change, the difference between the stored amount and the
+   * amount this server last stored, is added to the live balance while transactions are kept from
+   * applying. Transactions that worked out their ending balances before the merge add their change on
+   * top of it, rather than overwriting it. The save is then retried until it succeeds or the retry
+   * limit is reached. Once the limit is reached the entry is left dirty, and is tried again during
+   * the next save.
+   *
+   * @param connector The connector to use.
+   * @param identifier The identifier of the account that the entry belongs to.
+   * @param wallet The wallet the entry belongs to.
+   * @param region The region of the entry.
+   * @param currency The currency of the entry.
+   * @param handler The handler of the entry.
+   * @param attempt The number of times this save has been retried.
+   */
+  private static void conflict(final SQLConnector connector, final String identifier, final Wallet wallet,
+                               final String region, final UUID currency, final Identifier handler,
+                               final int attempt) {
+
+    final List<StoredRow> rows = connector.executeQuery(connector.dialect().loadHolding(), new Object[] {
+        identifier,
+        MainConfig.yaml().getString("Core.Server.Name"),
+        region,
+        currency.toString(),
+        handler.asID()
+    }, (row)->new StoredRow(row.getBigDecimal("holdings"), row.getLong("version")));
+
+    final StoredRow stored = (rows.isEmpty())? new StoredRow(BigDecimal.ZERO, 0) : rows.get(0);
+
+    final HoldingsEntry merged;
+
+    //Transactions apply their balances under the read lock, so none are applied while merging.
+    final Lock lock = TNECore.eco().transaction().snapshotLock().writeLock();
+    lock.lock();
+    try {
+      final Optional<HoldingsEntry> current = wallet.getHoldings(region, currency, handler);
+      if(current.isEmpty()) {
+        return;
+      }
+
+      //The other server's change is added to the live balance. An entry that was never stored has no
+      //change of its own to keep, so it takes the stored amount.
+      final BigDecimal amount = wallet.getStored(region, currency, handler)
+          .map(base->current.get().getAmount().add(stored.amount().subtract(base)))
+          .orElse(stored.amount());
+
+      merged = new HoldingsEntry(region, currency, amount, handler);
+      merged.setVersion(stored.version());
+      if(amount.compareTo(stored.amount()) == 0) {
+        merged.markPersisted(merged.getRevision());
+      }
+
+      wallet.reserveStored(merged, stored.amount());
+      wallet.setHoldings(merged);
+    } finally {
+      lock.unlock();
+    }
+
+    TNECore.log().debug("Holdings for " + identifier + " were changed by another server. Reloaded at version "
+                            + stored.version() + ".", DebugLevel.DETAILED);
+
+    if(!merged.isDirty()) {
+      return;
+    }
+
+    if(attempt > DataConfig.yaml().getInt("Data.Database.VersionRetries", 3)) {
+      TNECore.log().debug("Holdings for " + identifier + " kept conflicting, and will be saved during the next save.",
+                          DebugLevel.STANDARD);
+      return;
+    }
+
+    final SQLBatch retry = new SQLBatch();
+    versioned(connector, retry, merged, identifier, wallet, attempt);
+    connector.executeBatch(retry);
   }
 
   /**
@@ -141,33 +394,61 @@ public class SQLHoldings implements Datable<HoldingsEntry> {
 
     if(connector instanceof SQLConnector && identifier != null) {
       TNECore.log().debug("SQLHoldings-loadAll-Account ID:" + identifier, DebugLevel.DEVELOPER);
-      try(ResultSet result = ((SQLConnector)connector).executeQuery(((SQLConnector)connector).dialect().loadHoldings(),
-                                                                    new Object[] {
-                                                                        identifier,
-                                                                        MainConfig.yaml().getString("Core.Server.Name")
-                                                                    })) {
-        while(result.next()) {
-
-          final String currency = result.getString("currency");
-
-          if(TNECore.eco().currency().findCurrency(currency).isEmpty()) {
-            EconomyManager.invalidCurrencies().add(currency);
-          }
-
-          //region, currency, amount, type
-          final HoldingsEntry entry = new HoldingsEntry(result.getString("region"),
-                                                        UUID.fromString(currency),
-                                                        result.getBigDecimal("holdings"),
-                                                        Identifier.fromID(result.getString("holdings_type")));
-
-          TNECore.log().debug("SQLHoldings-loadAll-Entry ID:" + entry.getHandler(), DebugLevel.DEVELOPER);
-          TNECore.log().debug("SQLHoldings-loadAll-Entry AMT:" + entry.getAmount().toPlainString(), DebugLevel.DEVELOPER);
-          holdings.add(entry);
-        }
-      } catch(SQLException e) {
-        e.printStackTrace();
+      final SQLConnector sql = (SQLConnector)connector;
+      holdings.addAll(sql.executeQuery(sql.dialect().loadHoldings(), new Object[] {
+          identifier,
+          MainConfig.yaml().getString("Core.Server.Name")
+      }, SQLHoldings::versioned));
+
+      for(HoldingsEntry entry : holdings) {
+        TNECore.log().debug("SQLHoldings-loadAll-Entry ID:" + entry.getHandler(), DebugLevel.DEVELOPER);
+        TNECore.log().debug("SQLHoldings-loadAll-Entry AMT:" + entry.getAmount().toPlainString(), DebugLevel.DEVELOPER);
       }
     }
     return holdings;
   }
-}
\ No newline at end of file
+
+  /**
+   * Used to build a {@link HoldingsEntry} from the current row of a holdings result.
+   *
+   * @param result The result, positioned at the row to read.
+   *
+   * @return The {@link HoldingsEntry} for the row.
+   * @throws SQLException If an issue occurs while reading the row.
+   */
+  public static HoldingsEntry entry(final ResultSet result) throws SQLException {
+
+    final String currency = result.getString("currency");
+
+    if(TNECore.eco().currency().findCurrency(currency).isEmpty()) {
+      EconomyManager.invalidCurrencies().add(currency);
+    }
+
+    //region, currency, amount, type
+    return new HoldingsEntry(result.getString("region"),
+                             UUID.fromString(currency),
+                             result.getBigDecimal("holdings"),
+                             Identifier.fromID(result.getString("holdings_type")));
+  }
+
+  /**
+   * Used to build a {@link HoldingsEntry} from the current row of a versioned holdings result, such
+   * as the holdings table.
+   *
+   * @param result The result, positioned at the row to read.
+   *
+   * @return The {@link HoldingsEntry} for the row, with its stored version.
+   * @throws SQLException If an issue occurs while reading the row.
+   */
+  public static HoldingsEntry versioned(final ResultSet result) throws SQLException {
+    final HoldingsEntry entry = entry(result);
+    entry.setVersion(result.getLong("version"));
+    return entry;
+  }
+
+  /**
+   * The amount and version of a stored holdings row.
+   */
+  private record StoredRow(BigDecimal amount, long version) {
+  }
+}
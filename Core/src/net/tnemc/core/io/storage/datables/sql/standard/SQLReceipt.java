@@ -21,19 +21,36 @@ import net.tnemc.core.TNECore;
 import net.tnemc.core.account.Account;
 import net.tnemc.core.account.holdings.HoldingsEntry;
 import net.tnemc.core.account.holdings.modify.HoldingsModifier;
+import net.tnemc.core.account.holdings.modify.HoldingsOperation;
+import net.tnemc.core.actions.ActionSource;
+import net.tnemc.core.actions.source.PlayerSource;
+import net.tnemc.core.actions.source.PluginSource;
 import net.tnemc.core.config.DataConfig;
 import net.tnemc.core.config.MainConfig;
+import net.tnemc.core.io.storage.BatchDatable;
 import net.tnemc.core.io.storage.Datable;
+import net.tnemc.core.io.storage.PageCursor;
+import net.tnemc.core.io.storage.PagedDatable;
+import net.tnemc.core.io.storage.ReceiptPartitions;
 import net.tnemc.core.io.storage.StorageConnector;
+import net.tnemc.core.io.storage.connect.SQLBatch;
 import net.tnemc.core.io.storage.connect.SQLConnector;
+import net.tnemc.core.manager.id.UUIDProvider;
 import net.tnemc.core.transaction.Receipt;
 import net.tnemc.core.transaction.TransactionParticipant;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 /**
  * SQLReceipt
@@ -41,7 +58,23 @@ import java.util.Optional;
  * @author creatorfromhell
  * @since 0.1.2.0
  */
-public class SQLReceipt implements Datable<Receipt> {
+public class SQLReceipt implements Datable<Receipt>, PagedDatable<Receipt>, BatchDatable<Receipt> {
+
+  /**
+   * The participant type used for the participant that the transaction is from.
+   */
+  public static final String FROM = "from";
+
+  /**
+   * The participant type used for the participant that the transaction is to.
+   */
+  public static final String TO = "to";
+
+  /**
+   * The maximum amount of receipts whose details are loaded with a single query.
+   */
+  private static final int DETAILS_BATCH = 500;
+
   /**
    * The class that is represented by the O parameter.
    *
@@ -60,10 +93,7 @@ public class SQLReceipt implements Datable<Receipt> {
   @Override
   public void purge(StorageConnector<?> connector) {
     if(connector instanceof SQLConnector) {
-      ((SQLConnector)connector).executeUpdate(((SQLConnector)connector).dialect().accountPurge(
-                                                  DataConfig.yaml().getInt("Data.Purge.Transaction.Days")
-                                              ),
-                                              new Object[] {});
+      ReceiptPartitions.purge((SQLConnector)connector, DataConfig.yaml().getInt("Data.Purge.Transaction.Days"));
     }
   }
 
@@ -77,92 +107,141 @@ public class SQLReceipt implements Datable<Receipt> {
   public void store(StorageConnector<?> connector, @NotNull Receipt object, @Nullable String identifier) {
     if(connector instanceof SQLConnector) {
 
-      //Store the receipt info
-      ((SQLConnector)connector).executeUpdate(((SQLConnector)connector).dialect().saveReceipt(),
-                                              new Object[]{
-                                                  object.getId().toString(),
-                                                  new java.sql.Timestamp(object.getTime()),
-                                                  object.getType(),
-                                                  object.getSource().name(),
-                                                  object.getSource().type(),
-                                                  object.isArchive(),
-                                                  object.isVoided(),
-                                                  object.isArchive(),
-                                                  object.isVoided()
-                                              });
-
-      storeParticipant(connector, object.getFrom(), object.getModifierFrom(), object.getId().toString());
-      storeParticipant(connector, object.getTo(), object.getModifierTo(), object.getId().toString());
+      final SQLBatch batch = new SQLBatch();
+      batch((SQLConnector)connector, batch, object);
+      ((SQLConnector)connector).executeBatch(batch);
+    }
+  }
+
+  /**
+   * Used to store a collection of receipts within a single batched transaction.
+   *
+   * @param connector The storage connector to use for this transaction.
+   * @param objects The receipts to be stored.
+   *
+   * @return True if all the receipts were stored, otherwise false.
+   */
+  @Override
+  public boolean storeBatch(StorageConnector<?> connector, @NotNull Collection<Receipt> objects) {
+    if(connector instanceof SQLConnector) {
+
+      final SQLBatch batch = new SQLBatch();
+      for(Receipt receipt : objects) {
+        batch((SQLConnector)connector, batch, receipt);
+      }
+      return ((SQLConnector)connector).executeBatch(batch);
     }
+    return false;
+  }
+
+  /**
+   * Used to add all the statements required to store a receipt to a {@link SQLBatch batch}.
+   *
+   * @param connector The connector to use.
+   * @param batch The batch to add the statements to.
+   * @param object The receipt to store.
+   */
+  public void batch(final SQLConnector connector, final SQLBatch batch, @NotNull Receipt object) {
+
+    //Store the receipt info
+    batch.add(connector.dialect().saveReceipt(),
+              new Object[]{
+                  object.getId().toString(),
+                  new java.sql.Timestamp(object.getTime()),
+                  object.getType(),
+                  object.getSource().name(),
+                  object.getSource().type(),
+                  object.isArchive(),
+                  object.isVoided(),
+                  object.isArchive(),
+                  object.isVoided()
+              });
+
+    storeParticipant(connector, batch, object.getFrom(), object.getModifierFrom(), object, FROM);
+    storeParticipant(connector, batch, object.getTo(), object.getModifierTo(), object, TO);
   }
 
-  private void storeParticipant(StorageConnector<?> connector, @Nullable TransactionParticipant participant,
-                                @Nullable HoldingsModifier modifier, @NotNull String identifier) {
+  private void storeParticipant(final SQLConnector connector, final SQLBatch batch,
+                                @Nullable TransactionParticipant participant,
+                                @Nullable HoldingsModifier modifier, @NotNull Receipt receipt,
+                                final String type) {
+
+    if(participant != null && modifier != null) {
 
-    if(connector instanceof SQLConnector && participant != null && modifier != null) {
+      final String identifier = receipt.getId().toString();
+      final Timestamp performed = new Timestamp(receipt.getTime());
 
-      //store participant info
-      ((SQLConnector)connector).executeUpdate(((SQLConnector)connector).dialect().saveParticipant(),
-                                              new Object[]{
-                                                  identifier,
-                                                  participant.getId(),
-                                                  "account",
-                                                  participant.getTax()
-                                              });
+      //store participant info, the performed time is kept here as well so history can be paged using
+      //the participant index alone.
+      batch.add(connector.dialect().saveParticipant(),
+                new Object[]{
+                    identifier,
+                    participant.getId(),
+                    type,
+                    performed,
+                    participant.getTax()
+                });
 
       //store holdings
       for(HoldingsEntry entry : participant.getStartingBalances()) {
-        storeReceiptHolding(connector, entry, participant.getId(), identifier, false);
+        storeReceiptHolding(connector, batch, entry, participant.getId(), identifier, performed, false);
       }
 
       for(HoldingsEntry entry : participant.getEndingBalances()) {
-        storeReceiptHolding(connector, entry, participant.getId(), identifier, true);
+        storeReceiptHolding(connector, batch, entry, participant.getId(), identifier, performed, true);
       }
 
-      //store modifier
-      ((SQLConnector)connector).executeUpdate(((SQLConnector)connector).dialect().saveModifier(),
-                                              new Object[]{
-                                                  identifier,
-                                                  participant.getId(),
-                                                  "account",
-                                                  modifier.getOperation().name(),
-                                                  modifier.getRegion(),
-                                                  modifier.getCurrency().toString(),
-                                                  modifier.getModifier()
-                                              });
+      //store modifier, the performed time is kept with every receipt row so that the receipt tables
+      //can be partitioned by it.
+      batch.add(connector.dialect().saveModifier(),
+                new Object[]{
+                    identifier,
+                    participant.getId(),
+                    type,
+                    modifier.getOperation().name(),
+                    modifier.getRegion(),
+                    modifier.getCurrency().toString(),
+                    modifier.getModifier(),
+                    performed
+                });
     }
   }
 
-  private void storeReceiptHolding(StorageConnector<?> connector, @NotNull HoldingsEntry entry, final String participant,
-                                   final String receipt, final boolean ending) {
+  private void storeReceiptHolding(final SQLConnector connector, final SQLBatch batch,
+                                   @NotNull HoldingsEntry entry, final String participant,
+                                   final String receipt, final Timestamp performed, final boolean ending) {
 
-    ((SQLConnector)connector).executeUpdate(((SQLConnector)connector).dialect().saveReceiptHolding(),
-                                            new Object[]{
-                                                receipt,
-                                                participant,
-                                                ending,
-                                                MainConfig.yaml().getString("Core.Server.Name"),
-                                                entry.getRegion(),
-                                                entry.getCurrency().toString(),
-                                                entry.getHandler().asID(),
-                                                entry.getAmount()
-                                            });
+    batch.add(connector.dialect().saveReceiptHolding(),
+              new Object[]{
+                  receipt,
+                  participant,
+                  ending,
+                  MainConfig.yaml().getString("Core.Server.Name"),
+                  entry.getRegion(),
+                  entry.getCurrency().toString(),
+                  entry.getHandler().asID(),
+                  entry.getAmount(),
+                  performed
+              });
   }
 
-                                /**
+  /**
    * Used to store all objects of this type.
    *
    * @param connector The storage connector to use for this transaction.
    */
-                                @Override
+  @Override
   public void storeAll(StorageConnector<?> connector, @Nullable String identifier) {
     if(connector instanceof SQLConnector && identifier != null) {
 
       final Optional<Account> account = TNECore.eco().account().findAccount(identifier);
       if(account.isPresent()) {
+
+        final SQLBatch batch = new SQLBatch();
         for(Receipt receipt : account.get().getReceipts().values()) {
-          store(connector, receipt, identifier);
+          batch((SQLConnector)connector, batch, receipt);
         }
+        ((SQLConnector)connector).executeBatch(batch);
       }
     }
   }
@@ -178,12 +257,23 @@ public class SQLReceipt implements Datable<Receipt> {
   @Override
   public Optional<Receipt> load(StorageConnector<?> connector, @NotNull String identifier) {
     if(connector instanceof SQLConnector) {
+
+      final SQLConnector sql = (SQLConnector)connector;
+      final List<Receipt> receipts = sql.executeRead(sql.dialect().loadReceipt(), new Object[] {
+          identifier
+      }, this::receipt);
+
+      if(!receipts.isEmpty()) {
+        details(sql, receipts);
+        return Optional.of(receipts.get(0));
+      }
     }
     return Optional.empty();
   }
 
   /**
-   * Used to load all objects of this type.
+   * Used to load all objects of this type. The identifier is the participant to load all receipts for.
+   * The receipts are read one page at a time, from newest to oldest.
    *
    * @param connector The storage connector to use for this transaction.
    *
@@ -193,9 +283,257 @@ public class SQLReceipt implements Datable<Receipt> {
   public Collection<Receipt> loadAll(StorageConnector<?> connector, @Nullable String identifier) {
     final Collection<Receipt> receipts = new ArrayList<>();
 
+    if(connector instanceof SQLConnector && identifier != null) {
+
+      final int size = ((SQLConnector)connector).fetchSize();
+
+      PageCursor cursor = null;
+      List<Receipt> page;
+      do {
+        page = page(connector, identifier, 0, cursor, size);
+        receipts.addAll(page);
+
+        if(!page.isEmpty()) {
+          final Receipt last = page.get(page.size() - 1);
+          cursor = new PageCursor(last.getTime(), last.getId().toString());
+        }
+      } while(page.size() >= size);
+    }
+    return receipts;
+  }
+
+  /**
+   * Used to load a page of receipts for a participant. Pages are read using the (performed, uid)
+   * keyset of the participant index, so the cost of reading a page doesn't depend on how many
+   * receipts the participant has.
+   *
+   * @param connector The storage connector to use for this transaction.
+   * @param identifier The identifier of the participant.
+   * @param since The oldest time that should be included in the results.
+   * @param after The cursor for the last receipt of the previous page, or null for the first page.
+   * @param size The maximum amount of receipts in the page.
+   *
+   * @return A list containing the receipts in the page, from newest to oldest.
+   */
+  @Override
+  public List<Receipt> page(StorageConnector<?> connector, @NotNull String identifier, long since,
+                            @Nullable PageCursor after, int size) {
+    final List<Receipt> receipts = new ArrayList<>();
+
     if(connector instanceof SQLConnector) {
 
+      final SQLConnector sql = (SQLConnector)connector;
+      final Timestamp oldest = new Timestamp(since);
+
+      if(after == null) {
+        receipts.addAll(sql.executeRead(sql.dialect().loadReceiptPage(), new Object[] {
+            identifier,
+            oldest,
+            size
+        }, this::receipt));
+      } else {
+        final Timestamp time = new Timestamp(after.time());
+        receipts.addAll(sql.executeRead(sql.dialect().loadReceiptPageAfter(), new Object[] {
+            identifier,
+            oldest,
+            time,
+            time,
+            after.id(),
+            size
+        }, this::receipt));
+      }
+
+      details(sql, receipts);
     }
     return receipts;
   }
-}
\ No newline at end of file
+
+  /**
+   * Used to load a chunk of every receipt, from oldest to newest. Chunks are read using the
+   * (performed, uid) keyset, so a full read can be resumed from the cursor of the last receipt read.
+   *
+   * @param connector The connector to use.
+   * @param after The cursor for the last receipt of the previous chunk, or null for the first chunk.
+   * @param size The maximum amount of receipts in the chunk.
+   *
+   * @return A list containing the receipts in the chunk, from oldest to newest.
+   */
+  public List<Receipt> chunk(final SQLConnector connector, @Nullable final PageCursor after, final int size) {
+    final List<Receipt> receipts = new ArrayList<>();
+
+    if(after == null) {
+      receipts.addAll(connector.executeQuery(connector.dialect().loadReceiptChunk(), new Object[] {
+          size
+      }, this::receipt));
+    } else {
+      final Timestamp time = new Timestamp(after.time());
+      receipts.addAll(connector.executeQuery(connector.dialect().loadReceiptChunkAfter(), new Object[] {
+          time,
+          time,
+          after.id(),
+          size
+      }, this::receipt));
+    }
+
+    details(connector, receipts);
+    return receipts;
+  }
+
+  /**
+   * Used to find the cursor at a specific offset within a participant's receipts.
+   *
+   * @param connector The storage connector to use for this transaction.
+   * @param identifier The identifier of the participant.
+   * @param since The oldest time that should be included in the results.
+   * @param offset The offset of the receipt to get the cursor for, starting at 0 for the newest.
+   *
+   * @return An Optional containing the cursor if a receipt exists at the offset, otherwise an empty
+   * Optional.
+   */
+  @Override
+  public Optional<PageCursor> seek(StorageConnector<?> connector, @NotNull String identifier, long since, int offset) {
+    if(connector instanceof SQLConnector) {
+
+      final SQLConnector sql = (SQLConnector)connector;
+      final List<PageCursor> cursors = sql.executeRead(sql.dialect().seekReceipt(), new Object[] {
+          identifier,
+          new Timestamp(since),
+          offset
+      }, (result)->new PageCursor(result.getTimestamp("performed").getTime(), result.getString("uid")));
+
+      if(!cursors.isEmpty()) {
+        return Optional.of(cursors.get(0));
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Used to count the receipts for a participant.
+   *
+   * @param connector The storage connector to use for this transaction.
+   * @param identifier The identifier of the participant.
+   * @param since The oldest time that should be included in the count.
+   *
+   * @return The amount of receipts.
+   */
+  @Override
+  public int count(StorageConnector<?> connector, @NotNull String identifier, long since) {
+    if(connector instanceof SQLConnector) {
+
+      final SQLConnector sql = (SQLConnector)connector;
+      final List<Integer> count = sql.executeRead(sql.dialect().countReceipts(), new Object[] {
+          identifier,
+          new Timestamp(since)
+      }, (result)->result.getInt("total"));
+
+      if(!count.isEmpty()) {
+        return count.get(0);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Used to build a {@link Receipt} from the current row of a receipts result. The participants and
+   * modifiers are loaded separately using {@link #details(SQLConnector, List)}.
+   *
+   * @param result The result, positioned at the row to read.
+   *
+   * @return The {@link Receipt} for the row.
+   * @throws SQLException If an issue occurs while reading the row.
+   */
+  private Receipt receipt(final ResultSet result) throws SQLException {
+
+    final String sourceName = result.getString("receipt_source");
+    final String sourceType = result.getString("receipt_source_type");
+
+    final ActionSource source = ("player".equalsIgnoreCase(sourceType) && UUIDProvider.isUUID(sourceName))?
+        new PlayerSource(UUID.fromString(sourceName)) : new PluginSource(sourceName);
+
+    final Receipt receipt = new Receipt(UUID.fromString(result.getString("uid")),
+                                        result.getTimestamp("performed").getTime(),
+                                        result.getString("receipt_type"),
+                                        source);
+    receipt.setArchive(result.getBoolean("archive"));
+    receipt.setVoided(result.getBoolean("voided"));
+    return receipt;
+  }
+
+  /**
+   * Used to load the participants, their balances, and the modifiers for a list of receipts. The
+   * details are read with one query per table for every {@link #DETAILS_BATCH} receipts, and attached
+   * to their receipts by uid.
+   *
+   * @param connector The connector to use.
+   * @param receipts The receipts to load the details for.
+   */
+  private void details(final SQLConnector connector, final List<Receipt> receipts) {
+
+    for(int start = 0; start < receipts.size(); start += DETAILS_BATCH) {
+
+      final List<Receipt> batch = receipts.subList(start, Math.min(receipts.size(), start + DETAILS_BATCH));
+      final Map<UUID, Receipt> byId = new HashMap<>();
+      final Object[] identifiers = new Object[batch.size()];
+
+      for(int i = 0; i < batch.size(); i++) {
+        byId.put(batch.get(i).getId(), batch.get(i));
+        identifiers[i] = batch.get(i).getId().toString();
+      }
+
+      //participants have to be attached before their balances.
+      connector.executeReadStream(connector.dialect().loadParticipants(batch.size()), identifiers, (result)->{
+        final Receipt receipt = byId.get(UUID.fromString(result.getString("uid")));
+        if(receipt == null) return;
+
+        final TransactionParticipant participant = new TransactionParticipant(result.getString("participant"),
+                                                                              new ArrayList<>());
+        participant.setTax(result.getBigDecimal("tax"));
+
+        if(FROM.equalsIgnoreCase(result.getString("participant_type"))) {
+          receipt.setFrom(participant);
+        } else {
+          receipt.setTo(participant);
+        }
+      });
+
+      connector.executeReadStream(connector.dialect().loadReceiptHolding(batch.size()), identifiers, (result)->{
+        final Receipt receipt = byId.get(UUID.fromString(result.getString("uid")));
+        if(receipt == null) return;
+
+        final String id = result.getString("participant");
+
+        TransactionParticipant participant = null;
+        if(receipt.getFrom() != null && receipt.getFrom().getId().equalsIgnoreCase(id)) {
+          participant = receipt.getFrom();
+        } else if(receipt.getTo() != null && receipt.getTo().getId().equalsIgnoreCase(id)) {
+          participant = receipt.getTo();
+        }
+
+        if(participant != null) {
+          if(result.getBoolean("ending")) {
+            participant.getEndingBalances().add(SQLHoldings.entry(result));
+          } else {
+            participant.getStartingBalances().add(SQLHoldings.entry(result));
+          }
+        }
+      });
+
+      connector.executeReadStream(connector.dialect().loadModifiers(batch.size()), identifiers, (result)->{
+        final Receipt receipt = byId.get(UUID.fromString(result.getString("uid")));
+        if(receipt == null) return;
+
+        final HoldingsModifier modifier = new HoldingsModifier(result.getString("region"),
+                                                               UUID.fromString(result.getString("currency")),
+                                                               result.getBigDecimal("modifier"),
+                                                               HoldingsOperation.valueOf(result.getString("operation")));
+
+        if(FROM.equalsIgnoreCase(result.getString("participant_type"))) {
+          receipt.setModifierFrom(modifier);
+        } else {
+          receipt.setModifierTo(modifier);
+        }
+      });
+    }
+  }
+}
@@ -17,6 +17,7 @@ package net.tnemc.core.io.storage.datables.yaml;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import net.tnemc.core.EconomyManager;
 import net.tnemc.core.TNECore;
 import net.tnemc.core.account.Account;
 import net.tnemc.core.account.PlayerAccount;
@@ -27,8 +28,11 @@ import net.tnemc.core.api.callback.account.AccountLoadCallback;
 import net.tnemc.core.api.callback.account.AccountSaveCallback;
 import net.tnemc.core.api.response.AccountAPIResponse;
 import net.tnemc.core.compatibility.PlayerProvider;
+import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.config.MainConfig;
 import net.tnemc.core.currency.Currency;
 import net.tnemc.core.io.storage.Datable;
+import net.tnemc.core.io.storage.ExtractDatable;
 import net.tnemc.core.io.storage.StorageConnector;
 import net.tnemc.core.manager.id.UUIDPair;
 import net.tnemc.core.utils.IOUtil;
@@ -39,11 +43,20 @@ import org.simpleyaml.configuration.file.YamlFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * YAMLAccount
@@ -51,7 +64,7 @@ import java.util.UUID;
  * @author creatorfromhell
  * @since 0.1.2.0
  */
-public class YAMLAccount implements Datable<Account> {
+public class YAMLAccount implements Datable<Account>, ExtractDatable {
 
   /**
    * The class that is represented by the O parameter.
@@ -82,82 +95,153 @@ public class YAMLAccount implements Datable<Account> {
   @Override
   public void store(StorageConnector<?> connector, @NotNull Account account, @Nullable String identifier) {
 
-    final File accFile = new File(TNECore.directory(), "accounts/" + account.getIdentifier() + ".yml");
-    if(!accFile.exists()) {
-      try {
-        accFile.createNewFile();
-      } catch(IOException e) {
+    if(account instanceof PlayerAccount) {
 
-        TNECore.log().error("Issue loading account file. Account: " + account.getName());
-        return;
-      }
-    }
+      final Optional<PlayerProvider> provider = TNECore.server().findPlayer(((PlayerAccount)account).getUUID());
 
+      if(provider.isPresent()) {
+        final String region = TNECore.eco().region().getMode().region(provider.get());
+        for(Currency currency : TNECore.eco().currency().getCurrencies(region)) {
 
-    YamlFile yaml = null;
-    try {
-      yaml = YamlFile.loadConfiguration(accFile);
-    } catch(IOException ignore) {
+          if(currency.type().supportsItems()) {
 
-      TNECore.log().error("Issue loading account file. Account: " + account.getName());
-      return;
-    }
+            for(HoldingsEntry entry : account.getHoldings(region, currency.getUid())) {
 
-    if(yaml != null) {
-      yaml.set("Info.ID", account.getIdentifier());
-      yaml.set("Info.Name", account.getName());
-      yaml.set("Info.Type", account.type());
-      yaml.set("Info.Status", account.getStatus().identifier());
-      yaml.set("Info.CreationDate", account.getCreationDate());
-      yaml.set("Info.Pin", account.getPin());
+              //account.get().setHoldings(entry, entry.getHandler());
+              account.getWallet().setHoldings(entry);
+            }
+          }
+        }
+      }
+    }
 
-      if(account instanceof PlayerAccount) {
-        yaml.set("Info.LastOnline", ((PlayerAccount)account).getLastOnline());
+    //Only accounts that have changed since they were last persisted need to be written.
+    if(!account.isDirty()) {
+      return;
+    }
+    write(account);
+  }
 
-        final Optional<PlayerProvider> provider = TNECore.server().findPlayer(((PlayerAccount)account).getUUID());
+  /**
+   * Used to write the complete document for an account, including its holdings, in a single pass.
+   * The document is built in memory from the account, written to a temporary file, and then moved
+   * over the existing account file so a crash mid-save never leaves a partially written account.
+   * Each save uses its own temporary file, so concurrent saves of the same account can't write into
+   * each other's files.
+   *
+   * Anything in the existing file that this server doesn't manage, such as the holdings of other
+   * servers sharing the file or keys added by other plugins, is carried over into the new document.
+   *
+   * @param account The account to write.
+   * @return True if the account was written, otherwise false.
+   */
+  public static boolean write(@NotNull Account account) {
 
-        if(provider.isPresent()) {
-          final String region = TNECore.eco().region().getMode().region(provider.get());
-          for(Currency currency : TNECore.eco().currency().getCurrencies(region)) {
+    final File accFile = new File(TNECore.directory(), "accounts/" + account.getIdentifier() + ".yml");
+    final File temp;
+    try {
+      Files.createDirectories(accFile.getParentFile().toPath());
+      temp = Files.createTempFile(accFile.getParentFile().toPath(), account.getIdentifier(), ".tmp").toFile();
+    } catch(IOException e) {
+      TNECore.log().error("Issue creating temporary account file. Account: " + account.getName());
+      return false;
+    }
 
-            if(currency.type().supportsItems()) {
+    //Capture the revisions before building the document, so that changes made while writing
+    //remain dirty and get picked up by the next save.
+    final long revision = account.getRevision();
+    final List<HoldingsEntry> entries = account.getWallet().entryList();
+    final long[] revisions = new long[entries.size()];
 
-              for(HoldingsEntry entry : account.getHoldings(region, currency.getUid())) {
+    final YamlFile yaml = new YamlFile(temp);
+    final String server = MainConfig.yaml().getString("Core.Server.Name");
 
-                //account.get().setHoldings(entry, entry.getHandler());
-                account.getWallet().setHoldings(entry);
-              }
-            }
+    if(accFile.exists()) {
+      try {
+        final YamlFile existing = YamlFile.loadConfiguration(accFile);
+        for(Map.Entry<String, Object> value : existing.getValues(true).entrySet()) {
+          if(value.getValue() instanceof ConfigurationSection || managed(value.getKey(), server, account)) {
+            continue;
           }
+          yaml.set(value.getKey(), value.getValue());
         }
+      } catch(Exception e) {
+        TNECore.log().error("Issue reading existing account file, it will be rewritten. Account: " + account.getName());
       }
+    }
 
-      if(account instanceof SharedAccount) {
-        final String owner = (((SharedAccount)account).getOwner() == null)? account.getIdentifier() :
-            ((SharedAccount)account).getOwner().toString();
+    yaml.set("Info.ID", account.getIdentifier());
+    yaml.set("Info.Name", account.getName());
+    yaml.set("Info.Type", account.type());
+    yaml.set("Info.Status", account.getStatus().identifier());
+    yaml.set("Info.CreationDate", account.getCreationDate());
+    yaml.set("Info.Pin", account.getPin());
 
-        yaml.set("Info.Owner", owner);
+    if(account instanceof PlayerAccount) {
+      yaml.set("Info.LastOnline", ((PlayerAccount)account).getLastOnline());
+    }
 
-        for(Member member : ((SharedAccount)account).getMembers().values()) {
-          for(Map.Entry<String, Boolean> entry : member.getPermissions().entrySet()) {
+    if(account instanceof SharedAccount) {
+      final String owner = (((SharedAccount)account).getOwner() == null)? account.getIdentifier() :
+          ((SharedAccount)account).getOwner().toString();
 
-            yaml.set("Members." + member.getId().toString() + "." + entry.getKey(), entry.getValue());
-          }
+      yaml.set("Info.Owner", owner);
+
+      for(Member member : ((SharedAccount)account).getMembers().values()) {
+        for(Map.Entry<String, Boolean> entry : member.getPermissions().entrySet()) {
+
+          yaml.set("Members." + member.getId().toString() + "." + entry.getKey(), entry.getValue());
         }
       }
-      try {
-        yaml.save();
+    }
 
-        final AccountSaveCallback callback = new AccountSaveCallback(account);
-        TNECore.callbacks().call(callback);
+    for(int i = 0; i < entries.size(); i++) {
+      final HoldingsEntry entry = entries.get(i);
+      revisions[i] = entry.getRevision();
 
-        yaml = null;
-      } catch(IOException e) {
-        TNECore.log().error("Issue saving account file. Account: " + account.getName());
-        return;
+      yaml.set("Holdings." + server + "." + entry.getRegion() + "." + entry.getCurrency().toString()
+                   + "." + entry.getHandler().asID(), entry.getAmount().toPlainString());
+    }
+
+    try {
+      yaml.save();
+
+      try {
+        Files.move(temp.toPath(), accFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                   StandardCopyOption.REPLACE_EXISTING);
+      } catch(AtomicMoveNotSupportedException ignore) {
+        Files.move(temp.toPath(), accFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
       }
-      TNECore.storage().storeAll(account.getIdentifier());
+    } catch(IOException e) {
+      TNECore.log().error("Issue saving account file. Account: " + account.getName());
+      temp.delete();
+      return false;
+    }
+
+    account.markPersisted(revision);
+    for(int i = 0; i < entries.size(); i++) {
+      entries.get(i).markPersisted(revisions[i]);
     }
+
+    final AccountSaveCallback callback = new AccountSaveCallback(account);
+    TNECore.callbacks().call(callback);
+    return true;
+  }
+
+  /**
+   * Used to determine if a key in an account file is written from the account by this server, so it
+   * shouldn't be carried over from the existing file.
+   *
+   * @param key The full path of the key.
+   * @param server The name of this server.
+   * @param account The account being written.
+   * @return True if the key is written from the account, otherwise false.
+   */
+  private static boolean managed(final String key, final String server, final Account account) {
+    if(key.startsWith("Holdings." + server + ".")) {
+      return true;
+    }
+    return account instanceof SharedAccount && key.startsWith("Members.");
   }
 
   /**
@@ -185,7 +269,8 @@ public class YAMLAccount implements Datable<Account> {
 
     final File accFile = new File(TNECore.directory(), "accounts/" + identifier + ".yml");
     if(!accFile.exists()) {
-      TNECore.log().error("Null account file passed to YAMLAccount.load. Account: " + identifier);
+      //This is expected when accounts are loaded on demand, and the account is new.
+      TNECore.log().debug("No account file exists for YAMLAccount.load. Account: " + identifier, DebugLevel.DEVELOPER);
       return Optional.empty();
     }
     return load(connector, accFile, identifier);
@@ -198,70 +283,146 @@ public class YAMLAccount implements Datable<Account> {
       return Optional.empty();
     }
 
-    YamlFile yaml = null;
+    final ParsedAccount parsed = parse(accFile, identifier);
+    if(parsed == null) {
+      return Optional.empty();
+    }
+    return load(parsed);
+  }
+
+  /**
+   * Used to parse an account file, including its holdings. This doesn't touch any shared state, so
+   * it's safe to call from multiple threads at once.
+   *
+   * @param accFile The account file.
+   * @param identifier The identifier of the account.
+   * @return The parsed account, or null if the file couldn't be parsed.
+   */
+  private static ParsedAccount parse(final File accFile, final String identifier) {
     try {
-      yaml = YamlFile.loadConfiguration(accFile);
-    } catch(IOException ignore) {
+      final YamlFile yaml = YamlFile.loadConfiguration(accFile);
+      return new ParsedAccount(identifier, yaml, YAMLHoldings.entries(yaml));
+    } catch(Exception e) {
 
       TNECore.log().error("Issue loading account file. Account: " + identifier);
+      return null;
     }
+  }
 
-    if(yaml != null) {
+  /**
+   * Used to create and register an account from its parsed file.
+   *
+   * @param parsed The parsed account file.
+   * @return An Optional containing the account, if it was loaded.
+   */
+  private Optional<Account> load(final ParsedAccount parsed) {
+    final YamlFile yaml = parsed.yaml();
+    final String identifier = parsed.identifier();
 
-      Account account = null;
+    Account account = null;
 
-      final String type = yaml.getString("Info.Type");
+    final String type = yaml.getString("Info.Type");
 
-      //create our account from the type
-      final AccountAPIResponse response = TNECore.eco().account().createAccount(identifier,
-                                                                                yaml.getString("Info.Name"),
-                                                                                !(type.equalsIgnoreCase("player") ||
-                                                                                    type.equalsIgnoreCase("bedrock")));
-      if(response.getResponse().success() && response.getAccount().isPresent()) {
+    //create our account from the type
+    final AccountAPIResponse response = TNECore.eco().account().createAccount(identifier,
+                                                                              yaml.getString("Info.Name"),
+                                                                              !(type.equalsIgnoreCase("player") ||
+                                                                                  type.equalsIgnoreCase("bedrock")),
+                                                                              false);
+    if(response.getResponse().success() && response.getAccount().isPresent()) {
 
-        //load our basic account information
-        account = response.getAccount().get();
+      //load our basic account information
+      account = response.getAccount().get();
 
-        account.setStatus(TNECore.eco().account().findStatus(yaml.getString("Info.Status")));
-        account.setCreationDate(yaml.getLong("Info.CreationDate"));
-        account.setPin(yaml.getString("Info.Pin"));
-      }
+      account.setStatus(TNECore.eco().account().findStatus(yaml.getString("Info.Status")));
+      account.setCreationDate(yaml.getLong("Info.CreationDate"));
+      account.setPin(yaml.getString("Info.Pin"));
+    }
 
-      if(account != null) {
+    if(account != null) {
 
-        if(account instanceof PlayerAccount) {
-          ((PlayerAccount)account).setLastOnline(yaml.getLong("Info.LastOnline"));
-        }
+      if(account instanceof PlayerAccount) {
+        ((PlayerAccount)account).setLastOnline(yaml.getLong("Info.LastOnline"));
+      }
 
-        if(account instanceof SharedAccount && yaml.contains("Members")) {
-          final ConfigurationSection section = yaml.getConfigurationSection("Members");
-          for(String member : section.getKeys(false)) {
+      if(account instanceof SharedAccount && yaml.contains("Members")) {
+        final ConfigurationSection section = yaml.getConfigurationSection("Members");
+        for(String member : section.getKeys(false)) {
 
-            for(String permission : section.getConfigurationSection(member).getKeys(false)) {
+          for(String permission : section.getConfigurationSection(member).getKeys(false)) {
 
-              ((SharedAccount)account).addPermission(UUID.fromString(member), permission,
-                                                     yaml.getBoolean("Members." + member +
-                                                                         "." + permission));
-            }
+            ((SharedAccount)account).addPermission(UUID.fromString(member), permission,
+                                                   yaml.getBoolean("Members." + member +
+                                                                       "." + permission));
           }
         }
+      }
 
-        Collection<HoldingsEntry> holdings = TNECore.storage().loadAll(HoldingsEntry.class, identifier);
-        for(HoldingsEntry entry : holdings) {
-          account.getWallet().setHoldings(entry);
+      for(HoldingsEntry entry : parsed.holdings()) {
+        if(TNECore.eco().currency().findCurrency(entry.getCurrency()).isEmpty()) {
+          EconomyManager.invalidCurrencies().add(entry.getCurrency().toString());
         }
+        account.getWallet().setHoldings(entry);
+      }
 
-        final AccountLoadCallback callback = new AccountLoadCallback(account);
-        TNECore.callbacks().call(callback);
+      //Everything we just loaded matches what is stored, so there's nothing to save.
+      account.markPersisted();
+
+      final AccountLoadCallback callback = new AccountLoadCallback(account);
+      TNECore.callbacks().call(callback);
+    }
+    return Optional.ofNullable(account);
+  }
+
+  /**
+   * Used to read the stored state of an account, without creating the account or adding it to the
+   * account manager.
+   *
+   * @param connector The storage connector to use for this transaction.
+   * @param identifier The identifier of the account.
+   *
+   * @return An Optional containing the stored state of the account, if it's stored.
+   */
+  @Override
+  public Optional<Extracted> extract(StorageConnector<?> connector, @NotNull String identifier) {
+
+    final File accFile = new File(TNECore.directory(), "accounts/" + identifier + ".yml");
+    if(!accFile.exists()) {
+      return Optional.empty();
+    }
+
+    final ParsedAccount parsed = parse(accFile, identifier);
+    if(parsed == null) {
+      return Optional.empty();
+    }
+    return Optional.of(new Extracted(identifier, parsed.yaml().getString("Info.Name"),
+                                     parsed.yaml().getString("Info.Type"), parsed.holdings()));
+  }
+
+  /**
+   * Used to get the identifiers of every stored account, without loading the accounts.
+   *
+   * @param connector The storage connector to use for this transaction.
+   *
+   * @return A collection containing the identifiers.
+   */
+  @Override
+  public Collection<String> identifiers(StorageConnector<?> connector) {
+    final Collection<String> identifiers = new ArrayList<>();
+
+    final File[] files = IOUtil.getYAMLs(new File(TNECore.directory(), "accounts"));
+    if(files != null) {
+      for(File file : files) {
+        identifiers.add(file.getName().replace(".yml", ""));
       }
-      yaml = null;
-      return Optional.ofNullable(account);
     }
-    return Optional.empty();
+    return identifiers;
   }
 
   /**
-   * Used to load all objects of this type.
+   * Used to load all objects of this type. Every account file is parsed, including its holdings, in
+   * parallel, and the accounts are then registered one at a time, since registering an account
+   * fires callbacks and updates shared state.
    *
    * @param connector The storage connector to use for this transaction.
    *
@@ -271,9 +432,32 @@ public class YAMLAccount implements Datable<Account> {
   public Collection<Account> loadAll(StorageConnector<?> connector, @Nullable String identifier) {
     final Collection<Account> accounts = new ArrayList<>();
 
-    for(File file : IOUtil.getYAMLs(new File(TNECore.directory(), "accounts"))) {
+    final File[] files = IOUtil.getYAMLs(new File(TNECore.directory(), "accounts"));
+    if(files == null || files.length == 0) {
+      return accounts;
+    }
+
+    final long start = System.currentTimeMillis();
+
+    List<ParsedAccount> parsed = new ArrayList<>();
+    final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    try {
+      parsed = pool.submit(()->Arrays.stream(files).parallel()
+                                     .map(file->parse(file, file.getName().replace(".yml", "")))
+                                     .filter(Objects::nonNull)
+                                     .collect(Collectors.toList())).get();
+    } catch(InterruptedException | ExecutionException e) {
+      TNECore.log().error("Issue loading account files: " + e.getMessage());
+    } finally {
+      pool.shutdown();
+    }
+
+    TNECore.log().debug("Parsed " + parsed.size() + " account files in "
+                            + (System.currentTimeMillis() - start) + "ms.", DebugLevel.STANDARD);
 
-      final Optional<Account> loaded = load(connector, file, file.getName().replace(".yml", ""));
+    for(ParsedAccount account : parsed) {
+
+      final Optional<Account> loaded = load(account);
       if(loaded.isPresent()) {
         accounts.add(loaded.get());
         TNECore.eco().account().uuidProvider().store(new UUIDPair(UUID.fromString(loaded.get().getIdentifier()), loaded.get().getName()));
@@ -281,4 +465,14 @@ public class YAMLAccount implements Datable<Account> {
     }
     return accounts;
   }
-}
\ No newline at end of file
+
+  /**
+   * An account file that has been parsed, but not yet registered.
+   *
+   * @param identifier The identifier of the account.
+   * @param yaml The parsed account file.
+   * @param holdings The holdings read from the account file.
+   */
+  private record ParsedAccount(String identifier, YamlFile yaml, List<HoldingsEntry> holdings) {
+  }
+}
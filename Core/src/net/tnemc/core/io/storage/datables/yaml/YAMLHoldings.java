@@ -20,11 +20,8 @@ package net.tnemc.core.io.storage.datables.yaml;
 import net.tnemc.core.EconomyManager;
 import net.tnemc.core.TNECore;
 import net.tnemc.core.account.Account;
-import net.tnemc.core.account.holdings.CurrencyHoldings;
 import net.tnemc.core.account.holdings.HoldingsEntry;
-import net.tnemc.core.account.holdings.RegionHoldings;
 import net.tnemc.core.compatibility.log.DebugLevel;
-import net.tnemc.core.config.MainConfig;
 import net.tnemc.core.io.storage.Datable;
 import net.tnemc.core.io.storage.StorageConnector;
 import net.tnemc.core.utils.Identifier;
@@ -38,6 +35,7 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -70,39 +68,15 @@ public class YAMLHoldings implements Datable<HoldingsEntry> {
   }
 
   /**
-   * Used to store this object.
+   * Used to store this object. Holdings are part of the account document, so this writes the
+   * owning account's document as a whole rather than rewriting the file for a single entry.
    *
    * @param connector The storage connector to use for this transaction.
    * @param object    The object to be stored.
    */
   @Override
   public void store(StorageConnector<?> connector, @NotNull HoldingsEntry object, @Nullable String identifier) {
-
-    final File accFile = new File(TNECore.directory(), "accounts/" + identifier + ".yml");
-    if(!accFile.exists()) {
-      accFile.mkdirs();
-    }
-
-
-    YamlFile yaml = null;
-    try {
-      yaml = YamlFile.loadConfiguration(accFile);
-    } catch(IOException ignore) {
-
-      TNECore.log().error("Issue loading account file. Account: " + identifier);
-    }
-
-    if(yaml != null) {
-      yaml.set("Holdings." + MainConfig.yaml().getString("Core.Server.Name")
-                   + "." + object.getRegion() + "." + object.getCurrency().toString() + "."
-                   + object.getHandler().asID(), object.getAmount().toPlainString());
-      try {
-        yaml.save();
-        yaml = null;
-      } catch(IOException e) {
-        TNECore.log().error("Issue saving account holdings to file. Account: " + identifier);
-      }
-    }
+    storeAll(connector, identifier);
   }
 
   /**
@@ -112,16 +86,13 @@ public class YAMLHoldings implements Datable<HoldingsEntry> {
    */
   @Override
   public void storeAll(StorageConnector<?> connector, @Nullable String identifier) {
+    if(identifier == null) {
+      return;
+    }
 
     final Optional<Account> account = TNECore.eco().account().findAccount(identifier);
-    if(account.isPresent()) {
-      for(RegionHoldings region : account.get().getWallet().getHoldings().values()) {
-        for(CurrencyHoldings currency : region.getHoldings().values()) {
-          for(HoldingsEntry entry : currency.getHoldings().values()) {
-            store(connector, entry, identifier);
-          }
-        }
-      }
+    if(account.isPresent() && account.get().getWallet().isDirty()) {
+      YAMLAccount.write(account.get());
     }
   }
 
@@ -167,54 +138,66 @@ public class YAMLHoldings implements Datable<HoldingsEntry> {
         TNECore.log().error("Issue loading account file. Account: " + identifier);
       }
 
-
-      //region, currency, amount, type
       if(yaml != null) {
+        for(HoldingsEntry entry : entries(yaml)) {
+          if(TNECore.eco().currency().findCurrency(entry.getCurrency()).isEmpty()) {
+            EconomyManager.invalidCurrencies().add(entry.getCurrency().toString());
+          }
+          holdings.add(entry);
+        }
+      }
+      yaml = null;
+    }
+    return holdings;
+  }
+
+  /**
+   * Used to read the holdings from an account file that has already been parsed. This doesn't touch
+   * any shared state, so it's safe to call from multiple threads at once.
+   *
+   * @param yaml The parsed account file.
+   * @return A list containing the holdings in the file.
+   */
+  public static List<HoldingsEntry> entries(final YamlFile yaml) {
+    final List<HoldingsEntry> holdings = new ArrayList<>();
 
-        //Holdings.Server.Region.Currency.Handler: Balance
-        if(yaml.contains("Holdings")) {
-          final ConfigurationSection main = yaml.getConfigurationSection("Holdings");
-          for(final String server : main.getKeys(false)) {
+    //Holdings.Server.Region.Currency.Handler: Balance
+    if(yaml.contains("Holdings")) {
+      final ConfigurationSection main = yaml.getConfigurationSection("Holdings");
+      for(final String server : main.getKeys(false)) {
 
-            if(!main.contains(server)) {
+        if(!main.contains(server)) {
+          continue;
+        }
+        for(final String region : main.getConfigurationSection(server).getKeys(false)) {
+
+          if(!main.contains(server + "." + region)) {
+            continue;
+          }
+          for(final String currency : main.getConfigurationSection(server + "." + region).getKeys(false)) {
+
+            if(!main.contains(server + "." + region + "." + currency)) {
               continue;
             }
-            for(final String region : main.getConfigurationSection(server).getKeys(false)) {
-
-              if(!main.contains(server + "." + region)) {
-                continue;
-              }
-              for(final String currency : main.getConfigurationSection(server + "." + region).getKeys(false)) {
-
-                if(TNECore.eco().currency().findCurrency(currency).isEmpty()) {
-                  EconomyManager.invalidCurrencies().add(currency);
-                }
-
-                if(!main.contains(server + "." + region + "." + currency)) {
-                  continue;
-                }
-                for(final String handler : main.getConfigurationSection(server + "." + region + "." + currency).getKeys(false)) {
-
-                  final String amount = yaml.getString("Holdings." + server + "." + region + "." + currency + "." + handler, "0.0");
-
-                  //region, currency, amount, type
-                  final HoldingsEntry entry = new HoldingsEntry(region,
-                                                                UUID.fromString(currency),
-                                                                new BigDecimal(amount),
-                                                                Identifier.fromID(handler)
-                  );
-
-                  TNECore.log().debug("YAMLHoldings-loadAll-Entry ID:" + entry.getHandler(), DebugLevel.DEVELOPER);
-                  TNECore.log().debug("YAMLHoldings-loadAll-Entry AMT:" + entry.getAmount().toPlainString(), DebugLevel.DEVELOPER);
-                  holdings.add(entry);
-                }
-              }
+            for(final String handler : main.getConfigurationSection(server + "." + region + "." + currency).getKeys(false)) {
+
+              final String amount = yaml.getString("Holdings." + server + "." + region + "." + currency + "." + handler, "0.0");
+
+              //region, currency, amount, type
+              final HoldingsEntry entry = new HoldingsEntry(region,
+                                                            UUID.fromString(currency),
+                                                            new BigDecimal(amount),
+                                                            Identifier.fromID(handler)
+              );
+
+              TNECore.log().debug("YAMLHoldings-loadAll-Entry ID:" + entry.getHandler(), DebugLevel.DEVELOPER);
+              TNECore.log().debug("YAMLHoldings-loadAll-Entry AMT:" + entry.getAmount().toPlainString(), DebugLevel.DEVELOPER);
+              holdings.add(entry);
             }
           }
         }
       }
-      yaml = null;
     }
     return holdings;
   }
-}
\ No newline at end of file
+}
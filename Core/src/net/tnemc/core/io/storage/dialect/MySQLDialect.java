@@ -18,8 +18,13 @@ package net.tnemc.core.io.storage.dialect;
  */
 
 import net.tnemc.core.io.storage.Dialect;
+import net.tnemc.core.io.storage.ReceiptPartitions;
 import org.intellij.lang.annotations.Language;
 
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.Collections;
+
 /**
  * MySQLDialect
  *
@@ -67,12 +72,57 @@ public class MySQLDialect implements Dialect {
   @Language("SQL")
   protected String saveHolding;
 
+  @Language("SQL")
+  protected String saveHoldingDelta;
+
+  @Language("SQL")
+  protected String loadHolding;
+
+  @Language("SQL")
+  protected String createHoldingVersion;
+
+  @Language("SQL")
+  protected String saveHoldingVersion;
+
+  @Language("SQL")
+  protected String loadAllPlayers;
+
+  @Language("SQL")
+  protected String loadAllNonPlayers;
+
+  @Language("SQL")
+  protected String loadAllMembers;
+
+  @Language("SQL")
+  protected String loadAllHoldings;
+
   @Language("SQL")
   protected String loadReceipts;
 
   @Language("SQL")
   protected String saveReceipt;
 
+  @Language("SQL")
+  protected String loadReceipt;
+
+  @Language("SQL")
+  protected String loadReceiptPage;
+
+  @Language("SQL")
+  protected String loadReceiptPageAfter;
+
+  @Language("SQL")
+  protected String loadReceiptChunk;
+
+  @Language("SQL")
+  protected String loadReceiptChunkAfter;
+
+  @Language("SQL")
+  protected String seekReceipt;
+
+  @Language("SQL")
+  protected String countReceipts;
+
   @Language("SQL")
   protected String loadReceiptHolding;
 
@@ -93,8 +143,14 @@ public class MySQLDialect implements Dialect {
 
   protected String prefix;
 
+  /**
+   * The period covered by each partition of the receipt tables, or null if they aren't partitioned.
+   */
+  protected Period partitioning;
+
   public MySQLDialect(final String prefix) {
     this.prefix = prefix;
+    this.partitioning = ReceiptPartitions.period();
 
     this.saveName = "INSERT INTO " + prefix + "player_names (uid, username) VALUES (UUID_TO_BIN(?), ?) ON DUPLICATE KEY UPDATE username = ?";
 
@@ -120,38 +176,88 @@ public class MySQLDialect implements Dialect {
     this.saveMember = "INSERT INTO " + prefix + "account_members (uid, account, perm, perm_value) VALUES (UUID_TO_BIN(?), UUID_TO_BIN(?), ?, ?) " +
                       "ON DUPLICATE KEY UPDATE perm_value = ?";
 
-    this.loadHoldings = "SELECT region, BIN_TO_UUID(currency) AS currency, holdings_type, holdings FROM " + prefix +
+    this.loadHoldings = "SELECT region, BIN_TO_UUID(currency) AS currency, holdings_type, holdings, version FROM " + prefix +
                         "holdings WHERE uid = UUID_TO_BIN(?) AND server = ?";
 
     this.saveHolding = "INSERT INTO " + prefix + "holdings (uid, server, region, currency, holdings_type, holdings) " +
-                       "VALUES (UUID_TO_BIN(?), ?, ?, UUID_TO_BIN(?), ?, ?) ON DUPLICATE KEY UPDATE holdings = ?";
+                       "VALUES (UUID_TO_BIN(?), ?, ?, UUID_TO_BIN(?), ?, ?) ON DUPLICATE KEY UPDATE holdings = ?, version = version + 1";
+
+    this.saveHoldingDelta = "INSERT INTO " + prefix + "holdings (uid, server, region, currency, holdings_type, holdings) " +
+                       "VALUES (UUID_TO_BIN(?), ?, ?, UUID_TO_BIN(?), ?, ?) ON DUPLICATE KEY UPDATE holdings = holdings + ?, " +
+                       "version = version + 1";
+
+    this.loadHolding = "SELECT holdings, version FROM " + prefix + "holdings WHERE uid = UUID_TO_BIN(?) AND server = ? " +
+                       "AND region = ? AND currency = UUID_TO_BIN(?) AND holdings_type = ?";
+
+    this.createHoldingVersion = "INSERT IGNORE INTO " + prefix + "holdings (uid, server, region, currency, holdings_type, " +
+                       "holdings, version) VALUES (UUID_TO_BIN(?), ?, ?, UUID_TO_BIN(?), ?, ?, 1)";
+
+    this.saveHoldingVersion = "UPDATE " + prefix + "holdings SET holdings = ?, version = version + 1 WHERE uid = UUID_TO_BIN(?) " +
+                       "AND server = ? AND region = ? AND currency = UUID_TO_BIN(?) AND holdings_type = ? AND version = ?";
+
+    this.loadAllPlayers = "SELECT BIN_TO_UUID(uid) AS uid, last_online FROM " + prefix + "players_accounts";
+
+    this.loadAllNonPlayers = "SELECT BIN_TO_UUID(uid) AS uid, BIN_TO_UUID(owner) AS owner FROM " + prefix + "non_players_accounts";
+
+    this.loadAllMembers = "SELECT BIN_TO_UUID(uid) AS uid, BIN_TO_UUID(account) AS account, perm, perm_value FROM " + prefix + "account_members";
+
+    this.loadAllHoldings = "SELECT BIN_TO_UUID(uid) AS uid, region, BIN_TO_UUID(currency) AS currency, holdings_type, holdings, version FROM " + prefix +
+                        "holdings WHERE server = ?";
 
     this.loadReceipts = "SELECT BIN_TO_UUID(uid) AS uid, performed, receipt_type, receipt_source, receipt_source_type, archive, voided FROM " +
                         prefix + "receipts";
 
     this.saveReceipt = "INSERT INTO " + prefix + "receipts (uid, performed, receipt_type, receipt_source, " +
                        "receipt_source_type, archive, voided) " +
-                       "VALUES (UUID_TO_BIN(?), ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE archive = ?, voided = ?";
+                       "VALUES (UUID_TO_BIN(?), ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE archive = ?, voided = ?";
+
+    this.loadReceipt = "SELECT BIN_TO_UUID(r.uid) AS uid, r.performed, r.receipt_type, r.receipt_source, r.receipt_source_type, r.archive, r.voided FROM " +
+                        prefix + "receipts r WHERE r.uid = UUID_TO_BIN(?)";
 
-    this.loadReceiptHolding = "SELECT BIN_TO_UUID(participant) AS participant, ending, server, region, " +
+    this.loadReceiptPage = "SELECT BIN_TO_UUID(r.uid) AS uid, r.performed, r.receipt_type, r.receipt_source, r.receipt_source_type, r.archive, r.voided FROM " +
+                        prefix + "receipts_participants p INNER JOIN " + prefix + "receipts r ON r.uid = p.uid " +
+                        "WHERE p.participant = UUID_TO_BIN(?) AND p.performed >= ? " +
+                        "ORDER BY p.performed DESC, p.uid DESC LIMIT ?";
+
+    this.loadReceiptPageAfter = "SELECT BIN_TO_UUID(r.uid) AS uid, r.performed, r.receipt_type, r.receipt_source, r.receipt_source_type, r.archive, r.voided FROM " +
+                        prefix + "receipts_participants p INNER JOIN " + prefix + "receipts r ON r.uid = p.uid " +
+                        "WHERE p.participant = UUID_TO_BIN(?) AND p.performed >= ? " +
+                        "AND (p.performed < ? OR (p.performed = ? AND p.uid < UUID_TO_BIN(?))) " +
+                        "ORDER BY p.performed DESC, p.uid DESC LIMIT ?";
+
+    this.loadReceiptChunk = "SELECT BIN_TO_UUID(r.uid) AS uid, r.performed, r.receipt_type, r.receipt_source, r.receipt_source_type, r.archive, r.voided FROM " +
+                        prefix + "receipts r ORDER BY r.performed, r.uid LIMIT ?";
+
+    this.loadReceiptChunkAfter = "SELECT BIN_TO_UUID(r.uid) AS uid, r.performed, r.receipt_type, r.receipt_source, r.receipt_source_type, r.archive, r.voided FROM " +
+                        prefix + "receipts r WHERE r.performed > ? OR (r.performed = ? AND r.uid > UUID_TO_BIN(?)) " +
+                        "ORDER BY r.performed, r.uid LIMIT ?";
+
+    this.seekReceipt = "SELECT BIN_TO_UUID(uid) AS uid, performed FROM " + prefix + "receipts_participants " +
+                        "WHERE participant = UUID_TO_BIN(?) AND performed >= ? " +
+                        "ORDER BY performed DESC, uid DESC LIMIT 1 OFFSET ?";
+
+    this.countReceipts = "SELECT COUNT(*) AS total FROM " + prefix + "receipts_participants " +
+                        "WHERE participant = UUID_TO_BIN(?) AND performed >= ?";
+
+    this.loadReceiptHolding = "SELECT BIN_TO_UUID(uid) AS uid, BIN_TO_UUID(participant) AS participant, ending, server, region, " +
                               "BIN_TO_UUID(currency) AS currency, holdings_type, holdings FROM " +
-                              prefix + "receipts_holdings WHERE uid = UUID_TO_BIN(?)";
+                              prefix + "receipts_holdings WHERE uid IN (";
 
     this.saveReceiptHolding = "INSERT INTO " + prefix + "receipts_holdings (uid, participant, ending, " +
-                              "server, region, currency, holdings_type, holdings) " +
-                              "VALUES (UUID_TO_BIN(?), UUID_TO_BIN(?), ?, ?, ?, UUID_TO_BIN(?), ?, ?) ON DUPLICATE KEY UPDATE uid=uid";
+                              "server, region, currency, holdings_type, holdings, performed) " +
+                              "VALUES (UUID_TO_BIN(?), UUID_TO_BIN(?), ?, ?, ?, UUID_TO_BIN(?), ?, ?, ?) ON DUPLICATE KEY UPDATE uid=uid";
 
-    this.loadParticipants = "SELECT BIN_TO_UUID(participant) AS participant, participant_type, tax FROM " +
-                            prefix + "receipts_participants WHERE uid = UUID_TO_BIN(?)";
+    this.loadParticipants = "SELECT BIN_TO_UUID(uid) AS uid, BIN_TO_UUID(participant) AS participant, participant_type, tax FROM " +
+                            prefix + "receipts_participants WHERE uid IN (";
 
-    this.saveParticipant = "INSERT INTO " + prefix + "receipts_participants (uid, participant, participant_type, tax) " +
-                           "VALUES (UUID_TO_BIN(?), UUID_TO_BIN(?), ?, ?) ON DUPLICATE KEY UPDATE uid=uid";
+    this.saveParticipant = "INSERT INTO " + prefix + "receipts_participants (uid, participant, participant_type, performed, tax) " +
+                           "VALUES (UUID_TO_BIN(?), UUID_TO_BIN(?), ?, ?, ?) ON DUPLICATE KEY UPDATE uid=uid";
 
-    this.loadModifiers = "SELECT BIN_TO_UUID(participant) AS participant, participant_type, operation, region, " +
-                          "BIN_TO_UUID(currency) AS currency, modifier FROM " + prefix + "receipts_modifiers WHERE uid = UUID_TO_BIN(?)";
+    this.loadModifiers = "SELECT BIN_TO_UUID(uid) AS uid, BIN_TO_UUID(participant) AS participant, participant_type, operation, region, " +
+                          "BIN_TO_UUID(currency) AS currency, modifier FROM " + prefix + "receipts_modifiers WHERE uid IN (";
 
-    this.saveModifier = "INSERT INTO " + prefix + "receipts_modifiers (uid, participant, participant_type, operation, region, currency, modifier) " +
-                        "VALUES (UUID_TO_BIN(?), UUID_TO_BIN(?), ?, ?, ?, UUID_TO_BIN(?), ?) ON DUPLICATE KEY UPDATE uid = uid";
+    this.saveModifier = "INSERT INTO " + prefix + "receipts_modifiers (uid, participant, participant_type, operation, region, currency, modifier, performed) " +
+                        "VALUES (UUID_TO_BIN(?), UUID_TO_BIN(?), ?, ?, ?, UUID_TO_BIN(?), ?, ?) ON DUPLICATE KEY UPDATE uid = uid";
 
   }
 
@@ -207,13 +313,32 @@ public class MySQLDialect implements Dialect {
         "    currency BINARY(16) NOT NULL,\n" +
         "    holdings_type VARCHAR(30) NOT NULL,\n" +
         "    holdings DECIMAL(49, 4) NOT NULL,\n" +
+        "    version BIGINT NOT NULL DEFAULT 1,\n" +
         "    UNIQUE(`uid`, `server`, `region`, `currency`, `holdings_type`),\n" +
         "    FOREIGN KEY(uid) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE\n" +
         "    );";
   }
 
+  @Override
+  public String holdingsVersionColumn() {
+    return "ALTER TABLE " + prefix + "holdings ADD COLUMN version BIGINT NOT NULL DEFAULT 1";
+  }
+
   @Override
   public String receiptsTable() {
+    if(partitioning != null) {
+      return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts (\n" +
+        "    uid BINARY(16) NOT NULL,\n" +
+        "    performed DATETIME NOT NULL,\n" +
+        "    receipt_type VARCHAR(30) NOT NULL,\n" +
+        "    receipt_source VARCHAR(60) NOT NULL,\n" +
+        "    receipt_source_type VARCHAR(30) NOT NULL,\n" +
+        "    archive TINYINT(1) NOT NULL,\n" +
+        "    voided TINYINT(1) NOT NULL,\n" +
+        "    PRIMARY KEY(`uid`, `performed`)\n" +
+        "    )" + partitionClause() + ";";
+    }
+
     return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts (\n" +
         "    uid BINARY(16) NOT NULL UNIQUE,\n" +
         "    performed DATETIME NOT NULL,\n" +
@@ -227,8 +352,23 @@ public class MySQLDialect implements Dialect {
 
   @Override
   public String receiptsHoldingsTable() {
+    if(partitioning != null) {
+      return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_holdings (\n" +
+        "    uid BINARY(16) NOT NULL,\n" +
+        "    participant BINARY(16) NOT NULL,\n" +
+        "    ending TINYINT(1) NOT NULL,\n" +
+        "    server VARCHAR(40) NOT NULL,\n" +
+        "    region VARCHAR(40) NOT NULL,\n" +
+        "    currency BINARY(16) NOT NULL,\n" +
+        "    holdings_type VARCHAR(30) NOT NULL,\n" +
+        "    holdings DECIMAL(49, 4) NOT NULL,\n" +
+        "    performed DATETIME NOT NULL,\n" +
+        "    UNIQUE(`uid`, `participant`, `ending`, `server`, `region`, `currency`, `holdings_type`, `performed`)\n" +
+        "    )" + partitionClause() + ";";
+    }
+
     return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_holdings (\n" +
-        "    uid BINARY(16) NOT NULL UNIQUE,\n" +
+        "    uid BINARY(16) NOT NULL,\n" +
         "    participant BINARY(16) NOT NULL,\n" +
         "    ending TINYINT(1) NOT NULL,\n" +
         "    server VARCHAR(40) NOT NULL,\n" +
@@ -236,56 +376,159 @@ public class MySQLDialect implements Dialect {
         "    currency BINARY(16) NOT NULL,\n" +
         "    holdings_type VARCHAR(30) NOT NULL,\n" +
         "    holdings DECIMAL(49, 4) NOT NULL,\n" +
+        "    performed DATETIME,\n" +
+        "    UNIQUE(`uid`, `participant`, `ending`, `server`, `region`, `currency`, `holdings_type`),\n" +
         "    FOREIGN KEY(uid) REFERENCES " + prefix + "receipts(uid) ON DELETE CASCADE\n" +
         "    );";
   }
 
   @Override
   public String receiptsParticipantsTable() {
+    if(partitioning != null) {
+      return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_participants (\n" +
+        "    uid BINARY(16) NOT NULL,\n" +
+        "    participant BINARY(16) NOT NULL,\n" +
+        "    participant_type VARCHAR(10) NOT NULL,\n" +
+        "    performed DATETIME NOT NULL,\n" +
+        "    tax DECIMAL(49, 4) NOT NULL,\n" +
+        "    PRIMARY KEY(`uid`, `participant_type`, `performed`),\n" +
+        "    INDEX " + prefix + "participant_history (`participant`, `performed`, `uid`)\n" +
+        "    )" + partitionClause() + ";";
+    }
+
     return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_participants (\n" +
-        "    uid BINARY(16) NOT NULL PRIMARY KEY,\n" +
+        "    uid BINARY(16) NOT NULL,\n" +
         "    participant BINARY(16) NOT NULL,\n" +
         "    participant_type VARCHAR(10) NOT NULL,\n" +
+        "    performed DATETIME NOT NULL,\n" +
         "    tax DECIMAL(49, 4) NOT NULL,\n" +
+        "    PRIMARY KEY(`uid`, `participant_type`),\n" +
+        "    INDEX " + prefix + "participant_history (`participant`, `performed`, `uid`),\n" +
         "    FOREIGN KEY(uid) REFERENCES " + prefix + "receipts(uid) ON DELETE CASCADE\n" +
         "    );";
   }
 
   @Override
   public String receiptsModifiersTable() {
+    if(partitioning != null) {
+      return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_modifiers (\n" +
+        "    uid BINARY(16) NOT NULL,\n" +
+        "    participant BINARY(16) NOT NULL,\n" +
+        "    participant_type VARCHAR(10) NOT NULL,\n" +
+        "    operation VARCHAR(20) NOT NULL,\n" +
+        "    region VARCHAR(40) NOT NULL,\n" +
+        "    currency BINARY(16) NOT NULL,\n" +
+        "    modifier DECIMAL(49, 4) NOT NULL,\n" +
+        "    performed DATETIME NOT NULL,\n" +
+        "    PRIMARY KEY(`uid`, `participant_type`, `performed`)\n" +
+        "    )" + partitionClause() + ";";
+    }
+
     return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_modifiers (\n" +
-        "    uid BINARY(16) NOT NULL PRIMARY KEY,\n" +
+        "    uid BINARY(16) NOT NULL,\n" +
         "    participant BINARY(16) NOT NULL,\n" +
         "    participant_type VARCHAR(10) NOT NULL,\n" +
-        "    operation VARCHAR(10) NOT NULL,\n" +
+        "    operation VARCHAR(20) NOT NULL,\n" +
         "    region VARCHAR(40) NOT NULL,\n" +
         "    currency BINARY(16) NOT NULL,\n" +
-        "    modifier DECIMAL(49, 4) NOT NULL," +
-        "    FOREIGN KEY(uid) REFERENCES " + prefix + "receipts(uid) ON DELETE CASCADE" +
+        "    modifier DECIMAL(49, 4) NOT NULL,\n" +
+        "    performed DATETIME,\n" +
+        "    PRIMARY KEY(`uid`, `participant_type`),\n" +
+        "    FOREIGN KEY(uid) REFERENCES " + prefix + "receipts(uid) ON DELETE CASCADE\n" +
         "    );";
   }
 
+  /**
+   * The partitioning used for the receipt tables, when they're partitioned. Every receipt table starts
+   * with a single partition for all rows, which is split as new partitions are added.
+   * @return The partitioning clause.
+   */
+  protected String partitionClause() {
+    return " PARTITION BY RANGE (TO_DAYS(performed)) (PARTITION pmax VALUES LESS THAN MAXVALUE)";
+  }
+
+  @Override
+  public String receiptsPerformedColumn(final String table) {
+    return "ALTER TABLE " + prefix + table + " ADD COLUMN performed DATETIME";
+  }
+
+  /*
+   * The new keys all start with uid, so they're added in the same statement as the old ones are
+   * dropped, which keeps an index on the receipt foreign key throughout.
+   */
+  @Override
+  public String[] receiptsKeyUpgrade() {
+    return new String[] {
+        "ALTER TABLE " + prefix + "receipts_participants ADD COLUMN performed DATETIME",
+        "UPDATE " + prefix + "receipts_participants p INNER JOIN " + prefix + "receipts r ON r.uid = p.uid " +
+            "SET p.performed = r.performed",
+        "ALTER TABLE " + prefix + "receipts_participants MODIFY performed DATETIME NOT NULL, " +
+            "DROP PRIMARY KEY, ADD PRIMARY KEY(`uid`, `participant_type`), " +
+            "ADD INDEX " + prefix + "participant_history (`participant`, `performed`, `uid`)",
+        "ALTER TABLE " + prefix + "receipts_modifiers MODIFY operation VARCHAR(20) NOT NULL, " +
+            "DROP PRIMARY KEY, ADD PRIMARY KEY(`uid`, `participant_type`)",
+        "ALTER TABLE " + prefix + "receipts_holdings " +
+            "ADD UNIQUE(`uid`, `participant`, `ending`, `server`, `region`, `currency`, `holdings_type`), " +
+            "DROP INDEX `uid`"
+    };
+  }
+
   @Override
   public @Language("SQL") String accountPurge(final int days) {
-    final String acc = prefix + "accounts";
-    final String players = prefix + "players_accounts";
-
-    return "DELETE FROM " + acc +
-        "WHERE uid IN (" +
-        "  SELECT uid FROM " + players +
-        "  WHERE EXISTS (" +
-        "    SELECT *" +
-        "    FROM " + acc +
-        "    WHERE " + acc + ".uid = " + players + ".uid" +
-        "    AND DATEDIFF(DAY, " + players + ".last_online, NOW()) >= " + days +
-        "  )" +
+    return "DELETE FROM " + prefix + "accounts WHERE uid IN (" +
+        "SELECT uid FROM " + prefix + "players_accounts " +
+        "WHERE last_online <= NOW() - INTERVAL " + days + " DAY" +
         ");";
   }
 
   @Override
   public @Language("SQL") String receiptPurge(final int days) {
-    return "DELETE FROM " + prefix + "receipts WHERE archived = false" +
-           "AND DATEDIFF(CURDATE(), performed) >= " + days;
+    return "DELETE FROM " + prefix + "receipts WHERE archive = 0 " +
+        "AND performed <= NOW() - INTERVAL " + days + " DAY";
+  }
+
+  @Override
+  public @Language("SQL") String receiptPurgeChunk() {
+    return "DELETE FROM " + prefix + "receipts WHERE performed < ? AND archive IN (?, ?) LIMIT ?";
+  }
+
+  @Override
+  public @Language("SQL") String countArchivedReceipts() {
+    return "SELECT COUNT(*) AS total FROM " + prefix + "receipts WHERE archive = ? AND performed >= ? AND performed < ?";
+  }
+
+  @Override
+  public Period receiptPartitioning() {
+    return partitioning;
+  }
+
+  @Override
+  public @Language("SQL") String receiptsPartitioned() {
+    return "SELECT COUNT(*) AS total FROM information_schema.PARTITIONS " +
+        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL";
+  }
+
+  @Override
+  public @Language("SQL") String receiptPartitions() {
+    return "SELECT PARTITION_NAME AS name FROM information_schema.PARTITIONS " +
+        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL";
+  }
+
+  /*
+   * New partitions are split from the end of the catch-all partition, which is empty as long as
+   * partitions are added ahead of time.
+   */
+  @Override
+  public @Language("SQL") String addReceiptPartition(final String table, final String name,
+                                                     final LocalDate from, final LocalDate to) {
+    return "ALTER TABLE " + prefix + table + " REORGANIZE PARTITION pmax INTO (" +
+        "PARTITION " + name + " VALUES LESS THAN (TO_DAYS('" + to + "')), " +
+        "PARTITION pmax VALUES LESS THAN MAXVALUE)";
+  }
+
+  @Override
+  public @Language("SQL") String dropReceiptPartition(final String table, final String name) {
+    return "ALTER TABLE " + prefix + table + " DROP PARTITION " + name;
   }
 
   @Override
@@ -348,6 +591,46 @@ public class MySQLDialect implements Dialect {
     return saveHolding;
   }
 
+  @Override
+  public @Language("SQL") String saveHoldingsDelta() {
+    return saveHoldingDelta;
+  }
+
+  @Override
+  public @Language("SQL") String loadHolding() {
+    return loadHolding;
+  }
+
+  @Override
+  public @Language("SQL") String createHoldingsVersion() {
+    return createHoldingVersion;
+  }
+
+  @Override
+  public @Language("SQL") String saveHoldingsVersion() {
+    return saveHoldingVersion;
+  }
+
+  @Override
+  public @Language("SQL") String loadAllPlayers() {
+    return loadAllPlayers;
+  }
+
+  @Override
+  public @Language("SQL") String loadAllNonPlayers() {
+    return loadAllNonPlayers;
+  }
+
+  @Override
+  public @Language("SQL") String loadAllMembers() {
+    return loadAllMembers;
+  }
+
+  @Override
+  public @Language("SQL") String loadAllHoldings() {
+    return loadAllHoldings;
+  }
+
   @Override
   public @Language("SQL") String loadReceipts() {
     return loadReceipts;
@@ -359,8 +642,43 @@ public class MySQLDialect implements Dialect {
   }
 
   @Override
-  public @Language("SQL") String loadReceiptHolding() {
-    return loadReceiptHolding;
+  public @Language("SQL") String loadReceipt() {
+    return loadReceipt;
+  }
+
+  @Override
+  public @Language("SQL") String loadReceiptPage() {
+    return loadReceiptPage;
+  }
+
+  @Override
+  public @Language("SQL") String loadReceiptPageAfter() {
+    return loadReceiptPageAfter;
+  }
+
+  @Override
+  public @Language("SQL") String loadReceiptChunk() {
+    return loadReceiptChunk;
+  }
+
+  @Override
+  public @Language("SQL") String loadReceiptChunkAfter() {
+    return loadReceiptChunkAfter;
+  }
+
+  @Override
+  public @Language("SQL") String seekReceipt() {
+    return seekReceipt;
+  }
+
+  @Override
+  public @Language("SQL") String countReceipts() {
+    return countReceipts;
+  }
+
+  @Override
+  public @Language("SQL") String loadReceiptHolding(final int receipts) {
+    return loadReceiptHolding + String.join(", ", Collections.nCopies(receipts, "UUID_TO_BIN(?)")) + ")";
   }
 
   @Override
@@ -369,8 +687,8 @@ public class MySQLDialect implements Dialect {
   }
 
   @Override
-  public @Language("SQL") String loadParticipants() {
-    return loadParticipants;
+  public @Language("SQL") String loadParticipants(final int receipts) {
+    return loadParticipants + String.join(", ", Collections.nCopies(receipts, "UUID_TO_BIN(?)")) + ")";
   }
 
   @Override
@@ -379,8 +697,8 @@ public class MySQLDialect implements Dialect {
   }
 
   @Override
-  public @Language("SQL") String loadModifiers() {
-    return loadModifiers;
+  public @Language("SQL") String loadModifiers(final int receipts) {
+    return loadModifiers + String.join(", ", Collections.nCopies(receipts, "UUID_TO_BIN(?)")) + ")";
   }
 
   @Override
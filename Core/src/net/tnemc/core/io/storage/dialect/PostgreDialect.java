@@ -0,0 +1,416 @@
+package net.tnemc.core.io.storage.dialect;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.io.storage.connect.CopyStatement;
+import org.intellij.lang.annotations.Language;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The dialect used for PostgreSQL. This uses the same queries as {@link MariaDialect} wherever they
+ * are compatible, with PostgreSQL's ON CONFLICT upserts, native UUID, BOOLEAN and NUMERIC columns,
+ * and indexes that are created separately from their tables.
+ *
+ * Large batches of upserts are bulk loaded using the COPY protocol. See {@link #copy(String)}.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class PostgreDialect extends MariaDialect {
+
+  public static final String requirement = "11.0.0";
+
+  private final Map<String, CopyStatement> copies = new HashMap<>();
+
+  public PostgreDialect(final String prefix) {
+    super(prefix);
+
+    this.saveName = "INSERT INTO " + prefix + "player_names (uid, username) VALUES (?, ?) " +
+            "ON CONFLICT(uid) DO UPDATE SET username = ?";
+
+    this.saveAccount = "INSERT INTO " + prefix + "accounts (uid, username, account_type, created, pin, status) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT(uid) DO UPDATE SET username = ?, pin = ?, status = ?";
+
+    this.saveNonPlayer = "INSERT INTO " + prefix + "non_players_accounts (uid, owner) VALUES (?, ?) " +
+            "ON CONFLICT(uid) DO UPDATE SET owner = ?";
+
+    this.savePlayer = "INSERT INTO " + prefix + "players_accounts (uid, last_online) VALUES (?, ?) " +
+            "ON CONFLICT(uid) DO UPDATE SET last_online = ?";
+
+    this.saveMember = "INSERT INTO " + prefix + "account_members (uid, account, perm, perm_value) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT(uid, account, perm) DO UPDATE SET perm_value = ?";
+
+    this.saveHolding = "INSERT INTO " + prefix + "holdings AS h (uid, server, region, currency, holdings_type, holdings) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT(uid, server, region, currency, holdings_type) DO UPDATE SET " +
+            "holdings = ?, version = h.version + 1";
+
+    this.saveHoldingDelta = "INSERT INTO " + prefix + "holdings AS h (uid, server, region, currency, holdings_type, holdings) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT(uid, server, region, currency, holdings_type) DO UPDATE SET " +
+            "holdings = h.holdings + ?, version = h.version + 1";
+
+    this.createHoldingVersion = "INSERT INTO " + prefix + "holdings (uid, server, region, currency, holdings_type, " +
+            "holdings, version) VALUES (?, ?, ?, ?, ?, ?, 1) ON CONFLICT DO NOTHING";
+
+    this.saveReceipt = "INSERT INTO " + prefix + "receipts (uid, performed, receipt_type, receipt_source, " +
+            "receipt_source_type, archive, voided) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT(" + ((partitioning == null)? "uid" : "uid, performed") + ") " +
+            "DO UPDATE SET archive = ?, voided = ?";
+
+    this.saveReceiptHolding = "INSERT INTO " + prefix + "receipts_holdings (uid, participant, ending, " +
+            "server, region, currency, holdings_type, holdings, performed) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    this.saveParticipant = "INSERT INTO " + prefix + "receipts_participants (uid, participant, participant_type, performed, tax) " +
+            "VALUES (?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    this.saveModifier = "INSERT INTO " + prefix + "receipts_modifiers (uid, participant, participant_type, operation, region, currency, modifier, performed) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    copy(saveAccount, "accounts", new String[] { "uid", "username", "account_type", "created", "pin", "status" },
+         new String[] { "uid" }, "username", "pin", "status");
+
+    copy(saveNonPlayer, "non_players_accounts", new String[] { "uid", "owner" }, new String[] { "uid" }, "owner");
+
+    copy(savePlayer, "players_accounts", new String[] { "uid", "last_online" }, new String[] { "uid" }, "last_online");
+
+    copy(saveMember, "account_members", new String[] { "uid", "account", "perm", "perm_value" },
+         new String[] { "uid", "account", "perm" }, "perm_value");
+
+    copy(saveHolding, "holdings", new String[] { "uid", "server", "region", "currency", "holdings_type", "holdings" },
+         new String[] { "uid", "server", "region", "currency", "holdings_type" }, "holdings");
+
+    copy(saveReceipt, "receipts", new String[] { "uid", "performed", "receipt_type", "receipt_source",
+                                                 "receipt_source_type", "archive", "voided" },
+         (partitioning == null)? new String[] { "uid" } : new String[] { "uid", "performed" }, "archive", "voided");
+
+    copy(saveReceiptHolding, "receipts_holdings", new String[] { "uid", "participant", "ending", "server", "region",
+                                                                 "currency", "holdings_type", "holdings", "performed" },
+         null);
+
+    copy(saveParticipant, "receipts_participants", new String[] { "uid", "participant", "participant_type",
+                                                                  "performed", "tax" },
+         null);
+
+    copy(saveModifier, "receipts_modifiers", new String[] { "uid", "participant", "participant_type", "operation",
+                                                            "region", "currency", "modifier", "performed" },
+         null);
+  }
+
+  /**
+   * Used to register the {@link CopyStatement} for an upsert query.
+   *
+   * @param query The upsert query that the copy statement replaces.
+   * @param table The table, without the prefix.
+   * @param columns The columns that are inserted, in the same order as the query's variables.
+   * @param conflict The columns of the unique key that the upsert conflicts on, or null if conflicting
+   *                 rows are left as they are.
+   * @param update The columns that are updated when a row conflicts.
+   */
+  private void copy(final String query, final String table, final String[] columns, final String[] conflict,
+                    final String... update) {
+
+    final String target = prefix + table;
+    final String stage = prefix + "copy_" + table;
+    final String list = String.join(", ", columns);
+
+    final StringBuilder merge = new StringBuilder("INSERT INTO " + target + " AS t (" + list + ") SELECT ");
+
+    if(conflict == null) {
+      merge.append(list).append(" FROM ").append(stage).append(" ON CONFLICT DO NOTHING");
+    } else {
+
+      //A row may only be updated once per statement, so only the last staged row for each key, in the
+      //order they were copied, is merged.
+      final String key = String.join(", ", conflict);
+      merge.append("DISTINCT ON (").append(key).append(") ").append(list).append(" FROM ").append(stage)
+           .append(" ORDER BY ").append(key).append(", copy_seq DESC")
+           .append(" ON CONFLICT(").append(key).append(") DO UPDATE SET ");
+
+      for(int i = 0; i < update.length; i++) {
+        if(i > 0) merge.append(", ");
+        merge.append(update[i]).append(" = EXCLUDED.").append(update[i]);
+      }
+
+      if(table.equals("holdings")) {
+        merge.append(", version = t.version + 1");
+      }
+    }
+
+    //The sequence column numbers the staged rows in the order they were copied.
+    copies.put(query, new CopyStatement("CREATE TEMP TABLE IF NOT EXISTS " + stage + " (LIKE " + target +
+                                            " INCLUDING DEFAULTS, copy_seq BIGSERIAL) ON COMMIT DELETE ROWS",
+                                        "COPY " + stage + " (" + list + ") FROM STDIN WITH (FORMAT csv)",
+                                        merge.toString(),
+                                        columns.length));
+  }
+
+  @Override
+  public CopyStatement copy(final String query) {
+    return copies.get(query);
+  }
+
+  @Override
+  public String accountsTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "accounts (\n" +
+            "    uid UUID NOT NULL PRIMARY KEY,\n" +
+            "    username VARCHAR(50) NOT NULL UNIQUE,\n" +
+            "    account_type VARCHAR(30) NOT NULL,\n" +
+            "    created TIMESTAMP NOT NULL,\n" +
+            "    pin VARCHAR(16),\n" +
+            "    status VARCHAR(36)\n" +
+            "    );";
+  }
+
+  @Override
+  public String accountsNonPlayerTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "non_players_accounts (\n" +
+            "    uid UUID NOT NULL PRIMARY KEY,\n" +
+            "    owner UUID NOT NULL,\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE,\n" +
+            "    FOREIGN KEY(owner) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  @Override
+  public String accountsPlayerTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "players_accounts (\n" +
+            "    uid UUID NOT NULL PRIMARY KEY,\n" +
+            "    last_online TIMESTAMP NOT NULL,\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  @Override
+  public String accountMembersTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "account_members (\n" +
+            "    uid UUID NOT NULL,\n" +
+            "    account UUID NOT NULL,\n" +
+            "    perm VARCHAR(36) NOT NULL,\n" +
+            "    perm_value BOOLEAN NOT NULL,\n" +
+            "    PRIMARY KEY(uid, account, perm),\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE,\n" +
+            "    FOREIGN KEY(account) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  @Override
+  public String holdingsTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "holdings (\n" +
+            "    uid UUID NOT NULL,\n" +
+            "    server VARCHAR(40) NOT NULL,\n" +
+            "    region VARCHAR(40) NOT NULL,\n" +
+            "    currency UUID NOT NULL,\n" +
+            "    holdings_type VARCHAR(30) NOT NULL,\n" +
+            "    holdings NUMERIC(49, 4) NOT NULL,\n" +
+            "    version BIGINT NOT NULL DEFAULT 1,\n" +
+            "    UNIQUE(uid, server, region, currency, holdings_type),\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  @Override
+  public String holdingsVersionColumn() {
+    return "ALTER TABLE " + prefix + "holdings ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1";
+  }
+
+  /*
+   * Partitioned receipt tables can't be referenced by foreign keys, so each one is partitioned by the
+   * time the receipt was performed, and their partitions are dropped together.
+   */
+  @Override
+  public String receiptsTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts (\n" +
+            "    uid UUID NOT NULL,\n" +
+            "    performed TIMESTAMP NOT NULL,\n" +
+            "    receipt_type VARCHAR(30) NOT NULL,\n" +
+            "    receipt_source VARCHAR(60) NOT NULL,\n" +
+            "    receipt_source_type VARCHAR(30) NOT NULL,\n" +
+            "    archive BOOLEAN NOT NULL,\n" +
+            "    voided BOOLEAN NOT NULL,\n" +
+            "    PRIMARY KEY(" + ((partitioning == null)? "uid" : "uid, performed") + ")\n" +
+            "    )" + partitionClause() + ";";
+  }
+
+  @Override
+  public String receiptsHoldingsTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_holdings (\n" +
+            "    uid UUID NOT NULL,\n" +
+            "    participant UUID NOT NULL,\n" +
+            "    ending BOOLEAN NOT NULL,\n" +
+            "    server VARCHAR(40) NOT NULL,\n" +
+            "    region VARCHAR(40) NOT NULL,\n" +
+            "    currency UUID NOT NULL,\n" +
+            "    holdings_type VARCHAR(30) NOT NULL,\n" +
+            "    holdings NUMERIC(49, 4) NOT NULL,\n" +
+            "    performed TIMESTAMP" + ((partitioning == null)? "" : " NOT NULL") + ",\n" +
+            "    UNIQUE(uid, participant, ending, server, region, currency, holdings_type" +
+            ((partitioning == null)? "" : ", performed") + ")" + receiptReference() + "\n" +
+            "    )" + partitionClause() + ";";
+  }
+
+  @Override
+  public String receiptsParticipantsTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_participants (\n" +
+            "    uid UUID NOT NULL,\n" +
+            "    participant UUID NOT NULL,\n" +
+            "    participant_type VARCHAR(10) NOT NULL,\n" +
+            "    performed TIMESTAMP NOT NULL,\n" +
+            "    tax NUMERIC(49, 4) NOT NULL,\n" +
+            "    PRIMARY KEY(uid, participant_type" + ((partitioning == null)? "" : ", performed") + ")" +
+            receiptReference() + "\n" +
+            "    )" + partitionClause() + ";";
+  }
+
+  @Override
+  public String receiptsModifiersTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_modifiers (\n" +
+            "    uid UUID NOT NULL,\n" +
+            "    participant UUID NOT NULL,\n" +
+            "    participant_type VARCHAR(10) NOT NULL,\n" +
+            "    operation VARCHAR(20) NOT NULL,\n" +
+            "    region VARCHAR(40) NOT NULL,\n" +
+            "    currency UUID NOT NULL,\n" +
+            "    modifier NUMERIC(49, 4) NOT NULL,\n" +
+            "    performed TIMESTAMP" + ((partitioning == null)? "" : " NOT NULL") + ",\n" +
+            "    PRIMARY KEY(uid, participant_type" + ((partitioning == null)? "" : ", performed") + ")" +
+            receiptReference() + "\n" +
+            "    )" + partitionClause() + ";";
+  }
+
+  /*
+   * Rows that don't fit any other partition are kept in a default partition, so that inserts never
+   * fail. It stays empty as long as partitions are added ahead of time.
+   */
+  @Override
+  protected String partitionClause() {
+    return (partitioning == null)? "" : " PARTITION BY RANGE (performed)";
+  }
+
+  private String receiptReference() {
+    return (partitioning == null)? ",\n    FOREIGN KEY(uid) REFERENCES " + prefix + "receipts(uid) ON DELETE CASCADE" : "";
+  }
+
+  @Override
+  public String receiptsPerformedColumn(final String table) {
+    return "ALTER TABLE " + prefix + table + " ADD COLUMN IF NOT EXISTS performed TIMESTAMP";
+  }
+
+  /*
+   * PostgreSQL support was added after receipts were keyed on their participants, so there are no
+   * older receipt tables to upgrade.
+   */
+  @Override
+  public String[] receiptsKeyUpgrade() {
+    return new String[0];
+  }
+
+  /*
+   * The purge indexes are partial, so they only contain the rows that a purge may delete.
+   */
+  @Override
+  public String[] indexes() {
+    return new String[] {
+        "CREATE INDEX IF NOT EXISTS " + prefix + "participant_history ON " + prefix +
+            "receipts_participants (participant, performed, uid);",
+        "CREATE INDEX IF NOT EXISTS " + prefix + "receipts_purge ON " + prefix +
+            "receipts (performed) WHERE archive = false;",
+        "CREATE INDEX IF NOT EXISTS " + prefix + "players_purge ON " + prefix +
+            "players_accounts (last_online);",
+        "CREATE INDEX IF NOT EXISTS " + prefix + "holdings_server ON " + prefix +
+            "holdings (server);",
+        "CREATE INDEX IF NOT EXISTS " + prefix + "members_account ON " + prefix +
+            "account_members (account);",
+        "CREATE INDEX IF NOT EXISTS " + prefix + "non_players_owner ON " + prefix +
+            "non_players_accounts (owner);"
+    };
+  }
+
+  @Override
+  public @Language("SQL") String accountPurge(final int days) {
+    return "DELETE FROM " + prefix + "accounts WHERE uid IN (" +
+            "SELECT uid FROM " + prefix + "players_accounts " +
+            "WHERE last_online <= NOW() - INTERVAL '" + days + " days'" +
+            ");";
+  }
+
+  @Override
+  public @Language("SQL") String receiptPurge(final int days) {
+    return "DELETE FROM " + prefix + "receipts WHERE archive = false " +
+            "AND performed <= NOW() - INTERVAL '" + days + " days'";
+  }
+
+  @Override
+  public @Language("SQL") String receiptPurgeChunk() {
+    return "DELETE FROM " + prefix + "receipts WHERE uid IN (" +
+            "SELECT uid FROM " + prefix + "receipts WHERE performed < ? AND archive IN (?, ?) LIMIT ?" +
+            ")";
+  }
+
+  @Override
+  public @Language("SQL") String receiptsPartitioned() {
+    return "SELECT COUNT(*) AS total FROM pg_partitioned_table pt " +
+            "INNER JOIN pg_class c ON c.oid = pt.partrelid WHERE c.relname = ?";
+  }
+
+  @Override
+  public @Language("SQL") String receiptPartitions() {
+    return "SELECT c.relname AS name FROM pg_inherits i " +
+            "INNER JOIN pg_class c ON c.oid = i.inhrelid " +
+            "INNER JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = ?";
+  }
+
+  @Override
+  public @Language("SQL") String addReceiptPartition(final String table, final String name,
+                                                     final LocalDate from, final LocalDate to) {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + table + "_" + name + " PARTITION OF " + prefix + table +
+            " FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+  }
+
+  @Override
+  public @Language("SQL") String dropReceiptPartition(final String table, final String name) {
+    return "DROP TABLE IF EXISTS " + prefix + table + "_" + name;
+  }
+
+  @Override
+  public @Language("SQL") String defaultReceiptPartition(final String table) {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + table + "_pdefault PARTITION OF " + prefix + table + " DEFAULT";
+  }
+
+  /*
+   * PostgreSQL reports versions such as "15.4" or "16.1 (Debian 16.1-1.pgdg120+1)".
+   */
+  @Override
+  public String parseVersion(final String version) {
+    final String[] parts = version.trim().split("[ (]")[0].split("\\.");
+
+    final StringBuilder builder = new StringBuilder();
+    for(int i = 0; i < 3; i++) {
+      if(i > 0) builder.append(".");
+      builder.append((i < parts.length)? parts[i].replaceAll("[^0-9]", "") : "0");
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public String requirement() {
+    return requirement;
+  }
+}
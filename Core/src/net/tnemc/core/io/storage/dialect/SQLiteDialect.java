@@ -0,0 +1,245 @@
+package net.tnemc.core.io.storage.dialect;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.intellij.lang.annotations.Language;
+
+/**
+ * The dialect used for the embedded SQLite database. This uses the same queries as
+ * {@link MariaDialect} wherever they are compatible, with SQLite's upsert syntax, and column types
+ * that SQLite is able to store without losing precision.
+ *
+ * Identifiers are stored as text, and decimal values are stored as text so that they aren't
+ * converted to floating point numbers.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class SQLiteDialect extends MariaDialect {
+
+  public SQLiteDialect(final String prefix) {
+    super(prefix);
+
+    //SQLite has no partitioning, so old receipts are always purged in chunks.
+    this.partitioning = null;
+
+    this.saveName = "INSERT INTO " + prefix + "player_names (uid, username) VALUES (?, ?) " +
+            "ON CONFLICT(uid) DO UPDATE SET username = ?";
+
+    this.saveAccount = "INSERT INTO " + prefix + "accounts (uid, username, account_type, created, pin, status) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT(uid) DO UPDATE SET username = ?, pin = ?, status = ?";
+
+    this.saveNonPlayer = "INSERT INTO " + prefix + "non_players_accounts (uid, owner) VALUES (?, ?) " +
+            "ON CONFLICT(uid) DO UPDATE SET owner = ?";
+
+    this.savePlayer = "INSERT INTO " + prefix + "players_accounts (uid, last_online) VALUES (?, ?) " +
+            "ON CONFLICT(uid) DO UPDATE SET last_online = ?";
+
+    this.saveMember = "INSERT INTO " + prefix + "account_members (uid, account, perm, perm_value) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT(uid, account, perm) DO UPDATE SET perm_value = ?";
+
+    this.saveHolding = "INSERT INTO " + prefix + "holdings (uid, server, region, currency, holdings_type, holdings) " +
+            "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT(uid, server, region, currency, holdings_type) DO UPDATE SET holdings = ?, " +
+            "version = version + 1";
+
+    //Holdings are stored as text, and SQLite would add them as floating point values, so they're
+    //always written as exact values instead.
+    this.saveHoldingDelta = null;
+
+    this.createHoldingVersion = "INSERT OR IGNORE INTO " + prefix + "holdings (uid, server, region, currency, " +
+            "holdings_type, holdings, version) VALUES (?, ?, ?, ?, ?, ?, 1)";
+
+    this.saveReceipt = "INSERT INTO " + prefix + "receipts (uid, performed, receipt_type, receipt_source, " +
+            "receipt_source_type, archive, voided) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?) ON CONFLICT(uid) DO UPDATE SET archive = ?, voided = ?";
+
+    this.saveReceiptHolding = "INSERT INTO " + prefix + "receipts_holdings (uid, participant, ending, " +
+            "server, region, currency, holdings_type, holdings, performed) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    this.saveParticipant = "INSERT INTO " + prefix + "receipts_participants (uid, participant, participant_type, performed, tax) " +
+            "VALUES (?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+
+    this.saveModifier = "INSERT INTO " + prefix + "receipts_modifiers (uid, participant, participant_type, operation, region, currency, modifier, performed) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+  }
+
+  @Override
+  public String accountsTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "accounts (\n" +
+            "    uid VARCHAR(36) NOT NULL PRIMARY KEY,\n" +
+            "    username VARCHAR(50) NOT NULL UNIQUE,\n" +
+            "    account_type VARCHAR(30) NOT NULL,\n" +
+            "    created DATETIME NOT NULL,\n" +
+            "    pin VARCHAR(16),\n" +
+            "    status VARCHAR(36)\n" +
+            "    );";
+  }
+
+  @Override
+  public String accountsNonPlayerTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "non_players_accounts (\n" +
+            "    uid VARCHAR(36) NOT NULL UNIQUE,\n" +
+            "    owner VARCHAR(36) NOT NULL,\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE,\n" +
+            "    FOREIGN KEY(owner) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  @Override
+  public String accountsPlayerTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "players_accounts (\n" +
+            "    uid VARCHAR(36) NOT NULL UNIQUE,\n" +
+            "    last_online DATETIME NOT NULL,\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  @Override
+  public String accountMembersTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "account_members (\n" +
+            "    uid VARCHAR(36) NOT NULL,\n" +
+            "    account VARCHAR(36) NOT NULL,\n" +
+            "    perm VARCHAR(36) NOT NULL,\n" +
+            "    perm_value BOOLEAN NOT NULL,\n" +
+            "    UNIQUE(uid, account, perm),\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE,\n" +
+            "    FOREIGN KEY(account) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  @Override
+  public String holdingsTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "holdings (\n" +
+            "    uid VARCHAR(36) NOT NULL,\n" +
+            "    server VARCHAR(40) NOT NULL,\n" +
+            "    region VARCHAR(40) NOT NULL,\n" +
+            "    currency VARCHAR(36) NOT NULL,\n" +
+            "    holdings_type VARCHAR(30) NOT NULL,\n" +
+            "    holdings TEXT NOT NULL,\n" +
+            "    version BIGINT NOT NULL DEFAULT 1,\n" +
+            "    UNIQUE(uid, server, region, currency, holdings_type),\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "accounts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  @Override
+  public String receiptsTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts (\n" +
+            "    uid VARCHAR(36) NOT NULL PRIMARY KEY,\n" +
+            "    performed DATETIME NOT NULL,\n" +
+            "    receipt_type VARCHAR(30) NOT NULL,\n" +
+            "    receipt_source VARCHAR(60) NOT NULL,\n" +
+            "    receipt_source_type VARCHAR(30) NOT NULL,\n" +
+            "    archive BOOLEAN NOT NULL,\n" +
+            "    voided BOOLEAN NOT NULL\n" +
+            "    );";
+  }
+
+  @Override
+  public String receiptsHoldingsTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_holdings (\n" +
+            "    uid VARCHAR(36) NOT NULL,\n" +
+            "    participant VARCHAR(36) NOT NULL,\n" +
+            "    ending BOOLEAN NOT NULL,\n" +
+            "    server VARCHAR(40) NOT NULL,\n" +
+            "    region VARCHAR(40) NOT NULL,\n" +
+            "    currency VARCHAR(36) NOT NULL,\n" +
+            "    holdings_type VARCHAR(30) NOT NULL,\n" +
+            "    holdings TEXT NOT NULL,\n" +
+            "    performed DATETIME,\n" +
+            "    UNIQUE(uid, participant, ending, server, region, currency, holdings_type),\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "receipts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  @Override
+  public String receiptsParticipantsTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_participants (\n" +
+            "    uid VARCHAR(36) NOT NULL,\n" +
+            "    participant VARCHAR(36) NOT NULL,\n" +
+            "    participant_type VARCHAR(10) NOT NULL,\n" +
+            "    performed DATETIME NOT NULL,\n" +
+            "    tax TEXT NOT NULL,\n" +
+            "    PRIMARY KEY(uid, participant_type),\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "receipts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  @Override
+  public String receiptsModifiersTable() {
+    return "CREATE TABLE IF NOT EXISTS " + prefix + "receipts_modifiers (\n" +
+            "    uid VARCHAR(36) NOT NULL,\n" +
+            "    participant VARCHAR(36) NOT NULL,\n" +
+            "    participant_type VARCHAR(10) NOT NULL,\n" +
+            "    operation VARCHAR(20) NOT NULL,\n" +
+            "    region VARCHAR(40) NOT NULL,\n" +
+            "    currency VARCHAR(36) NOT NULL,\n" +
+            "    modifier TEXT NOT NULL,\n" +
+            "    performed DATETIME,\n" +
+            "    PRIMARY KEY(uid, participant_type),\n" +
+            "    FOREIGN KEY(uid) REFERENCES " + prefix + "receipts(uid) ON DELETE CASCADE\n" +
+            "    );";
+  }
+
+  /*
+   * SQLite support was added after receipts were keyed on their participants, so there are no older
+   * receipt tables to upgrade.
+   */
+  @Override
+  public String[] receiptsKeyUpgrade() {
+    return new String[0];
+  }
+
+  @Override
+  public String[] indexes() {
+    return new String[] {
+        "CREATE INDEX IF NOT EXISTS " + prefix + "participant_history ON " + prefix +
+            "receipts_participants (participant, performed, uid);"
+    };
+  }
+
+  /*
+   * Dates are stored by the SQLite driver as milliseconds since the epoch.
+   */
+  @Override
+  public @Language("SQL") String accountPurge(final int days) {
+    return "DELETE FROM " + prefix + "accounts WHERE uid IN (" +
+            "SELECT uid FROM " + prefix + "players_accounts " +
+            "WHERE last_online <= (CAST(strftime('%s', 'now') AS INTEGER) - " + ((long)days * 86400L) + ") * 1000" +
+            ");";
+  }
+
+  @Override
+  public @Language("SQL") String receiptPurge(final int days) {
+    return "DELETE FROM " + prefix + "receipts WHERE archive = 0 " +
+            "AND performed <= (CAST(strftime('%s', 'now') AS INTEGER) - " + ((long)days * 86400L) + ") * 1000";
+  }
+
+  @Override
+  public @Language("SQL") String receiptPurgeChunk() {
+    return "DELETE FROM " + prefix + "receipts WHERE uid IN (" +
+            "SELECT uid FROM " + prefix + "receipts WHERE performed < ? AND archive IN (?, ?) LIMIT ?" +
+            ")";
+  }
+
+  @Override
+  public String requirement() {
+    return "none";
+  }
+}
@@ -17,17 +17,22 @@ package net.tnemc.core.io.storage.engine;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import net.tnemc.core.TNECore;
 import net.tnemc.core.account.Account;
 import net.tnemc.core.account.GeyserAccount;
 import net.tnemc.core.account.NonPlayerAccount;
 import net.tnemc.core.account.PlayerAccount;
 import net.tnemc.core.account.SharedAccount;
 import net.tnemc.core.account.holdings.HoldingsEntry;
+import net.tnemc.core.compatibility.scheduler.ChoreExecution;
+import net.tnemc.core.compatibility.scheduler.ChoreTime;
 import net.tnemc.core.config.DataConfig;
 import net.tnemc.core.io.storage.Datable;
 import net.tnemc.core.io.storage.Dialect;
+import net.tnemc.core.io.storage.ReceiptPartitions;
 import net.tnemc.core.io.storage.SQLEngine;
 import net.tnemc.core.io.storage.StorageConnector;
+import net.tnemc.core.io.storage.StorageManager;
 import net.tnemc.core.io.storage.connect.SQLConnector;
 import net.tnemc.core.io.storage.datables.sql.standard.SQLAccount;
 import net.tnemc.core.io.storage.datables.sql.standard.SQLHoldings;
@@ -36,10 +41,9 @@ import net.tnemc.core.io.storage.dialect.MySQLDialect;
 import net.tnemc.core.transaction.Receipt;
 import org.intellij.lang.annotations.Language;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * StandardSQL
@@ -96,13 +100,60 @@ public abstract class StandardSQL implements SQLEngine {
       ((SQLConnector)connector).executeUpdate(dialect().accountsPlayerTable(), new Object[]{});
       ((SQLConnector)connector).executeUpdate(dialect().accountMembersTable(), new Object[]{});
       ((SQLConnector)connector).executeUpdate(dialect().holdingsTable(), new Object[]{});
+
+      //Holdings tables created before holdings were versioned need the version column added.
+      if(!((SQLConnector)connector).hasColumn(prefix + "holdings", "version")) {
+        ((SQLConnector)connector).executeUpdate(dialect().holdingsVersionColumn(), new Object[]{});
+      }
+
       ((SQLConnector)connector).executeUpdate(dialect().receiptsTable(), new Object[]{});
       ((SQLConnector)connector).executeUpdate(dialect().receiptsHoldingsTable(), new Object[]{});
       ((SQLConnector)connector).executeUpdate(dialect().receiptsParticipantsTable(), new Object[]{});
       ((SQLConnector)connector).executeUpdate(dialect().receiptsModifiersTable(), new Object[]{});
+
+      //Receipt tables created before receipts were keyed on their participants need their keys upgraded.
+      if(!((SQLConnector)connector).hasColumn(prefix + "receipts_participants", "performed")) {
+        for(String upgrade : dialect().receiptsKeyUpgrade()) {
+          ((SQLConnector)connector).executeUpdate(upgrade, new Object[]{});
+        }
+      }
+
+      //Receipt tables created before receipts were partitioned need the performed column added.
+      for(String table : new String[] { "receipts_holdings", "receipts_modifiers" }) {
+        if(!((SQLConnector)connector).hasColumn(prefix + table, "performed")) {
+          ((SQLConnector)connector).executeUpdate(dialect().receiptsPerformedColumn(table), new Object[]{});
+        }
+      }
+
+      for(String index : dialect().indexes()) {
+        ((SQLConnector)connector).executeUpdate(index, new Object[]{});
+      }
+
+      if(ReceiptPartitions.partitioned((SQLConnector)connector)) {
+        ReceiptPartitions.maintain((SQLConnector)connector);
+
+        //Only the database TNE is using is maintained daily, not the target of a migration.
+        if(StorageManager.instance().getEngine() != this) {
+          return;
+        }
+
+        TNECore.server().scheduler().createRepeatingTask(()->ReceiptPartitions.maintain((SQLConnector)connector),
+                                                         new ChoreTime(1, TimeUnit.DAYS),
+                                                         new ChoreTime(1, TimeUnit.DAYS),
+                                                         ChoreExecution.SECONDARY);
+      }
     }
   }
 
+  /**
+   * The prefix used for every table of this engine.
+   *
+   * @return The table prefix.
+   */
+  public String prefix() {
+    return prefix;
+  }
+
   /**
    * The dialiect for this engine. This will be used for query purposes.
    *
@@ -122,18 +173,16 @@ public abstract class StandardSQL implements SQLEngine {
   public void reset(StorageConnector<?> connector) {
 
     @Language("SQL")
-    final String truncateAll = "SELECT concat('TRUNCATE TABLE ',table_catalog,'.',table_schema,'.',table_name) AS query" +
+    final String truncateAll = "SELECT concat('TRUNCATE TABLE ',table_catalog,'.',table_schema,'.',table_name) AS query " +
         "FROM information_schema.tables " +
         "WHERE table_name LIKE '" + prefix + "%';";
 
     if(connector instanceof SQLConnector) {
-      try(ResultSet result = ((SQLConnector)connector).executeQuery(truncateAll, new Object[]{})) {
+      final SQLConnector sql = (SQLConnector)connector;
 
-        while(result.next()) {
-          ((SQLConnector)connector).executeUpdate(result.getString("query"), new Object[]{});
-        }
-      } catch(SQLException e) {
-        e.printStackTrace();
+      //Collect the truncate statements first so that the connection used to read them is released.
+      for(String query : sql.executeQuery(truncateAll, new Object[]{}, (result)->result.getString("query"))) {
+        sql.executeUpdate(query, new Object[]{});
       }
     }
   }
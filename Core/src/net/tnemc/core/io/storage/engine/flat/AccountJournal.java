@@ -0,0 +1,573 @@
+package net.tnemc.core.io.storage.engine.flat;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.TNECore;
+import net.tnemc.core.compatibility.log.DebugLevel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only journal of account changes, backed by a compacted snapshot.
+ *
+ * Every change is appended to the current log file as a single checksummed entry, so the cost of a
+ * write is the size of the change rather than the size of the account. Log files are forced to disk
+ * in groups on a dedicated thread every sync interval, or after every entry if the interval is zero.
+ *
+ * Once the logs grow past the compaction size, the current log is closed and a new one is started,
+ * and the image of every account is written to a new snapshot in the background. The snapshot
+ * records the last log generation it contains, so logs it covers can be removed, and any that
+ * weren't removed are skipped on the next startup.
+ *
+ * On startup the snapshot is loaded, and every newer log is replayed in order. A log that ends with
+ * a partial entry, such as after a crash mid-write, is replayed up to its last complete entry.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class AccountJournal {
+
+  private static final int MAGIC = 0x544E454A;
+  private static final byte VERSION = 1;
+
+  private static final String SNAPSHOT = "snapshot.dat";
+  private static final String LOG_PREFIX = "journal-";
+  private static final String LOG_SUFFIX = ".log";
+
+  private final Map<String, JournalRecord> records = new HashMap<>();
+
+  //Held while a snapshot is being written, so the journal can't be reset underneath it.
+  private final Object compactLock = new Object();
+
+  private final File directory;
+  private final long syncInterval;
+  private final long compactSize;
+
+  private final AtomicLong logged = new AtomicLong();
+  private final AtomicLong appended = new AtomicLong();
+  private final AtomicLong syncs = new AtomicLong();
+  private final AtomicLong compactions = new AtomicLong();
+
+  private FileChannel channel;
+  private long generation = 0;
+  private volatile boolean pending = false;
+
+  private Thread thread;
+  private volatile boolean running = false;
+
+  /**
+   * @param directory The directory the snapshot and log files are kept in.
+   * @param syncInterval The interval, in milliseconds, at which the log is forced to disk. If this is
+   *                     zero, the log is forced to disk after every entry.
+   * @param compactSize The amount of bytes that may be logged before a new snapshot is written.
+   */
+  public AccountJournal(final File directory, final long syncInterval, final long compactSize) {
+    this.directory = directory;
+    this.syncInterval = Math.max(0, syncInterval);
+    this.compactSize = Math.max(1024, compactSize);
+  }
+
+  /**
+   * Used to load the snapshot, replay the logs, and open a new log for writing.
+   *
+   * @throws IOException If the journal couldn't be opened.
+   */
+  public synchronized void open() throws IOException {
+    if(!directory.exists() && !directory.mkdirs()) {
+      throw new IOException("Unable to create journal directory: " + directory.getPath());
+    }
+
+    final long start = System.currentTimeMillis();
+
+    generation = readSnapshot();
+    final long covered = generation;
+
+    for(File log : logs()) {
+      final long logGeneration = generation(log);
+      if(logGeneration <= covered) {
+
+        //This log was written to a snapshot, but wasn't removed afterwards.
+        Files.deleteIfExists(log.toPath());
+        continue;
+      }
+      logged.addAndGet(replay(log));
+      generation = Math.max(generation, logGeneration);
+    }
+
+    //We never append to a log from a previous run, as it may end with a partial entry.
+    rotate();
+
+    TNECore.log().inform("Loaded " + records.size() + " accounts from the journal in "
+                             + (System.currentTimeMillis() - start) + "ms.");
+
+    running = true;
+    thread = new Thread(this::run, "TNE-Journal");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Used to append an entry to the journal, and apply it to the account it belongs to.
+   *
+   * @param type The type of entry.
+   * @param entry The encoded entry.
+   * @return True if the entry was written, otherwise false.
+   */
+  public synchronized boolean append(final byte type, final byte[] entry) {
+    if(channel == null) {
+      TNECore.log().error("Attempted to write to a closed journal.");
+      return false;
+    }
+
+    try {
+      final ByteBuffer buffer = frame(type, entry);
+      final int size = buffer.remaining();
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      apply(type, entry);
+
+      if(syncInterval == 0) {
+        channel.force(false);
+        syncs.incrementAndGet();
+      } else {
+        pending = true;
+      }
+      logged.addAndGet(size);
+      appended.incrementAndGet();
+      return true;
+    } catch(IOException e) {
+      TNECore.log().error("Issue writing to the journal: " + e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Used to find the image of an account in this journal.
+   *
+   * @param identifier The identifier of the account.
+   * @return An Optional containing a copy of the account's record, if it exists.
+   */
+  public synchronized Optional<JournalRecord> find(final String identifier) {
+    final JournalRecord record = records.get(identifier);
+    return (record == null)? Optional.empty() : Optional.of(new JournalRecord(record));
+  }
+
+  /**
+   * Used to get a copy of the image of every account in this journal.
+   *
+   * @return A collection containing a copy of every record.
+   */
+  public synchronized Collection<JournalRecord> records() {
+    final List<JournalRecord> copy = new ArrayList<>(records.size());
+    for(JournalRecord record : records.values()) {
+      copy.add(new JournalRecord(record));
+    }
+    return copy;
+  }
+
+  /**
+   * Used to remove every player account that hasn't been online since the given time. A removal is
+   * appended to the log for each account, and the accounts are left out of the next snapshot.
+   *
+   * @param before The time, in milliseconds, that an account must have last been online before.
+   * @return The amount of accounts that were removed.
+   */
+  public synchronized int purge(final long before) {
+    final List<String> purged = new ArrayList<>();
+    for(JournalRecord record : records.values()) {
+      if(record.hasInfo() && record.getLastOnline() <= before
+          && (record.getType().equalsIgnoreCase("player") || record.getType().equalsIgnoreCase("bedrock"))) {
+        purged.add(record.getIdentifier());
+      }
+    }
+
+    int removed = 0;
+    for(String identifier : purged) {
+      try {
+        if(append(JournalRecord.REMOVE, JournalRecord.remove(identifier))) {
+          removed++;
+        }
+      } catch(IOException e) {
+        TNECore.log().error("Issue purging account from the journal: " + e.getMessage());
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * Used to remove every account from this journal, along with the snapshot and every log file.
+   */
+  public void reset() {
+    synchronized(compactLock) {
+      synchronized(this) {
+        try {
+          records.clear();
+          closeChannel();
+
+          Files.deleteIfExists(new File(directory, SNAPSHOT).toPath());
+          for(File log : logs()) {
+            Files.deleteIfExists(log.toPath());
+          }
+          generation = 0;
+          logged.set(0);
+          rotate();
+        } catch(IOException e) {
+          TNECore.log().error("Issue resetting the journal: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Used to write a new snapshot containing every account, and remove the logs it covers. The
+   * accounts are copied and a new log is started while holding the journal's lock, but the snapshot
+   * itself is written without it so that writes aren't held up.
+   */
+  public void compact() {
+    synchronized(compactLock) {
+      try {
+        final List<JournalRecord> copy = new ArrayList<>();
+        final long covered;
+
+        synchronized(this) {
+          for(JournalRecord record : records.values()) {
+            copy.add(new JournalRecord(record));
+          }
+          covered = generation;
+          rotate();
+          logged.set(0);
+        }
+
+        final long start = System.currentTimeMillis();
+        writeSnapshot(copy, covered);
+
+        for(File log : logs()) {
+          if(generation(log) <= covered) {
+            Files.deleteIfExists(log.toPath());
+          }
+        }
+        compactions.incrementAndGet();
+
+        TNECore.log().debug("Compacted the journal with " + copy.size() + " accounts in "
+                                + (System.currentTimeMillis() - start) + "ms.", DebugLevel.STANDARD);
+      } catch(IOException e) {
+        TNECore.log().error("Issue compacting the journal: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Used to force every pending entry to disk, stop the sync thread, and close the journal.
+   */
+  public void close() {
+    running = false;
+    if(thread != null) {
+      thread.interrupt();
+      try {
+        thread.join(10000);
+      } catch(InterruptedException ignore) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    synchronized(this) {
+      try {
+        closeChannel();
+      } catch(IOException e) {
+        TNECore.log().error("Issue closing the journal: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Used to get a summary of this journal's metrics, for logging.
+   *
+   * @return A summary of this journal's metrics.
+   */
+  public String metrics() {
+    return "Journal - Generation: " + generation + " Accounts: " + records.size()
+        + " Entries: " + appended.get() + " Syncs: " + syncs.get() + " Compactions: " + compactions.get()
+        + " Logged Since Snapshot: " + logged.get() + " bytes";
+  }
+
+  private void run() {
+    while(running) {
+      try {
+        Thread.sleep((syncInterval == 0)? 1000 : syncInterval);
+      } catch(InterruptedException ignore) {
+        //We're closing, the channel is forced to disk when it's closed.
+        break;
+      }
+
+      sync();
+
+      if(logged.get() >= compactSize) {
+        compact();
+      }
+    }
+  }
+
+  /**
+   * Used to force the entries written since the last sync to disk.
+   */
+  private void sync() {
+    if(!pending) {
+      return;
+    }
+
+    synchronized(this) {
+      try {
+        if(channel != null) {
+          pending = false;
+          channel.force(false);
+          syncs.incrementAndGet();
+        }
+      } catch(IOException e) {
+        pending = true;
+        TNECore.log().error("Issue syncing the journal: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Used to close the current log, and open the log for the next generation.
+   */
+  private void rotate() throws IOException {
+    closeChannel();
+    generation++;
+
+    final File log = new File(directory, LOG_PREFIX + generation + LOG_SUFFIX);
+    channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                               StandardOpenOption.TRUNCATE_EXISTING);
+
+    final ByteBuffer header = ByteBuffer.allocate(5).putInt(MAGIC).put(VERSION);
+    header.flip();
+    while(header.hasRemaining()) {
+      channel.write(header);
+    }
+  }
+
+  private void closeChannel() throws IOException {
+    if(channel != null) {
+      channel.force(false);
+      channel.close();
+      channel = null;
+      pending = false;
+    }
+  }
+
+  /**
+   * Used to load the snapshot, if there is one.
+   *
+   * @return The last log generation contained in the snapshot, or zero if there is no snapshot.
+   */
+  private long readSnapshot() throws IOException {
+    final File snapshot = new File(directory, SNAPSHOT);
+    if(!snapshot.exists()) {
+      return 0;
+    }
+
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshot), 65536))) {
+      if(in.readInt() != MAGIC || in.readByte() != VERSION) {
+        throw new IOException("Invalid journal snapshot: " + snapshot.getPath());
+      }
+
+      final long covered = in.readLong();
+      final long count = in.readLong();
+      for(long i = 0; i < count; i++) {
+        if(!readFrame(in)) {
+          throw new IOException("Journal snapshot is corrupt: " + snapshot.getPath());
+        }
+      }
+      return covered;
+    }
+  }
+
+  /**
+   * Used to write a snapshot to a temporary file, and move it over the existing snapshot.
+   */
+  private void writeSnapshot(final List<JournalRecord> copy, final long covered) throws IOException {
+    final File temp = new File(directory, SNAPSHOT + ".tmp");
+    final File snapshot = new File(directory, SNAPSHOT);
+
+    long count = 0;
+    for(JournalRecord record : copy) {
+      count += ((record.hasInfo())? 1 : 0) + record.getHoldings().size();
+    }
+
+    try(FileOutputStream file = new FileOutputStream(temp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 65536))) {
+
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      out.writeLong(covered);
+      out.writeLong(count);
+
+      for(JournalRecord record : copy) {
+        if(record.hasInfo()) {
+          out.write(frame(JournalRecord.INFO, record.encodeInfo()).array());
+        }
+
+        for(JournalRecord.Holding holding : record.getHoldings().values()) {
+          out.write(frame(JournalRecord.HOLDINGS,
+                          JournalRecord.encodeHolding(record.getIdentifier(), holding)).array());
+        }
+      }
+      out.flush();
+      file.getFD().sync();
+    }
+
+    try {
+      Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                 StandardCopyOption.REPLACE_EXISTING);
+    } catch(AtomicMoveNotSupportedException ignore) {
+      Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Used to replay a log file.
+   *
+   * @return The amount of bytes replayed from the log.
+   */
+  private long replay(final File log) throws IOException {
+    long entries = 0;
+
+    try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(log), 65536))) {
+      if(in.readInt() != MAGIC || in.readByte() != VERSION) {
+        TNECore.log().error("Skipping invalid journal log: " + log.getPath());
+        return 0;
+      }
+
+      while(readFrame(in)) {
+        entries++;
+      }
+    } catch(EOFException ignore) {
+      //The log is empty, or ends before its header was written.
+    }
+
+    TNECore.log().debug("Replayed " + entries + " entries from " + log.getName(), DebugLevel.STANDARD);
+    return log.length();
+  }
+
+  /**
+   * Used to read, verify, and apply a single entry.
+   *
+   * @return True if an entry was applied, or false if the end of the input, or a partial or corrupt
+   * entry, was reached.
+   */
+  private boolean readFrame(final DataInputStream in) throws IOException {
+    final byte[] entry;
+    final byte type;
+    try {
+      final int length = in.readInt();
+      if(length < 1) {
+        return false;
+      }
+      type = in.readByte();
+      entry = new byte[length - 1];
+      in.readFully(entry);
+
+      final CRC32 crc = new CRC32();
+      crc.update(type);
+      crc.update(entry);
+      if((int)crc.getValue() != in.readInt()) {
+        TNECore.log().error("Stopped reading the journal at an entry with an invalid checksum.");
+        return false;
+      }
+    } catch(EOFException ignore) {
+      return false;
+    }
+
+    apply(type, entry);
+    return true;
+  }
+
+  private void apply(final byte type, final byte[] entry) throws IOException {
+    final DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+    final String identifier = in.readUTF();
+
+    if(type == JournalRecord.REMOVE) {
+      records.remove(identifier);
+      return;
+    }
+    records.computeIfAbsent(identifier, JournalRecord::new).apply(type, in);
+  }
+
+  /**
+   * Used to frame an entry as its length, its type, the entry, and a checksum of the type and entry.
+   */
+  private static ByteBuffer frame(final byte type, final byte[] entry) {
+    final CRC32 crc = new CRC32();
+    crc.update(type);
+    crc.update(entry);
+
+    final ByteBuffer buffer = ByteBuffer.allocate(9 + entry.length);
+    buffer.putInt(entry.length + 1);
+    buffer.put(type);
+    buffer.put(entry);
+    buffer.putInt((int)crc.getValue());
+    buffer.flip();
+    return buffer;
+  }
+
+  private List<File> logs() {
+    final File[] files = directory.listFiles((dir, name)->name.startsWith(LOG_PREFIX) && name.endsWith(LOG_SUFFIX));
+    if(files == null) {
+      return new ArrayList<>();
+    }
+
+    final List<File> logs = new ArrayList<>(Arrays.asList(files));
+    logs.sort((a, b)->Long.compare(generation(a), generation(b)));
+    return logs;
+  }
+
+  private static long generation(final File log) {
+    final String name = log.getName();
+    try {
+      return Long.parseLong(name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length()));
+    } catch(NumberFormatException ignore) {
+      return 0;
+    }
+  }
+}
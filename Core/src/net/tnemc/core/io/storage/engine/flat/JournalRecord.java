@@ -0,0 +1,333 @@
+package net.tnemc.core.io.storage.engine.flat;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.account.Account;
+import net.tnemc.core.account.PlayerAccount;
+import net.tnemc.core.account.SharedAccount;
+import net.tnemc.core.account.holdings.HoldingsEntry;
+import net.tnemc.core.account.shared.Member;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The image of a single account as it exists in an {@link AccountJournal}. Records are built by
+ * applying the journal's entries in order, and each entry always carries the full value of what it
+ * describes, so applying an entry more than once gives the same result.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class JournalRecord {
+
+  /**
+   * An entry containing an account's information, excluding its holdings.
+   */
+  public static final byte INFO = 1;
+
+  /**
+   * An entry containing a single holdings value for an account.
+   */
+  public static final byte HOLDINGS = 2;
+
+  /**
+   * An entry that removes an account, along with its holdings.
+   */
+  public static final byte REMOVE = 3;
+
+  private final Map<String, Map<String, Boolean>> members = new HashMap<>();
+  private final Map<String, Holding> holdings = new HashMap<>();
+
+  private final String identifier;
+
+  private boolean info = false;
+  private String name;
+  private String type;
+  private String status;
+  private long creationDate;
+  private String pin;
+  private long lastOnline;
+  private String owner;
+
+  public JournalRecord(final String identifier) {
+    this.identifier = identifier;
+  }
+
+  /**
+   * Used to create a copy of a record that is safe to use outside the journal's lock.
+   * @param record The record to copy.
+   */
+  public JournalRecord(final JournalRecord record) {
+    this.identifier = record.identifier;
+    this.info = record.info;
+    this.name = record.name;
+    this.type = record.type;
+    this.status = record.status;
+    this.creationDate = record.creationDate;
+    this.pin = record.pin;
+    this.lastOnline = record.lastOnline;
+    this.owner = record.owner;
+
+    for(Map.Entry<String, Map<String, Boolean>> entry : record.members.entrySet()) {
+      members.put(entry.getKey(), new HashMap<>(entry.getValue()));
+    }
+    holdings.putAll(record.holdings);
+  }
+
+  /**
+   * Used to encode the information entry for an {@link Account}.
+   * @param account The account.
+   * @return The encoded entry.
+   * @throws IOException If the entry couldn't be encoded.
+   */
+  public static byte[] info(@NotNull final Account account) throws IOException {
+    final JournalRecord record = new JournalRecord(account.getIdentifier());
+    record.info = true;
+    record.name = account.getName();
+    record.type = account.type();
+    record.status = account.getStatus().identifier();
+    record.creationDate = account.getCreationDate();
+    record.pin = account.getPin();
+
+    if(account instanceof PlayerAccount) {
+      record.lastOnline = ((PlayerAccount)account).getLastOnline();
+    }
+
+    if(account instanceof SharedAccount) {
+      final UUID owner = ((SharedAccount)account).getOwner();
+      record.owner = (owner == null)? account.getIdentifier() : owner.toString();
+
+      for(Member member : ((SharedAccount)account).getMembers().values()) {
+        record.members.put(member.getId().toString(), new HashMap<>(member.getPermissions()));
+      }
+    }
+    return record.encodeInfo();
+  }
+
+  /**
+   * Used to encode the entry that removes an account.
+   * @param identifier The identifier of the account to remove.
+   * @return The encoded entry.
+   * @throws IOException If the entry couldn't be encoded.
+   */
+  public static byte[] remove(@NotNull final String identifier) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(40);
+    new DataOutputStream(bytes).writeUTF(identifier);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Used to encode the holdings entry for a {@link HoldingsEntry}.
+   * @param identifier The identifier of the account the holdings belong to.
+   * @param entry The holdings.
+   * @return The encoded entry.
+   * @throws IOException If the entry couldn't be encoded.
+   */
+  public static byte[] holdings(@NotNull final String identifier, @NotNull final HoldingsEntry entry) throws IOException {
+    return encodeHolding(identifier, new Holding(entry.getRegion(), entry.getCurrency(),
+                                                 entry.getHandler().asID(), entry.getAmount()));
+  }
+
+  /**
+   * Used to encode this record's information entry.
+   * @return The encoded entry.
+   * @throws IOException If the entry couldn't be encoded.
+   */
+  public byte[] encodeInfo() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+    final DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeUTF(identifier);
+    out.writeUTF(name);
+    out.writeUTF(type);
+    out.writeUTF(status);
+    out.writeLong(creationDate);
+    writeNullable(out, pin);
+    out.writeLong(lastOnline);
+    writeNullable(out, owner);
+
+    out.writeInt(members.size());
+    for(Map.Entry<String, Map<String, Boolean>> member : members.entrySet()) {
+      out.writeUTF(member.getKey());
+      out.writeInt(member.getValue().size());
+
+      for(Map.Entry<String, Boolean> permission : member.getValue().entrySet()) {
+        out.writeUTF(permission.getKey());
+        out.writeBoolean(permission.getValue());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Used to encode a holdings entry.
+   * @param identifier The identifier of the account the holdings belong to.
+   * @param holding The holdings value.
+   * @return The encoded entry.
+   * @throws IOException If the entry couldn't be encoded.
+   */
+  public static byte[] encodeHolding(final String identifier, final Holding holding) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+    final DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeUTF(identifier);
+    out.writeUTF(holding.region());
+    out.writeLong(holding.currency().getMostSignificantBits());
+    out.writeLong(holding.currency().getLeastSignificantBits());
+    out.writeUTF(holding.handler());
+
+    final byte[] unscaled = holding.amount().unscaledValue().toByteArray();
+    out.writeInt(holding.amount().scale());
+    out.writeShort(unscaled.length);
+    out.write(unscaled);
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Used to apply an entry, after its identifier has been read, to this record.
+   * @param type The type of entry.
+   * @param in The input positioned after the entry's identifier.
+   * @throws IOException If the entry couldn't be read.
+   */
+  public void apply(final byte type, final DataInput in) throws IOException {
+    switch(type) {
+      case INFO -> {
+        info = true;
+        name = in.readUTF();
+        this.type = in.readUTF();
+        status = in.readUTF();
+        creationDate = in.readLong();
+        pin = readNullable(in);
+        lastOnline = in.readLong();
+        owner = readNullable(in);
+
+        members.clear();
+        final int memberCount = in.readInt();
+        for(int i = 0; i < memberCount; i++) {
+          final String member = in.readUTF();
+          final int permissionCount = in.readInt();
+
+          final Map<String, Boolean> permissions = new HashMap<>();
+          for(int p = 0; p < permissionCount; p++) {
+            permissions.put(in.readUTF(), in.readBoolean());
+          }
+          members.put(member, permissions);
+        }
+      }
+      case HOLDINGS -> {
+        final String region = in.readUTF();
+        final UUID currency = new UUID(in.readLong(), in.readLong());
+        final String handler = in.readUTF();
+
+        final int scale = in.readInt();
+        final byte[] unscaled = new byte[in.readUnsignedShort()];
+        in.readFully(unscaled);
+
+        final Holding holding = new Holding(region, currency, handler,
+                                            new BigDecimal(new BigInteger(unscaled), scale));
+        holdings.put(holding.key(), holding);
+      }
+      default -> throw new IOException("Unknown journal entry type: " + type);
+    }
+  }
+
+  private static void writeNullable(final DataOutputStream out, @Nullable final String value) throws IOException {
+    out.writeBoolean(value != null);
+    if(value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readNullable(final DataInput in) throws IOException {
+    return (in.readBoolean())? in.readUTF() : null;
+  }
+
+  public String getIdentifier() {
+    return identifier;
+  }
+
+  /**
+   * Used to determine if this record contains an account's information. A record may only contain
+   * holdings if the journal was cut short before the account's information was written.
+   * @return True if this record contains the account's information.
+   */
+  public boolean hasInfo() {
+    return info;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public long getCreationDate() {
+    return creationDate;
+  }
+
+  public String getPin() {
+    return pin;
+  }
+
+  public long getLastOnline() {
+    return lastOnline;
+  }
+
+  public String getOwner() {
+    return owner;
+  }
+
+  public Map<String, Map<String, Boolean>> getMembers() {
+    return members;
+  }
+
+  public Map<String, Holding> getHoldings() {
+    return holdings;
+  }
+
+  /**
+   * A single holdings value within a {@link JournalRecord}.
+   *
+   * @param region The region of the holdings.
+   * @param currency The currency of the holdings.
+   * @param handler The id of the holdings handler.
+   * @param amount The amount of the holdings.
+   */
+  public record Holding(String region, UUID currency, String handler, BigDecimal amount) {
+
+    public String key() {
+      return region + ":" + currency.toString() + ":" + handler;
+    }
+  }
+}
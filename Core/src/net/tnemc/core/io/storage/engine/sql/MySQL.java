@@ -92,6 +92,7 @@ public class MySQL extends StandardSQL {
     properties.put("prepStmtCacheSize", 250);
     properties.put("prepStmtCacheSqlLimit", 2048);
     properties.put("rewriteBatchedStatements", true);
+    properties.put("useCursorFetch", true);
     properties.put("useServerPrepStmts", true);
     properties.put("cacheCallableStmts", true);
     properties.put("cacheResultSetMetadata", true);
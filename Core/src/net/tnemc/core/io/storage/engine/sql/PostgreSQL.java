@@ -18,10 +18,33 @@ package net.tnemc.core.io.storage.engine.sql;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import net.tnemc.core.config.DataConfig;
+import net.tnemc.core.io.storage.SQLEngine;
+import net.tnemc.core.io.storage.StorageConnector;
+import net.tnemc.core.io.storage.connect.SQLConnector;
+import net.tnemc.core.io.storage.dialect.PostgreDialect;
 import net.tnemc.core.io.storage.engine.StandardSQL;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A PostgreSQL database. This uses the {@link PostgreDialect}, which bulk loads large batches using
+ * the COPY protocol.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
 public class PostgreSQL extends StandardSQL {
 
+  public PostgreSQL() {
+    this(DataConfig.yaml().getString("Data.Database.Prefix"));
+  }
+
+  public PostgreSQL(final String prefix) {
+    super(prefix, new PostgreDialect(prefix));
+  }
+
   /**
    * The name of this engine.
    *
@@ -50,4 +73,37 @@ public class PostgreSQL extends StandardSQL {
   public String url(String file, String host, int port, String database) {
     return "jdbc:postgresql://" + host + ":" + port + "/" + database;
   }
+
+  /**
+   * Used to get addition hikari properties for this {@link SQLEngine}.
+   * @return A map containing the additional properties.
+   */
+  @Override
+  public Map<String, Object> properties() {
+    Map<String, Object> properties = new HashMap<>();
+
+    //Identifiers are bound as strings, so the server needs to infer their UUID type.
+    properties.put("stringType", "unspecified");
+    properties.put("reWriteBatchedInserts", true);
+    properties.put("prepareThreshold", 3);
+    return properties;
+  }
+
+  /**
+   * Used to reset all data for this engine.
+   *
+   * @param connector The storage connector to use for this transaction.
+   */
+  @Override
+  public void reset(StorageConnector<?> connector) {
+    if(connector instanceof SQLConnector) {
+
+      //PostgreSQL won't truncate a table that is referenced by another unless they're truncated together.
+      ((SQLConnector)connector).executeUpdate("TRUNCATE TABLE " + prefix + "accounts, " + prefix + "non_players_accounts, " +
+                                                  prefix + "players_accounts, " + prefix + "account_members, " +
+                                                  prefix + "holdings, " + prefix + "receipts, " +
+                                                  prefix + "receipts_holdings, " + prefix + "receipts_participants, " +
+                                                  prefix + "receipts_modifiers CASCADE", new Object[]{});
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package net.tnemc.core.io.storage.engine.sql;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.config.DataConfig;
+import net.tnemc.core.io.storage.SQLEngine;
+import net.tnemc.core.io.storage.StorageConnector;
+import net.tnemc.core.io.storage.connect.SQLConnector;
+import net.tnemc.core.io.storage.dialect.SQLiteDialect;
+import net.tnemc.core.io.storage.engine.StandardSQL;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An embedded SQLite database that is stored as a single file in TNE's directory. This requires no
+ * outside database server, which makes it a good fit for single server setups. The SQLite driver is
+ * bundled with most server software.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public class SQLite extends StandardSQL {
+
+  public SQLite() {
+    this(DataConfig.yaml().getString("Data.Database.Prefix"));
+  }
+
+  public SQLite(final String prefix) {
+    super(prefix, new SQLiteDialect(prefix));
+  }
+
+  /**
+   * The name of this engine.
+   *
+   * @return The engine name.
+   */
+  @Override
+  public String name() {
+    return "sqlite";
+  }
+
+  @Override
+  public String[] driver() {
+    return new String[] {
+        "org.sqlite.JDBC"
+    };
+  }
+
+  /*
+   * SQLite's data source doesn't accept a user or password, so we connect using the driver.
+   */
+  @Override
+  public String[] dataSource() {
+    return new String[0];
+  }
+
+  @Override
+  public String url(String file, String host, int port, String database) {
+    return "jdbc:sqlite:" + file + ".db";
+  }
+
+  /**
+   * Used to get addition hikari properties for this {@link SQLEngine}.
+   * @return A map containing the additional properties.
+   */
+  @Override
+  public Map<String, Object> properties() {
+    Map<String, Object> properties = new HashMap<>();
+
+    //Write ahead logging allows reads to continue while a write is happening.
+    properties.put("journal_mode", "WAL");
+    properties.put("synchronous", "NORMAL");
+    properties.put("foreign_keys", "true");
+    properties.put("busy_timeout", "10000");
+    return properties;
+  }
+
+  /**
+   * Used to reset all data for this engine.
+   *
+   * @param connector The storage connector to use for this transaction.
+   */
+  @Override
+  public void reset(StorageConnector<?> connector) {
+    if(connector instanceof SQLConnector) {
+
+      //Child tables are cleared by their foreign keys.
+      ((SQLConnector)connector).executeUpdate("DELETE FROM " + prefix + "receipts", new Object[]{});
+      ((SQLConnector)connector).executeUpdate("DELETE FROM " + prefix + "accounts", new Object[]{});
+    }
+  }
+}
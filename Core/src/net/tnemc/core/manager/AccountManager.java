@@ -36,6 +36,7 @@ import net.tnemc.core.api.callback.account.AccountDeleteCallback;
 import net.tnemc.core.api.callback.account.AccountTypesCallback;
 import net.tnemc.core.api.response.AccountAPIResponse;
 import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.config.DataConfig;
 import net.tnemc.core.io.maps.EnhancedHashMap;
 import net.tnemc.core.manager.id.UUIDPair;
 import net.tnemc.core.manager.id.UUIDProvider;
@@ -43,11 +44,13 @@ import net.tnemc.core.manager.id.impl.provider.BaseUUIDProvider;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 /**
@@ -61,6 +64,20 @@ public class AccountManager {
 
   private final EnhancedHashMap<String, Account> accounts = new EnhancedHashMap<>();
 
+  /*
+   * The last time each loaded account was accessed, in access order, so the least recently used
+   * accounts are first. This is only used when accounts are loaded on demand.
+   */
+  private final LinkedHashMap<String, Long> access = new LinkedHashMap<>(16, 0.75f, true);
+
+  /*
+   * Identifiers that weren't found in storage while loading on demand, mapped to the time the miss
+   * expires, so repeated lookups of unknown identifiers don't go to storage every time.
+   */
+  private final Map<String, Long> misses = new ConcurrentHashMap<>();
+
+  private static final int MISS_LIMIT = 10000;
+
   private final EnhancedHashMap<String, AccountStatus> statuses = new EnhancedHashMap<>();
 
   private final LinkedHashMap<Class<? extends SharedAccount>, Function<String, Boolean>> types = new LinkedHashMap<>();
@@ -108,6 +125,21 @@ public class AccountManager {
    * @return A correlating {@link AccountAPIResponse response} containing the results.
    */
   public AccountAPIResponse createAccount(final String identifier, final String name, boolean nonPlayer) {
+    return createAccount(identifier, name, nonPlayer, true);
+  }
+
+  /**
+   * Used to create a new account based on the provided identifier and name.
+   * @param identifier The identifier to use for the creation, if this is a player then this should
+   *                   be the String value of the UUID for that player.
+   * @param name The name to use for this account.
+   * @param nonPlayer True if the new account should be a non-player account.
+   * @param store True if the new account should be saved to storage. This should be false when the
+   *              account is being created while loading it from storage.
+   * @return A correlating {@link AccountAPIResponse response} containing the results.
+   */
+  public AccountAPIResponse createAccount(final String identifier, final String name, boolean nonPlayer,
+                                          boolean store) {
     if(identifier != null && accounts.containsKey(identifier)) {
       TNECore.log().debug("Account Exists Already. ID: " + identifier);
 
@@ -176,8 +208,12 @@ public class AccountManager {
     }
 
     accounts.put(account.getIdentifier(), account);
+    misses.remove(account.getIdentifier());
+    touch(account.getIdentifier());
 
-    TNECore.storage().store(account, account.getIdentifier());
+    if(store) {
+      TNECore.storage().store(account, account.getIdentifier());
+    }
 
     try {
       uuidProvider.store(new UUIDPair(UUID.fromString(account.getIdentifier()), account.getName()));
@@ -239,6 +275,9 @@ public class AccountManager {
     TNECore.callbacks().call(callback);
 
     accounts.remove(identifier);
+    synchronized(access) {
+      access.remove(identifier);
+    }
     return AccountResponse.DELETED;
   }
 
@@ -249,7 +288,7 @@ public class AccountManager {
    * optional.
    */
   public Optional<Account> findAccount(final UUID id) {
-    return Optional.ofNullable(accounts.get(id.toString()));
+    return Optional.ofNullable(cached(id.toString()));
   }
 
   /**
@@ -259,7 +298,7 @@ public class AccountManager {
    * optional.
    */
   public Optional<PlayerAccount> findPlayerAccount(final UUID id) {
-    final Account account = accounts.get(id.toString());
+    final Account account = cached(id.toString());
 
     if((account instanceof PlayerAccount)) {
       return Optional.of((PlayerAccount)account);
@@ -278,7 +317,7 @@ public class AccountManager {
 
     //Check first to see if the identifier is in the accounts map.
     //This would return non-player accounts.
-    final Account account = accounts.get(identifier);
+    final Account account = cached(identifier);
     if(account != null) {
       return Optional.of(account);
     }
@@ -291,6 +330,164 @@ public class AccountManager {
     return Optional.empty();
   }
 
+  /**
+   * Used to get an {@link Account account} from the accounts map by its identifier. If accounts are
+   * loaded on demand, and the account isn't currently loaded, this will attempt to load it from
+   * storage.
+   * @param identifier The identifier of the account.
+   * @return The {@link Account account} if it exists, otherwise null.
+   */
+  private Account cached(final String identifier) {
+    final Account account = accounts.get(identifier);
+    if(account != null) {
+      touch(identifier);
+      return account;
+    }
+
+    if(!onDemand() || !UUIDProvider.isUUID(identifier)) {
+      return null;
+    }
+
+    final long now = System.currentTimeMillis();
+    final Long miss = misses.get(identifier);
+    if(miss != null && miss > now) {
+      return null;
+    }
+
+    //Loading the account will add it to our accounts map through createAccount.
+    TNECore.log().debug("Loading account on demand. ID: " + identifier, DebugLevel.DEVELOPER);
+    final Account loaded = TNECore.storage().load(Account.class, identifier).orElse(null);
+    if(loaded == null) {
+
+      //If another thread loaded the account at the same time, our createAccount call was rejected
+      //because it already exists, so this isn't a miss.
+      final Account concurrent = accounts.get(identifier);
+      if(concurrent != null) {
+        touch(identifier);
+        return concurrent;
+      }
+
+      if(misses.size() >= MISS_LIMIT) {
+        misses.values().removeIf(expires->expires <= now);
+      }
+      misses.put(identifier, now + (DataConfig.yaml().getLong("Data.Cache.MissTime", 30) * 1000L));
+    }
+    return loaded;
+  }
+
+  /**
+   * Used to mark an account as recently used, so that it isn't evicted.
+   * @param identifier The identifier of the account.
+   */
+  private void touch(final String identifier) {
+    if(onDemand()) {
+      synchronized(access) {
+        access.put(identifier, System.currentTimeMillis());
+      }
+    }
+  }
+
+  /**
+   * Used to determine if accounts are loaded on demand, rather than all at once on startup.
+   * @return True if accounts are loaded on demand, otherwise false.
+   */
+  public boolean onDemand() {
+    return DataConfig.yaml().getBoolean("Data.Cache.OnDemand", false);
+  }
+
+  /**
+   * Used to determine if an account should never be evicted from memory. Online players, and any
+   * non-player accounts, such as the server account and shared accounts, are pinned.
+   * @param account The account to check.
+   * @return True if the account is pinned, otherwise false.
+   */
+  public boolean pinned(final Account account) {
+    if(account instanceof PlayerAccount) {
+      return ((PlayerAccount)account).isOnline() || loading.contains(account.getIdentifier())
+          || importing.contains(account.getIdentifier());
+    }
+    return true;
+  }
+
+  /**
+   * Used to evict idle offline accounts from memory. The least recently used accounts are evicted
+   * while there are more loaded than the configured maximum, as well as any that have been idle for
+   * longer than the configured idle time. Any unsaved changes are stored before an account is
+   * evicted. This method is not switched over to a secondary thread automatically.
+   * @return The amount of accounts that were evicted.
+   */
+  public int evict() {
+    if(!onDemand()) {
+      return 0;
+    }
+
+    final int max = DataConfig.yaml().getInt("Data.Cache.MaxAccounts", 5000);
+    final long idle = System.currentTimeMillis() - (DataConfig.yaml().getLong("Data.Cache.Idle", 900) * 1000L);
+
+    //The candidates, along with their last access time when they were selected.
+    final Map<String, Long> candidates = new LinkedHashMap<>();
+    synchronized(access) {
+
+      int over = accounts.size() - max;
+      final Iterator<Map.Entry<String, Long>> it = access.entrySet().iterator();
+      while(it.hasNext()) {
+        final Map.Entry<String, Long> entry = it.next();
+        final Account account = accounts.get(entry.getKey());
+        if(account == null) {
+          it.remove();
+          continue;
+        }
+
+        if(pinned(account)) continue;
+
+        if(over <= 0 && entry.getValue() > idle) {
+
+          //Everything after this point has been used more recently.
+          break;
+        }
+        candidates.put(entry.getKey(), entry.getValue());
+        over--;
+      }
+    }
+
+    int evicted = 0;
+    for(Map.Entry<String, Long> candidate : candidates.entrySet()) {
+      final String identifier = candidate.getKey();
+      final Account account = accounts.get(identifier);
+      if(account == null || pinned(account)) {
+        continue;
+      }
+
+      if(account.isDirty()) {
+        TNECore.storage().storeNow(account, identifier);
+
+        //If the store failed the account is still dirty, so we keep it around for the next save.
+        if(account.isDirty()) continue;
+      }
+
+      synchronized(access) {
+        //The account was used or changed again while we were saving it.
+        if(account.isDirty() || !candidate.getValue().equals(access.get(identifier))) continue;
+
+        access.remove(identifier);
+        accounts.remove(identifier);
+
+        //A change slipped in between the check and the removal, so keep the account loaded.
+        if(account.isDirty()) {
+          accounts.put(identifier, account);
+          access.put(identifier, System.currentTimeMillis());
+          continue;
+        }
+      }
+      evicted++;
+    }
+
+    if(evicted > 0) {
+      TNECore.log().debug("Evicted " + evicted + " idle accounts. Loaded: " + accounts.size(), DebugLevel.DEVELOPER);
+    }
+    return evicted;
+  }
+
   public AccountStatus findStatus(final String identifier) {
     if(statuses.containsKey(identifier)) {
       return statuses.get(identifier);
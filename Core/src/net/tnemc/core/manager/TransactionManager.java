@@ -47,6 +47,8 @@ import java.util.Optional;
 import java.util.TimeZone;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Manages everything related to the transaction system. This is usually just keeping track of the
@@ -73,6 +75,10 @@ public class TransactionManager {
 
   private final Map<UUID, AwayHistory> away = new HashMap<>();
 
+  //Transactions hold the read lock while they apply their balances, so that a snapshot can briefly
+  //take the write lock to capture every balance between transactions rather than part way through one.
+  private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+
   private boolean track;
   private BigDecimal amount;
 
@@ -234,4 +240,8 @@ public class TransactionManager {
   public void setAmount(BigDecimal amount) {
     this.amount = amount;
   }
-}
\ No newline at end of file
+
+  public ReadWriteLock snapshotLock() {
+    return snapshotLock;
+  }
+}
@@ -63,6 +63,21 @@ public class Receipt {
     this.modifierTo = transaction.getModifierTo();
   }
 
+  /**
+   * Used to rebuild a receipt that was loaded from storage. The participants and modifiers should be
+   * set after construction.
+   * @param id The identifier of the receipt.
+   * @param time The time that the transaction was performed.
+   * @param type The type of the transaction.
+   * @param source The source of the transaction.
+   */
+  public Receipt(UUID id, long time, String type, ActionSource source) {
+    this.id = id;
+    this.time = time;
+    this.type = type;
+    this.source = source;
+  }
+
   public boolean voidTransaction() {
     if(voided) return false;
 
@@ -163,4 +178,9 @@ public class Receipt {
   public void setVoided(boolean voided) {
     this.voided = voided;
   }
-}
\ No newline at end of file
+
+  @Override
+  public String toString() {
+    return "Receipt " + id + " at " + time;
+  }
+}
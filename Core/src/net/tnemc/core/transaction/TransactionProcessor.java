@@ -23,11 +23,14 @@ import net.tnemc.core.account.Account;
 import net.tnemc.core.account.holdings.HoldingsEntry;
 import net.tnemc.core.actions.EconomyResponse;
 import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.config.DataConfig;
 
+import java.math.BigDecimal;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.locks.Lock;
 
 /**
  * This is a class that handles the actual processing of a transaction.
@@ -50,24 +53,22 @@ public interface TransactionProcessor {
       return new TransactionResult(false, response.get().response());
     }
 
-    if(transaction.getFrom() != null) {
+    final Lock lock = TNECore.eco().transaction().snapshotLock().readLock();
+    lock.lock();
+    try {
+      if(transaction.getFrom() != null) {
 
-      final Optional<Account> from = TNECore.eco().account().findAccount(transaction.getFrom().getId());
-      if(from.isPresent()) {
-        for(HoldingsEntry entry : transaction.getFrom().getEndingBalances()) {
-          from.get().setHoldings(entry, entry.getHandler());
-        }
+        final Optional<Account> from = TNECore.eco().account().findAccount(transaction.getFrom().getId());
+        from.ifPresent(account->apply(account, transaction.getFrom()));
       }
-    }
 
-    if(transaction.getTo() != null) {
+      if(transaction.getTo() != null) {
 
-      final Optional<Account> to = TNECore.eco().account().findAccount(transaction.getTo().getId());
-      if(to.isPresent()) {
-        for(HoldingsEntry entry : transaction.getTo().getEndingBalances()) {
-          to.get().setHoldings(entry, entry.getHandler());
-        }
+        final Optional<Account> to = TNECore.eco().account().findAccount(transaction.getTo().getId());
+        to.ifPresent(account->apply(account, transaction.getTo()));
       }
+    } finally {
+      lock.unlock();
     }
 
     final TransactionResult result = new TransactionResult(true, "");
@@ -76,9 +77,49 @@ public interface TransactionProcessor {
                                         new Date().getTime(),
                                         transaction);
     result.setReceipt(receipt);
+
+    //This only queues the receipt, it's written in the background.
+    TNECore.storage().storeReceipt(receipt);
     return result;
   }
 
+  /**
+   * Used to apply a participant's ending balances to its account. This is called while holding the
+   * snapshot read lock. With versioned saving, a save may merge another server's change into a
+   * balance after the transaction's checks have worked out its ending balances, so if a balance no
+   * longer matches its starting amount, the transaction's change is added to the current balance
+   * rather than overwriting it.
+   * @param account The account of the participant.
+   * @param participant The participant.
+   */
+  private void apply(final Account account, final TransactionParticipant participant) {
+    final boolean versioned = DataConfig.yaml().getBoolean("Data.Database.Versioned", false);
+
+    for(HoldingsEntry entry : participant.getEndingBalances()) {
+      HoldingsEntry ending = entry;
+
+      if(versioned) {
+        final Optional<HoldingsEntry> starting = participant.getStartingBalances().stream()
+            .filter(start->start.getRegion().equals(entry.getRegion())
+                && start.getCurrency().equals(entry.getCurrency())
+                && start.getHandler().asID().equals(entry.getHandler().asID()))
+            .findFirst();
+        final Optional<HoldingsEntry> current = account.getWallet().getHoldings(entry.getRegion(),
+                                                                                entry.getCurrency(),
+                                                                                entry.getHandler());
+
+        if(starting.isPresent() && current.isPresent()
+            && current.get().getAmount().compareTo(starting.get().getAmount()) != 0) {
+
+          final BigDecimal change = entry.getAmount().subtract(starting.get().getAmount());
+          ending = new HoldingsEntry(entry.getRegion(), entry.getCurrency(),
+                                     current.get().getAmount().add(change), entry.getHandler());
+        }
+      }
+      account.setHoldings(ending, ending.getHandler());
+    }
+  }
+
   default Optional<EconomyResponse> processChecks(Transaction transaction) {
     EconomyResponse response = null;
     for(final String str : getChecks()) {
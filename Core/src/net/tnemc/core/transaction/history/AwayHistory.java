@@ -17,9 +17,6 @@ package net.tnemc.core.transaction.history;
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import java.util.Map;
-import java.util.NavigableMap;
-import java.util.TreeMap;
 import java.util.UUID;
 
 /**
@@ -28,48 +25,24 @@ import java.util.UUID;
  * @author creatorfromhell
  * @since 0.1.2.0
  */
-public class AwayHistory {
-
-  protected final NavigableMap<Long, UUID> receipts = new TreeMap<>();
+public class AwayHistory extends PagedHistory {
 
   private final UUID account;
 
   public AwayHistory(UUID account) {
-    this.account = account;
+    this(account, 0);
   }
 
-  public NavigableMap<Long, UUID> getReceipts() {
-    return receipts;
+  /**
+   * @param account The identifier of the account.
+   * @param since The time that the account owner was last online.
+   */
+  public AwayHistory(UUID account, final long since) {
+    super(account.toString(), since);
+    this.account = account;
   }
 
   public UUID getAccount() {
     return account;
   }
-
-  public NavigableMap<Long, UUID> getPage(int page) {
-    if(page > maxPages()) page = 1;
-
-    final NavigableMap<Long, UUID> values = new TreeMap<>();
-    final int start = ((page * 5) - 5) + 1;
-    final int end =  start + 5;
-
-    int i = 1;
-    for(Map.Entry<Long, UUID> entry : receipts.entrySet()) {
-      if(i < start) continue;
-
-      values.put(entry.getKey(), entry.getValue());
-
-      if(i >= end) break;
-    }
-    return values;
-  }
-
-  public int maxPages() {
-    int max = receipts.size() / 5;
-
-    if((receipts.size() % 5) > 0) {
-      max += 1;
-    }
-    return max;
-  }
-}
\ No newline at end of file
+}
@@ -0,0 +1,186 @@
+package net.tnemc.core.transaction.history;
+/*
+ * The New Economy
+ * Copyright (C) 2022 - 2023 Daniel "creatorfromhell" Vidmar
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.tnemc.core.TNECore;
+import net.tnemc.core.account.Account;
+import net.tnemc.core.config.MainConfig;
+import net.tnemc.core.io.storage.PageCursor;
+import net.tnemc.core.transaction.Receipt;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Represents a history of receipts for an account that is viewed one page at a time, from newest to
+ * oldest.
+ *
+ * If the storage engine supports paged loading of receipts, each page is read directly from storage
+ * using keyset pagination, so only the receipts on the requested page are ever loaded. Otherwise, the
+ * page is built from the receipts held in memory.
+ *
+ * @author creatorfromhell
+ * @since 0.1.2.0
+ */
+public abstract class PagedHistory {
+
+  public static final int PAGE_SIZE = 5;
+
+  protected final NavigableMap<Long, UUID> receipts = new TreeMap<>();
+
+  /*
+   * The cursor for the last receipt on each page that has been read, so the next page can be read
+   * directly after it.
+   */
+  private final Map<Integer, PageCursor> cursors = new HashMap<>();
+
+  private final String account;
+  private final long since;
+
+  private int total = -1;
+  private long lastCount = -1;
+
+  public PagedHistory(final String account, final long since) {
+    this.account = account;
+    this.since = since;
+  }
+
+  /**
+   * Used to get a page of receipts.
+   * @param page The page to get, starting at 1.
+   * @return A list containing the receipts on the page, from newest to oldest.
+   */
+  public List<Receipt> getPage(int page) {
+    final Optional<Integer> stored = count();
+
+    if(page < 1 || page > maxPages()) page = 1;
+
+    if(stored.isEmpty()) {
+      return memoryPage(page);
+    }
+
+    PageCursor after = null;
+    if(page > 1) {
+      after = cursor(page - 1).orElse(null);
+
+      if(after == null) {
+        return new ArrayList<>();
+      }
+    }
+
+    final List<Receipt> values = TNECore.storage().page(Receipt.class, account, since, after, PAGE_SIZE)
+                                       .orElse(new ArrayList<>());
+    if(!values.isEmpty()) {
+      final Receipt last = values.get(values.size() - 1);
+      cursors.put(page, new PageCursor(last.getTime(), last.getId().toString()));
+    }
+    return values;
+  }
+
+  public int maxPages() {
+    final int size = total();
+    int max = size / PAGE_SIZE;
+
+    if((size % PAGE_SIZE) > 0) {
+      max += 1;
+    }
+    return max;
+  }
+
+  /**
+   * The total amount of receipts in this history.
+   * @return The total amount of receipts.
+   */
+  public int total() {
+    return count().orElse(receipts.size());
+  }
+
+  /**
+   * Used to get the count of receipts from storage. The count is cached for the configured refresh
+   * time, and any cached cursors are cleared when it's refreshed since new receipts shift the pages.
+   * @return An Optional containing the count if the storage engine supports paged loading of receipts,
+   * otherwise an empty Optional.
+   */
+  private Optional<Integer> count() {
+    final long time = new Date().getTime();
+
+    if(lastCount != -1 && time - lastCount < MainConfig.yaml().getLong("Core.Transactions.History.Refresh", 1200)) {
+      return (total == -1)? Optional.empty() : Optional.of(total);
+    }
+
+    final Optional<Integer> count = TNECore.storage().count(Receipt.class, account, since);
+    total = count.orElse(-1);
+    lastCount = time;
+    cursors.clear();
+    return count;
+  }
+
+  /**
+   * Used to get the cursor for the last receipt on a page, seeking directly to it if the page hasn't
+   * been read.
+   * @param page The page to get the cursor for.
+   * @return An Optional containing the cursor if it exists, otherwise an empty Optional.
+   */
+  private Optional<PageCursor> cursor(final int page) {
+    final PageCursor cursor = cursors.get(page);
+    if(cursor != null) {
+      return Optional.of(cursor);
+    }
+
+    final Optional<PageCursor> seek = TNECore.storage().seek(Receipt.class, account, since, (page * PAGE_SIZE) - 1);
+    seek.ifPresent(found->cursors.put(page, found));
+    return seek;
+  }
+
+  /**
+   * Used to build a page from the receipts held in memory.
+   * @param page The page to build.
+   * @return A list containing the receipts on the page, from newest to oldest.
+   */
+  private List<Receipt> memoryPage(final int page) {
+    final List<Receipt> values = new ArrayList<>();
+
+    final Optional<Account> acc = TNECore.eco().account().findAccount(account);
+    if(acc.isEmpty()) {
+      return values;
+    }
+
+    final int start = (page - 1) * PAGE_SIZE;
+
+    int i = 0;
+    for(UUID id : receipts.descendingMap().values()) {
+      if(i++ < start) continue;
+
+      acc.get().findReceipt(id).ifPresent(values::add);
+
+      if(values.size() >= PAGE_SIZE) break;
+    }
+    return values;
+  }
+
+  public NavigableMap<Long, UUID> getReceipts() {
+    return receipts;
+  }
+}
@@ -23,10 +23,9 @@ import net.tnemc.core.config.MainConfig;
 import net.tnemc.core.transaction.Receipt;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
 import java.util.Optional;
-import java.util.TreeMap;
 import java.util.UUID;
 
 /**
@@ -35,20 +34,23 @@ import java.util.UUID;
  * @author creatorfromhell
  * @since 0.1.2.0
  */
-public class SortedHistory {
-
-  protected final NavigableMap<Long, UUID> receipts = new TreeMap<>();
+public class SortedHistory extends PagedHistory {
 
   private final String account;
   private long lastSort;
 
   public SortedHistory(String account) {
+    super(account, 0);
     this.account = account;
     this.lastSort = -1;
 
     sort();
   }
 
+  /**
+   * Used to sort the receipts held in memory. This is only used for storage engines that don't
+   * support paged loading of receipts.
+   */
   public void sort() {
 
     final long time = new Date().getTime();
@@ -60,50 +62,16 @@ public class SortedHistory {
     final Optional<Account> acc = TNECore.eco().account().findAccount(account);
 
     if(acc.isPresent()) {
-      int i = 0;
       for(Map.Entry<UUID, Receipt> entry : acc.get().getReceipts().entrySet()) {
         receipts.put(entry.getValue().getTime(), entry.getKey());
-
-        if(i >= 200) {
-          break;
-        }
-
-        i++;
       }
     }
     lastSort = new Date().getTime();
   }
 
-  public NavigableMap<Long, UUID> getPage(int page) {
+  @Override
+  public List<Receipt> getPage(int page) {
     sort();
-
-    if(page > maxPages()) page = 1;
-
-    final NavigableMap<Long, UUID> values = new TreeMap<>();
-    final int start = ((page * 5) - 5) + 1;
-    final int end =  start + 5;
-
-    int i = 1;
-    for(Map.Entry<Long, UUID> entry : receipts.entrySet()) {
-      if(i < start) continue;
-
-      values.put(entry.getKey(), entry.getValue());
-
-      if(i >= end) break;
-    }
-    return values;
-  }
-
-  public int maxPages() {
-    int max = receipts.size() / 5;
-
-    if((receipts.size() % 5) > 0) {
-      max += 1;
-    }
-    return max;
-  }
-
-  public NavigableMap<Long, UUID> getReceipts() {
-    return receipts;
+    return super.getPage(page);
   }
-}
\ No newline at end of file
+}
@@ -67,23 +67,22 @@ public class ReceiptBox {
       return Optional.empty();
     }
 
-    final AwayHistory history = new AwayHistory(account);
+    final long lastOnline = ((PlayerAccount)acc.get()).getLastOnline();
+    final AwayHistory history = new AwayHistory(account, lastOnline);
     final long time = new Date().getTime();
 
-    int i = 0;
-
-    for(Map.Entry<Long, Receipt> entry : range(((PlayerAccount)acc.get()).getLastOnline(), time).entrySet()) {
+    for(Map.Entry<Long, Receipt> entry : range(lastOnline, time).entrySet()) {
 
       final Receipt receipt = entry.getValue();
 
       if(receipt.getFrom() != null && receipt.getFrom().getId().equalsIgnoreCase(account.toString())
           || receipt.getTo() != null && receipt.getTo().getId().equalsIgnoreCase(account.toString())) {
         history.getReceipts().put(receipt.getTime(), receipt.getId());
-        i++;
       }
     }
 
-    if(i <= 0) {
+    //This uses the stored receipts if the storage engine supports paged loading.
+    if(history.total() <= 0) {
       return Optional.empty();
     }
 
@@ -151,7 +150,13 @@ public class ReceiptBox {
    * @return An optional with the {@link Receipt} if it exists, otherwise an empty Optional.
    */
   public Optional<Receipt> findReceipt(final UUID identifier) {
-    return Optional.ofNullable(receipts.get(identifier));
+    final Receipt receipt = receipts.get(identifier);
+    if(receipt != null) {
+      return Optional.of(receipt);
+    }
+
+    //The receipt may only exist in storage if it's older than this session.
+    return TNECore.storage().load(Receipt.class, identifier.toString());
   }
 
   /**
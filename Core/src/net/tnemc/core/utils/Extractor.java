@@ -23,110 +23,356 @@ import net.tnemc.core.account.Account;
 import net.tnemc.core.account.holdings.HoldingsEntry;
 import net.tnemc.core.api.response.AccountAPIResponse;
 import net.tnemc.core.compatibility.log.DebugLevel;
+import net.tnemc.core.config.DataConfig;
 import net.tnemc.core.currency.Currency;
+import net.tnemc.core.io.storage.ExtractDatable;
 import org.jetbrains.annotations.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
 import org.simpleyaml.configuration.file.YamlFile;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Extractor
+ * Used to extract every account's balances to a file, and restore them from it.
+ *
+ * Extractions are written one account per line, as a JSON object, optionally gzipped. Both extracting
+ * and restoring work through the file one account at a time, so neither holds the whole extraction in
+ * memory. Extractions made in the older YAML format can still be restored.
  *
  * @author creatorfromhell
  * @since 0.1.2.0
  */
 public class Extractor {
 
+  private static final String VERSION = "0.1.2.0";
+
+  private static final String YAML = ".yml";
+  private static final String LINES = ".jsonl";
+  private static final String COMPRESSED = ".jsonl.gz";
+
+  /**
+   * The formats an extraction may be in, from newest to oldest.
+   */
+  private static final String[] FORMATS = new String[] { COMPRESSED, LINES, YAML };
+
   public static boolean extract() {
-    final File file = new File(TNECore.directory(), "extracted.yml");
+    final long start = System.currentTimeMillis();
 
-    //check to see if file exists, if it does we are going to move it to the extracts directory.
-    if(file.exists()) {
-      final File directory = new File(TNECore.directory(), "extracted");
-      if(!directory.exists()) {
+    //check to see if an extraction exists, if it does we are going to move it to the extracts directory.
+    for(String format : FORMATS) {
+      final File file = new File(TNECore.directory(), "extracted" + format);
 
-        directory.mkdir();
-      }
+      if(file.exists()) {
+        final File directory = new File(TNECore.directory(), "extracted");
+        if(!directory.exists()) {
 
-      final String fileName = "extracted-" + (directory.listFiles().length + 1) + ".yml";
+          directory.mkdir();
+        }
 
-      file.renameTo(new File(directory, fileName));
+        final String fileName = "extracted-" + (directory.listFiles().length + 1) + format;
+
+        file.renameTo(new File(directory, fileName));
+      }
     }
 
-    try {
-      file.createNewFile();
-    } catch(IOException e) {
-      TNECore.log().error("Failed to create extraction file.", e, DebugLevel.STANDARD);
-      return false;
+    final boolean compress = DataConfig.yaml().getBoolean("Data.Extract.Compress", true);
+    final File file = new File(TNECore.directory(), "extracted" + ((compress)? COMPRESSED : LINES));
+    final File temp = new File(TNECore.directory(), file.getName() + ".tmp");
+
+    //accounts that aren't loaded are read straight from storage, without adding them to the cache.
+    final List<Account> loaded = new ArrayList<>(TNECore.eco().account().getAccounts().values());
+    final Set<String> captured = new HashSet<>();
+    for(Account account : loaded) {
+      captured.add(account.getIdentifier());
     }
 
-    YamlFile yaml = new YamlFile(file);
-    try {
-      yaml.load();
-    } catch(IOException e) {
-      TNECore.log().error("Failed load extraction file for writing.", e, DebugLevel.STANDARD);
-      return false;
+    final List<String> unloaded = new ArrayList<>();
+    for(String identifier : TNECore.storage().identifiers(Account.class)) {
+      if(!captured.contains(identifier)) {
+        unloaded.add(identifier);
+      }
     }
-    final int total = TNECore.eco().account().getAccounts().values().size();
-    final int frequency = (int)(total * 0.10);
-    int number = 1;
 
-    yaml.set("Version", "0.1.2.0");
+    final int total = loaded.size() + unloaded.size();
+    final int frequency = Math.max(1, (int)(total * 0.10));
+    int number = 0;
 
-    for(Account account : TNECore.eco().account().getAccounts().values()) {
+    try(BufferedWriter writer = writer(temp, compress)) {
 
-      for(HoldingsEntry entry : account.getWallet().entryList()) {
+      final JSONObject header = new JSONObject();
+      header.put("version", VERSION);
+      header.put("accounts", total);
+      writer.write(header.toJSONString());
+      writer.newLine();
 
-        String username = account.getName();
-        username = username.replaceAll("\\.", "!").replaceAll("\\-", "@")
-                           .replaceAll("\\_", "%");
+      for(Account account : loaded) {
 
-        yaml.set("Accounts." + username + ".Balances." + entry.getRegion() + "."
-                     + entry.getCurrency() + "." + entry.getHandler().asID(), entry.getAmount().toPlainString());
+        writer.write(line(account.getIdentifier(), account.getName(), account.type(),
+                          account.getWallet().entryList()).toJSONString());
+        writer.newLine();
 
-        yaml.set("Accounts." + username + ".id", account.getIdentifier());
+        number++;
+        if(number % frequency == 0) {
+          final int progress = (number * 100) / total;
+          TNECore.log().inform("Extraction Progress: " + progress);
+        }
       }
-      number++;
-      try {
-        final boolean message = (number % frequency == 0);
 
-        if (message) {
+      for(String identifier : unloaded) {
+
+        final Optional<ExtractDatable.Extracted> account = TNECore.storage().extract(Account.class, identifier);
+        if(account.isEmpty()) {
+          TNECore.log().error("Unable to read account for extraction. ID: " + identifier, DebugLevel.STANDARD);
+          continue;
+        }
+
+        writer.write(line(identifier, account.get().name(), account.get().type(),
+                          account.get().holdings()).toJSONString());
+        writer.newLine();
+
+        number++;
+        if(number % frequency == 0) {
           final int progress = (number * 100) / total;
           TNECore.log().inform("Extraction Progress: " + progress);
         }
-      } catch(Exception ignore) {}
+      }
+    } catch(IOException e) {
+      TNECore.log().error("Failed to write extraction file.", e, DebugLevel.STANDARD);
+      return false;
     }
 
     try {
-      yaml.save();
-      TNECore.log().inform("Extraction has completed!");
+      Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
     } catch(IOException e) {
       TNECore.log().error("Failed to save extraction file.", e, DebugLevel.STANDARD);
       return false;
     }
+
+    TNECore.log().inform("Extraction has completed! Extracted " + number + " accounts in "
+                             + (System.currentTimeMillis() - start) + "ms.");
     return true;
   }
 
+  /**
+   * Used to build the line for a single account within an extraction.
+   *
+   * @param id The account's identifier.
+   * @param name The account's name.
+   * @param type The account's type.
+   * @param holdings The account's holdings.
+   * @return The JSON object representing the account.
+   */
+  public static JSONObject line(final String id, final String name, final String type,
+                                final Collection<HoldingsEntry> holdings) {
+    final JSONArray balances = new JSONArray();
+    for(HoldingsEntry entry : holdings) {
+
+      final JSONObject balance = new JSONObject();
+      balance.put("region", entry.getRegion());
+      balance.put("currency", entry.getCurrency().toString());
+      balance.put("handler", entry.getHandler().asID());
+      balance.put("amount", entry.getAmount().toPlainString());
+      balances.add(balance);
+    }
+
+    final JSONObject line = new JSONObject();
+    line.put("id", id);
+    line.put("name", name);
+    line.put("type", type);
+    line.put("balances", balances);
+    return line;
+  }
+
   public static boolean restore(@Nullable final Integer extraction) {
-    File file;
+    final Optional<File> file;
 
     if(extraction != null && extraction > 0) {
-      file = new File(TNECore.directory(), "extracted/extracted-" + extraction + ".yml");
+      file = find(new File(TNECore.directory(), "extracted"), "extracted-" + extraction);
     } else {
-      file = new File(TNECore.directory(), "extracted.yml");
+      file = find(TNECore.directory(), "extracted");
     }
 
-    if(!file.exists()) {
+    if(file.isEmpty()) {
 
       TNECore.log().inform("The extraction file doesn't exist.");
       return false;
     }
 
+    if(file.get().getName().endsWith(YAML)) {
+      return restoreYAML(file.get());
+    }
+    return restoreLines(file.get());
+  }
+
+  /**
+   * Used to restore an extraction that was written one account per line. Lines are read in batches,
+   * each batch is parsed in parallel, and its accounts are then updated and stored together before
+   * the next batch is read.
+   *
+   * @param file The extraction file.
+   * @return True if the extraction was restored, otherwise false.
+   */
+  private static boolean restoreLines(final File file) {
+    final long start = System.currentTimeMillis();
+
+    final int batchSize = Math.max(1, DataConfig.yaml().getInt("Data.Extract.BatchSize", 1000));
+    final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    int total = 0;
+    int restored = 0;
+
+    try(BufferedReader reader = reader(file, file.getName().endsWith(COMPRESSED))) {
+
+      //the first line is the header.
+      final String header = reader.readLine();
+      if(header != null) {
+        final Object accounts = ((JSONObject)new JSONParser().parse(header)).get("accounts");
+        total = (accounts == null)? 0 : Integer.parseInt(accounts.toString());
+      }
+
+      final List<String> lines = new ArrayList<>(batchSize);
+      String line;
+      while(true) {
+        line = reader.readLine();
+
+        if(line != null && !line.isBlank()) {
+          lines.add(line);
+        }
+
+        if(lines.size() >= batchSize || (line == null && !lines.isEmpty())) {
+          restored += restore(pool, lines);
+          lines.clear();
+
+          if(total > 0) {
+            TNECore.log().inform("Restoration Progress: " + Math.min(100, (restored * 100) / total));
+          }
+        }
+
+        if(line == null) {
+          break;
+        }
+      }
+    } catch(Exception e) {
+      TNECore.log().error("Failed to read extraction file.", e, DebugLevel.STANDARD);
+      return false;
+    } finally {
+      pool.shutdown();
+    }
+
+    TNECore.log().inform("Restoration has completed! Restored " + restored + " accounts in "
+                             + (System.currentTimeMillis() - start) + "ms.");
+    return true;
+  }
+
+  /**
+   * Used to restore a single batch of lines.
+   *
+   * @param pool The pool used to parse the lines.
+   * @param lines The lines to restore.
+   * @return The amount of accounts restored.
+   */
+  private static int restore(final ForkJoinPool pool, final List<String> lines)
+      throws ExecutionException, InterruptedException {
+
+    //Parsing doesn't touch any shared state, so it's done in parallel. Creating accounts fires
+    //callbacks and updates shared state, so the accounts are updated one at a time afterwards.
+    final List<Restoration> parsed = pool.submit(()->lines.parallelStream()
+                                                          .map(Extractor::parse)
+                                                          .filter(Objects::nonNull)
+                                                          .collect(Collectors.toList())).get();
+
+    final List<Account> accounts = new ArrayList<>(parsed.size());
+    for(Restoration restoration : parsed) {
+
+      Optional<Account> account = TNECore.eco().account().findAccount(restoration.id());
+      if(account.isEmpty()) {
+
+        final AccountAPIResponse response = TNECore.eco().account().createAccount(restoration.id(),
+                                                                                  restoration.name(),
+                                                                                  !(restoration.type().equalsIgnoreCase("player") ||
+                                                                                      restoration.type().equalsIgnoreCase("bedrock")),
+                                                                                  false);
+        account = response.getAccount();
+      }
+
+      if(account.isEmpty()) {
+        TNECore.log().inform("Couldn't create account for " + restoration.name() + ". Skipping.");
+        continue;
+      }
+
+      for(HoldingsEntry entry : restoration.holdings()) {
+        account.get().getWallet().setHoldings(entry);
+      }
+      accounts.add(account.get());
+    }
+
+    TNECore.storage().storeBatch(Account.class, accounts);
+    return accounts.size();
+  }
+
+  /**
+   * Used to parse a single extracted account.
+   *
+   * @param line The line containing the account.
+   * @return The parsed account, or null if the line couldn't be parsed.
+   */
+  private static Restoration parse(final String line) {
+    try {
+      final JSONObject object = (JSONObject)new JSONParser().parse(line);
+
+      final List<HoldingsEntry> holdings = new ArrayList<>();
+      for(Object balance : (JSONArray)object.get("balances")) {
+        final JSONObject entry = (JSONObject)balance;
+
+        holdings.add(new HoldingsEntry(entry.get("region").toString(),
+                                       UUID.fromString(entry.get("currency").toString()),
+                                       new BigDecimal(entry.get("amount").toString()),
+                                       Identifier.fromID(entry.get("handler").toString())));
+      }
+
+      return new Restoration(object.get("id").toString(), object.get("name").toString(),
+                             object.get("type").toString(), holdings);
+    } catch(Exception e) {
+      TNECore.log().error("Skipping invalid extraction line: " + line, DebugLevel.STANDARD);
+      return null;
+    }
+  }
+
+  /**
+   * Used to restore an extraction written in the older YAML format, which is read all at once.
+   *
+   * @param file The extraction file.
+   * @return True if the extraction was restored, otherwise false.
+   */
+  private static boolean restoreYAML(final File file) {
     YamlFile extracted = new YamlFile(file);
 
     try {
@@ -153,6 +399,7 @@ public class Extractor {
         final AccountAPIResponse response = TNECore.eco().account().createAccount(id, username);
         if(!response.getResponse().success() || response.getAccount().isEmpty()) {
           TNECore.log().inform("Couldn't create account for " + username + ". Skipping.");
+          continue;
         }
 
         final Set<String> regions = extracted.getConfigurationSection("Accounts." + name + ".Balances").getKeys(false);
@@ -211,4 +458,41 @@ public class Extractor {
 
     return true;
   }
-}
\ No newline at end of file
+
+  private static Optional<File> find(final File directory, final String name) {
+    for(String format : FORMATS) {
+      final File file = new File(directory, name + format);
+      if(file.exists()) {
+        return Optional.of(file);
+      }
+    }
+    return Optional.empty();
+  }
+
+  private static BufferedWriter writer(final File file, final boolean compress) throws IOException {
+    OutputStream out = new BufferedOutputStream(Files.newOutputStream(file.toPath()), 65536);
+    if(compress) {
+      out = new GZIPOutputStream(out, 65536);
+    }
+    return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 65536);
+  }
+
+  private static BufferedReader reader(final File file, final boolean compressed) throws IOException {
+    InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()), 65536);
+    if(compressed) {
+      in = new GZIPInputStream(in, 65536);
+    }
+    return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 65536);
+  }
+
+  /**
+   * A single account read from an extraction.
+   *
+   * @param id The account's identifier.
+   * @param name The account's name.
+   * @param type The account's type.
+   * @param holdings The account's holdings.
+   */
+  private record Restoration(String id, String name, String type, List<HoldingsEntry> holdings) {
+  }
+}
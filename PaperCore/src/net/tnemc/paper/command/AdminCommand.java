@@ -118,6 +118,14 @@ public class AdminCommand {
     net.tnemc.core.command.AdminCommand.onExtract(new PaperCMDSource(sender));
   }
 
+  @Subcommand({"migrate"})
+  @Usage("Admin.Migrate.Arguments")
+  @Description("Admin.Migrate.Description")
+  @CommandPermission("tne.admin.migrate")
+  public void migrate(BukkitCommandActor sender) {
+    net.tnemc.core.command.AdminCommand.onMigrate(new PaperCMDSource(sender));
+  }
+
   @Subcommand({"purge"})
   @Usage("Admin.Purge.Arguments")
   @Description("Admin.Purge.Description")
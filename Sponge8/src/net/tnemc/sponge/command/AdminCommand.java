@@ -90,6 +90,14 @@ public class AdminCommand {
     net.tnemc.core.command.AdminCommand.onExtract(new SpongeCMDSource(sender));
   }
 
+  @Subcommand({"migrate"})
+  @Usage("#{Admin.Migrate.Arguments}")
+  @Description("#{Admin.Migrate.Description}")
+  @CommandPermission("tne.admin.migrate")
+  public void migrate(SpongeCommandActor sender) {
+    net.tnemc.core.command.AdminCommand.onMigrate(new SpongeCMDSource(sender));
+  }
+
   @Subcommand({"purge"})
   @Usage("#{Admin.Purge.Arguments}")
   @Description("#{Admin.Purge.Description}")
@@ -20,7 +20,9 @@ package net.tnemc.velocity;
 import com.google.inject.Inject;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
 import com.velocitypowered.api.plugin.Plugin;
+import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.proxy.messages.MinecraftChannelIdentifier;
 import net.tnemc.bungee.message.MessageManager;
@@ -28,9 +30,11 @@ import net.tnemc.bungee.message.backlog.MessageData;
 import net.tnemc.velocity.event.ServerPostConnectListener;
 import net.tnemc.velocity.message.MessageListener;
 
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
@@ -47,15 +51,18 @@ public class VelocityCore {
 
   private final ProxyServer server;
   private final Logger logger;
+  private final Path dataDirectory;
   private MessageManager manager;
 
 
   private static VelocityCore instance;
 
   @Inject
-  public VelocityCore(ProxyServer server, Logger logger) {
+  public VelocityCore(ProxyServer server, Logger logger, @DataDirectory Path dataDirectory) {
+    instance = this;
     this.server = server;
     this.logger = logger;
+    this.dataDirectory = dataDirectory;
 
     logger.info("The New Economy Velocity bridge has been started!");
   }
@@ -64,6 +71,10 @@ public class VelocityCore {
   public void onInitialize(ProxyInitializeEvent event) {
 
     this.manager = new MessageManager(new VelocityProxy());
+    this.manager.persist(dataDirectory.toFile());
+
+    //Save any backlogged messages periodically, so they aren't lost if the proxy stops unexpectedly.
+    server.getScheduler().buildTask(this, manager::save).delay(30, TimeUnit.SECONDS).repeat(30, TimeUnit.SECONDS).schedule();
 
     server.getChannelRegistrar().register(MinecraftChannelIdentifier.from("tne:balance"));
     server.getChannelRegistrar().register(MinecraftChannelIdentifier.from("tne:sync"));
@@ -71,6 +82,13 @@ public class VelocityCore {
     server.getEventManager().register(this, new ServerPostConnectListener());
   }
 
+  @Subscribe
+  public void onShutdown(ProxyShutdownEvent event) {
+    if(manager != null) {
+      manager.save();
+    }
+  }
+
   public static VelocityCore instance() {
     return instance;
   }
@@ -79,6 +97,10 @@ public class VelocityCore {
     return server;
   }
 
+  public Logger getLogger() {
+    return logger;
+  }
+
   public Map<UUID, MessageData> getBacklog() {
     return backlog;
   }
@@ -26,6 +26,7 @@ import net.tnemc.bungee.message.backlog.MessageData;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Optional;
+import java.util.logging.Logger;
 
 /**
  * VelocityProxy
@@ -81,4 +82,14 @@ public class VelocityProxy implements ProxyProvider {
       }
     }
   }
+
+  /**
+   * Used to get the logger of the proxy plugin.
+   *
+   * @return The logger.
+   */
+  @Override
+  public Logger logger() {
+    return VelocityCore.instance().getLogger();
+  }
 }